@@ -0,0 +1,315 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.api.records.reader.impl.csv;
+
+import org.datavec.api.transform.ColumnType;
+import org.datavec.api.transform.schema.Schema;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Parses CSV records from (memory mapped) bytes directly into the typed columns of a {@link CSVColumnBatch}, without
+ * creating intermediate String objects for numerical values.<br>
+ * Quoting follows RFC 4180: a field starting with the quote character ends at the next quote character that is not
+ * followed by another quote character; a doubled quote character in a quoted field is a literal quote character.
+ * Quoted fields may contain delimiters and new lines. Records end with "\n" or "\r\n". Text is decoded as UTF-8.<br>
+ * Not thread safe: use one parser per thread.
+ */
+class CSVByteParser {
+    private static final int DELIMITER = 0;
+    private static final int END_OF_RECORD = 1;
+
+    //Powers of 10 that are exactly representable as double and float, for the fast path of number parsing
+    private static final double[] POW10 = new double[23];
+    private static final float[] FLOAT_POW10 = new float[11];
+
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++) {
+            POW10[i] = POW10[i - 1] * 10;
+        }
+        FLOAT_POW10[0] = 1;
+        for (int i = 1; i < FLOAT_POW10.length; i++) {
+            FLOAT_POW10[i] = FLOAT_POW10[i - 1] * 10;
+        }
+    }
+
+    private final byte delimiter;
+    private final byte quote;
+    private byte[] field = new byte[256];
+    private int fieldLength;
+    private int pos;
+
+    //Result of scanDecimal
+    private long mantissa;
+    private int numDigits;
+    private int exponent;
+
+    CSVByteParser(char delimiter, char quote) {
+        if (delimiter > 127 || quote > 127)
+            throw new IllegalArgumentException("Delimiter and quote must be ASCII characters");
+        this.delimiter = (byte) delimiter;
+        this.quote = (byte) quote;
+    }
+
+    /**
+     * Count the values of the first record in the buffer
+     */
+    int countValues(ByteBuffer buffer, int limit) {
+        pos = 0;
+        skipLineSeparators(buffer, limit);
+        int count = 1;
+        while (readField(buffer, limit) == DELIMITER) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Parse records from the start of the buffer into the batch
+     * @param buffer Buffer with the bytes of the records, from position 0
+     * @param limit  End (exclusive) of the bytes of the records in the buffer
+     * @param batch  Batch to parse the records into. All records of the batch are parsed
+     */
+    void parse(ByteBuffer buffer, int limit, CSVColumnBatch batch) {
+        pos = 0;
+        Schema schema = batch.getSchema();
+        int numColumns = schema.numColumns();
+        for (int r = 0; r < batch.numRecords(); r++) {
+            skipLineSeparators(buffer, limit);
+            for (int c = 0; c < numColumns; c++) {
+                int end = readField(buffer, limit);
+                try {
+                    store(batch, schema.getType(c), c, r);
+                } catch (NumberFormatException e) {
+                    throw new IllegalStateException("Invalid value \"" + fieldString() + "\" for column \""
+                            + schema.getName(c) + "\" of type " + schema.getType(c) + " in " + describe(batch, r), e);
+                }
+                if (end == END_OF_RECORD && c < numColumns - 1) {
+                    throw new IllegalStateException("Expected " + numColumns + " values, found " + (c + 1) + " in " + describe(batch, r));
+                } else if (end == DELIMITER && c == numColumns - 1) {
+                    throw new IllegalStateException("Expected " + numColumns + " values, found more in " + describe(batch, r));
+                }
+            }
+        }
+    }
+
+    private static String describe(CSVColumnBatch batch, int record) {
+        return "record " + (batch.getFirstRecordIndex() + record) + (batch.getUri() == null ? "" : " of " + batch.getUri());
+    }
+
+    private void skipLineSeparators(ByteBuffer buffer, int limit) {
+        while (pos < limit) {
+            byte b = buffer.get(pos);
+            if (b != '\n' && b != '\r')
+                break;
+            pos++;
+        }
+    }
+
+    /**
+     * Read the next field into {@link #field}
+     * @return DELIMITER if the field is followed by a delimiter, END_OF_RECORD otherwise
+     */
+    private int readField(ByteBuffer buffer, int limit) {
+        fieldLength = 0;
+        if (pos < limit && buffer.get(pos) == quote) {
+            pos++;
+            while (true) {
+                if (pos >= limit)
+                    throw new IllegalStateException("Unterminated quoted value at end of input");
+                byte b = buffer.get(pos++);
+                if (b == quote) {
+                    if (pos < limit && buffer.get(pos) == quote) {
+                        append(quote);
+                        pos++;
+                    } else {
+                        break;
+                    }
+                } else {
+                    append(b);
+                }
+            }
+        }
+        int unquotedStart = fieldLength;
+        while (pos < limit) {
+            byte b = buffer.get(pos++);
+            if (b == delimiter)
+                return DELIMITER;
+            if (b == '\n')
+                break;
+            append(b);
+        }
+        if (fieldLength > unquotedStart && field[fieldLength - 1] == '\r')
+            fieldLength--;
+        return END_OF_RECORD;
+    }
+
+    private void append(byte b) {
+        if (fieldLength == field.length)
+            field = Arrays.copyOf(field, field.length * 2);
+        field[fieldLength++] = b;
+    }
+
+    private String fieldString() {
+        return new String(field, 0, fieldLength, StandardCharsets.UTF_8);
+    }
+
+    private void store(CSVColumnBatch batch, ColumnType type, int column, int record) {
+        if (type == ColumnType.String || type == ColumnType.Categorical) {
+            batch.getStringColumn(column)[record] = fieldString();
+            return;
+        }
+        int from = 0;
+        int to = fieldLength;
+        while (from < to && field[from] <= ' ')
+            from++;
+        while (to > from && field[to - 1] <= ' ')
+            to--;
+        if (from == to) {
+            batch.setMissing(column, record);
+            return;
+        }
+        switch (type) {
+            case Integer:
+                long l = parseLong(from, to);
+                if (l < java.lang.Integer.MIN_VALUE || l > java.lang.Integer.MAX_VALUE)
+                    throw new NumberFormatException("Value out of range for an integer");
+                batch.getIntColumn(column)[record] = (int) l;
+                break;
+            case Long:
+            case Time:
+                batch.getLongColumn(column)[record] = parseLong(from, to);
+                break;
+            case Double:
+                batch.getDoubleColumn(column)[record] = parseDouble(from, to);
+                break;
+            case Float:
+                batch.getFloatColumn(column)[record] = parseFloat(from, to);
+                break;
+            case Boolean:
+                batch.getBooleanColumn(column)[record] = to - from == 4 && (field[from] | 0x20) == 't' && (field[from + 1] | 0x20) == 'r'
+                        && (field[from + 2] | 0x20) == 'u' && (field[from + 3] | 0x20) == 'e';
+                break;
+            default:
+                throw new IllegalStateException("Unsupported column type: " + type);
+        }
+    }
+
+    private long parseLong(int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (field[i] == '-' || field[i] == '+') {
+            negative = field[i] == '-';
+            i++;
+        }
+        if (i == to)
+            throw new NumberFormatException();
+        //Accumulate negatively, as in Long.parseLong, so that Long.MIN_VALUE can be parsed
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multMin = limit / 10;
+        long result = 0;
+        for (; i < to; i++) {
+            int digit = field[i] - '0';
+            if (digit < 0 || digit > 9 || result < multMin)
+                throw new NumberFormatException();
+            result *= 10;
+            if (result < limit + digit)
+                throw new NumberFormatException();
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * Scan a decimal number ([sign]digits[.digits][e[sign]digits]) into mantissa, number of significant digits and
+     * exponent
+     * @return False if the number is not in this simple format, or has too many digits to be represented exactly
+     */
+    private boolean scanDecimal(int from, int to) {
+        int i = from;
+        if (field[i] == '-' || field[i] == '+')
+            i++;
+        mantissa = 0;
+        numDigits = 0;
+        exponent = 0;
+        boolean anyDigit = false;
+        for (; i < to && field[i] >= '0' && field[i] <= '9'; i++) {
+            anyDigit = true;
+            if (numDigits >= 18)
+                return false;
+            mantissa = mantissa * 10 + (field[i] - '0');
+            if (mantissa != 0)
+                numDigits++;
+        }
+        if (i < to && field[i] == '.') {
+            for (i++; i < to && field[i] >= '0' && field[i] <= '9'; i++) {
+                anyDigit = true;
+                if (numDigits >= 18)
+                    return false;
+                mantissa = mantissa * 10 + (field[i] - '0');
+                if (mantissa != 0)
+                    numDigits++;
+                exponent--;
+            }
+        }
+        if (!anyDigit)
+            return false;
+        if (i < to && (field[i] == 'e' || field[i] == 'E')) {
+            i++;
+            boolean negativeExp = false;
+            if (i < to && (field[i] == '-' || field[i] == '+')) {
+                negativeExp = field[i] == '-';
+                i++;
+            }
+            if (i == to)
+                return false;
+            int e = 0;
+            for (; i < to && field[i] >= '0' && field[i] <= '9'; i++) {
+                if (e > 10000)
+                    return false;
+                e = e * 10 + (field[i] - '0');
+            }
+            exponent += negativeExp ? -e : e;
+        }
+        return i == to;
+    }
+
+    private double parseDouble(int from, int to) {
+        //Fast path: the mantissa and the power of 10 are exact doubles, so one multiplication or division is
+        //correctly rounded
+        if (scanDecimal(from, to) && numDigits <= 15 && exponent >= -22 && exponent <= 22) {
+            double v = exponent >= 0 ? mantissa * POW10[exponent] : mantissa / POW10[-exponent];
+            return field[from] == '-' ? -v : v;
+        }
+        return Double.parseDouble(new String(field, from, to - from, StandardCharsets.US_ASCII));
+    }
+
+    private float parseFloat(int from, int to) {
+        if (scanDecimal(from, to) && numDigits <= 7 && exponent >= -10 && exponent <= 10) {
+            float v = exponent >= 0 ? mantissa * FLOAT_POW10[exponent] : mantissa / FLOAT_POW10[-exponent];
+            return field[from] == '-' ? -v : v;
+        }
+        return Float.parseFloat(new String(field, from, to - from, StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.api.records.reader.impl.csv;
+
+import lombok.Getter;
+import org.datavec.api.transform.ColumnType;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.writable.*;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A batch of consecutive CSV records, stored by column in primitive arrays according to the column types of a
+ * {@link Schema}, as produced by {@link MappedCSVRecordReader}:
+ * <ul>
+ *     <li>Integer: int[]</li>
+ *     <li>Long and Time: long[]</li>
+ *     <li>Double: double[]</li>
+ *     <li>Float: float[]</li>
+ *     <li>Boolean: boolean[]</li>
+ *     <li>String and Categorical: String[]</li>
+ * </ul>
+ * Empty values of non-String columns are missing values: see {@link #isMissing(int, int)}. In the records
+ * returned by {@link #getRecord(int)}, they are {@link NullWritable}s.
+ */
+public class CSVColumnBatch {
+    @Getter
+    private final Schema schema;
+    @Getter
+    private final URI uri;
+    /** Index in the file of the first record of the batch */
+    @Getter
+    private final long firstRecordIndex;
+    private final int numRecords;
+    private final Object[] columns;
+    private final boolean[][] missing;
+
+    CSVColumnBatch(Schema schema, URI uri, long firstRecordIndex, int numRecords) {
+        this(schema, uri, firstRecordIndex, numRecords, new Object[schema.numColumns()], new boolean[schema.numColumns()][]);
+        for (int c = 0; c < columns.length; c++) {
+            switch (schema.getType(c)) {
+                case Integer:
+                    columns[c] = new int[numRecords];
+                    break;
+                case Long:
+                case Time:
+                    columns[c] = new long[numRecords];
+                    break;
+                case Double:
+                    columns[c] = new double[numRecords];
+                    break;
+                case Float:
+                    columns[c] = new float[numRecords];
+                    break;
+                case Boolean:
+                    columns[c] = new boolean[numRecords];
+                    break;
+                case String:
+                case Categorical:
+                    columns[c] = new String[numRecords];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Column \"" + schema.getName(c) + "\" has type " + schema.getType(c)
+                            + ": not supported for CSV data");
+            }
+        }
+    }
+
+    private CSVColumnBatch(Schema schema, URI uri, long firstRecordIndex, int numRecords, Object[] columns, boolean[][] missing) {
+        this.schema = schema;
+        this.uri = uri;
+        this.firstRecordIndex = firstRecordIndex;
+        this.numRecords = numRecords;
+        this.columns = columns;
+        this.missing = missing;
+    }
+
+    /**
+     * @return Number of records in the batch
+     */
+    public int numRecords() {
+        return numRecords;
+    }
+
+    public int[] getIntColumn(int column) {
+        return (int[]) columns[column];
+    }
+
+    public long[] getLongColumn(int column) {
+        return (long[]) columns[column];
+    }
+
+    public double[] getDoubleColumn(int column) {
+        return (double[]) columns[column];
+    }
+
+    public float[] getFloatColumn(int column) {
+        return (float[]) columns[column];
+    }
+
+    public boolean[] getBooleanColumn(int column) {
+        return (boolean[]) columns[column];
+    }
+
+    public String[] getStringColumn(int column) {
+        return (String[]) columns[column];
+    }
+
+    /**
+     * @return True if the value of the column is missing (empty) for the given record
+     */
+    public boolean isMissing(int column, int record) {
+        return missing[column] != null && missing[column][record];
+    }
+
+    void setMissing(int column, int record) {
+        if (missing[column] == null)
+            missing[column] = new boolean[numRecords];
+        missing[column][record] = true;
+    }
+
+    /**
+     * @param record Index of the record in the batch
+     * @return The record as a list of writables of the column types
+     */
+    public List<Writable> getRecord(int record) {
+        List<Writable> ret = new ArrayList<>(columns.length);
+        for (int c = 0; c < columns.length; c++) {
+            if (isMissing(c, record)) {
+                ret.add(NullWritable.INSTANCE);
+                continue;
+            }
+            Object col = columns[c];
+            if (col instanceof int[]) {
+                ret.add(new IntWritable(((int[]) col)[record]));
+            } else if (col instanceof long[]) {
+                ret.add(new LongWritable(((long[]) col)[record]));
+            } else if (col instanceof double[]) {
+                ret.add(new DoubleWritable(((double[]) col)[record]));
+            } else if (col instanceof float[]) {
+                ret.add(new FloatWritable(((float[]) col)[record]));
+            } else if (col instanceof boolean[]) {
+                ret.add(new BooleanWritable(((boolean[]) col)[record]));
+            } else {
+                ret.add(new Text(((String[]) col)[record]));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return A batch with the records of this batch from the given index (inclusive)
+     */
+    public CSVColumnBatch tail(int fromRecord) {
+        if (fromRecord == 0)
+            return this;
+        Object[] cols = new Object[columns.length];
+        boolean[][] miss = new boolean[columns.length][];
+        for (int c = 0; c < columns.length; c++) {
+            cols[c] = copyOfRange(columns[c], fromRecord, numRecords);
+            if (missing[c] != null)
+                miss[c] = Arrays.copyOfRange(missing[c], fromRecord, numRecords);
+        }
+        return new CSVColumnBatch(schema, uri, firstRecordIndex + fromRecord, numRecords - fromRecord, cols, miss);
+    }
+
+    private static Object copyOfRange(Object col, int from, int to) {
+        if (col instanceof int[])
+            return Arrays.copyOfRange((int[]) col, from, to);
+        if (col instanceof long[])
+            return Arrays.copyOfRange((long[]) col, from, to);
+        if (col instanceof double[])
+            return Arrays.copyOfRange((double[]) col, from, to);
+        if (col instanceof float[])
+            return Arrays.copyOfRange((float[]) col, from, to);
+        if (col instanceof boolean[])
+            return Arrays.copyOfRange((boolean[]) col, from, to);
+        return Arrays.copyOfRange((String[]) col, from, to);
+    }
+}
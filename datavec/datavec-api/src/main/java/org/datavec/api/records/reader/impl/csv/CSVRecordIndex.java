@@ -0,0 +1,187 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.api.records.reader.impl.csv;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.function.LongPredicate;
+
+/**
+ * Byte offsets of the records of a CSV file, for splitting the file into chunks on record boundaries and for random
+ * access to records.<br>
+ * Records are separated by new lines outside of quoted fields. As in {@link CSVByteParser}, a quote character starts a
+ * quoted field only when it is the first byte of a field, and is a literal character anywhere else; in a quoted field,
+ * doubled quote characters are literal quotes, and new lines are part of the value. Empty lines are not records.<br>
+ * To keep the index small for large files, only the offset of the first record of each block of {@link #STRIDE}
+ * records is stored. The offsets of the other records are found by scanning their block again.
+ */
+class CSVRecordIndex {
+    /** Number of records per block: the offset of the first record of each block is stored */
+    static final int STRIDE = 256;
+    //Size of the regions mapped while scanning the file
+    private static final long SCAN_REGION_BYTES = 256L * 1024 * 1024;
+
+    private final long fileLength;
+    private final byte delimiter;
+    private final byte quote;
+    private long[] blockStarts;
+    private int numBlocks;
+    private long numRecords;
+
+    private CSVRecordIndex(long fileLength, byte delimiter, byte quote) {
+        this.fileLength = fileLength;
+        this.delimiter = delimiter;
+        this.quote = quote;
+        this.blockStarts = new long[16];
+    }
+
+    /**
+     * Build the index of a file with a single sequential scan over the memory mapped file
+     */
+    static CSVRecordIndex build(FileChannel channel, byte delimiter, byte quote) throws IOException {
+        CSVRecordIndex index = new CSVRecordIndex(channel.size(), delimiter, quote);
+        index.scan(channel, 0, index.fileLength, start -> {
+            if (index.numRecords % STRIDE == 0)
+                index.addBlock(start);
+            index.numRecords++;
+            return true;
+        });
+        return index;
+    }
+
+    /**
+     * Scan the bytes from {@code from} (the start of a record) to {@code to}, passing the start of each record to the
+     * visitor, until the visitor returns false
+     */
+    private void scan(FileChannel channel, long from, long to, LongPredicate visitor) throws IOException {
+        boolean inQuotes = false;
+        //Quote in a quoted field: either the end of the field, or a literal quote if the next byte is also a quote
+        boolean quotePending = false;
+        boolean fieldStart = true;
+        //Whether the current record has any content other than '\r'
+        boolean hasContent = false;
+        long recordStart = from;
+        for (long regionStart = from; regionStart < to; regionStart += SCAN_REGION_BYTES) {
+            int regionLength = (int) Math.min(SCAN_REGION_BYTES, to - regionStart);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, regionLength);
+            for (int i = 0; i < regionLength; i++) {
+                byte b = buffer.get(i);
+                if (quotePending) {
+                    quotePending = false;
+                    if (b == quote)
+                        continue;
+                    inQuotes = false;
+                }
+                if (inQuotes) {
+                    if (b == quote)
+                        quotePending = true;
+                    continue;
+                }
+                if (b == '\n') {
+                    recordStart = regionStart + i + 1;
+                    hasContent = false;
+                    fieldStart = true;
+                    continue;
+                }
+                if (!hasContent) {
+                    //Line separators before the first value are skipped by the parser
+                    if (b == '\r')
+                        continue;
+                    hasContent = true;
+                    if (!visitor.test(recordStart))
+                        return;
+                }
+                if (b == delimiter) {
+                    fieldStart = true;
+                } else {
+                    if (fieldStart && b == quote)
+                        inQuotes = true;
+                    fieldStart = false;
+                }
+            }
+        }
+    }
+
+    private void addBlock(long start) {
+        if (numBlocks == blockStarts.length)
+            blockStarts = Arrays.copyOf(blockStarts, blockStarts.length * 2);
+        blockStarts[numBlocks++] = start;
+    }
+
+    long numRecords() {
+        return numRecords;
+    }
+
+    int numBlocks() {
+        return numBlocks;
+    }
+
+    /**
+     * @return The block containing the record
+     */
+    int block(long record) {
+        return (int) (record / STRIDE);
+    }
+
+    /**
+     * @return Index of the first record of the block, or the number of records for {@code block == numBlocks()}
+     */
+    long firstRecord(int block) {
+        return Math.min((long) block * STRIDE, numRecords);
+    }
+
+    long blockStart(int block) {
+        return blockStarts[block];
+    }
+
+    /**
+     * @return The end (exclusive) of the bytes of the last record of the block, including the line separator and any
+     * following empty lines
+     */
+    long blockEnd(int block) {
+        return block + 1 < numBlocks ? blockStarts[block + 1] : fileLength;
+    }
+
+    /**
+     * @return The start of each record of the block, found by scanning the block
+     */
+    long[] recordStarts(FileChannel channel, int block) throws IOException {
+        final long[] starts = new long[(int) (firstRecord(block + 1) - firstRecord(block))];
+        final int[] count = new int[1];
+        scan(channel, blockStart(block), blockEnd(block), start -> {
+            starts[count[0]++] = start;
+            return count[0] < starts.length;
+        });
+        return starts;
+    }
+
+    /**
+     * @return The start and end (exclusive, including the line separator) of the bytes of the record
+     */
+    long[] recordBounds(FileChannel channel, long record) throws IOException {
+        int block = block(record);
+        long[] starts = recordStarts(channel, block);
+        int i = (int) (record - firstRecord(block));
+        return new long[]{starts[i], i + 1 < starts.length ? starts[i + 1] : blockEnd(block)};
+    }
+}
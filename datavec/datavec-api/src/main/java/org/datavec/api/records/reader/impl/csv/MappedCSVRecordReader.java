@@ -0,0 +1,454 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.api.records.reader.impl.csv;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.datavec.api.conf.Configuration;
+import org.datavec.api.records.Record;
+import org.datavec.api.records.metadata.RecordMetaData;
+import org.datavec.api.records.metadata.RecordMetaDataIndex;
+import org.datavec.api.records.metadata.RecordMetaDataLine;
+import org.datavec.api.records.reader.BaseRecordReader;
+import org.datavec.api.split.InputSplit;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.writable.Writable;
+import org.nd4j.common.base.Preconditions;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A CSV record reader for local files that memory maps the files and parses them on multiple threads.<br>
+ * Each file is first scanned once to build a sparse index of the byte offsets of its records (see
+ * {@link #getNumRecords(int)} and {@link #getRecord(int, long)} for random access). The file is then split into chunks of about
+ * {@link #setChunkSizeBytes(int)} bytes on record boundaries, and the chunks are parsed concurrently, directly from
+ * the mapped bytes into primitive columns of the types of the {@link Schema} ({@link CSVColumnBatch}). Records are
+ * returned in file order, as Writables of the column types (IntWritable, DoubleWritable, ...) rather than as Text;
+ * empty values of non-String columns are returned as NullWritable.<br>
+ * Without a schema, all values are returned as Text, and all records must have as many values as the first record.<br>
+ * <br>
+ * Differences with {@link CSVRecordReader}: quoting follows RFC 4180 (doubled quote characters in quoted values, no
+ * escape character), quoted values may contain new lines, empty lines are skipped, and the input split must contain
+ * local files. The record metadata is a {@link RecordMetaDataIndex} with the index of the record in the file (including
+ * skipped header records).
+ */
+public class MappedCSVRecordReader extends BaseRecordReader {
+    public final static String NUM_THREADS = NAME_SPACE + ".numthreads";
+    public final static String CHUNK_SIZE_BYTES = NAME_SPACE + ".chunksizebytes";
+    public final static int DEFAULT_CHUNK_SIZE_BYTES = 8 * 1024 * 1024;
+
+    private Schema schema;
+    private final boolean inferSchema;
+    private int skipNumLines;
+    private char delimiter;
+    private char quote;
+    /** Number of threads parsing chunks. Defaults to the number of processors */
+    @Setter
+    private int numThreads = Runtime.getRuntime().availableProcessors();
+    /** Approximate size of the chunks parsed by each thread */
+    @Setter
+    private int chunkSizeBytes = DEFAULT_CHUNK_SIZE_BYTES;
+
+    private Configuration conf;
+    @Getter
+    private File[] files;
+    private URI[] uris;
+    private CSVRecordIndex[] indexes;
+    private ExecutorService executor;
+
+    //Iteration state: chunks are submitted in file order, and consumed in the same order
+    private final Deque<Future<CSVColumnBatch>> pending = new ArrayDeque<>();
+    private int nextFile;
+    private long nextRecordInFile;
+    private FileChannel submitChannel;
+    private CSVColumnBatch currentBatch;
+    private int currentIdx;
+
+    /**
+     * @param schema Schema of the data, for the types of the values. May be null: all values are returned as Text
+     */
+    public MappedCSVRecordReader(Schema schema) {
+        this(schema, 0, CSVRecordReader.DEFAULT_DELIMITER, CSVRecordReader.DEFAULT_QUOTE);
+    }
+
+    /**
+     * @param schema       Schema of the data, for the types of the values. May be null: all values are returned as Text
+     * @param skipNumLines Number of records to skip at the start of each file (for example, a header line)
+     * @param delimiter    Delimiter character
+     * @param quote        Quote character
+     */
+    public MappedCSVRecordReader(Schema schema, int skipNumLines, char delimiter, char quote) {
+        this.schema = schema;
+        this.inferSchema = schema == null;
+        this.skipNumLines = skipNumLines;
+        this.delimiter = delimiter;
+        this.quote = quote;
+    }
+
+    @Override
+    public void initialize(Configuration conf, InputSplit split) throws IOException, InterruptedException {
+        this.conf = conf;
+        this.skipNumLines = conf.getInt(CSVRecordReader.SKIP_NUM_LINES, skipNumLines);
+        this.delimiter = conf.getChar(CSVRecordReader.DELIMITER, delimiter);
+        this.quote = conf.getChar(CSVRecordReader.QUOTE, quote);
+        this.numThreads = conf.getInt(NUM_THREADS, numThreads);
+        this.chunkSizeBytes = conf.getInt(CHUNK_SIZE_BYTES, chunkSizeBytes);
+        initialize(split);
+    }
+
+    @Override
+    public void initialize(InputSplit split) throws IOException, InterruptedException {
+        super.initialize(split);
+        close();
+        if (inferSchema)
+            schema = null;
+        List<File> f = new ArrayList<>();
+        List<URI> u = new ArrayList<>();
+        Iterator<URI> iter = split.locationsIterator();
+        while (iter.hasNext()) {
+            URI uri = iter.next();
+            Preconditions.checkArgument(uri.getScheme() == null || "file".equals(uri.getScheme()),
+                    "MappedCSVRecordReader only supports local files, got %s", uri);
+            File file = uri.getScheme() == null ? new File(uri.getPath()) : new File(uri);
+            if (file.isDirectory())
+                continue;
+            f.add(file);
+            u.add(uri);
+        }
+        this.files = f.toArray(new File[0]);
+        this.uris = u.toArray(new URI[0]);
+        this.indexes = new CSVRecordIndex[files.length];
+        final AtomicInteger threadIdx = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(Math.max(1, numThreads), r -> {
+            Thread t = new Thread(r, "MappedCSVRecordReader-" + threadIdx.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        startIteration();
+    }
+
+    private void startIteration() {
+        cancelPending();
+        nextFile = 0;
+        nextRecordInFile = -1;
+        currentBatch = null;
+        currentIdx = 0;
+    }
+
+    /**
+     * @return The record index of a file, building it if necessary
+     */
+    private synchronized CSVRecordIndex index(int file) {
+        if (indexes[file] == null) {
+            try (FileChannel ch = FileChannel.open(files[file].toPath(), StandardOpenOption.READ)) {
+                indexes[file] = CSVRecordIndex.build(ch, (byte) delimiter, (byte) quote);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Error reading " + files[file], e);
+            }
+        }
+        return indexes[file];
+    }
+
+    private Schema schemaFor(FileChannel channel, CSVRecordIndex index, long firstRecord) throws IOException {
+        if (schema != null)
+            return schema;
+        //No schema: all String columns, as many as values in the first record
+        int numValues = 1;
+        if (firstRecord < index.numRecords()) {
+            long[] bounds = index.recordBounds(channel, firstRecord);
+            ByteBuffer b = channel.map(FileChannel.MapMode.READ_ONLY, bounds[0], bounds[1] - bounds[0]);
+            numValues = new CSVByteParser(delimiter, quote).countValues(b, b.limit());
+        }
+        Schema.Builder sb = new Schema.Builder();
+        for (int i = 0; i < numValues; i++) {
+            sb.addColumnString(String.valueOf(i));
+        }
+        schema = sb.build();
+        return schema;
+    }
+
+    /**
+     * Submit chunks for parsing until there are enough chunks in flight, or all chunks have been submitted
+     */
+    private void submitChunks() {
+        int maxPending = 2 * Math.max(1, numThreads);
+        try {
+            while (pending.size() < maxPending && nextFile < files.length) {
+                CSVRecordIndex index = index(nextFile);
+                if (nextRecordInFile < 0) {
+                    nextRecordInFile = Math.min(skipNumLines, index.numRecords());
+                    submitChannel = FileChannel.open(files[nextFile].toPath(), StandardOpenOption.READ);
+                }
+                if (nextRecordInFile >= index.numRecords()) {
+                    submitChannel.close();
+                    submitChannel = null;
+                    nextFile++;
+                    nextRecordInFile = -1;
+                    continue;
+                }
+                Schema s = schemaFor(submitChannel, index, nextRecordInFile);
+                final long from = nextRecordInFile;
+                int block = index.block(from);
+                long[] blockRecords = null;
+                long start;
+                if (from == index.firstRecord(block)) {
+                    start = index.blockStart(block);
+                } else {
+                    blockRecords = index.recordStarts(submitChannel, block);
+                    start = blockRecords[(int) (from - index.firstRecord(block))];
+                }
+                long to;
+                long end;
+                if (index.blockEnd(block) - start <= chunkSizeBytes) {
+                    //Whole blocks
+                    int lastBlock = block;
+                    while (lastBlock + 1 < index.numBlocks() && index.blockEnd(lastBlock + 1) - start <= chunkSizeBytes) {
+                        lastBlock++;
+                    }
+                    to = index.firstRecord(lastBlock + 1);
+                    end = index.blockEnd(lastBlock);
+                } else {
+                    //Large records: split the block on record boundaries
+                    if (blockRecords == null)
+                        blockRecords = index.recordStarts(submitChannel, block);
+                    int i = (int) (from - index.firstRecord(block)) + 1;
+                    while (i < blockRecords.length) {
+                        long next = i + 1 < blockRecords.length ? blockRecords[i + 1] : index.blockEnd(block);
+                        if (next - start > chunkSizeBytes)
+                            break;
+                        i++;
+                    }
+                    to = index.firstRecord(block) + i;
+                    end = i < blockRecords.length ? blockRecords[i] : index.blockEnd(block);
+                }
+                final URI uri = uris[nextFile];
+                final int numRecords = (int) (to - from);
+                if (end - start > Integer.MAX_VALUE)
+                    throw new IllegalStateException("Record " + from + " of " + uri + " is larger than 2GB");
+                //The mapping stays valid after the channel is closed; the bytes are read by the parsing thread
+                final ByteBuffer buffer = submitChannel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                pending.add(executor.submit(() -> {
+                    CSVColumnBatch batch = new CSVColumnBatch(s, uri, from, numRecords);
+                    new CSVByteParser(delimiter, quote).parse(buffer, buffer.limit(), batch);
+                    return batch;
+                }));
+                nextRecordInFile = to;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading " + files[nextFile], e);
+        }
+    }
+
+    private boolean ensureBatch() {
+        Preconditions.checkState(files != null, "RecordReader has not been initialized before use");
+        while (currentBatch == null || currentIdx >= currentBatch.numRecords()) {
+            submitChunks();
+            Future<CSVColumnBatch> f = pending.poll();
+            if (f == null)
+                return false;
+            try {
+                currentBatch = f.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while parsing CSV data", e);
+            } catch (ExecutionException e) {
+                cancelPending();
+                Throwable t = e.getCause();
+                if (t instanceof RuntimeException)
+                    throw (RuntimeException) t;
+                throw new RuntimeException("Error parsing CSV data", t);
+            }
+            currentIdx = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return ensureBatch();
+    }
+
+    @Override
+    public List<Writable> next() {
+        if (!ensureBatch())
+            throw new NoSuchElementException("No next element found!");
+        List<Writable> ret = currentBatch.getRecord(currentIdx++);
+        invokeListeners(ret);
+        return ret;
+    }
+
+    /**
+     * Return the next records, by column. The batch contains the remaining records of the current chunk of the
+     * current file.
+     * @return The next batch of records, or null if there are no more records
+     */
+    public CSVColumnBatch nextBatch() {
+        if (!ensureBatch())
+            return null;
+        CSVColumnBatch ret = currentBatch.tail(currentIdx);
+        currentIdx = currentBatch.numRecords();
+        return ret;
+    }
+
+    @Override
+    public boolean batchesSupported() {
+        return true;
+    }
+
+    @Override
+    public List<List<Writable>> next(int num) {
+        List<List<Writable>> ret = new ArrayList<>(Math.min(num, 10000));
+        while (ret.size() < num && hasNext()) {
+            ret.add(next());
+        }
+        return ret;
+    }
+
+    @Override
+    public Record nextRecord() {
+        if (!ensureBatch())
+            throw new NoSuchElementException("No next element found!");
+        long idx = currentBatch.getFirstRecordIndex() + currentIdx;
+        List<Writable> next = next();
+        return new org.datavec.api.records.impl.Record(next,
+                new RecordMetaDataIndex(idx, currentBatch.getUri(), MappedCSVRecordReader.class));
+    }
+
+    /**
+     * @param fileIndex Index of the file in the input split
+     * @return Number of records in the file, including skipped header records
+     */
+    public long getNumRecords(int fileIndex) {
+        return index(fileIndex).numRecords();
+    }
+
+    /**
+     * Random access to a record, using the record index of the file: the block of the record is scanned again to find
+     * its offset
+     * @param fileIndex   Index of the file in the input split
+     * @param recordIndex Index of the record in the file, including skipped header records
+     */
+    public List<Writable> getRecord(int fileIndex, long recordIndex) {
+        CSVRecordIndex index = index(fileIndex);
+        Preconditions.checkArgument(recordIndex >= 0 && recordIndex < index.numRecords(), "Invalid record index %s: file %s has %s records",
+                recordIndex, uris[fileIndex], index.numRecords());
+        try (FileChannel ch = FileChannel.open(files[fileIndex].toPath(), StandardOpenOption.READ)) {
+            Schema s = schemaFor(ch, index, Math.min(skipNumLines, index.numRecords() - 1));
+            long[] bounds = index.recordBounds(ch, recordIndex);
+            ByteBuffer buffer = ch.map(FileChannel.MapMode.READ_ONLY, bounds[0], bounds[1] - bounds[0]);
+            CSVColumnBatch batch = new CSVColumnBatch(s, uris[fileIndex], recordIndex, 1);
+            new CSVByteParser(delimiter, quote).parse(buffer, buffer.limit(), batch);
+            return batch.getRecord(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading " + files[fileIndex], e);
+        }
+    }
+
+    @Override
+    public Record loadFromMetaData(RecordMetaData recordMetaData) throws IOException {
+        return loadFromMetaData(Collections.singletonList(recordMetaData)).get(0);
+    }
+
+    @Override
+    public List<Record> loadFromMetaData(List<RecordMetaData> recordMetaDatas) throws IOException {
+        List<Record> ret = new ArrayList<>(recordMetaDatas.size());
+        for (RecordMetaData rmd : recordMetaDatas) {
+            long recordIndex;
+            if (rmd instanceof RecordMetaDataIndex) {
+                recordIndex = ((RecordMetaDataIndex) rmd).getIndex();
+            } else if (rmd instanceof RecordMetaDataLine) {
+                recordIndex = ((RecordMetaDataLine) rmd).getLineNumber();
+            } else {
+                throw new IllegalArgumentException("Invalid metadata; expected RecordMetaDataIndex instance; got: " + rmd);
+            }
+            int fileIndex = Arrays.asList(uris).indexOf(rmd.getURI());
+            if (fileIndex < 0)
+                throw new IllegalArgumentException("URI " + rmd.getURI() + " is not part of the input split");
+            ret.add(new org.datavec.api.records.impl.Record(getRecord(fileIndex, recordIndex), rmd));
+        }
+        return ret;
+    }
+
+    @Override
+    public List<Writable> record(URI uri, DataInputStream dataInputStream) throws IOException {
+        throw new UnsupportedOperationException("MappedCSVRecordReader does not support reading from a DataInputStream: use CSVRecordReader");
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return null;
+    }
+
+    @Override
+    public void reset() {
+        Preconditions.checkState(files != null, "RecordReader has not been initialized before use");
+        startIteration();
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    private void cancelPending() {
+        for (Future<CSVColumnBatch> f : pending) {
+            f.cancel(false);
+        }
+        pending.clear();
+        if (submitChannel != null) {
+            try {
+                submitChannel.close();
+            } catch (IOException e) {
+                //Ignore
+            }
+            submitChannel = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        cancelPending();
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    @Override
+    public void setConf(Configuration conf) {
+        this.conf = conf;
+    }
+
+    @Override
+    public Configuration getConf() {
+        return conf;
+    }
+}
@@ -0,0 +1,544 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.jdbc.records.reader.impl.jdbc;
+
+import com.zaxxer.hikari.util.DriverDataSource;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.sql.DataSource;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.datavec.api.conf.Configuration;
+import org.datavec.api.records.Record;
+import org.datavec.api.records.metadata.RecordMetaData;
+import org.datavec.api.records.reader.BaseRecordReader;
+import org.datavec.api.split.InputSplit;
+import org.datavec.api.writable.Writable;
+import org.datavec.jdbc.util.JdbcColumnReader;
+
+/**
+ * A JDBC record reader that splits a query into ranges of a numeric or date/timestamp partition column, and reads the
+ * ranges concurrently.<br>
+ * Each partition is read on its own connection with a forward-only, read-only cursor and a configurable fetch size, so
+ * the driver can stream rows instead of buffering the whole result set. Column values are extracted with the typed
+ * getters of the result set (see {@link JdbcColumnReader}), and rows are handed from the reading threads to the
+ * consumer in batches.<br>
+ * <br>
+ * The query is wrapped as {@code SELECT * FROM (query) datavec_partition WHERE partitionColumn >= ? AND partitionColumn < ?},
+ * so the partition column must be one of the columns returned by the query. Unless set with {@link #setLowerBound(Object)}
+ * and {@link #setUpperBound(Object)}, the range of the column is found with a MIN/MAX query. The first and last
+ * partitions are open ended, and rows with a NULL partition column are read as an additional partition, so no rows are
+ * missed if the bounds are not exact.<br>
+ * <br>
+ * Records of one partition are returned in the order of the query; records of different partitions are interleaved
+ * in no particular order. For a deterministic order across partitions, use {@link JDBCRecordReader}.<br>
+ * Note that some drivers need additional settings to stream results: PostgreSQL only uses the fetch size when auto
+ * commit is disabled (see {@link #setDisableAutoCommit(boolean)}), and MySQL streams rows only with a fetch size of
+ * {@link Integer#MIN_VALUE} (or with useCursorFetch=true in the connection url).
+ */
+@Slf4j
+public class PartitionedJDBCRecordReader extends BaseRecordReader {
+
+    public final static String PARTITION_COLUMN = NAME_SPACE + ".partitionColumn";
+    public final static String NUM_PARTITIONS = NAME_SPACE + ".numPartitions";
+    public final static String NUM_THREADS = NAME_SPACE + ".numThreads";
+    public final static String FETCH_SIZE = NAME_SPACE + ".fetchSize";
+    public final static String BATCH_SIZE = NAME_SPACE + ".batchSize";
+
+    public final static int DEFAULT_FETCH_SIZE = 1000;
+    public final static int DEFAULT_BATCH_SIZE = 256;
+
+    private static final List<List<Writable>> END = Collections.emptyList();
+
+    private final String query;
+    @Getter
+    private String partitionColumn;
+    @Getter
+    private int numPartitions;
+    @Setter
+    private DataSource dataSource;
+    @Setter
+    private boolean trimStrings = false;
+    /** Number of threads reading partitions concurrently. Defaults to min(number of partitions, number of processors) */
+    @Setter
+    private int numThreads = -1;
+    /** Fetch size hint for the driver: number of rows fetched from the database per round trip */
+    @Setter
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+    /** Number of rows per batch handed from the reading threads to the consumer */
+    @Setter
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    /** Disable auto commit on the partition connections while reading (needed by some drivers for cursor based reads) */
+    @Setter
+    private boolean disableAutoCommit = true;
+    /** Lower bound of the partition column, used to compute the partition ranges. Null: query the minimum */
+    @Setter
+    private Object lowerBound;
+    /** Upper bound of the partition column, used to compute the partition ranges. Null: query the maximum */
+    @Setter
+    private Object upperBound;
+
+    private Configuration configuration;
+    private List<Partition> partitions;
+    private ExecutorService executor;
+    private BlockingQueue<List<List<Writable>>> queue;
+    private final Set<Statement> activeStatements = ConcurrentHashMap.newKeySet();
+    private final AtomicReference<Throwable> error = new AtomicReference<>();
+    private volatile boolean cancelled;
+    private int finishedPartitions;
+    private List<List<Writable>> currentBatch;
+    private int currentBatchIdx;
+
+    /**
+     * Build a new reader. After constructing the reader in this way, the initialize method must be called and
+     * provided with configuration values for the datasource initialization and the partitioning.
+     *
+     * @param query Query to execute and on which the reader will iterate.
+     */
+    public PartitionedJDBCRecordReader(String query) {
+        this.query = query;
+    }
+
+    /**
+     * @param query           Query to execute and on which the reader will iterate.
+     * @param dataSource      Initialized DataSource to use for iteration. Connections are obtained concurrently, so a
+     *                        pooled data source is recommended
+     * @param partitionColumn Numeric, date or timestamp column of the query used to split it into partitions
+     * @param numPartitions   Number of ranges of the partition column
+     */
+    public PartitionedJDBCRecordReader(String query, DataSource dataSource, String partitionColumn, int numPartitions) {
+        this.query = query;
+        this.dataSource = dataSource;
+        this.partitionColumn = partitionColumn;
+        this.numPartitions = numPartitions;
+    }
+
+    /**
+     * Initialize the reader, and start reading the partitions.
+     *
+     * @param split not handled yet, will be discarded
+     */
+    @Override
+    public void initialize(InputSplit split) throws IOException, InterruptedException {
+        if (dataSource == null) {
+            throw new IllegalStateException("Cannot initialize : no datasource");
+        }
+        if (partitionColumn == null || numPartitions <= 0) {
+            throw new IllegalStateException("Cannot initialize : partition column and a positive number of partitions must be set");
+        }
+        this.partitions = computePartitions();
+        start();
+    }
+
+    /**
+     * Initialize the reader, and start reading the partitions.
+     *
+     * Possible configuration keys, in addition to the ones of {@link JDBCRecordReader#initialize(Configuration, InputSplit)}
+     * (except the result set type):
+     * <ol>
+     *     <li>PartitionedJDBCRecordReader.PARTITION_COLUMN : Column used to split the query into partitions</li>
+     *     <li>PartitionedJDBCRecordReader.NUM_PARTITIONS : Number of partitions</li>
+     *     <li>PartitionedJDBCRecordReader.NUM_THREADS : Number of threads reading partitions concurrently</li>
+     *     <li>PartitionedJDBCRecordReader.FETCH_SIZE : Fetch size hint for the driver</li>
+     *     <li>PartitionedJDBCRecordReader.BATCH_SIZE : Number of rows per batch handed from the reading threads</li>
+     * </ol>
+     *
+     * @param conf a configuration for initialization
+     * @param split not handled yet, will be discarded
+     */
+    @Override
+    public void initialize(Configuration conf, InputSplit split) throws IOException, InterruptedException {
+        this.setConf(conf);
+        this.setTrimStrings(conf.getBoolean(JDBCRecordReader.TRIM_STRINGS, trimStrings));
+        this.partitionColumn = conf.get(PARTITION_COLUMN, partitionColumn);
+        this.numPartitions = conf.getInt(NUM_PARTITIONS, numPartitions);
+        this.setNumThreads(conf.getInt(NUM_THREADS, numThreads));
+        this.setFetchSize(conf.getInt(FETCH_SIZE, fetchSize));
+        this.setBatchSize(conf.getInt(BATCH_SIZE, batchSize));
+
+        String jdbcUrl = conf.get(JDBCRecordReader.JDBC_URL);
+        String driverClassName = conf.get(JDBCRecordReader.JDBC_DRIVER_CLASS_NAME);
+        // url and driver must be both unset or both present
+        if (jdbcUrl == null ^ driverClassName == null) {
+            throw new IllegalArgumentException(
+                "Both jdbc url and driver class name must be provided in order to configure PartitionedJDBCRecordReader's datasource");
+        } else if (jdbcUrl != null) {
+            this.dataSource = new DriverDataSource(jdbcUrl, driverClassName, new Properties(),
+                conf.get(JDBCRecordReader.JDBC_USERNAME), conf.get(JDBCRecordReader.JDBC_PASSWORD));
+        }
+        initialize(split);
+    }
+
+    private String wrappedQuery() {
+        return "SELECT * FROM (" + query + ") datavec_partition";
+    }
+
+    private List<Partition> computePartitions() {
+        Object lower = lowerBound;
+        Object upper = upperBound;
+        if (lower == null || upper == null) {
+            String boundsQuery = "SELECT MIN(" + partitionColumn + "), MAX(" + partitionColumn + ") FROM (" + query + ") datavec_partition";
+            try (Connection c = dataSource.getConnection();
+                 Statement s = c.createStatement();
+                 ResultSet rs = s.executeQuery(boundsQuery)) {
+                rs.next();
+                if (lower == null)
+                    lower = rs.getObject(1);
+                if (upper == null)
+                    upper = rs.getObject(2);
+            } catch (SQLException e) {
+                throw new RuntimeException("Could not query bounds of partition column \"" + partitionColumn + "\"", e);
+            }
+        }
+
+        String col = partitionColumn;
+        List<Partition> ret = new ArrayList<>();
+        List<Object> boundaries = lower == null || upper == null ? Collections.emptyList() : boundaries(lower, upper, numPartitions);
+        if (boundaries.isEmpty()) {
+            //Empty result, or a single partition
+            ret.add(new Partition(wrappedQuery()));
+            return ret;
+        }
+        ret.add(new Partition(wrappedQuery() + " WHERE " + col + " < ?", boundaries.get(0)));
+        for (int i = 0; i < boundaries.size() - 1; i++) {
+            ret.add(new Partition(wrappedQuery() + " WHERE " + col + " >= ? AND " + col + " < ?",
+                boundaries.get(i), boundaries.get(i + 1)));
+        }
+        ret.add(new Partition(wrappedQuery() + " WHERE " + col + " >= ?", boundaries.get(boundaries.size() - 1)));
+        ret.add(new Partition(wrappedQuery() + " WHERE " + col + " IS NULL"));
+        return ret;
+    }
+
+    /**
+     * Inner boundaries of equal width ranges between lower and upper (numPartitions - 1 values, fewer if the range
+     * of an integer column is small)
+     */
+    private static List<Object> boundaries(Object lower, Object upper, int numPartitions) {
+        List<Object> ret = new ArrayList<>();
+        if (lower instanceof java.util.Date && upper instanceof java.util.Date) {
+            long l = ((java.util.Date) lower).getTime();
+            long u = ((java.util.Date) upper).getTime();
+            for (long b : longBoundaries(l, u, numPartitions)) {
+                ret.add(new Timestamp(b));
+            }
+        } else if (lower instanceof Number && upper instanceof Number) {
+            if (isIntegral((Number) lower) && isIntegral((Number) upper)) {
+                ret.addAll(longBoundaries(((Number) lower).longValue(), ((Number) upper).longValue(), numPartitions));
+            } else {
+                double l = ((Number) lower).doubleValue();
+                double u = ((Number) upper).doubleValue();
+                for (int i = 1; i < numPartitions; i++) {
+                    double b = l + (u - l) * i / numPartitions;
+                    if (b > l && b <= u && (ret.isEmpty() || b > (double) ret.get(ret.size() - 1)))
+                        ret.add(b);
+                }
+            }
+        } else {
+            throw new IllegalArgumentException("Partition column must be numeric, date or timestamp: got bounds " + lower
+                + " (" + (lower == null ? null : lower.getClass()) + ") and " + upper);
+        }
+        return ret;
+    }
+
+    private static boolean isIntegral(Number n) {
+        if (n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte
+            || n instanceof java.math.BigInteger)
+            return true;
+        if (n instanceof java.math.BigDecimal) {
+            java.math.BigDecimal d = (java.math.BigDecimal) n;
+            return d.signum() == 0 || d.scale() <= 0 || d.stripTrailingZeros().scale() <= 0;
+        }
+        return false;
+    }
+
+    private static List<Long> longBoundaries(long lower, long upper, int numPartitions) {
+        List<Long> ret = new ArrayList<>();
+        //Doubles avoid overflow of (upper - lower) for very large ranges
+        double width = ((double) upper - (double) lower) / numPartitions;
+        for (int i = 1; i < numPartitions; i++) {
+            long b = (long) Math.ceil(lower + width * i);
+            if (b > lower && b <= upper && (ret.isEmpty() || b > ret.get(ret.size() - 1)))
+                ret.add(b);
+        }
+        return ret;
+    }
+
+    private void start() {
+        cancelled = false;
+        error.set(null);
+        finishedPartitions = 0;
+        currentBatch = null;
+        currentBatchIdx = 0;
+        int nThreads = numThreads > 0 ? numThreads : Math.min(partitions.size(), Runtime.getRuntime().availableProcessors());
+        nThreads = Math.max(1, Math.min(nThreads, partitions.size()));
+        //Bounded: reading threads block when the consumer is slower than the database
+        queue = new ArrayBlockingQueue<>(4 * nThreads + partitions.size());
+        final AtomicInteger threadIdx = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(nThreads, r -> {
+            Thread t = new Thread(r, "PartitionedJDBCRecordReader-" + threadIdx.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+        });
+        for (final Partition p : partitions) {
+            executor.execute(() -> readPartition(p));
+        }
+        executor.shutdown();
+    }
+
+    private void readPartition(Partition p) {
+        try {
+            if (!cancelled)
+                readPartitionRows(p);
+        } catch (Throwable t) {
+            if (!cancelled)
+                error.compareAndSet(null, t);
+        } finally {
+            try {
+                put(END);
+            } catch (InterruptedException e) {
+                //Only interrupted when the reader is cancelled
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void readPartitionRows(Partition p) throws SQLException, InterruptedException {
+        try (Connection conn = dataSource.getConnection()) {
+            boolean autoCommit = conn.getAutoCommit();
+            if (disableAutoCommit && autoCommit)
+                conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(p.sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+                activeStatements.add(ps);
+                try {
+                    ps.setFetchSize(fetchSize);
+                    for (int i = 0; i < p.params.length; i++) {
+                        ps.setObject(i + 1, p.params[i]);
+                    }
+                    try (ResultSet rs = ps.executeQuery()) {
+                        JdbcColumnReader reader = new JdbcColumnReader(rs.getMetaData(), trimStrings);
+                        List<List<Writable>> batch = new ArrayList<>(batchSize);
+                        while (!cancelled && rs.next()) {
+                            batch.add(reader.read(rs));
+                            if (batch.size() >= batchSize) {
+                                if (!put(batch))
+                                    return;
+                                batch = new ArrayList<>(batchSize);
+                            }
+                        }
+                        if (!batch.isEmpty())
+                            put(batch);
+                    }
+                } finally {
+                    activeStatements.remove(ps);
+                }
+            } finally {
+                if (disableAutoCommit && autoCommit) {
+                    //Read only: nothing to commit
+                    conn.rollback();
+                    conn.setAutoCommit(true);
+                }
+            }
+        }
+    }
+
+    private boolean put(List<List<Writable>> batch) throws InterruptedException {
+        while (!queue.offer(batch, 100, TimeUnit.MILLISECONDS)) {
+            if (cancelled)
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (partitions == null)
+            throw new IllegalStateException("Reader has not been initialized");
+        while (currentBatch == null || currentBatchIdx >= currentBatch.size()) {
+            if (finishedPartitions >= partitions.size()) {
+                checkError();
+                return false;
+            }
+            List<List<Writable>> b;
+            try {
+                b = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for database rows", e);
+            }
+            if (b == END) {
+                finishedPartitions++;
+                checkError();
+            } else {
+                currentBatch = b;
+                currentBatchIdx = 0;
+            }
+        }
+        return true;
+    }
+
+    private void checkError() {
+        Throwable t = error.get();
+        if (t != null) {
+            cancel();
+            throw new RuntimeException("Error reading partition from the database", t);
+        }
+    }
+
+    @Override
+    public List<Writable> next() {
+        if (!hasNext())
+            throw new NoSuchElementException("No next element");
+        List<Writable> next = currentBatch.get(currentBatchIdx);
+        currentBatch.set(currentBatchIdx++, null);
+        invokeListeners(next);
+        return next;
+    }
+
+    @Override
+    public boolean batchesSupported() {
+        return true;
+    }
+
+    @Override
+    public List<List<Writable>> next(int num) {
+        List<List<Writable>> ret = new ArrayList<>(num);
+        while (ret.size() < num && hasNext()) {
+            ret.add(next());
+        }
+        return ret;
+    }
+
+    @Override
+    public Record nextRecord() {
+        return new org.datavec.api.records.impl.Record(next(), null);
+    }
+
+    @Override
+    public List<String> getLabels() {
+        throw new UnsupportedOperationException("PartitionedJDBCRecordReader does not support getLabels yet");
+    }
+
+    /**
+     * Stop reading, and read all partitions again
+     */
+    @Override
+    public void reset() {
+        if (partitions == null)
+            throw new IllegalStateException("Reader has not been initialized");
+        cancel();
+        start();
+    }
+
+    @Override
+    public boolean resetSupported() {
+        return true;
+    }
+
+    @Override
+    public List<Writable> record(URI uri, DataInputStream dataInputStream) throws IOException {
+        throw new UnsupportedOperationException("PartitionedJDBCRecordReader does not support reading from a DataInputStream");
+    }
+
+    @Override
+    public Record loadFromMetaData(RecordMetaData recordMetaData) throws IOException {
+        throw new UnsupportedOperationException("PartitionedJDBCRecordReader does not support loading from metadata: use JDBCRecordReader");
+    }
+
+    @Override
+    public List<Record> loadFromMetaData(List<RecordMetaData> recordMetaDatas) throws IOException {
+        throw new UnsupportedOperationException("PartitionedJDBCRecordReader does not support loading from metadata: use JDBCRecordReader");
+    }
+
+    /**
+     * Stop the reading threads and close their connections
+     */
+    @Override
+    public void close() throws IOException {
+        cancel();
+    }
+
+    private void cancel() {
+        cancelled = true;
+        for (Statement s : activeStatements) {
+            try {
+                s.cancel();
+            } catch (SQLException e) {
+                log.debug("Could not cancel statement", e);
+            }
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+            try {
+                if (!executor.awaitTermination(30, TimeUnit.SECONDS))
+                    log.warn("Partition reading threads did not terminate within 30 seconds");
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            executor = null;
+        }
+        activeStatements.clear();
+        if (queue != null)
+            queue.clear();
+        currentBatch = null;
+    }
+
+    @Override
+    public void setConf(Configuration conf) {
+        this.configuration = conf;
+    }
+
+    @Override
+    public Configuration getConf() {
+        return this.configuration;
+    }
+
+    private static class Partition {
+        private final String sql;
+        private final Object[] params;
+
+        private Partition(String sql, Object... params) {
+            this.sql = sql;
+            this.params = params;
+        }
+    }
+}
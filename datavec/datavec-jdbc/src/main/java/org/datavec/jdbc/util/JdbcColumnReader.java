@@ -0,0 +1,126 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.jdbc.util;
+
+import org.datavec.api.writable.*;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the columns of the current row of a {@link ResultSet} directly into Writables, using the typed getters of the
+ * result set (getInt, getDouble, ...) instead of {@link ResultSet#getObject(int)}. This avoids boxing every value and
+ * converting {@link java.math.BigDecimal} values for DECIMAL/NUMERIC columns.<br>
+ * The column types are resolved once from the result set metadata. Values are converted to the same Writable types
+ * as in {@link JdbcWritableConverter}; SQL NULL values are returned as {@link NullWritable}. The converter chooses the
+ * type of a REAL column from the Java type of the value, which is Float for some drivers (Derby) and Double for others
+ * (SQLite), and the column metadata does not reliably report it: REAL values are therefore read with
+ * {@link ResultSet#getObject(int)} and passed to the converter.
+ */
+public class JdbcColumnReader {
+
+    private final int[] columnTypes;
+    private final boolean trimStrings;
+
+    public JdbcColumnReader(ResultSetMetaData meta, boolean trimStrings) throws SQLException {
+        this.columnTypes = new int[meta.getColumnCount()];
+        for (int i = 0; i < columnTypes.length; i++) {
+            columnTypes[i] = meta.getColumnType(i + 1);
+        }
+        this.trimStrings = trimStrings;
+    }
+
+    /**
+     * @return Number of columns
+     */
+    public int numColumns() {
+        return columnTypes.length;
+    }
+
+    /**
+     * Read the current row of the result set
+     */
+    public List<Writable> read(ResultSet rs) throws SQLException {
+        List<Writable> ret = new ArrayList<>(columnTypes.length);
+        for (int i = 0; i < columnTypes.length; i++) {
+            ret.add(read(rs, i + 1, columnTypes[i]));
+        }
+        return ret;
+    }
+
+    private Writable read(ResultSet rs, int column, int columnType) throws SQLException {
+        Writable w;
+        switch (columnType) {
+            case Types.BOOLEAN:
+            case Types.BIT:
+                w = new BooleanWritable(rs.getBoolean(column));
+                break;
+
+            case Types.DATE:
+            case Types.TIME:
+            case Types.TIMESTAMP:
+                Object o = rs.getObject(column);
+                return o == null ? new NullWritable() : new Text(o.toString());
+
+            case Types.CHAR:
+            case Types.LONGVARCHAR:
+            case Types.LONGNVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.VARCHAR:
+                String s = rs.getString(column);
+                if (s == null)
+                    return new NullWritable();
+                return new Text(trimStrings ? s.trim() : s);
+
+            case Types.FLOAT:
+                w = new FloatWritable(rs.getFloat(column));
+                break;
+
+            case Types.REAL:
+                return JdbcWritableConverter.convert(rs.getObject(column), columnType);
+
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+            case Types.DOUBLE:
+                w = new DoubleWritable(rs.getDouble(column));
+                break;
+
+            case Types.INTEGER:
+            case Types.SMALLINT:
+            case Types.TINYINT:
+                w = new IntWritable(rs.getInt(column));
+                break;
+
+            case Types.BIGINT:
+                w = new LongWritable(rs.getLong(column));
+                break;
+
+            default:
+                throw new IllegalArgumentException("Column type unknown");
+        }
+        return rs.wasNull() ? new NullWritable() : w;
+    }
+}
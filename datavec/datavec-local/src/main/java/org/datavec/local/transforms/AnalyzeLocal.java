@@ -36,8 +36,12 @@ import org.datavec.api.transform.schema.Schema;
 import org.datavec.api.writable.Writable;
 import org.datavec.local.transforms.analysis.aggregate.AnalysisAddFunction;
 import org.datavec.local.transforms.analysis.histogram.HistogramAddFunction;
+import org.datavec.local.transforms.analysis.sketch.SketchAnalysis;
+import org.datavec.local.transforms.analysis.sketch.SketchAnalysisState;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class AnalyzeLocal {
     private static final int DEFAULT_MAX_HISTOGRAM_BUCKETS = 30;
@@ -89,6 +93,86 @@ public class AnalyzeLocal {
     }
 
 
+    /**
+     * Analyse the specified data in a single pass, see {@link #analyzeSketch(Schema, List, int, int)}
+     *
+     * @param schema Schema for data
+     * @param rr     Data to analyze
+     * @return SketchAnalysis for data
+     */
+    public static SketchAnalysis analyzeSketch(Schema schema, RecordReader rr) {
+        return analyzeSketch(schema, Collections.singletonList(rr), DEFAULT_MAX_HISTOGRAM_BUCKETS, 1);
+    }
+
+    /**
+     * Analyse the specified data in a single pass over each split, in parallel.<br>
+     * Unlike {@link #analyze(Schema, RecordReader, int)}, which needs a second pass over the data for the histograms,
+     * histograms are computed from mergeable quantile sketches (t-digest), and are therefore approximate. The
+     * approximate number of distinct values of each column is estimated with HyperLogLog, in constant memory.
+     * All other statistics are the same as for {@link #analyze(Schema, RecordReader, int)}.<br>
+     * Each thread analyzes whole splits into its own state, and the states are merged at the end.
+     *
+     * @param schema              Schema for data
+     * @param splits              Record readers, one for each disjoint part of the data (for example, one per file)
+     * @param maxHistogramBuckets Number of histogram buckets
+     * @param numThreads          Number of threads. Capped at the number of splits
+     * @return SketchAnalysis for data
+     */
+    public static SketchAnalysis analyzeSketch(Schema schema, List<? extends RecordReader> splits, int maxHistogramBuckets,
+                                               int numThreads) {
+        if (splits.isEmpty())
+            throw new IllegalArgumentException("No record readers provided");
+        if (numThreads <= 0)
+            throw new IllegalArgumentException("Number of threads must be positive, got " + numThreads);
+        int nThreads = Math.min(numThreads, splits.size());
+        AtomicInteger nextSplit = new AtomicInteger();
+        Callable<SketchAnalysisState> task = () -> {
+            SketchAnalysisState state = new SketchAnalysisState(schema, SketchAnalysisState.DEFAULT_RELATIVE_SD);
+            int i;
+            while ((i = nextSplit.getAndIncrement()) < splits.size()) {
+                RecordReader rr = splits.get(i);
+                while (rr.hasNext()) {
+                    state.add(rr.next());
+                }
+            }
+            return state;
+        };
+
+        SketchAnalysisState merged;
+        if (nThreads == 1) {
+            try {
+                merged = task.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+            try {
+                List<Future<SketchAnalysisState>> futures = new ArrayList<>();
+                for (int t = 0; t < nThreads; t++) {
+                    futures.add(executor.submit(task));
+                }
+                merged = null;
+                for (Future<SketchAnalysisState> f : futures) {
+                    SketchAnalysisState state = f.get();
+                    merged = merged == null ? state : merged.merge(state);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                Throwable t = e.getCause();
+                throw t instanceof RuntimeException ? (RuntimeException) t : new RuntimeException(t);
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        return merged.toAnalysis(maxHistogramBuckets);
+    }
+
     /**
      * Analyze the data quality of sequence data - provides a report on missing values, values that don't comply with schema, etc
      * @param schema Schema for data
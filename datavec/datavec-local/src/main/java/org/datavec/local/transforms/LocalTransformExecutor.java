@@ -41,6 +41,10 @@ import org.datavec.api.transform.sequence.ConvertToSequence;
 import org.datavec.api.transform.sequence.SequenceSplit;
 import org.datavec.api.writable.*;
 import org.datavec.arrow.ArrowConverter;
+import org.datavec.local.transforms.external.ExternalGrouper;
+import org.datavec.local.transforms.external.ExternalSorter;
+import org.datavec.local.transforms.external.SpillConfig;
+import org.datavec.local.transforms.external.SpillingAggregator;
 import org.datavec.local.transforms.functions.EmptyRecordFunction;
 import org.datavec.local.transforms.join.ExecuteJoinFromCoGroupFlatMapFunction;
 import org.datavec.local.transforms.join.ExtractKeysFunction;
@@ -68,8 +72,14 @@ public class LocalTransformExecutor {
     //returning empty records
     public final static String LOG_ERROR_PROPERTY = "org.datavec.spark.transform.logerrors";
 
+    //a long jvm argument: when set, sort, group by, reduce and join operations
+    //spill records to disk above approximately this many bytes of records in memory
+    public final static String SPILL_MEMORY_BUDGET_PROPERTY = "org.datavec.local.transform.spill.memorybudget";
+
     private static BufferAllocator bufferAllocator = new RootAllocator(Long.MAX_VALUE);
 
+    private static volatile SpillConfig spillConfig;
+
     /**
      * Execute the specified TransformProcess with the given input data<br>
      * Note: this method can only be used if the TransformProcess returns non-sequence data. For TransformProcesses
@@ -302,6 +312,33 @@ public class LocalTransformExecutor {
         return Boolean.getBoolean(LOG_ERROR_PROPERTY);
     }
 
+    /**
+     * Set the configuration for out-of-core execution of sort ({@link CalculateSortedRank}), group by
+     * ({@link ConvertToSequence}), reduce and join operations. When set, these operations spill records to temporary
+     * files when the records (or aggregation states) exceed the memory budget, instead of holding all intermediate
+     * data in memory. Set to null (the default) for fully in-memory execution.
+     *
+     * @param config the spill configuration, or null to disable spilling
+     */
+    public static void setSpillConfig(SpillConfig config) {
+        spillConfig = config;
+    }
+
+    /**
+     * Returns the spill configuration: the one set with {@link #setSpillConfig(SpillConfig)} if any, otherwise
+     * one with the memory budget of the {@link #SPILL_MEMORY_BUDGET_PROPERTY} system property if set, otherwise null
+     * @return the spill configuration, or null if spilling is disabled
+     */
+    public static SpillConfig getSpillConfig() {
+        SpillConfig config = spillConfig;
+        if (config == null) {
+            Long budget = Long.getLong(SPILL_MEMORY_BUDGET_PROPERTY);
+            if (budget != null)
+                config = new SpillConfig(budget);
+        }
+        return config;
+    }
+
     private static Pair<List<List<Writable>>, List<List<List<Writable>>>> execute(
             List<List<Writable>> inputWritables, List<List<List<Writable>>> inputSequence,
             TransformProcess sequence) {
@@ -381,6 +418,17 @@ public class LocalTransformExecutor {
                     Schema schema = cts.getInputSchema();
                     int[] colIdxs = schema.getIndexOfColumns(cts.getKeyColumns());
                     LocalMapToPairByMultipleColumnsFunction localMapToPairByMultipleColumnsFunction = new LocalMapToPairByMultipleColumnsFunction(colIdxs);
+                    LocalGroupToSequenceFunction localGroupToSequenceFunction = new LocalGroupToSequenceFunction(cts.getComparator());
+                    SpillConfig spill = getSpillConfig();
+                    if (spill != null) {
+                        List<List<List<Writable>>> sequences = new ArrayList<>();
+                        new ExternalGrouper(spill).group(currentWritables.iterator(),
+                                input -> localMapToPairByMultipleColumnsFunction.apply(input).getFirst(),
+                                (key, group) -> sequences.add(localGroupToSequenceFunction.apply(group)));
+                        currentSequence = sequences;
+                        currentWritables = null;
+                        continue;
+                    }
                     List<Pair<List<Writable>, List<Writable>>> withKey =
                             currentWritables.stream()
                                     .map(inputSequence2 -> localMapToPairByMultipleColumnsFunction
@@ -389,7 +437,6 @@ public class LocalTransformExecutor {
 
 
                     Map<List<Writable>, List<List<Writable>>> collect = FunctionalUtils.groupByKey(withKey);
-                    LocalGroupToSequenceFunction localGroupToSequenceFunction = new LocalGroupToSequenceFunction(cts.getComparator());
                     //Now: convert to a sequence...
                     currentSequence = collect.entrySet().stream()
                             .map(input -> input.getValue())
@@ -426,6 +473,12 @@ public class LocalTransformExecutor {
                     throw new IllegalStateException("Error during execution of reduction: current writables are null. "
                             + "Trying to execute a reduce operation on a sequence?");
                 MapToPairForReducerFunction mapToPairForReducerFunction = new MapToPairForReducerFunction(reducer);
+                SpillConfig spill = getSpillConfig();
+                if (spill != null) {
+                    currentWritables = new SpillingAggregator(spill).aggregate(currentWritables.iterator(),
+                            input -> mapToPairForReducerFunction.apply(input).getFirst(), reducer::aggregableReducer);
+                    continue;
+                }
                 List<Pair<String, List<Writable>>> pair =
                         currentWritables.stream().map(input -> mapToPairForReducerFunction.apply(input))
                                 .collect(toList());
@@ -479,6 +532,20 @@ public class LocalTransformExecutor {
                 String sortColumn = csr.getSortOnColumn();
                 int sortColumnIdx = csr.getInputSchema().getIndexOfColumn(sortColumn);
                 boolean ascending = csr.isAscending();
+                SpillConfig spill = getSpillConfig();
+                if (spill != null) {
+                    Comparator<List<Writable>> recordComparator = (a, b) -> comparator.compare(a.get(sortColumnIdx), b.get(sortColumnIdx));
+                    List<List<Writable>> sorted = new ExternalSorter(spill).sortToList(currentWritables.iterator(),
+                            ascending ? recordComparator : recordComparator.reversed());
+                    UnzipForCalculateSortedRankFunction unzip = new UnzipForCalculateSortedRankFunction();
+                    List<List<Writable>> ranked = new ArrayList<>(sorted.size());
+                    for (int i = 0; i < sorted.size(); i++) {
+                        ranked.add(unzip.apply(Pair.of(Pair.of(sorted.get(i).get(sortColumnIdx), sorted.get(i)), (long) i)));
+                        sorted.set(i, null);
+                    }
+                    currentWritables = ranked;
+                    continue;
+                }
                 //NOTE: this likely isn't the most efficient implementation.
                 List<Pair<Writable, List<Writable>>> pairRDD =
                         currentWritables.stream().map(input -> new ColumnAsKeyPairFunction(sortColumnIdx).apply(input))
@@ -571,10 +638,6 @@ public class LocalTransformExecutor {
         }
         ExtractKeysFunction extractKeysFunction1 = new ExtractKeysFunction(leftColumnIndexes);
 
-        List<Pair<List<Writable>, List<Writable>>> leftJV = left.stream()
-                .filter(input -> input.size() != leftColumnNames.length).map(input ->
-                extractKeysFunction1.apply(input)).collect(toList());
-
         String[] rightColumnNames = join.getJoinColumnsRight();
         int[] rightColumnIndexes = new int[rightColumnNames.length];
         for (int i = 0; i < rightColumnNames.length; i++) {
@@ -582,17 +645,35 @@ public class LocalTransformExecutor {
         }
 
         ExtractKeysFunction extractKeysFunction = new ExtractKeysFunction(rightColumnIndexes);
-        List<Pair<List<Writable>, List<Writable>>> rightJV =
-                right.stream().filter(input -> input.size() != rightColumnNames.length)
-                        .map(input -> extractKeysFunction.apply(input))
-                        .collect(toList());
 
-        Map<List<Writable>, Pair<List<List<Writable>>, List<List<Writable>>>> cogroupedJV = FunctionalUtils.cogroup(leftJV, rightJV);
         ExecuteJoinFromCoGroupFlatMapFunction executeJoinFromCoGroupFlatMapFunction = new ExecuteJoinFromCoGroupFlatMapFunction(join);
-        List<List<Writable>> ret =  cogroupedJV.entrySet().stream()
-                .flatMap(input ->
-                        executeJoinFromCoGroupFlatMapFunction.call(Pair.of(input.getKey(),input.getValue())).stream())
-                .collect(toList());
+        List<List<Writable>> ret;
+        SpillConfig spill = getSpillConfig();
+        if (spill != null) {
+            //Grace hash join: co-group each key partition separately, without holding all key/value pairs in memory
+            List<List<Writable>> joined = new ArrayList<>();
+            new ExternalGrouper(spill).cogroup(
+                    left.stream().filter(input -> input.size() != leftColumnNames.length).iterator(),
+                    right.stream().filter(input -> input.size() != rightColumnNames.length).iterator(),
+                    input -> extractKeysFunction1.apply(input).getFirst(),
+                    input -> extractKeysFunction.apply(input).getFirst(),
+                    (key, cogrouped) -> joined.addAll(executeJoinFromCoGroupFlatMapFunction.call(Pair.of(key, cogrouped))));
+            ret = joined;
+        } else {
+            List<Pair<List<Writable>, List<Writable>>> leftJV = left.stream()
+                    .filter(input -> input.size() != leftColumnNames.length).map(input ->
+                    extractKeysFunction1.apply(input)).collect(toList());
+            List<Pair<List<Writable>, List<Writable>>> rightJV =
+                    right.stream().filter(input -> input.size() != rightColumnNames.length)
+                            .map(input -> extractKeysFunction.apply(input))
+                            .collect(toList());
+
+            Map<List<Writable>, Pair<List<List<Writable>>, List<List<Writable>>>> cogroupedJV = FunctionalUtils.cogroup(leftJV, rightJV);
+            ret = cogroupedJV.entrySet().stream()
+                    .flatMap(input ->
+                            executeJoinFromCoGroupFlatMapFunction.call(Pair.of(input.getKey(),input.getValue())).stream())
+                    .collect(toList());
+        }
 
         Schema retSchema = join.getOutputSchema();
         return ArrowConverter.toArrowWritables(ArrowConverter.toArrowColumns(bufferAllocator,retSchema,ret),retSchema);
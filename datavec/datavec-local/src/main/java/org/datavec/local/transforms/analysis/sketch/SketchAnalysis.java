@@ -0,0 +1,52 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.local.transforms.analysis.sketch;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.datavec.api.transform.analysis.DataAnalysis;
+
+import java.io.Serializable;
+import java.util.Map;
+
+/**
+ * Result of a single pass, sketch based data analysis: the data analysis (with approximate histograms), and the
+ * approximate number of distinct values for each column
+ */
+@AllArgsConstructor
+@Data
+public class SketchAnalysis implements Serializable {
+    private DataAnalysis dataAnalysis;
+    private Map<String, Long> approxDistinctCounts;
+
+    /**
+     * @param columnName Name of the column
+     * @return Approximate number of distinct values in the column, or null if not available for the column type
+     */
+    public Long getApproxDistinctCount(String columnName) {
+        return approxDistinctCounts.get(columnName);
+    }
+
+    @Override
+    public String toString() {
+        return dataAnalysis + "\nApproximate distinct counts: " + approxDistinctCounts;
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.local.transforms.analysis.sketch;
+
+import com.clearspring.analytics.stream.cardinality.CardinalityMergeException;
+import com.clearspring.analytics.stream.cardinality.HyperLogLogPlus;
+import com.tdunning.math.stats.TDigest;
+import org.datavec.api.transform.ColumnType;
+import org.datavec.api.transform.analysis.AnalysisCounter;
+import org.datavec.api.transform.analysis.DataAnalysis;
+import org.datavec.api.transform.analysis.DataVecAnalysisUtils;
+import org.datavec.api.transform.analysis.columns.ColumnAnalysis;
+import org.datavec.api.transform.analysis.counter.DoubleAnalysisCounter;
+import org.datavec.api.transform.analysis.counter.IntegerAnalysisCounter;
+import org.datavec.api.transform.analysis.counter.LongAnalysisCounter;
+import org.datavec.api.transform.analysis.histogram.DoubleHistogramCounter;
+import org.datavec.api.transform.analysis.histogram.HistogramCounter;
+import org.datavec.api.transform.analysis.histogram.StringHistogramCounter;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.writable.NDArrayWritable;
+import org.datavec.api.writable.Writable;
+import org.datavec.local.transforms.analysis.aggregate.AnalysisAddFunction;
+import org.datavec.local.transforms.analysis.aggregate.AnalysisCombineFunction;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Mergeable state for single pass data analysis, see
+ * {@link org.datavec.local.transforms.AnalyzeLocal#analyzeSketch(Schema, List, int, int)}.<br>
+ * In addition to the usual analysis counters, this keeps:
+ * <ul>
+ *     <li>A t-digest of the string lengths for String columns, and of the values for NDArray columns (numerical
+ *     columns already have a t-digest in their counters). Histograms are computed from the t-digests, so no second
+ *     pass over the data with known min/max values is needed</li>
+ *     <li>A HyperLogLog sketch per column (except Bytes and NDArray columns), for approximate distinct counts in
+ *     constant memory</li>
+ * </ul>
+ * A state is not thread safe: use one state per thread, and {@link #merge(SketchAnalysisState)} them afterwards.
+ */
+public class SketchAnalysisState {
+    public static final double DEFAULT_RELATIVE_SD = 0.01;
+    private static final double DIGEST_COMPRESSION = 100;
+
+    private final Schema schema;
+    private final AnalysisAddFunction addFn;
+    private List<AnalysisCounter> counters;
+    private long count;
+    private final TDigest[] digests;
+    private final HyperLogLogPlus[] hlls;
+
+    /**
+     * @param schema     Schema of the data
+     * @param relativeSD Relative standard deviation of the distinct count estimates. Memory use per column is
+     *                   about {@code (1.054 / relativeSD)^2} bytes
+     */
+    public SketchAnalysisState(Schema schema, double relativeSD) {
+        if (relativeSD <= 0 || relativeSD >= 1)
+            throw new IllegalArgumentException("Relative standard deviation must be between 0 and 1, got " + relativeSD);
+        this.schema = schema;
+        this.addFn = new AnalysisAddFunction(schema);
+        int nColumns = schema.numColumns();
+        this.digests = new TDigest[nColumns];
+        this.hlls = new HyperLogLogPlus[nColumns];
+        int p = (int) Math.ceil(2.0 * Math.log(1.054 / relativeSD) / Math.log(2));
+        for (int i = 0; i < nColumns; i++) {
+            ColumnType ct = schema.getType(i);
+            if (ct == ColumnType.String || ct == ColumnType.NDArray)
+                digests[i] = TDigest.createDigest(DIGEST_COMPRESSION);
+            if (ct != ColumnType.Bytes && ct != ColumnType.NDArray)
+                hlls[i] = new HyperLogLogPlus(p, 0);
+        }
+    }
+
+    /**
+     * Add one record to the state
+     */
+    public SketchAnalysisState add(List<Writable> writables) {
+        counters = addFn.apply(counters, writables);
+        count++;
+        for (int i = 0; i < digests.length; i++) {
+            Writable w = writables.get(i);
+            if (hlls[i] != null)
+                hlls[i].offer(w.toString());
+            if (digests[i] != null) {
+                if (w instanceof NDArrayWritable) {
+                    INDArray arr = ((NDArrayWritable) w).get();
+                    if (arr != null) {
+                        //A view shares the buffer of the original array: only its own elements must be added
+                        double[] values = arr.isView() || arr.length() != arr.data().length()
+                                ? arr.dup().data().asDouble() : arr.data().asDouble();
+                        for (double d : values) {
+                            digests[i].add(d);
+                        }
+                    }
+                } else {
+                    digests[i].add(w.toString().length());
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Merge the other state into this one
+     * @return This state
+     */
+    public SketchAnalysisState merge(SketchAnalysisState other) {
+        if (other == null || other.counters == null)
+            return this;
+        counters = new AnalysisCombineFunction().apply(counters, other.counters);
+        count += other.count;
+        for (int i = 0; i < digests.length; i++) {
+            if (digests[i] != null)
+                digests[i].add(other.digests[i]);
+            if (hlls[i] != null) {
+                try {
+                    hlls[i].addAll(other.hlls[i]);
+                } catch (CardinalityMergeException e) {
+                    throw new IllegalStateException("Cannot merge distinct count sketches for column \"" + schema.getName(i) + "\"", e);
+                }
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return Number of records added to this state
+     */
+    public long getCountTotal() {
+        return count;
+    }
+
+    /**
+     * Convert the state to the final analysis
+     * @param maxHistogramBuckets Number of histogram buckets for numerical and String columns
+     */
+    public SketchAnalysis toAnalysis(int maxHistogramBuckets) {
+        if (counters == null)
+            throw new IllegalStateException("No data was analyzed");
+        List<ColumnType> columnTypes = schema.getColumnTypes();
+        double[][] minsMaxes = new double[counters.size()][2];
+        List<ColumnAnalysis> list = DataVecAnalysisUtils.convertCounters(counters, minsMaxes, columnTypes);
+
+        List<HistogramCounter> histogramCounters = new ArrayList<>();
+        for (int i = 0; i < columnTypes.size(); i++) {
+            histogramCounters.add(histogram(i, columnTypes.get(i), minsMaxes[i], maxHistogramBuckets));
+        }
+        DataVecAnalysisUtils.mergeCounters(list, histogramCounters);
+
+        Map<String, Long> distinct = new LinkedHashMap<>();
+        for (int i = 0; i < hlls.length; i++) {
+            if (hlls[i] != null)
+                distinct.put(schema.getName(i), hlls[i].cardinality());
+        }
+        return new SketchAnalysis(new DataAnalysis(schema, list), distinct);
+    }
+
+    private HistogramCounter histogram(int column, ColumnType ct, double[] minMax, int nBins) {
+        TDigest digest;
+        HistogramCounter hc;
+        switch (ct) {
+            case String:
+                digest = digests[column];
+                hc = new StringHistogramCounter((int) minMax[0], (int) minMax[1], nBins);
+                break;
+            case NDArray:
+                digest = digests[column];
+                hc = new DoubleHistogramCounter(minMax[0], minMax[1], nBins);
+                break;
+            case Integer:
+                digest = ((IntegerAnalysisCounter) counters.get(column)).getDigest();
+                hc = new DoubleHistogramCounter(minMax[0], minMax[1], nBins);
+                break;
+            case Long:
+            case Time:
+                digest = ((LongAnalysisCounter) counters.get(column)).getDigest();
+                hc = new DoubleHistogramCounter(minMax[0], minMax[1], nBins);
+                break;
+            case Double:
+                digest = ((DoubleAnalysisCounter) counters.get(column)).getDigest();
+                hc = new DoubleHistogramCounter(minMax[0], minMax[1], nBins);
+                break;
+            default:
+                //Categorical: exact counts are already in the analysis. Bytes: no histogram
+                return null;
+        }
+        fillFromDigest(digest, hc.getBins(), hc.getCounts());
+        return hc;
+    }
+
+    /**
+     * Approximate the bucket counts from the cumulative distribution of the digest. As with the exact histogram
+     * counters, values equal to the upper limit of the last bucket are counted in the last bucket
+     */
+    private static void fillFromDigest(TDigest digest, double[] bins, long[] counts) {
+        long n = digest.size();
+        int nBins = counts.length;
+        if (n == 0)
+            return;
+        if (bins[0] == bins[nBins]) {
+            counts[nBins - 1] = n;
+            return;
+        }
+        long prev = 0;
+        for (int i = 1; i <= nBins; i++) {
+            long cumulative = i == nBins ? n : Math.round(n * digest.cdf(bins[i]));
+            cumulative = Math.max(prev, Math.min(n, cumulative));
+            counts[i - 1] = cumulative - prev;
+            prev = cumulative;
+        }
+    }
+}
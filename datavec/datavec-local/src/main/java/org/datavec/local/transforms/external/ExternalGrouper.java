@@ -0,0 +1,162 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.local.transforms.external;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.datavec.api.writable.Writable;
+import org.nd4j.common.function.BiConsumer;
+import org.nd4j.common.function.Function;
+import org.nd4j.common.primitives.Pair;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+/**
+ * Group by key and co-group (the basis of joins) for data that may not fit in memory (Grace hash partitioning).<br>
+ * Records are grouped in an in-memory hash map while the estimated size of the records is within the memory budget
+ * of the {@link SpillConfig}. Above the budget, all records are written to {@link SpillConfig#getNumPartitions()}
+ * temporary files by a hash of their key, and each partition is then grouped separately - recursively, with a different
+ * hash, if a partition is still too large. All records for one key are always in the same partition.<br>
+ * Each group is held in memory while it is passed to the consumer; groups are passed in no particular order.
+ */
+@Slf4j
+public class ExternalGrouper {
+    /** Maximum partitioning depth. Beyond this (i.e., a very large number of records with the same key), the
+     * partition is grouped in memory regardless of its size */
+    public static final int MAX_DEPTH = 6;
+
+    private final SpillConfig config;
+
+    public ExternalGrouper(@NonNull SpillConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Group the records by key
+     * @param input    Records to group
+     * @param keyFn    Key of each record. Keys must implement equals and hashCode
+     * @param consumer Consumer for each key and its group of records, in input order
+     */
+    public <K> void group(@NonNull Iterator<List<Writable>> input, @NonNull Function<List<Writable>, K> keyFn,
+                          @NonNull BiConsumer<K, List<List<Writable>>> consumer) {
+        cogroup(input, Collections.<List<Writable>>emptyIterator(), keyFn, keyFn,
+                (k, p) -> consumer.accept(k, p.getFirst()));
+    }
+
+    /**
+     * Co-group the records of two inputs by key
+     * @param left       Left records
+     * @param right      Right records
+     * @param leftKeyFn  Key of each left record
+     * @param rightKeyFn Key of each right record. Left and right keys must be equal for the same key
+     * @param consumer   Consumer for each key, and the left and right records for the key (one of which may be empty)
+     */
+    public <K> void cogroup(@NonNull Iterator<List<Writable>> left, @NonNull Iterator<List<Writable>> right,
+                            @NonNull Function<List<Writable>, K> leftKeyFn, @NonNull Function<List<Writable>, K> rightKeyFn,
+                            @NonNull BiConsumer<K, Pair<List<List<Writable>>, List<List<Writable>>>> consumer) {
+        try {
+            cogroup(left, right, leftKeyFn, rightKeyFn, consumer, 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error during external group by", e);
+        }
+    }
+
+    private <K> void cogroup(Iterator<List<Writable>> left, Iterator<List<Writable>> right,
+                             Function<List<Writable>, K> leftKeyFn, Function<List<Writable>, K> rightKeyFn,
+                             BiConsumer<K, Pair<List<List<Writable>>, List<List<Writable>>>> consumer, int depth) throws IOException {
+        Map<K, Pair<List<List<Writable>>, List<List<Writable>>>> groups = new LinkedHashMap<>();
+        long bytes = 0;
+        boolean spill = false;
+        boolean canSpill = depth < MAX_DEPTH;
+        if (!canSpill) {
+            log.warn("Maximum partitioning depth {} reached during external group by: grouping partition in memory", MAX_DEPTH);
+        }
+
+        //Left first, then right, so that neither side is read twice
+        while (!spill && left.hasNext()) {
+            List<Writable> record = left.next();
+            groupFor(groups, leftKeyFn.apply(record)).getFirst().add(record);
+            bytes += WritableRowCodec.estimateSize(record);
+            spill = canSpill && bytes > config.getMemoryBudgetBytes();
+        }
+        while (!spill && right.hasNext()) {
+            List<Writable> record = right.next();
+            groupFor(groups, rightKeyFn.apply(record)).getSecond().add(record);
+            bytes += WritableRowCodec.estimateSize(record);
+            spill = canSpill && bytes > config.getMemoryBudgetBytes();
+        }
+
+        if (!spill) {
+            for (Map.Entry<K, Pair<List<List<Writable>>, List<List<Writable>>>> e : groups.entrySet()) {
+                consumer.accept(e.getKey(), e.getValue());
+            }
+            return;
+        }
+
+        try (HashPartitions leftParts = new HashPartitions(config.getNumPartitions(), depth, config.tempDirectoryOrDefault());
+             HashPartitions rightParts = new HashPartitions(config.getNumPartitions(), depth, config.tempDirectoryOrDefault())) {
+            for (Map.Entry<K, Pair<List<List<Writable>>, List<List<Writable>>>> e : groups.entrySet()) {
+                for (List<Writable> record : e.getValue().getFirst()) {
+                    leftParts.add(e.getKey(), record);
+                }
+                for (List<Writable> record : e.getValue().getSecond()) {
+                    rightParts.add(e.getKey(), record);
+                }
+            }
+            groups = null;
+            while (left.hasNext()) {
+                List<Writable> record = left.next();
+                leftParts.add(leftKeyFn.apply(record), record);
+            }
+            while (right.hasNext()) {
+                List<Writable> record = right.next();
+                rightParts.add(rightKeyFn.apply(record), record);
+            }
+
+            for (int p = 0; p < leftParts.numPartitions(); p++) {
+                SpillFile l = leftParts.get(p);
+                SpillFile r = rightParts.get(p);
+                if (l == null && r == null)
+                    continue;
+                try (RowIterator li = l == null ? RowIterator.of(Collections.<List<Writable>>emptyIterator()) : l.iterator();
+                     RowIterator ri = r == null ? RowIterator.of(Collections.<List<Writable>>emptyIterator()) : r.iterator()) {
+                    cogroup(li, ri, leftKeyFn, rightKeyFn, consumer, depth + 1);
+                }
+                if (l != null)
+                    l.close();
+                if (r != null)
+                    r.close();
+            }
+        }
+    }
+
+    private static <K> Pair<List<List<Writable>>, List<List<Writable>>> groupFor(
+            Map<K, Pair<List<List<Writable>>, List<List<Writable>>>> groups, K key) {
+        Pair<List<List<Writable>>, List<List<Writable>>> p = groups.get(key);
+        if (p == null) {
+            p = Pair.of(new ArrayList<>(), new ArrayList<>());
+            groups.put(key, p);
+        }
+        return p;
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.local.transforms.external;
+
+import lombok.NonNull;
+import org.datavec.api.writable.Writable;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+/**
+ * Stable external merge sort of records.<br>
+ * Records are buffered in memory up to the memory budget of the {@link SpillConfig}; each full buffer is sorted and
+ * written to a temporary file as a sorted run. The runs are then merged with a k-way merge, in several passes if there
+ * are more than {@link SpillConfig#getMaxMergeFanIn()} runs. If all records fit in memory, they are sorted in memory
+ * and nothing is written to disk.<br>
+ * The sort is stable: records that compare as equal are returned in input order.
+ */
+public class ExternalSorter {
+
+    private final SpillConfig config;
+
+    public ExternalSorter(@NonNull SpillConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Sort the records, and collect them into a list
+     */
+    public List<List<Writable>> sortToList(Iterator<List<Writable>> input, Comparator<List<Writable>> comparator) {
+        List<List<Writable>> out = new ArrayList<>();
+        try (RowIterator iter = sort(input, comparator)) {
+            while (iter.hasNext()) {
+                out.add(iter.next());
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Sort the records
+     * @param input      Records to sort
+     * @param comparator Comparator for the records
+     * @return Iterator over the sorted records. Must be closed to release the temporary files
+     */
+    public RowIterator sort(@NonNull Iterator<List<Writable>> input, @NonNull Comparator<List<Writable>> comparator) {
+        List<SpillFile> runs = new ArrayList<>();
+        List<SpillFile> merged = new ArrayList<>();
+        boolean success = false;
+        try {
+            List<List<Writable>> buffer = new ArrayList<>();
+            long bufferBytes = 0;
+            while (input.hasNext()) {
+                List<Writable> record = input.next();
+                buffer.add(record);
+                bufferBytes += WritableRowCodec.estimateSize(record);
+                if (bufferBytes > config.getMemoryBudgetBytes()) {
+                    runs.add(writeRun(buffer, comparator));
+                    buffer = new ArrayList<>();
+                    bufferBytes = 0;
+                }
+            }
+
+            buffer.sort(comparator);
+            if (runs.isEmpty()) {
+                success = true;
+                return RowIterator.of(buffer.iterator());
+            }
+            if (!buffer.isEmpty()) {
+                runs.add(writeRun(buffer, comparator));
+            }
+
+            int fanIn = Math.max(2, config.getMaxMergeFanIn());
+            while (runs.size() > fanIn) {
+                //Merge consecutive runs, so that equal records from earlier runs stay first
+                for (int i = 0; i < runs.size(); i += fanIn) {
+                    List<SpillFile> group = runs.subList(i, Math.min(runs.size(), i + fanIn));
+                    if (group.size() == 1) {
+                        merged.add(group.get(0));
+                        continue;
+                    }
+                    SpillFile out = new SpillFile(config.tempDirectoryOrDefault());
+                    merged.add(out);
+                    try (RowIterator iter = new MergingIterator(group, comparator)) {
+                        while (iter.hasNext()) {
+                            out.append(iter.next());
+                        }
+                    }
+                }
+                runs = merged;
+                merged = new ArrayList<>();
+            }
+            RowIterator iter = new MergingIterator(runs, comparator);
+            success = true;
+            return iter;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error during external sort", e);
+        } finally {
+            if (!success) {
+                //Also covers exceptions from the input iterator or comparator. Closing a spill file twice is safe
+                for (SpillFile f : runs) {
+                    f.close();
+                }
+                for (SpillFile f : merged) {
+                    f.close();
+                }
+            }
+        }
+    }
+
+    private SpillFile writeRun(List<List<Writable>> buffer, Comparator<List<Writable>> comparator) throws IOException {
+        //List.sort is stable
+        buffer.sort(comparator);
+        SpillFile run = new SpillFile(config.tempDirectoryOrDefault());
+        try {
+            for (List<Writable> record : buffer) {
+                run.append(record);
+            }
+        } catch (IOException | RuntimeException e) {
+            run.close();
+            throw e;
+        }
+        return run;
+    }
+
+    /**
+     * K-way merge of sorted runs. Ties are broken by run index, for a stable sort.
+     * Closing the iterator deletes the runs
+     */
+    private static class MergingIterator implements RowIterator {
+        private final List<SpillFile> runs;
+        private final List<RowIterator> iterators = new ArrayList<>();
+        private final PriorityQueue<Head> queue;
+        private boolean closed;
+
+        private MergingIterator(List<SpillFile> runs, final Comparator<List<Writable>> comparator) throws IOException {
+            this.runs = new ArrayList<>(runs);
+            this.queue = new PriorityQueue<>(Math.max(1, runs.size()), (a, b) -> {
+                int c = comparator.compare(a.record, b.record);
+                return c != 0 ? c : Integer.compare(a.run, b.run);
+            });
+            try {
+                for (int i = 0; i < this.runs.size(); i++) {
+                    RowIterator iter = this.runs.get(i).iterator();
+                    iterators.add(iter);
+                    if (iter.hasNext()) {
+                        queue.add(new Head(iter.next(), i));
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                close();
+                throw e;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!queue.isEmpty())
+                return true;
+            close();
+            return false;
+        }
+
+        @Override
+        public List<Writable> next() {
+            Head h = queue.poll();
+            if (h == null)
+                throw new NoSuchElementException();
+            RowIterator iter = iterators.get(h.run);
+            if (iter.hasNext()) {
+                queue.add(new Head(iter.next(), h.run));
+            }
+            return h.record;
+        }
+
+        @Override
+        public void close() {
+            if (closed)
+                return;
+            closed = true;
+            queue.clear();
+            for (RowIterator iter : iterators) {
+                iter.close();
+            }
+            for (SpillFile f : runs) {
+                f.close();
+            }
+        }
+    }
+
+    private static class Head {
+        private final List<Writable> record;
+        private final int run;
+
+        private Head(List<Writable> record, int run) {
+            this.record = record;
+            this.run = run;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.local.transforms.external;
+
+import org.datavec.api.writable.Writable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A set of spill files, with records assigned to files by a hash of their key. A different hash is used at each
+ * partitioning depth, so that a partition that is still too large can be partitioned again
+ */
+class HashPartitions implements Closeable {
+    private final SpillFile[] files;
+    private final int depth;
+    private final File directory;
+
+    HashPartitions(int numPartitions, int depth, File directory) {
+        this.files = new SpillFile[numPartitions];
+        this.depth = depth;
+        this.directory = directory;
+    }
+
+    static int partition(Object key, int depth, int numPartitions) {
+        //Murmur3 finalizer, seeded by the depth
+        int h = (key == null ? 0 : key.hashCode()) ^ (depth * 0x9E3779B9);
+        h ^= h >>> 16;
+        h *= 0x85EBCA6B;
+        h ^= h >>> 13;
+        h *= 0xC2B2AE35;
+        h ^= h >>> 16;
+        return Math.floorMod(h, numPartitions);
+    }
+
+    void add(Object key, List<Writable> record) throws IOException {
+        int p = partition(key, depth, files.length);
+        if (files[p] == null) {
+            files[p] = new SpillFile(directory);
+        }
+        files[p].append(record);
+    }
+
+    int numPartitions() {
+        return files.length;
+    }
+
+    /**
+     * @return The spill file of the partition, or null if no records were added to it
+     */
+    SpillFile get(int partition) {
+        return files[partition];
+    }
+
+    @Override
+    public void close() {
+        for (SpillFile f : files) {
+            if (f != null)
+                f.close();
+        }
+    }
+}
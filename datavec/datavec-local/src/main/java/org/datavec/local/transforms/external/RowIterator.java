@@ -0,0 +1,59 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.local.transforms.external;
+
+import org.datavec.api.writable.Writable;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * An iterator over records that may be backed by temporary files. {@link #close()} releases (deletes) those files;
+ * it is safe to call more than once
+ */
+public interface RowIterator extends Iterator<List<Writable>>, Closeable {
+
+    @Override
+    void close();
+
+    /**
+     * @return An iterator over the given in-memory records
+     */
+    static RowIterator of(final Iterator<List<Writable>> iterator) {
+        return new RowIterator() {
+            @Override
+            public void close() {
+                //No op
+            }
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public List<Writable> next() {
+                return iterator.next();
+            }
+        };
+    }
+}
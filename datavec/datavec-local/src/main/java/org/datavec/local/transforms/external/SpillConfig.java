@@ -0,0 +1,68 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.local.transforms.external;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.File;
+
+/**
+ * Configuration for the out-of-core (spill to disk) implementations of sort, group by, reduce and join used by
+ * {@link org.datavec.local.transforms.LocalTransformExecutor}.<br>
+ * Records are kept in memory up to {@link #getMemoryBudgetBytes()} (estimated, see
+ * {@link WritableRowCodec#estimateSize(java.util.List)}); above that, they are written to temporary files in
+ * {@link #getTempDirectory()} using a compact binary encoding.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SpillConfig {
+    public static final long DEFAULT_MEMORY_BUDGET_BYTES = 256L * 1024 * 1024;
+    public static final int DEFAULT_NUM_PARTITIONS = 16;
+    public static final int DEFAULT_MAX_MERGE_FAN_IN = 64;
+
+    /** Approximate maximum number of bytes of records held in memory by one operation */
+    @Builder.Default
+    private long memoryBudgetBytes = DEFAULT_MEMORY_BUDGET_BYTES;
+    /** Directory for temporary files. Null: use java.io.tmpdir */
+    private File tempDirectory;
+    /** Number of partitions used by hash based operations (group by, reduce, join) when the data does not fit in memory */
+    @Builder.Default
+    private int numPartitions = DEFAULT_NUM_PARTITIONS;
+    /** Maximum number of sorted runs merged at once by the external sort */
+    @Builder.Default
+    private int maxMergeFanIn = DEFAULT_MAX_MERGE_FAN_IN;
+
+    /**
+     * @param memoryBudgetBytes Approximate maximum number of bytes of records held in memory by one operation
+     */
+    public SpillConfig(long memoryBudgetBytes) {
+        this(memoryBudgetBytes, null, DEFAULT_NUM_PARTITIONS, DEFAULT_MAX_MERGE_FAN_IN);
+    }
+
+    File tempDirectoryOrDefault() {
+        return tempDirectory != null ? tempDirectory : new File(System.getProperty("java.io.tmpdir"));
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.local.transforms.external;
+
+import org.datavec.api.writable.Writable;
+
+import java.io.*;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A temporary file of records, written once with {@link #append(List)} and then read with {@link #iterator()}.
+ * The file is deleted by {@link #close()}, which callers must call on all paths (including failures): spill files are
+ * not registered for deletion on JVM exit
+ */
+public class SpillFile implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File file;
+    private DataOutputStream out;
+    private long numRecords;
+    private long estimatedBytes;
+
+    public SpillFile(File directory) throws IOException {
+        this.file = File.createTempFile("datavec_spill_", ".bin", directory);
+        try {
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        } catch (IOException e) {
+            file.delete();
+            throw e;
+        }
+    }
+
+    /**
+     * Append a record to the file. Records cannot be appended after {@link #iterator()} has been called
+     */
+    public void append(List<Writable> record) throws IOException {
+        if (out == null)
+            throw new IllegalStateException("Cannot append to spill file: file has already been read or closed");
+        WritableRowCodec.write(record, out);
+        numRecords++;
+        estimatedBytes += WritableRowCodec.estimateSize(record);
+    }
+
+    /**
+     * @return Number of records in the file
+     */
+    public long getNumRecords() {
+        return numRecords;
+    }
+
+    /**
+     * @return Estimated heap memory needed to hold all records of this file, in bytes
+     */
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * Finish writing, and return an iterator over the records of the file, in the order they were appended.
+     * Closing the iterator does not delete the file; use {@link #close()}
+     */
+    public RowIterator iterator() throws IOException {
+        finishWriting();
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+        return new RowIterator() {
+            private long read;
+            private boolean closed;
+
+            @Override
+            public boolean hasNext() {
+                if (read < numRecords)
+                    return true;
+                close();
+                return false;
+            }
+
+            @Override
+            public List<Writable> next() {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                try {
+                    read++;
+                    return WritableRowCodec.read(in);
+                } catch (IOException e) {
+                    close();
+                    throw new UncheckedIOException("Error reading spill file " + file.getAbsolutePath(), e);
+                }
+            }
+
+            @Override
+            public void close() {
+                if (closed)
+                    return;
+                closed = true;
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    //Ignore
+                }
+            }
+        };
+    }
+
+    private void finishWriting() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    /**
+     * Delete the file. May be called more than once
+     */
+    @Override
+    public void close() {
+        try {
+            finishWriting();
+        } catch (IOException e) {
+            //Ignore: the file is deleted anyway
+        }
+        file.delete();
+    }
+}
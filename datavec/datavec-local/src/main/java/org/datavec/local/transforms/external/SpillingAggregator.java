@@ -0,0 +1,122 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.local.transforms.external;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.datavec.api.transform.ops.IAggregableReduceOp;
+import org.datavec.api.writable.Writable;
+import org.nd4j.common.function.Function;
+import org.nd4j.common.function.Supplier;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+/**
+ * Hash aggregation (reduce by key) for data that may not fit in memory.<br>
+ * Unlike {@link ExternalGrouper}, records are not kept in memory: each record is passed to the aggregation op for its
+ * key as soon as it is read. The memory budget of the {@link SpillConfig} bounds the number of keys (aggregation states)
+ * held in memory, using the size of the first record of each key as an estimate of the size of its state.
+ * Once the budget is reached, records for keys already in memory are still aggregated in memory; records for new keys
+ * are written to temporary files by a hash of their key, and each of those partitions is aggregated separately
+ * afterwards (recursively, if needed).<br>
+ * Results are returned in no particular order.
+ */
+@Slf4j
+public class SpillingAggregator {
+
+    private final SpillConfig config;
+
+    public SpillingAggregator(@NonNull SpillConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Aggregate the records by key
+     * @param input     Records to aggregate
+     * @param keyFn     Key of each record. Keys must implement equals and hashCode
+     * @param opFactory Creates a new aggregation op, one per key
+     * @return The aggregation result of each key
+     */
+    public <K> List<List<Writable>> aggregate(@NonNull Iterator<List<Writable>> input, @NonNull Function<List<Writable>, K> keyFn,
+                                              @NonNull Supplier<IAggregableReduceOp<List<Writable>, List<Writable>>> opFactory) {
+        List<List<Writable>> out = new ArrayList<>();
+        try {
+            aggregate(input, keyFn, opFactory, out, 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error during external aggregation", e);
+        }
+        return out;
+    }
+
+    private <K> void aggregate(Iterator<List<Writable>> input, Function<List<Writable>, K> keyFn,
+                               Supplier<IAggregableReduceOp<List<Writable>, List<Writable>>> opFactory,
+                               List<List<Writable>> out, int depth) throws IOException {
+        Map<K, IAggregableReduceOp<List<Writable>, List<Writable>>> ops = new HashMap<>();
+        long bytes = 0;
+        boolean canSpill = depth < ExternalGrouper.MAX_DEPTH;
+        if (!canSpill) {
+            log.warn("Maximum partitioning depth {} reached during external aggregation: aggregating partition in memory",
+                    ExternalGrouper.MAX_DEPTH);
+        }
+
+        try (HashPartitions partitions = new HashPartitions(config.getNumPartitions(), depth, config.tempDirectoryOrDefault())) {
+            boolean spilled = false;
+            while (input.hasNext()) {
+                List<Writable> record = input.next();
+                K key = keyFn.apply(record);
+                IAggregableReduceOp<List<Writable>, List<Writable>> op = ops.get(key);
+                if (op == null) {
+                    long size = WritableRowCodec.estimateSize(record);
+                    //Once a key has been spilled, all later new keys are spilled too: all records of a key must be aggregated
+                    //in the same place
+                    if (canSpill && !ops.isEmpty() && (spilled || bytes + size > config.getMemoryBudgetBytes())) {
+                        partitions.add(key, record);
+                        spilled = true;
+                        continue;
+                    }
+                    op = opFactory.get();
+                    ops.put(key, op);
+                    bytes += size;
+                }
+                op.accept(record);
+            }
+
+            for (IAggregableReduceOp<List<Writable>, List<Writable>> op : ops.values()) {
+                out.add(op.get());
+            }
+            ops = null;
+
+            if (spilled) {
+                for (int p = 0; p < partitions.numPartitions(); p++) {
+                    SpillFile f = partitions.get(p);
+                    if (f == null)
+                        continue;
+                    try (RowIterator iter = f.iterator()) {
+                        aggregate(iter, keyFn, opFactory, out, depth + 1);
+                    }
+                    f.close();
+                }
+            }
+        }
+    }
+}
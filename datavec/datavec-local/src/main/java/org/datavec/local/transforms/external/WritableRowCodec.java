@@ -0,0 +1,95 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.local.transforms.external;
+
+import org.datavec.api.writable.*;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary encoding of records for spill files: the number of values, followed by each value with its type key
+ * (see {@link WritableFactory#writeWithType(Writable, DataOutput)})
+ */
+public class WritableRowCodec {
+
+    private WritableRowCodec() {
+    }
+
+    /**
+     * Write a record
+     */
+    public static void write(List<Writable> record, DataOutput out) throws IOException {
+        out.writeInt(record.size());
+        WritableFactory f = WritableFactory.getInstance();
+        for (Writable w : record) {
+            f.writeWithType(w, out);
+        }
+    }
+
+    /**
+     * Read a record
+     * @return The record, or null if the end of the input has been reached
+     */
+    public static List<Writable> read(DataInput in) throws IOException {
+        int size;
+        try {
+            size = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        WritableFactory f = WritableFactory.getInstance();
+        List<Writable> out = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            out.add(f.readWithType(in));
+        }
+        return out;
+    }
+
+    /**
+     * Estimate the heap memory used by a record, in bytes. Used to decide when to spill records to disk
+     */
+    public static long estimateSize(List<Writable> record) {
+        //List object + backing array
+        long size = 40 + 8L * record.size();
+        for (Writable w : record) {
+            size += estimateSize(w);
+        }
+        return size;
+    }
+
+    private static long estimateSize(Writable w) {
+        if (w instanceof Text) {
+            return 56 + ((Text) w).getLength();
+        } else if (w instanceof BytesWritable) {
+            return 48 + ((BytesWritable) w).length();
+        } else if (w instanceof NDArrayWritable) {
+            INDArray arr = ((NDArrayWritable) w).get();
+            return 128 + (arr == null ? 0 : arr.length() * arr.dataType().width());
+        }
+        return 24;
+    }
+}
@@ -36,6 +36,7 @@ import org.threadly.concurrent.PriorityScheduler;
 import org.threadly.concurrent.future.FutureUtils;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
@@ -50,6 +51,7 @@ public class DeepWalk<V, E> extends GraphVectorsImpl<V, E> {
     private boolean initCalled = false;
     private long seed;
     private int nThreads = Runtime.getRuntime().availableProcessors();
+    private int batchSize = 1;
     private transient AtomicLong walkCounter = new AtomicLong(0);
 
     public DeepWalk() {
@@ -64,6 +66,10 @@ public class DeepWalk<V, E> extends GraphVectorsImpl<V, E> {
         return windowSize;
     }
 
+    public int getBatchSize() {
+        return batchSize;
+    }
+
     public double getLearningRate() {
         return learningRate;
     }
@@ -159,6 +165,10 @@ public class DeepWalk<V, E> extends GraphVectorsImpl<V, E> {
         if (!initCalled)
             throw new UnsupportedOperationException("DeepWalk not initialized (call initialize before fit)");
         int walkLength = iterator.walkLength();
+        PairBuffer buffer = batchSize > 1 ? new PairBuffer(batchSize) : null;
+        long start = System.currentTimeMillis();
+        long walks = 0;
+        long pairs = 0;
 
         while (iterator.hasNext()) {
             IVertexSequence<V> sequence = iterator.next();
@@ -169,25 +179,43 @@ public class DeepWalk<V, E> extends GraphVectorsImpl<V, E> {
             while (sequence.hasNext())
                 walk[i++] = sequence.next().vertexID();
 
-            skipGram(walk);
+            pairs += skipGram(walk, buffer);
+            walks++;
 
             long iter = walkCounter.incrementAndGet();
             if (iter % STATUS_UPDATE_FREQUENCY == 0) {
-                log.info("Processed {} random walks on graph", iter);
+                log.info("Processed {} random walks on graph; {}: {} vertex pairs/sec", iter,
+                                Thread.currentThread().getName(), String.format("%.2f", rate(pairs, start)));
             }
         }
+
+        if (buffer != null)
+            buffer.flush();
+
+        log.debug("{}: processed {} random walks, {} vertex pairs; {} vertex pairs/sec", Thread.currentThread().getName(),
+                        walks, pairs, String.format("%.2f", rate(pairs, start)));
     }
 
-    private void skipGram(int[] walk) {
+    private int skipGram(int[] walk, PairBuffer buffer) {
+        int pairs = 0;
         for (int mid = windowSize; mid < walk.length - windowSize; mid++) {
             for (int pos = mid - windowSize; pos <= mid + windowSize; pos++) {
                 if (pos == mid)
                     continue;
 
                 //pair of vertices: walk[mid] -> walk[pos]
-                lookupTable.iterate(walk[mid], walk[pos]);
+                if (buffer != null)
+                    buffer.add(walk[mid], walk[pos]);
+                else
+                    lookupTable.iterate(walk[mid], walk[pos]);
+                pairs++;
             }
         }
+        return pairs;
+    }
+
+    private static double rate(long count, long startMillis) {
+        return count / (Math.max(1, System.currentTimeMillis() - startMillis) / 1000.0);
     }
 
     public GraphVectorLookupTable lookupTable() {
@@ -200,6 +228,7 @@ public class DeepWalk<V, E> extends GraphVectorsImpl<V, E> {
         private long seed = System.currentTimeMillis();
         private double learningRate = 0.01;
         private int windowSize = 2;
+        private int batchSize = 1;
 
         /** Sets the size of the vectors to be learned for each vertex in the graph */
         public Builder<V, E> vectorSize(int vectorSize) {
@@ -219,6 +248,15 @@ public class DeepWalk<V, E> extends GraphVectorsImpl<V, E> {
             return this;
         }
 
+        /** Number of vertex pairs to accumulate (per thread) before updating vectors in a single batched call,
+         * see {@link InMemoryGraphLookupTable#iterate(int[], int[])}. Values of 1 or less update vectors pair by pair.
+         * Batched updates are much faster, but approximate the sigmoid with a lookup table (as in Word2Vec)
+         */
+        public Builder<V, E> batchSize(int batchSize) {
+            this.batchSize = batchSize;
+            return this;
+        }
+
         /** Seed for random number generation (used for repeatability).
          * Note however that parallel/async gradient descent might result in behaviour that
          * is not repeatable, in spite of setting seed
@@ -234,11 +272,44 @@ public class DeepWalk<V, E> extends GraphVectorsImpl<V, E> {
             dw.windowSize = windowSize;
             dw.learningRate = learningRate;
             dw.seed = seed;
+            dw.batchSize = batchSize;
 
             return dw;
         }
     }
 
+    /**
+     * Per-thread buffer of vertex pairs, flushed to the lookup table as a single batch once full
+     */
+    private class PairBuffer {
+        private final int[] first;
+        private final int[] second;
+        private int size;
+
+        private PairBuffer(int capacity) {
+            this.first = new int[capacity];
+            this.second = new int[capacity];
+        }
+
+        private void add(int in, int out) {
+            first[size] = in;
+            second[size] = out;
+            if (++size == first.length)
+                flush();
+        }
+
+        private void flush() {
+            if (size == 0)
+                return;
+
+            if (size == first.length)
+                lookupTable.iterate(first, second);
+            else
+                lookupTable.iterate(Arrays.copyOf(first, size), Arrays.copyOf(second, size));
+            size = 0;
+        }
+    }
+
     @AllArgsConstructor
     private class LearningCallable implements Callable<Void> {
 
@@ -34,6 +34,12 @@ public interface GraphVectorLookupTable {
     /** Conduct learning given a pair of vertices (in and out) */
     void iterate(int first, int second);
 
+    /** Conduct learning given a batch of vertex pairs: first[i] (in) and second[i] (out) */
+    default void iterate(int[] first, int[] second) {
+        for (int i = 0; i < first.length; i++)
+            iterate(first[i], second[i]);
+    }
+
     /** Get the vector for the vertex with index idx */
     public INDArray getVector(int idx);
 
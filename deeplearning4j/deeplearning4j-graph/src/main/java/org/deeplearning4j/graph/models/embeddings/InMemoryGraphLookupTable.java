@@ -22,8 +22,12 @@ package org.deeplearning4j.graph.models.embeddings;
 
 import org.apache.commons.math3.util.FastMath;
 import org.deeplearning4j.graph.models.BinaryTree;
+import org.nd4j.common.base.Preconditions;
 import org.nd4j.linalg.api.blas.Level1;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.nlp.SkipGramRound;
 import org.nd4j.linalg.factory.Nd4j;
 
 public class InMemoryGraphLookupTable implements GraphVectorLookupTable {
@@ -36,6 +40,7 @@ public class InMemoryGraphLookupTable implements GraphVectorLookupTable {
     protected double learningRate;
 
     protected double[] expTable;
+    protected transient volatile INDArray expTableArray;
     protected static double MAX_EXP = 6;
 
     public InMemoryGraphLookupTable(int nVertices, int vectorSize, BinaryTree tree, double learningRate) {
@@ -84,6 +89,92 @@ public class InMemoryGraphLookupTable implements GraphVectorLookupTable {
         }
     }
 
+    /**
+     * Conduct learning for a batch of vertex pairs, in a single native (hierarchical softmax skip-gram) op call.<br>
+     * Vectors are updated in place without any locking (Hogwild style), so this method may be called concurrently
+     * from multiple threads.<br>
+     * Note that the sigmoid is approximated with a lookup table here (as in Word2Vec), so updates differ slightly
+     * from those of {@link #iterate(int, int)}
+     * @param first  first (input) vertex indices
+     * @param second second (output) vertex indices
+     */
+    @Override
+    public void iterate(int[] first, int[] second) {
+        Preconditions.checkArgument(first.length == second.length, "Number of first and second vertices must be equal: got %s and %s",
+                        first.length, second.length);
+        int n = first.length;
+        if (n == 0)
+            return;
+
+        int maxCodeLength = 1;
+        for (int v : second)
+            maxCodeLength = Math.max(maxCodeLength, tree.getCodeLength(v));
+
+        //Codes rows are padded with -1, which are skipped by the op
+        int[][] indices = new int[n][maxCodeLength];
+        int[][] codes = new int[n][maxCodeLength];
+        double[] alphas = new double[n];
+        long[] randomValues = new long[n];
+        for (int i = 0; i < n; i++) {
+            int codeLength = tree.getCodeLength(second[i]);
+            long code = tree.getCode(second[i]);
+            int[] innerNodes = tree.getPathInnerNodes(second[i]);
+            for (int j = 0; j < maxCodeLength; j++) {
+                if (j < codeLength) {
+                    indices[i][j] = innerNodes[j];
+                    //Word2Vec convention: code 0 means target label 1 (i.e., "path" bit set here)
+                    codes[i][j] = getBit(code, j) ? 0 : 1;
+                } else {
+                    codes[i][j] = -1;
+                }
+            }
+            alphas[i] = learningRate;
+        }
+
+        try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+            DataType dataType = vertexVectors.dataType();
+            INDArray targetArray = Nd4j.createFromArray(first);
+            INDArray indicesArray = Nd4j.createFromArray(indices);
+            INDArray codesArray = Nd4j.createFromArray(codes);
+            INDArray alphasArray = Nd4j.createFromArray(alphas);
+            INDArray randomsArray = Nd4j.createFromArray(randomValues);
+
+            SkipGramRound sg = SkipGramRound.builder()
+                            .target(targetArray)
+                            .ngStarter(Nd4j.empty(DataType.INT32))
+                            .syn0(vertexVectors)
+                            .syn1(outWeights)
+                            .syn1Neg(Nd4j.empty(dataType))
+                            .expTable(getExpTableArray(dataType))
+                            .negTable(Nd4j.empty(dataType))
+                            .nsRounds(0)
+                            .indices(indicesArray)
+                            .codes(codesArray)
+                            .alpha(alphasArray)
+                            .randomValue(randomsArray)
+                            .inferenceVector(Nd4j.empty(dataType))
+                            .preciseMode(false)
+                            .numWorkers(1)
+                            .iterations(1)
+                            .build();
+
+            Nd4j.getExecutioner().exec(sg);
+            sg.inputArguments().clear();
+            Nd4j.close(targetArray, indicesArray, codesArray, alphasArray, randomsArray);
+        }
+    }
+
+    protected INDArray getExpTableArray(DataType dataType) {
+        INDArray arr = expTableArray;
+        if (arr == null || arr.dataType() != dataType) {
+            try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+                arr = Nd4j.createFromArray(expTable).castTo(dataType);
+            }
+            expTableArray = arr;
+        }
+        return arr;
+    }
+
     /** Returns vertex vector and vector gradients, plus inner node vectors and inner node gradients<br>
      * Specifically, out[0] are vectors, out[1] are gradients for the corresponding vectors<br>
      * out[0][0] is vector for first vertex; out[0][1] is gradient for this vertex vector<br>
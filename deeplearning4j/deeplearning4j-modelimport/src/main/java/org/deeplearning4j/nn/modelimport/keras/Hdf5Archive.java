@@ -25,7 +25,9 @@ import org.bytedeco.hdf5.*;
 import org.bytedeco.javacpp.BytePointer;
 import org.bytedeco.javacpp.FloatPointer;
 import org.bytedeco.javacpp.Loader;
+import org.bytedeco.javacpp.Pointer;
 import org.deeplearning4j.nn.modelimport.keras.exceptions.UnsupportedKerasConfigurationException;
+import org.nd4j.linalg.api.concurrency.AffinityManager;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.shade.jackson.databind.DeserializationFeature;
@@ -46,7 +48,8 @@ public class Hdf5Archive implements Closeable {
 
     /**
      * HDF5 library is not thread safe - possible to crash if multiple reads etc are performed concurrently
-     * in multiple threads. This object is used for locking read etc activity using synchronized blocks
+     * in multiple threads. This object is used for locking read etc activity using synchronized blocks,
+     * unless the library reports itself as thread safe (see {@link #getLock()})
      */
     public static final Object LOCK_OBJECT = new Object();
 
@@ -59,23 +62,73 @@ public class Hdf5Archive implements Closeable {
         }
     }
 
+    /**
+     * Whether the native HDF5 library was built with thread safety enabled. Only in that case
+     * can independent archives be read from concurrently.
+     */
+    private static final boolean THREAD_SAFE = isLibraryThreadSafe();
+
     private H5File file;
+    private final Object lock;
+    private long maxReadChunkBytes = MAX_BUFFER_SIZE_BYTES;
     private static DataType dataType = new DataType(PredType.NATIVE_FLOAT());
 
     public Hdf5Archive(String archiveFilename) {
-        synchronized (LOCK_OBJECT) {
+        this.lock = THREAD_SAFE ? new Object() : LOCK_OBJECT;
+        synchronized (lock) {
             this.file = new H5File(archiveFilename, H5F_ACC_RDONLY());
         }
     }
 
+    /**
+     * Object used to guard operations on this archive. This is {@link #LOCK_OBJECT} unless the HDF5 library
+     * is thread safe, in which case each archive has its own lock.
+     *
+     * @return lock object for this archive
+     */
+    public Object getLock() {
+        return lock;
+    }
+
+    /**
+     * @return Maximum number of bytes read from a data set in one HDF5 read call
+     * @see #setMaxReadChunkBytes(long)
+     */
+    public long getMaxReadChunkBytes() {
+        return maxReadChunkBytes;
+    }
+
+    /**
+     * Set the maximum number of bytes read from a data set in one HDF5 read call. Larger data sets are read in
+     * slices (hyperslabs) along their first dimension. Default: {@link #MAX_BUFFER_SIZE_BYTES}
+     *
+     * @param maxReadChunkBytes Maximum number of bytes per read. Must be positive
+     */
+    public void setMaxReadChunkBytes(long maxReadChunkBytes) {
+        if (maxReadChunkBytes <= 0)
+            throw new IllegalArgumentException("Maximum read chunk size must be positive, got " + maxReadChunkBytes);
+        this.maxReadChunkBytes = maxReadChunkBytes;
+    }
+
+    private static boolean isLibraryThreadSafe() {
+        try {
+            boolean[] threadSafe = new boolean[1];
+            H5is_library_threadsafe(threadSafe);
+            return threadSafe[0];
+        } catch (Throwable t) {
+            log.warn("Unable to determine whether HDF5 library is thread safe, assuming it is not", t);
+            return false;
+        }
+    }
+
     @Override public void close() {
-        synchronized (Hdf5Archive.LOCK_OBJECT) {
+        synchronized (lock) {
             file.deallocate();
         }
     }
 
     public Group[] openGroups(String... groups) {
-        synchronized (Hdf5Archive.LOCK_OBJECT) {
+        synchronized (lock) {
             try {
                 Group[] groupArray = new Group[groups.length];
                 groupArray[0] = this.file.openGroup(groups[0]);
@@ -91,7 +144,7 @@ public class Hdf5Archive implements Closeable {
     }
 
     public void closeGroups(Group[] groupArray) {
-        synchronized (Hdf5Archive.LOCK_OBJECT) {
+        synchronized (lock) {
             for (int i = groupArray.length - 1; i >= 0; i--) {
                 groupArray[i].deallocate();
             }
@@ -107,7 +160,7 @@ public class Hdf5Archive implements Closeable {
      * @throws UnsupportedKerasConfigurationException Unsupported Keras config
      */
     public INDArray readDataSet(String datasetName, String... groups) throws UnsupportedKerasConfigurationException {
-        synchronized (Hdf5Archive.LOCK_OBJECT) {
+        synchronized (lock) {
             if (groups.length == 0)
                 return readDataSet(this.file, datasetName);
             Group[] groupArray = openGroups(groups);
@@ -127,7 +180,7 @@ public class Hdf5Archive implements Closeable {
      */
     public String readAttributeAsJson(String attributeName, String... groups)
             throws UnsupportedKerasConfigurationException {
-        synchronized (Hdf5Archive.LOCK_OBJECT) {
+        synchronized (lock) {
             if (groups.length == 0) {
                 Attribute a = this.file.openAttribute(attributeName);
                 String s = readAttributeAsJson(a);
@@ -153,7 +206,7 @@ public class Hdf5Archive implements Closeable {
      */
     public String readAttributeAsString(String attributeName, String... groups)
             throws UnsupportedKerasConfigurationException {
-        synchronized (Hdf5Archive.LOCK_OBJECT) {
+        synchronized (lock) {
             if (groups.length == 0) {
                 Attribute a = this.file.openAttribute(attributeName);
                 String s = readAttributeAsString(a);
@@ -177,7 +230,7 @@ public class Hdf5Archive implements Closeable {
      * @return Boolean indicating whether attribute exists in group path.
      */
     public boolean hasAttribute(String attributeName, String... groups) {
-        synchronized (Hdf5Archive.LOCK_OBJECT) {
+        synchronized (lock) {
             if (groups.length == 0)
                 return this.file.attrExists(attributeName);
             Group[] groupArray = openGroups(groups);
@@ -194,7 +247,7 @@ public class Hdf5Archive implements Closeable {
      * @return List of HDF5 data set names
      */
     public List<String> getDataSets(String... groups) {
-        synchronized (Hdf5Archive.LOCK_OBJECT) {
+        synchronized (lock) {
             if (groups.length == 0)
                 return getObjects(this.file, H5O_TYPE_DATASET);
             Group[] groupArray = openGroups(groups);
@@ -211,7 +264,7 @@ public class Hdf5Archive implements Closeable {
      * @return List of HDF5 groups
      */
     public List<String> getGroups(String... groups) {
-        synchronized (Hdf5Archive.LOCK_OBJECT) {
+        synchronized (lock) {
             if (groups.length == 0)
                 return getObjects(this.file, H5O_TYPE_GROUP);
             Group[] groupArray = openGroups(groups);
@@ -231,82 +284,50 @@ public class Hdf5Archive implements Closeable {
      */
     private INDArray readDataSet(Group fileGroup, String datasetName)
             throws UnsupportedKerasConfigurationException {
-        synchronized (Hdf5Archive.LOCK_OBJECT) {
+        synchronized (lock) {
             DataSet dataset = fileGroup.openDataSet(datasetName);
             DataSpace space = dataset.getSpace();
             int nbDims = space.getSimpleExtentNdims();
+            if (nbDims < 1 || nbDims > 5) {
+                space.deallocate();
+                dataset.deallocate();
+                throw new UnsupportedKerasConfigurationException("Cannot import weights with rank " + nbDims);
+            }
             long[] dims = new long[nbDims];
             space.getSimpleExtentDims(dims);
-            float[] dataBuffer;
-            FloatPointer fp;
-            int j;
-            INDArray data;
-            switch (nbDims) {
-                case 5: /* 3D Convolution weights */
-                    dataBuffer = new float[(int) (dims[0] * dims[1] * dims[2] * dims[3] * dims[4])];
-                    fp = new FloatPointer(dataBuffer);
-                    dataset.read(fp, dataType);
-                    fp.get(dataBuffer);
-                    data = Nd4j.create((int) dims[0], (int) dims[1], (int) dims[2], (int) dims[3], (int) dims[4]);
-                    j = 0;
-                    for (int i1 = 0; i1 < dims[0]; i1++)
-                        for (int i2 = 0; i2 < dims[1]; i2++)
-                            for (int i3 = 0; i3 < dims[2]; i3++)
-                                for (int i4 = 0; i4 < dims[3]; i4++)
-                                    for (int i5 = 0; i5 < dims[4]; i5++)
-                                        data.putScalar(new int[] { i1, i2, i3, i4, i5 }, dataBuffer[j++]);
-                    break;
-                case 4: /* 2D Convolution weights */
-                    dataBuffer = new float[(int) (dims[0] * dims[1] * dims[2] * dims[3])];
-                    fp = new FloatPointer(dataBuffer);
-                    dataset.read(fp, dataType);
-                    fp.get(dataBuffer);
-                    data = Nd4j.create((int) dims[0], (int) dims[1], (int) dims[2], (int) dims[3]);
-                    j = 0;
-                    for (int i1 = 0; i1 < dims[0]; i1++)
-                        for (int i2 = 0; i2 < dims[1]; i2++)
-                            for (int i3 = 0; i3 < dims[2]; i3++)
-                                for (int i4 = 0; i4 < dims[3]; i4++)
-                                    data.putScalar(i1, i2, i3, i4, dataBuffer[j++]);
-                    break;
-                case 3:
-                    dataBuffer = new float[(int) (dims[0] * dims[1] * dims[2])];
-                    fp = new FloatPointer(dataBuffer);
-                    dataset.read(fp, dataType);
-                    fp.get(dataBuffer);
-                    data = Nd4j.create((int) dims[0], (int) dims[1], (int) dims[2]);
-                    j = 0;
-                    for (int i1 = 0; i1 < dims[0]; i1++)
-                        for (int i2 = 0; i2 < dims[1]; i2++)
-                            for (int i3 = 0; i3 < dims[2]; i3++)
-                                data.putScalar(i1, i2, i3, dataBuffer[j++]);
-                    break;
-                case 2: /* Dense and Recurrent weights */
-                    dataBuffer = new float[(int) (dims[0] * dims[1])];
-                    fp = new FloatPointer(dataBuffer);
-                    dataset.read(fp, dataType);
-                    fp.get(dataBuffer);
-                    data = Nd4j.create((int) dims[0], (int) dims[1]);
-                    j = 0;
-                    for (int i1 = 0; i1 < dims[0]; i1++)
-                        for (int i2 = 0; i2 < dims[1]; i2++)
-                            data.putScalar(i1, i2, dataBuffer[j++]);
-                    break;
-                case 1: /* Bias */
-                    dataBuffer = new float[(int) dims[0]];
-                    fp = new FloatPointer(dataBuffer);
-                    dataset.read(fp, dataType);
-                    fp.get(dataBuffer);
-                    data = Nd4j.create((int) dims[0]);
-                    j = 0;
-                    for (int i1 = 0; i1 < dims[0]; i1++)
-                        data.putScalar(i1, dataBuffer[j++]);
-                    break;
-                default:
-                    throw new UnsupportedKerasConfigurationException("Cannot import weights with rank " + nbDims);
+
+            /* Read straight into the (c order) buffer of the result, in slices along the first dimension */
+            INDArray data = Nd4j.createUninitialized(org.nd4j.linalg.api.buffer.DataType.FLOAT, dims, 'c');
+            long rowLength = 1;
+            for (int i = 1; i < nbDims; i++)
+                rowLength *= dims[i];
+            long rowsPerChunk = Math.max(1, maxReadChunkBytes / (4 * Math.max(1, rowLength)));
+            FloatPointer target = new FloatPointer(data.data().addressPointer());
+            try {
+                if (rowsPerChunk >= dims[0]) {
+                    dataset.read(target, dataType);
+                } else {
+                    long[] start = new long[nbDims];
+                    long[] count = dims.clone();
+                    for (long row = 0; row < dims[0]; row += rowsPerChunk) {
+                        start[0] = row;
+                        count[0] = Math.min(rowsPerChunk, dims[0] - row);
+                        space.selectHyperslab(H5S_SELECT_SET, count, start);
+                        DataSpace memSpace = new DataSpace(nbDims, count);
+                        //JavaCPP applies the position of a void* argument as a byte offset, whatever the pointer type
+                        Pointer chunk = new Pointer(target).position(row * rowLength * 4);
+                        dataset.read(chunk, dataType, memSpace, space, DSetMemXferPropList.DEFAULT());
+                        memSpace.deallocate();
+                    }
+                }
+            } finally {
+                space.deallocate();
+                dataset.deallocate();
             }
-            space.deallocate();
-            dataset.deallocate();
+            Nd4j.getAffinityManager().tagLocation(data, AffinityManager.Location.HOST);
+
+            if (Nd4j.defaultFloatingPointType() != org.nd4j.linalg.api.buffer.DataType.FLOAT)
+                return data.castTo(Nd4j.defaultFloatingPointType());
             return data;
         }
     }
@@ -319,7 +340,7 @@ public class Hdf5Archive implements Closeable {
      * @return List of HDF5 group objects
      */
     private List<String> getObjects(Group fileGroup, int objType) {
-        synchronized (Hdf5Archive.LOCK_OBJECT) {
+        synchronized (lock) {
             List<String> groups = new ArrayList<>();
             for (int i = 0; i < fileGroup.getNumObjs(); i++) {
                 BytePointer objPtr = fileGroup.getObjnameByIdx(i);
@@ -338,7 +359,7 @@ public class Hdf5Archive implements Closeable {
      * @throws UnsupportedKerasConfigurationException Unsupported Keras config
      */
     private String readAttributeAsJson(Attribute attribute) throws UnsupportedKerasConfigurationException {
-        synchronized (Hdf5Archive.LOCK_OBJECT) {
+        synchronized (lock) {
             VarLenType vl = attribute.getVarLenType();
             int currBufferLength = 2048;
             String s;
@@ -384,7 +405,7 @@ public class Hdf5Archive implements Closeable {
      * @throws UnsupportedKerasConfigurationException Unsupported Keras config
      */
     private String readAttributeAsString(Attribute attribute) throws UnsupportedKerasConfigurationException {
-        synchronized (Hdf5Archive.LOCK_OBJECT) {
+        synchronized (lock) {
             VarLenType vl = attribute.getVarLenType();
             int bufferSizeMult = 1;
             String s = null;
@@ -427,7 +448,7 @@ public class Hdf5Archive implements Closeable {
      */
     public String readAttributeAsFixedLengthString(String attributeName, int bufferSize)
             throws UnsupportedKerasConfigurationException {
-        synchronized (Hdf5Archive.LOCK_OBJECT) {
+        synchronized (lock) {
             Attribute a = this.file.openAttribute(attributeName);
             String s = readAttributeAsFixedLengthString(a, bufferSize);
             a.deallocate();
@@ -444,7 +465,7 @@ public class Hdf5Archive implements Closeable {
      */
     private String readAttributeAsFixedLengthString(Attribute attribute, int bufferSize)
             throws UnsupportedKerasConfigurationException {
-        synchronized (Hdf5Archive.LOCK_OBJECT) {
+        synchronized (lock) {
             VarLenType vl = attribute.getVarLenType();
             byte[] attrBuffer = new byte[bufferSize];
             BytePointer attrPointer = new BytePointer(attrBuffer);
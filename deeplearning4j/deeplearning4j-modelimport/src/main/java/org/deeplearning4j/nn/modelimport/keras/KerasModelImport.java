@@ -22,18 +22,36 @@ package org.deeplearning4j.nn.modelimport.keras;
 
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
 import org.deeplearning4j.common.util.ND4JFileUtils;
 import org.deeplearning4j.nn.modelimport.keras.exceptions.InvalidKerasConfigurationException;
 import org.deeplearning4j.nn.modelimport.keras.exceptions.UnsupportedKerasConfigurationException;
 import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.api.Model;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.util.ModelSerializer;
+import org.nd4j.versioncheck.VersionCheck;
+import org.nd4j.versioncheck.VersionInfo;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 
 @Slf4j
 public class KerasModelImport {
+
+    /**
+     * Version of the converted model cache format. Increment when a change to the import would make previously
+     * cached models invalid, in addition to the importer version that is already part of the cache key
+     */
+    private static final int CACHE_FORMAT_VERSION = 1;
+    private static volatile String importerVersion;
     /**
      * Load Keras (Functional API) Model saved using model.save_model(...).
      *
@@ -219,6 +237,59 @@ public class KerasModelImport {
         return kerasModel.getMultiLayerNetwork();
     }
 
+    /**
+     * Load Keras (Functional API) Model saved using model.save_model(...), caching the converted model in
+     * DL4J's native format. Cache entries are keyed by the SHA-256 hash of the archive and the version of the
+     * importer, so importing the same file again with the same DL4J version restores the converted model directly
+     * instead of re-reading the HDF5 archive, while an upgraded importer converts the model again.
+     *
+     * @param modelHdf5Filename     path to HDF5 archive storing Keras Model
+     * @param enforceTrainingConfig whether to enforce training configuration options
+     * @param cacheDirectory        directory in which converted models are stored
+     * @return ComputationGraph
+     * @throws IOException                            IO exception
+     * @throws InvalidKerasConfigurationException     Invalid Keras config
+     * @throws UnsupportedKerasConfigurationException Unsupported Keras config
+     * @see ComputationGraph
+     */
+    public static ComputationGraph importKerasModelAndWeights(String modelHdf5Filename, boolean enforceTrainingConfig,
+                                                              File cacheDirectory)
+            throws IOException, UnsupportedKerasConfigurationException, InvalidKerasConfigurationException {
+        File cached = cacheFile(cacheDirectory, modelHdf5Filename, enforceTrainingConfig, "cg");
+        if (cached.isFile()) {
+            log.debug("Restoring imported Keras model from cache: {}", cached);
+            return ModelSerializer.restoreComputationGraph(cached, true);
+        }
+        ComputationGraph model = importKerasModelAndWeights(modelHdf5Filename, enforceTrainingConfig);
+        writeToCache(model, cached);
+        return model;
+    }
+
+    /**
+     * Load Keras Sequential model saved using model.save_model(...), caching the converted model in
+     * DL4J's native format. See {@link #importKerasModelAndWeights(String, boolean, File)}.
+     *
+     * @param modelHdf5Filename     path to HDF5 archive storing Keras Sequential model
+     * @param enforceTrainingConfig whether to enforce training configuration options
+     * @param cacheDirectory        directory in which converted models are stored
+     * @return MultiLayerNetwork
+     * @throws IOException IO exception
+     * @see MultiLayerNetwork
+     */
+    public static MultiLayerNetwork importKerasSequentialModelAndWeights(String modelHdf5Filename,
+                                                                         boolean enforceTrainingConfig,
+                                                                         File cacheDirectory)
+            throws IOException, InvalidKerasConfigurationException, UnsupportedKerasConfigurationException {
+        File cached = cacheFile(cacheDirectory, modelHdf5Filename, enforceTrainingConfig, "mln");
+        if (cached.isFile()) {
+            log.debug("Restoring imported Keras model from cache: {}", cached);
+            return ModelSerializer.restoreMultiLayerNetwork(cached, true);
+        }
+        MultiLayerNetwork model = importKerasSequentialModelAndWeights(modelHdf5Filename, enforceTrainingConfig);
+        writeToCache(model, cached);
+        return model;
+    }
+
     /**
      * Load Keras (Functional API) Model for which the configuration and weights were
      * saved separately using calls to model.to_json() and model.save_weights(...).
@@ -365,6 +436,58 @@ public class KerasModelImport {
         return kerasModel.getMultiLayerConfiguration();
     }
 
+    private static File cacheFile(File cacheDirectory, String modelHdf5Filename, boolean enforceTrainingConfig,
+                                  String type) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+        digest.update((CACHE_FORMAT_VERSION + "_" + importerVersion() + "_").getBytes(StandardCharsets.UTF_8));
+        try (InputStream is = new DigestInputStream(new BufferedInputStream(new FileInputStream(modelHdf5Filename)), digest)) {
+            IOUtils.copy(is, NullOutputStream.NULL_OUTPUT_STREAM);
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest())
+            sb.append(String.format("%02x", b));
+        return new File(cacheDirectory, sb + "_" + type + (enforceTrainingConfig ? "_enforced" : "") + ".zip");
+    }
+
+    /**
+     * Version of the Keras importer: build version and commit of deeplearning4j-modelimport if available from its git
+     * properties file, otherwise the jar manifest version
+     */
+    private static String importerVersion() {
+        if (importerVersion == null) {
+            String version = null;
+            for (VersionInfo v : VersionCheck.getVersionInfos()) {
+                if ("org.deeplearning4j".equals(v.getGroupId()) && "deeplearning4j-modelimport".equals(v.getArtifactId())) {
+                    version = v.getBuildVersion() + "_" + v.getCommitId();
+                    break;
+                }
+            }
+            if (version == null)
+                version = KerasModelImport.class.getPackage().getImplementationVersion();
+            importerVersion = version == null ? "unknown" : version;
+        }
+        return importerVersion;
+    }
+
+    private static void writeToCache(Model model, File cached) throws IOException {
+        File dir = cached.getAbsoluteFile().getParentFile();
+        if (!dir.exists() && !dir.mkdirs() && !dir.isDirectory())
+            throw new IOException("Could not create cache directory " + dir);
+        //Write to a temporary file first, so that concurrent imports never observe a partially written entry
+        File tmp = File.createTempFile(cached.getName(), ".tmp", dir);
+        try {
+            ModelSerializer.writeModel(model, tmp, true);
+            Files.move(tmp.toPath(), cached.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp.toPath());
+        }
+    }
+
     private static File toTempFile(InputStream is) throws IOException {
         File f = ND4JFileUtils.createTempFile("DL4JKerasModelImport",".bin");
         f.deleteOnExit();
@@ -226,9 +226,9 @@ public class KerasModelBuilder implements Cloneable, Closeable {
     public KerasModelBuilder modelHdf5Filename(String modelHdf5Filename)
             throws UnsupportedKerasConfigurationException, InvalidKerasConfigurationException, IOException {
         checkForExistence(modelHdf5Filename);
-        synchronized (Hdf5Archive.LOCK_OBJECT) {
+        this.weightsArchive = this.trainingArchive = new Hdf5Archive(modelHdf5Filename);
+        synchronized (this.weightsArchive.getLock()) {
             try {
-                this.weightsArchive = this.trainingArchive = new Hdf5Archive(modelHdf5Filename);
                 this.weightsRoot = config.getTrainingWeightsRoot();
                 if (!this.weightsArchive.hasAttribute(config.getTrainingModelConfigAttribute()))
                     throw new InvalidKerasConfigurationException(
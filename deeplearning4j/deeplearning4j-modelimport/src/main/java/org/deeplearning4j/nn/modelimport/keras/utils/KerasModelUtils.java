@@ -213,7 +213,7 @@ public class KerasModelUtils {
             if (layerName.contains("/"))
                 includesSlash = true;
         }
-        synchronized (KerasModelUtils.class) {
+        synchronized (weightsArchive.getLock()) {
             List<String> layerGroups;
             if (!includesSlash) {
                 layerGroups = weightsRoot != null ? weightsArchive.getGroups(weightsRoot) : weightsArchive.getGroups();
@@ -224,7 +224,7 @@ public class KerasModelUtils {
             for (String layerName : layerGroups) {
                 if(layerName.equals(KerasModelConfiguration.topLevelModelWeights)) {
                     //new way of saving parameter weights
-                    synchronized(Hdf5Archive.LOCK_OBJECT) {
+                    synchronized (weightsArchive.getLock()) {
                         Group[] rootGroup = weightsArchive.openGroups(weightsRoot + "/" + layerName);
                         if(rootGroup[0].getNumObjs() < 1)
                             weightsArchive.closeGroups(rootGroup);
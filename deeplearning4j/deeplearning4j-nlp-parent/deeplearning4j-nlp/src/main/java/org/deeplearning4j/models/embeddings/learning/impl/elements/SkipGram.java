@@ -365,6 +365,10 @@ public class SkipGram<T extends SequenceElement> implements ElementsLearningAlgo
                             || w1.getIndex() == lastWord.getIndex() || w1.getLabel().equals("STOP")
                             || lastWord.getLabel().equals("STOP") || w1.getLabel().equals("UNK")
                             || lastWord.getLabel().equals("UNK")) {
+                        // arrays may be reused from a previous batch: zero learning rate makes this row a no-op
+                        targets[cnt] = 0;
+                        ngStarters[cnt] = 0;
+                        alphas[cnt] = 0.0;
                         continue;
                     }
 
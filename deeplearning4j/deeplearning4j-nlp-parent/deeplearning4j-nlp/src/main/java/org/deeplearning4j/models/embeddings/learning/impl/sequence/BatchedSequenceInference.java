@@ -0,0 +1,448 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.deeplearning4j.models.embeddings.learning.impl.sequence;
+
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import lombok.Getter;
+import lombok.NonNull;
+import org.deeplearning4j.models.embeddings.WeightLookupTable;
+import org.deeplearning4j.models.embeddings.inmemory.InMemoryLookupTable;
+import org.deeplearning4j.models.embeddings.learning.SequenceLearningAlgorithm;
+import org.deeplearning4j.models.embeddings.loader.VectorsConfiguration;
+import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.scatter.ScatterAdd;
+import org.nd4j.linalg.api.ops.impl.transforms.segment.UnsortedSegmentSum;
+import org.nd4j.linalg.exception.ND4JIllegalStateException;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Vectorized inference of sequence vectors for many sequences at once, for models trained with PV-DM or PV-DBOW.<br>
+ * Instead of running a separate small training loop per sequence, the inference vectors of a whole batch of sequences
+ * are stacked into a single matrix, and each update step is applied to all of them at once: hidden layer rows,
+ * output weights and updates are gathered with {@link Nd4j#pullRows(INDArray, int, int[])} and accumulated back
+ * into the inference matrix with a single scatter-add, so the number of native calls per iteration does not depend
+ * on the number of sequences in the batch.<br>
+ * Model weights (syn0, syn1, syn1Neg) are only read, never updated.<br>
+ * <br>
+ * Updates are applied position by position, the same way per-sequence inference applies them element by element: at
+ * step t of an iteration, element t of every (long enough) sequence is used to compute an update of its sequence
+ * vector, and the updates are applied before step t + 1. Every sequence vector thus receives one update per element,
+ * as in sequential inference, and the number of native calls per iteration depends on the length of the longest
+ * sequence in the batch, not on the number of sequences. The learning rate decays linearly from learningRate to
+ * minLearningRate over the iterations. Subsampling is not applied, and PV-DM uses the full context window. The
+ * initial vector of each sequence is derived from the configured seed and the sequence contents, so a sequence is
+ * inferred to the same vector regardless of the batch it is part of (up to floating point accumulation order).
+ *
+ * @param <T> Sequence element type
+ */
+public class BatchedSequenceInference<T extends SequenceElement> {
+
+    /**
+     * Default upper bound on the number of gathered rows (output weight rows and PV-DM context rows) per batch.
+     * Larger inputs are split into several batches; a single sequence is never split
+     */
+    public static final int DEFAULT_MAX_ROWS = 1 << 16;
+
+    protected final InMemoryLookupTable<T> lookupTable;
+    protected final VectorsConfiguration configuration;
+    @Getter
+    protected final boolean distributedMemory;
+    @Getter
+    protected final int maxRows;
+
+    protected final int layerSize;
+    protected final int window;
+    protected final int negative;
+    protected final boolean useHS;
+    protected final DataType dataType;
+
+    protected volatile int[] negativeTable;
+
+    /**
+     * @param lookupTable       Lookup table of the trained model
+     * @param configuration     Configuration of the trained model
+     * @param distributedMemory If true, infer as PV-DM; otherwise as PV-DBOW
+     */
+    public BatchedSequenceInference(@NonNull WeightLookupTable<T> lookupTable,
+                                    @NonNull VectorsConfiguration configuration, boolean distributedMemory) {
+        this(lookupTable, configuration, distributedMemory, DEFAULT_MAX_ROWS);
+    }
+
+    /**
+     * @param lookupTable       Lookup table of the trained model
+     * @param configuration     Configuration of the trained model
+     * @param distributedMemory If true, infer as PV-DM; otherwise as PV-DBOW
+     * @param maxRows           Upper bound on the number of gathered rows per batch; bounds temporary memory use
+     */
+    public BatchedSequenceInference(@NonNull WeightLookupTable<T> lookupTable,
+                                    @NonNull VectorsConfiguration configuration, boolean distributedMemory,
+                                    int maxRows) {
+        Preconditions.checkArgument(maxRows > 0, "Maximum number of rows must be positive, got %s", maxRows);
+        if (!(lookupTable instanceof InMemoryLookupTable))
+            throw new ND4JIllegalStateException("Batched inference requires InMemoryLookupTable, got "
+                    + lookupTable.getClass().getSimpleName());
+
+        this.lookupTable = (InMemoryLookupTable<T>) lookupTable;
+        this.configuration = configuration;
+        this.distributedMemory = distributedMemory;
+        this.maxRows = maxRows;
+
+        this.layerSize = lookupTable.layerSize();
+        this.window = configuration.getWindow();
+        this.useHS = configuration.isUseHierarchicSoftmax() && this.lookupTable.getSyn1() != null;
+        this.negative = configuration.getNegative() > 0 && this.lookupTable.getSyn1Neg() != null
+                && this.lookupTable.getTable() != null ? (int) configuration.getNegative() : 0;
+        this.dataType = this.lookupTable.getSyn0().dataType();
+
+        if (!useHS && negative == 0)
+            throw new ND4JIllegalStateException("Model has neither hierarchic softmax nor negative sampling weights available");
+    }
+
+    /**
+     * Create batched inference matching the given learning algorithm: PV-DBOW for {@link DBOW}, PV-DM otherwise
+     */
+    public static <T extends SequenceElement> BatchedSequenceInference<T> forAlgorithm(SequenceLearningAlgorithm<T> algorithm,
+                                                                                       @NonNull WeightLookupTable<T> lookupTable,
+                                                                                       @NonNull VectorsConfiguration configuration) {
+        return new BatchedSequenceInference<>(lookupTable, configuration, !(algorithm instanceof DBOW));
+    }
+
+    /**
+     * Infer vectors for the given sequences
+     *
+     * @param sequences       Sequences of elements present in the vocabulary. Must not be empty
+     * @param learningRate    Initial learning rate
+     * @param minLearningRate Final learning rate
+     * @param iterations      Number of update steps
+     * @return Detached matrix of shape [sequences.size(), layerSize], row i being the vector of sequence i
+     */
+    public INDArray infer(@NonNull List<? extends List<T>> sequences, double learningRate, double minLearningRate,
+                          int iterations) {
+        Preconditions.checkArgument(iterations > 0, "Number of iterations must be positive, got %s", iterations);
+        for (int i = 0; i < sequences.size(); i++) {
+            if (sequences.get(i) == null || sequences.get(i).isEmpty())
+                throw new ND4JIllegalStateException("Impossible to apply inference to empty sequence #" + i);
+        }
+
+        try (MemoryWorkspace ws = Nd4j.getMemoryManager().scopeOutOfWorkspaces()) {
+            INDArray result = Nd4j.createUninitializedDetached(dataType, sequences.size(), layerSize);
+
+            int start = 0;
+            while (start < sequences.size()) {
+                long rows = rowsFor(sequences.get(start));
+                int end = start + 1;
+                while (end < sequences.size() && rows + rowsFor(sequences.get(end)) <= maxRows) {
+                    rows += rowsFor(sequences.get(end));
+                    end++;
+                }
+
+                INDArray vectors = inferBatch(sequences.subList(start, end), learningRate, minLearningRate, iterations);
+                result.get(NDArrayIndex.interval(start, end), NDArrayIndex.all()).assign(vectors);
+                start = end;
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * Number of rows gathered per update step for the given sequence
+     */
+    protected long rowsFor(List<T> sequence) {
+        long rows = 0;
+        for (T element : sequence) {
+            if (useHS)
+                rows += element.getCodeLength();
+            if (negative > 0)
+                rows += negative + 1;
+        }
+        if (distributedMemory)
+            rows += (long) sequence.size() * Math.min(2 * window, sequence.size() - 1);
+        return rows;
+    }
+
+    protected INDArray inferBatch(List<? extends List<T>> sequences, double learningRate, double minLearningRate,
+                                  int iterations) {
+        int numSequences = sequences.size();
+
+        // initial vectors, seeded by sequence contents, the same way per-sequence inference is seeded
+        float[] initial = new float[numSequences * layerSize];
+        long[] randomState = new long[numSequences];
+        for (int d = 0; d < numSequences; d++) {
+            long seed = configuration.getSeed() * sequenceHash(sequences.get(d));
+            Random random = new Random(seed);
+            for (int j = 0; j < layerSize; j++)
+                initial[d * layerSize + j] = (random.nextFloat() - 0.5f) / layerSize;
+            randomState[d] = Math.abs(seed);
+        }
+        INDArray vectors = Nd4j.create(initial, new long[] {numSequences, layerSize}).castTo(dataType);
+
+        int maxLength = 0;
+        for (List<T> sequence : sequences)
+            maxLength = Math.max(maxLength, sequence.size());
+        List<Step> steps = new ArrayList<>(maxLength);
+        for (int t = 0; t < maxLength; t++)
+            steps.add(new Step(sequences, t));
+
+        for (int it = 0; it < iterations; it++) {
+            double alpha = Math.max(minLearningRate,
+                    learningRate - (learningRate - minLearningRate) * it / (double) iterations);
+
+            for (Step step : steps) {
+                INDArray hidden = null;
+                if (distributedMemory)
+                    hidden = Nd4j.pullRows(vectors, 1, step.sequences).addi(step.contextSum).muliColumnVector(step.scale);
+
+                if (step.ns != null)
+                    sampleNegatives(step.ns, step.centers, step.sequences, randomState);
+
+                // hierarchic softmax and negative sampling updates are computed against the same vectors, then applied
+                INDArray hsUpdates = step.hs == null ? null : gradients(step.hs, vectors, hidden, alpha);
+                INDArray nsUpdates = step.ns == null ? null : gradients(step.ns, vectors, hidden, alpha);
+
+                if (hsUpdates != null)
+                    scatterAdd(vectors, step.hs.rowSequence, hsUpdates);
+                if (nsUpdates != null)
+                    scatterAdd(vectors, step.ns.rowSequence, nsUpdates);
+            }
+        }
+
+        return vectors;
+    }
+
+    /**
+     * Computes the updates of the inference vectors for all rows of the given output block
+     */
+    protected INDArray gradients(OutputBlock block, INDArray vectors, INDArray hidden, double alpha) {
+        INDArray in = distributedMemory ? Nd4j.pullRows(hidden, 1, block.rowSample)
+                : Nd4j.pullRows(vectors, 1, block.rowSequence);
+        INDArray weights = Nd4j.pullRows(block.weights, 1, block.rows);
+
+        INDArray g = in.muli(weights).sum(1);
+        Transforms.sigmoid(g, false);
+        g.rsubi(block.labels);
+        if (block.mask != null)
+            g.muli(Nd4j.createFromArray(block.mask).castTo(dataType));
+        g.muli(alpha);
+
+        return weights.muliColumnVector(g.reshape(g.length(), 1));
+    }
+
+    protected void sampleNegatives(OutputBlock block, List<T> centers, int[] sampleSequences, long[] randomState) {
+        int[] table = getNegativeTable();
+        long vocabSize = lookupTable.getSyn1Neg().rows();
+        for (int s = 0; s < centers.size(); s++) {
+            int word = centers.get(s).getIndex();
+            int offset = s * (negative + 1);
+            block.rows[offset] = word;
+            block.mask[offset] = 1.0f;
+
+            int d = sampleSequences[s];
+            for (int n = 1; n <= negative; n++) {
+                randomState[d] = Math.abs(randomState[d] * 25214903917L + 11);
+                int target = table[(int) Math.abs((randomState[d] >> 16) % table.length)];
+                if (target <= 0)
+                    target = (int) (randomState[d] % Math.max(1, vocabSize - 1)) + 1;
+
+                block.rows[offset + n] = target;
+                block.mask[offset + n] = target == word ? 0.0f : 1.0f;
+            }
+        }
+    }
+
+    protected int[] getNegativeTable() {
+        if (negativeTable == null) {
+            synchronized (this) {
+                if (negativeTable == null)
+                    negativeTable = lookupTable.getTable().toIntVector();
+            }
+        }
+        return negativeTable;
+    }
+
+    /**
+     * target[indices[i]] += updates[i], for all i. scatter_add splits the indices between threads without locking, so
+     * updates of rows that occur more than once (the same row in several samples of a step) are summed first, and the
+     * sums are scattered with unique indices: otherwise, concurrent updates of the same row could be lost
+     */
+    protected static void scatterAdd(INDArray target, int[] indices, INDArray updates) {
+        Int2IntOpenHashMap segmentOf = new Int2IntOpenHashMap(indices.length);
+        segmentOf.defaultReturnValue(-1);
+        IntArrayList unique = new IntArrayList(indices.length);
+        int[] segmentIds = new int[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            int segment = segmentOf.get(indices[i]);
+            if (segment < 0) {
+                segment = unique.size();
+                segmentOf.put(indices[i], segment);
+                unique.add(indices[i]);
+            }
+            segmentIds[i] = segment;
+        }
+
+        if (unique.size() < indices.length) {
+            updates = Nd4j.exec(new UnsortedSegmentSum(updates, Nd4j.createFromArray(segmentIds), unique.size()))[0];
+            indices = unique.toIntArray();
+        }
+        ScatterAdd op = new ScatterAdd(target, Nd4j.createFromArray(indices), updates);
+        op.addOutputArgument(target);
+        Nd4j.exec(op);
+    }
+
+    protected static <T extends SequenceElement> int sequenceHash(List<T> sequence) {
+        int hash = 1;
+        for (T element : sequence)
+            hash = 31 * hash + element.getIndex();
+        return hash;
+    }
+
+    /**
+     * Samples of one update step: element t of every sequence with more than t elements. PV-DBOW predicts each element
+     * from the sequence vector, PV-DM predicts each element from the mean of the sequence vector and the context window
+     */
+    protected class Step {
+        protected final int[] sequences;
+        protected final List<T> centers = new ArrayList<>();
+        protected final INDArray contextSum;
+        protected final INDArray scale;
+        protected final OutputBlock hs;
+        protected final OutputBlock ns;
+
+        protected Step(List<? extends List<T>> batch, int t) {
+            IntArrayList sequenceIndices = new IntArrayList();
+            IntArrayList contextRows = new IntArrayList();
+            IntArrayList contextSample = new IntArrayList();
+            List<Double> contextScale = new ArrayList<>();
+            for (int d = 0; d < batch.size(); d++) {
+                List<T> sequence = batch.get(d);
+                if (sequence.size() <= t)
+                    continue;
+                int s = centers.size();
+                centers.add(sequence.get(t));
+                sequenceIndices.add(d);
+
+                if (distributedMemory) {
+                    int count = 0;
+                    for (int c = Math.max(0, t - window); c <= Math.min(sequence.size() - 1, t + window); c++) {
+                        if (c == t)
+                            continue;
+                        contextRows.add(sequence.get(c).getIndex());
+                        contextSample.add(s);
+                        count++;
+                    }
+                    contextScale.add(1.0 / (count + 1));
+                }
+            }
+            this.sequences = sequenceIndices.toIntArray();
+            int numSamples = centers.size();
+
+            if (distributedMemory) {
+                contextSum = Nd4j.create(dataType, numSamples, layerSize);
+                if (contextRows.size() > 0)
+                    scatterAdd(contextSum, contextSample.toIntArray(),
+                            Nd4j.pullRows(lookupTable.getSyn0(), 1, contextRows.toIntArray()));
+                double[] sc = new double[numSamples];
+                for (int i = 0; i < numSamples; i++)
+                    sc[i] = contextScale.get(i);
+                scale = Nd4j.createFromArray(sc).castTo(dataType).reshape(numSamples, 1);
+            } else {
+                contextSum = null;
+                scale = null;
+            }
+
+            // hierarchic softmax outputs are the same for every iteration
+            if (useHS) {
+                IntArrayList rows = new IntArrayList();
+                IntArrayList rowSample = new IntArrayList();
+                List<Float> labels = new ArrayList<>();
+                for (int s = 0; s < numSamples; s++) {
+                    T center = centers.get(s);
+                    for (int k = 0; k < center.getCodeLength(); k++) {
+                        rows.add(center.getPoints().get(k));
+                        rowSample.add(s);
+                        labels.add(1.0f - center.getCodes().get(k));
+                    }
+                }
+                hs = new OutputBlock(lookupTable.getSyn1(), rows.toIntArray(), rowSample.toIntArray(), sequences,
+                        labels, null);
+            } else {
+                hs = null;
+            }
+
+            // negative sampling: one positive row and `negative` sampled rows per sample, resampled on every iteration
+            if (negative > 0) {
+                int[] rowSample = new int[numSamples * (negative + 1)];
+                List<Float> labels = new ArrayList<>(rowSample.length);
+                for (int s = 0; s < numSamples; s++) {
+                    for (int n = 0; n <= negative; n++) {
+                        rowSample[s * (negative + 1) + n] = s;
+                        labels.add(n == 0 ? 1.0f : 0.0f);
+                    }
+                }
+                ns = new OutputBlock(lookupTable.getSyn1Neg(), new int[rowSample.length], rowSample, sequences,
+                        labels, new float[rowSample.length]);
+            } else {
+                ns = null;
+            }
+        }
+    }
+
+    /**
+     * Output weight rows used by one update step: row i is taken from weights[rows[i]], and is compared against
+     * hidden layer row rowSample[i] (a sample of the step) of inference vector rowSequence[i]
+     */
+    protected class OutputBlock {
+        protected final INDArray weights;
+        protected final int[] rows;
+        protected final int[] rowSample;
+        protected final int[] rowSequence;
+        protected final INDArray labels;
+        protected final float[] mask;
+
+        protected OutputBlock(INDArray weights, int[] rows, int[] rowSample, int[] sampleSequences, List<Float> labels,
+                              float[] mask) {
+            this.weights = weights;
+            this.rows = rows;
+            this.rowSample = rowSample;
+            this.rowSequence = new int[rowSample.length];
+            for (int i = 0; i < rowSample.length; i++)
+                rowSequence[i] = sampleSequences[rowSample[i]];
+
+            float[] l = new float[labels.size()];
+            for (int i = 0; i < l.length; i++)
+                l[i] = labels.get(i);
+            this.labels = Nd4j.createFromArray(l).castTo(dataType);
+            this.mask = mask;
+        }
+    }
+}
@@ -45,6 +45,7 @@ import org.deeplearning4j.models.sequencevectors.SequenceVectors;
 import org.deeplearning4j.models.sequencevectors.interfaces.SequenceElementFactory;
 import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
 import org.deeplearning4j.models.sequencevectors.serialization.VocabWordFactory;
+import org.deeplearning4j.models.word2vec.MappedWord2Vec;
 import org.deeplearning4j.models.word2vec.StaticWord2Vec;
 import org.deeplearning4j.models.word2vec.VocabWord;
 import org.deeplearning4j.models.word2vec.Word2Vec;
@@ -3089,6 +3090,49 @@ public class WordVectorSerializer {
         return word2Vec;
     }
 
+    /**
+     * This method saves WordVectors in memory-mapped binary format, suitable for {@link #loadMappedModel(File)}
+     *
+     * @param vectors WordVectors to be saved
+     * @param file target file
+     * @throws IOException
+     */
+    public static void writeMappedModel(@NonNull WordVectors vectors, @NonNull File file) throws IOException {
+        MappedWord2Vec.write(vectors, file);
+    }
+
+    /**
+     * This method maps previously saved model into memory. Nothing is loaded on the heap, so loading is instant,
+     * and all JVMs on the same host share physical memory through page cache.
+     *
+     * In return you get MappedWord2Vec model, which might be used as lookup table only.
+     *
+     * @param file model file, created via {@link #writeMappedModel(WordVectors, File)}
+     * @return
+     */
+    public static MappedWord2Vec loadMappedModel(@NonNull File file) {
+        if (!file.exists() || file.isDirectory())
+            throw new RuntimeException(
+                    new FileNotFoundException("File [" + file.getAbsolutePath() + "] was not found"));
+
+        try {
+            return MappedWord2Vec.load(file);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * This method converts model in any of formats supported by {@link #loadStaticModel(File)} into memory-mapped format
+     *
+     * @param source source model file
+     * @param target target file
+     * @throws IOException
+     */
+    public static void convertToMappedModel(@NonNull File source, @NonNull File target) throws IOException {
+        writeMappedModel(loadStaticModel(source), target);
+    }
+
 
     protected interface Reader extends AutoCloseable {
         boolean hasNext();
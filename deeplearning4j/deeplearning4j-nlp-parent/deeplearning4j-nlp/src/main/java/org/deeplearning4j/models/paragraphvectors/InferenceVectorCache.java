@@ -0,0 +1,158 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.deeplearning4j.models.paragraphvectors;
+
+import lombok.EqualsAndHashCode;
+import lombok.NonNull;
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache for vectors inferred by {@link ParagraphVectors}.<br>
+ * Vectors are cached by the sequence of vocabulary indices of the document (i.e. the document after tokenization and
+ * vocabulary filtering), together with the inference parameters. The cache is bounded in size, least recently used
+ * entries are evicted first.<br>
+ * Each caller receives its own copy of the vector, so modifying a returned vector does not affect the cache.
+ */
+public class InferenceVectorCache {
+
+    private final int maxEntries;
+    private final LinkedHashMap<Key, INDArray> cache;
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+
+    /**
+     * @param maxEntries Maximum number of cached vectors
+     */
+    public InferenceVectorCache(int maxEntries) {
+        Preconditions.checkArgument(maxEntries > 0, "Maximum number of entries must be positive, got %s", maxEntries);
+        this.maxEntries = maxEntries;
+        this.cache = new LinkedHashMap<Key, INDArray>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, INDArray> eldest) {
+                return size() > InferenceVectorCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * @return Copy of the cached vector for the given document and inference parameters, or null if not cached
+     */
+    public INDArray get(@NonNull List<VocabWord> document, double learningRate, double minLearningRate,
+                        int iterations) {
+        Key key = new Key(document, learningRate, minLearningRate, iterations);
+        INDArray vector;
+        synchronized (cache) {
+            vector = cache.get(key);
+        }
+
+        if (vector == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return copy(vector);
+    }
+
+    /**
+     * Cache a copy of the vector inferred for the given document and inference parameters
+     */
+    public void put(@NonNull List<VocabWord> document, double learningRate, double minLearningRate, int iterations,
+                    @NonNull INDArray vector) {
+        Key key = new Key(document, learningRate, minLearningRate, iterations);
+        INDArray copy = copy(vector);
+        synchronized (cache) {
+            cache.put(key, copy);
+        }
+    }
+
+    /**
+     * Remove all cached vectors. Called when the model is updated
+     */
+    public void invalidate() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * @return Current number of cached vectors
+     */
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * @return Maximum number of cached vectors
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @return Number of lookups answered from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return Number of lookups not answered from the cache
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private static INDArray copy(INDArray vector) {
+        try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+            return vector.dup();
+        }
+    }
+
+    @EqualsAndHashCode
+    private static class Key {
+        private final int[] indices;
+        private final double learningRate;
+        private final double minLearningRate;
+        private final int iterations;
+
+        private Key(List<VocabWord> document, double learningRate, double minLearningRate, int iterations) {
+            this.indices = new int[document.size()];
+            for (int i = 0; i < indices.length; i++)
+                indices[i] = document.get(i).getIndex();
+            this.learningRate = learningRate;
+            this.minLearningRate = minLearningRate;
+            this.iterations = iterations;
+        }
+    }
+}
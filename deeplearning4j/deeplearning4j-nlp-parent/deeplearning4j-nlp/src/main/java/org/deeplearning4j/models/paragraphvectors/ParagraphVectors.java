@@ -31,6 +31,7 @@ import org.deeplearning4j.models.embeddings.WeightLookupTable;
 import org.deeplearning4j.models.embeddings.inmemory.InMemoryLookupTable;
 import org.deeplearning4j.models.embeddings.learning.ElementsLearningAlgorithm;
 import org.deeplearning4j.models.embeddings.learning.SequenceLearningAlgorithm;
+import org.deeplearning4j.models.embeddings.learning.impl.sequence.BatchedSequenceInference;
 import org.deeplearning4j.models.embeddings.learning.impl.sequence.DM;
 import org.deeplearning4j.models.embeddings.loader.VectorsConfiguration;
 import org.deeplearning4j.models.embeddings.reader.ModelUtils;
@@ -86,6 +87,9 @@ public class ParagraphVectors extends Word2Vec {
     protected transient PriorityScheduler inferenceExecutor;
     protected transient AtomicLong countSubmitted;
     protected transient AtomicLong countFinished;
+    protected transient volatile BatchedSequenceInference<VocabWord> batchedInference;
+    @Getter
+    protected transient volatile InferenceVectorCache inferenceCache;
 
     protected ParagraphVectors() {
         super();
@@ -438,7 +442,8 @@ public class ParagraphVectors extends Word2Vec {
     }
 
     /**
-     * This method does inference on a given List&lt;String&gt;
+     * This method does inference on a given List&lt;String&gt;, one document at a time (see {@link #inferVector(String)}).
+     * Use {@link #inferVectors(List)} for vectorized inference of the whole list
      * @param documents
      * @return INDArrays in the same order as input texts
      */
@@ -476,6 +481,121 @@ public class ParagraphVectors extends Word2Vec {
         return results;
     }
 
+    /**
+     * This method infers vectors for many texts at once, with default parameters for learning rate and iterations.
+     *
+     * @param texts
+     * @return matrix with one row per text, in the same order as input texts
+     * @see #inferVectorsForWords(List, double, double, int)
+     */
+    public INDArray inferVectors(@NonNull List<String> texts) {
+        return inferVectors(texts, this.learningRate.get(), this.minLearningRate, this.numEpochs * this.numIterations);
+    }
+
+    /**
+     * This method infers vectors for many texts at once
+     *
+     * @param texts
+     * @return matrix with one row per text, in the same order as input texts
+     * @see #inferVectorsForWords(List, double, double, int)
+     */
+    public INDArray inferVectors(@NonNull List<String> texts, double learningRate, double minLearningRate,
+                                 int iterations) {
+        if (tokenizerFactory == null)
+            throw new IllegalStateException("TokenizerFactory should be defined, prior to inferVectors() call");
+
+        if (this.vocab == null || this.vocab.numWords() == 0)
+            reassignExistingModel();
+
+        List<List<VocabWord>> documents = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            List<String> tokens = tokenizerFactory.create(text).getTokens();
+            List<VocabWord> document = new ArrayList<>();
+            for (String token : tokens) {
+                if (vocab.containsWord(token)) {
+                    document.add(vocab.wordFor(token));
+                }
+            }
+
+            if (document.isEmpty())
+                throw new ND4JIllegalStateException("Text passed for inference has no matches in model vocabulary.");
+
+            documents.add(document);
+        }
+
+        return inferVectorsForWords(documents, learningRate, minLearningRate, iterations);
+    }
+
+    /**
+     * This method infers vectors for many documents at once.<br>
+     * Unlike {@link #inferVector(List)}, which runs a separate training loop per document, inference vectors of all
+     * documents are stacked into one matrix and updated together, see {@link BatchedSequenceInference}.
+     * If an inference cache is enabled (see {@link #setInferenceCacheSize(int)}), cached vectors are returned for
+     * documents seen before, and only the remaining documents are inferred.
+     *
+     * @param documents
+     * @return matrix with one row per document, in the same order as input documents
+     */
+    public INDArray inferVectorsForWords(@NonNull List<List<VocabWord>> documents, double learningRate,
+                                         double minLearningRate, int iterations) {
+        BatchedSequenceInference<VocabWord> inference = getBatchedInference();
+        InferenceVectorCache cache = inferenceCache;
+        if (cache == null)
+            return inference.infer(documents, learningRate, minLearningRate, iterations);
+
+        INDArray[] cached = new INDArray[documents.size()];
+        List<List<VocabWord>> missing = new ArrayList<>();
+        List<Integer> missingIndices = new ArrayList<>();
+        for (int i = 0; i < documents.size(); i++) {
+            cached[i] = cache.get(documents.get(i), learningRate, minLearningRate, iterations);
+            if (cached[i] == null) {
+                missing.add(documents.get(i));
+                missingIndices.add(i);
+            }
+        }
+
+        if (missing.size() == documents.size()) {
+            INDArray result = inference.infer(documents, learningRate, minLearningRate, iterations);
+            for (int i = 0; i < documents.size(); i++)
+                cache.put(documents.get(i), learningRate, minLearningRate, iterations, result.getRow(i));
+            return result;
+        }
+
+        INDArray inferred = missing.isEmpty() ? null : inference.infer(missing, learningRate, minLearningRate, iterations);
+        for (int i = 0; i < missing.size(); i++) {
+            cached[missingIndices.get(i)] = inferred.getRow(i);
+            cache.put(missing.get(i), learningRate, minLearningRate, iterations, inferred.getRow(i));
+        }
+
+        return Nd4j.vstack(cached);
+    }
+
+    /**
+     * This method enables caching of vectors returned by {@link #inferVectors(List)} and
+     * {@link #inferVectorsForWords(List, double, double, int)}, keyed by the sequence of vocabulary words of each
+     * document. Cached vectors are dropped when the model is fitted again.
+     *
+     * @param maxEntries maximum number of cached vectors, 0 to disable caching
+     */
+    public void setInferenceCacheSize(int maxEntries) {
+        this.inferenceCache = maxEntries > 0 ? new InferenceVectorCache(maxEntries) : null;
+    }
+
+    protected BatchedSequenceInference<VocabWord> getBatchedInference() {
+        if (batchedInference == null) {
+            synchronized (this) {
+                if (batchedInference == null) {
+                    if (this.vocab == null || this.vocab.numWords() == 0)
+                        reassignExistingModel();
+
+                    batchedInference = BatchedSequenceInference.forAlgorithm(sequenceLearningAlgorithm, lookupTable,
+                            configuration);
+                }
+            }
+        }
+        return batchedInference;
+    }
+
     /**
      * This method predicts label of the document.
      * Computes a similarity wrt the mean of the
@@ -740,6 +860,10 @@ public class ParagraphVectors extends Word2Vec {
         super.fit();
 
         extractLabels();
+
+        batchedInference = null;
+        if (inferenceCache != null)
+            inferenceCache.invalidate();
     }
 
     /**
@@ -885,6 +1009,7 @@ public class ParagraphVectors extends Word2Vec {
         protected LabelAwareIterator labelAwareIterator;
         protected LabelsSource labelsSource;
         protected DocumentIterator docIter;
+        protected int inferenceCacheSize = 0;
 
 
 
@@ -1082,6 +1207,20 @@ public class ParagraphVectors extends Word2Vec {
             return this;
         }
 
+        /**
+         * This method enables/disables sharded, spill-to-disk vocabulary construction
+         *
+         * Default value: disabled
+         *
+         * @param reallyUse
+         * @return
+         */
+        @Override
+        public Builder useShardedVocabCounting(boolean reallyUse) {
+            super.useShardedVocabCounting(reallyUse);
+            return this;
+        }
+
         @Override
         public ParagraphVectors build() {
             presetTables();
@@ -1155,6 +1294,7 @@ public class ParagraphVectors extends Word2Vec {
             ret.unknownElement = this.unknownElement;
             ret.seed = this.seed;
             ret.enableScavenger = this.enableScavenger;
+            ret.shardedVocabCounting = this.shardedVocabCounting;
             ret.vocabLimit = this.vocabLimit;
 
             ret.trainElementsVectors = this.trainElementsVectors;
@@ -1216,6 +1356,7 @@ public class ParagraphVectors extends Word2Vec {
             ret.labelsSource = this.labelsSource;
             ret.labelAwareIterator = this.labelAwareIterator;
             ret.iterator = this.iterator;
+            ret.setInferenceCacheSize(this.inferenceCacheSize);
             if(this.elementsLearningAlgorithm != null)
                 elementsLearningAlgorithm.configure(vocabCache,lookupTable,configuration);
             if(this.sequenceLearningAlgorithm != null)
@@ -1584,6 +1725,20 @@ public class ParagraphVectors extends Word2Vec {
             super.seed(randomSeed);
             return this;
         }
+
+        /**
+         * This method enables caching of vectors inferred with ParagraphVectors.inferVectors(), keyed by the sequence
+         * of vocabulary words of each document.
+         *
+         * Default value: 0, no caching
+         *
+         * @param maxEntries maximum number of cached vectors
+         * @return
+         */
+        public Builder inferenceCacheSize(int maxEntries) {
+            this.inferenceCacheSize = maxEntries;
+            return this;
+        }
     }
 
 
@@ -94,6 +94,7 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
     protected transient boolean lockFactor = false;
 
     protected boolean enableScavenger = false;
+    protected boolean shardedVocabCounting = false;
     protected int vocabLimit = 0;
 
 
@@ -137,7 +138,7 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
 
         val constructor = new VocabConstructor.Builder<T>().addSource(iterator, minWordFrequency)
                 .setTargetVocabCache(vocab).fetchLabels(trainSequenceVectors).setStopWords(stopWords)
-                .enableScavenger(enableScavenger).setEntriesLimit(vocabLimit)
+                .enableScavenger(enableScavenger).useShardedCounting(shardedVocabCounting).setEntriesLimit(vocabLimit)
                 .allowParallelTokenization(configuration.isAllowParallelTokenization())
                 .setUnk(useUnknown && unknownElement != null ? unknownElement : null).build();
 
@@ -511,6 +512,7 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
         protected String STOP = configuration.getSTOP();
 
         protected boolean enableScavenger = false;
+        protected boolean shardedVocabCounting = false;
         protected int vocabLimit;
 
         protected  int vectorCalcThreads = 1;
@@ -1087,6 +1089,20 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
             return this;
         }
 
+        /**
+         * This method enables/disables sharded, spill-to-disk vocabulary construction.
+         * Useful for corpora with vocabulary that doesn't fit into memory.
+         *
+         * Default value: disabled
+         *
+         * @param reallyUse
+         * @return
+         */
+        public Builder<T> useShardedVocabCounting(boolean reallyUse) {
+            this.shardedVocabCounting = reallyUse;
+            return this;
+        }
+
         public Builder<T> intersectModel(@NonNull SequenceVectors<T> intersectVectors, boolean lockFactor) {
             this.intersectVectors = intersectVectors;
             this.lockFactor = lockFactor;
@@ -1141,6 +1157,7 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
             vectors.existingModel = this.existingVectors;
             vectors.intersectModel = this.intersectVectors;
             vectors.enableScavenger = this.enableScavenger;
+            vectors.shardedVocabCounting = this.shardedVocabCounting;
             vectors.lockFactor = this.lockFactor;
             //only override values if a configuration wasn't specified
             if(!configurationSpecified) {
@@ -1298,6 +1315,7 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
         private final AtomicLong timer;
         private final long startTime;
         private final int totalEpochs;
+        private long threadWords;
 
         /*
                 Long constructors suck, so this should be reduced to something reasonable later
@@ -1364,6 +1382,7 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
                                       // increment processed word count, please note: this affects learningRate decay
                                 totalLines.incrementAndGet();
                                 this.wordsCounter.addAndGet(sequence.getElements().size());
+                                threadWords += sequence.getElements().size();
 
                                 if (totalLines.get() % 100000 == 0) {
                                     long currentTime = System.currentTimeMillis();
@@ -1375,10 +1394,12 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
                                     double seqSec = (100000.0 / ((double) timeSpent / 1000.0));
                                     double wordsSecTotal = this.wordsCounter.get() / ((double) totalTimeSpent / 1000.0);
 
-                                    log.info("Epoch: [{}]; Words vectorized so far: [{}];  Lines vectorized so far: [{}]; Seq/sec: [{}]; Words/sec: [{}]; learningRate: [{}]",
+                                    double wordsSecThread = threadWords / ((double) Math.max(1, totalTimeSpent) / 1000.0);
+
+                                    log.info("Epoch: [{}]; Words vectorized so far: [{}];  Lines vectorized so far: [{}]; Seq/sec: [{}]; Words/sec: [{}]; Words/sec for thread [{}]: [{}]; learningRate: [{}]",
                                             this.epochNumber, this.wordsCounter.get(), this.totalLines.get(),
                                             String.format("%.2f", seqSec), String.format("%.2f", wordsSecTotal),
-                                            alpha);
+                                            threadId, String.format("%.2f", wordsSecThread), alpha);
                                 }
                                 if (eventListeners != null && !eventListeners.isEmpty()) {
                                     for (VectorsListener listener : eventListeners) {
@@ -1413,6 +1434,10 @@ public class SequenceVectors<T extends SequenceElement> extends WordVectorsImpl<
             if (trainSequenceVectors) {
                 sequenceLearningAlgorithm.finish();
             }
+
+            long threadTime = Math.max(1, System.currentTimeMillis() - startTime);
+            log.debug("Thread [{}] finished epoch [{}]: words vectorized: [{}]; Words/sec: [{}]", threadId, epochNumber,
+                    threadWords, String.format("%.2f", threadWords / (threadTime / 1000.0)));
         }
     }
 }
@@ -0,0 +1,599 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.models.word2vec;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.models.embeddings.WeightLookupTable;
+import org.deeplearning4j.models.embeddings.reader.ModelUtils;
+import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
+import org.deeplearning4j.models.word2vec.wordstore.VocabCache;
+import org.deeplearning4j.models.word2vec.wordstore.inmemory.AbstractCache;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * WordVectors implementation backed by a memory-mapped binary file. Nothing is loaded on the heap: vocabulary lookups
+ * are binary searches over a sorted index within the file, and vectors are read directly from the mapped float region.
+ * Since pages are shared through OS page cache, multiple JVMs serving the same model will share physical memory.
+ *
+ * File layout (little endian):
+ * <pre>
+ * header:   magic (int), version (int), numWords (long), vectorLength (int), reserved (int),
+ *           offsetsPosition (long), sortedPosition (long), labelsPosition (long), vectorsPosition (long)
+ * offsets:  numWords + 1 longs, start of each label within labels region, in vocabulary order
+ * sorted:   numWords ints, vocabulary indices ordered by label bytes
+ * labels:   UTF-8 bytes of all labels, in vocabulary order
+ * vectors:  numWords * vectorLength floats, in vocabulary order
+ * </pre>
+ * Only the start of the vectors region is aligned (on {@value #ALIGNMENT} bytes). Rows are packed with a stride of
+ * vectorLength * 4 bytes, so a row is itself 64-byte aligned only when vectorLength is a multiple of 16.
+ *
+ * Use {@link org.deeplearning4j.models.embeddings.loader.WordVectorSerializer#writeMappedModel(WordVectors, File)} or
+ * {@link org.deeplearning4j.models.embeddings.loader.WordVectorSerializer#convertToMappedModel(File, File)} to create such a file.
+ */
+@Slf4j
+public class MappedWord2Vec implements WordVectors {
+    public static final int MAGIC = 0x444C3457;
+    public static final int VERSION = 1;
+
+    protected static final int HEADER_SIZE = 64;
+    /** Alignment of the start of the vectors region. Individual rows are not padded */
+    protected static final int ALIGNMENT = 64;
+    protected static final ByteOrder ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private transient LongBuffer offsets;
+    private transient IntBuffer sorted;
+    private transient ByteBuffer labels;
+    private transient FloatBuffer[] vectors;
+
+    private int numWords;
+    private int vectorLength;
+    private int rowsPerChunk;
+    private String unk = null;
+    private transient VocabCache<VocabWord> vocabCache;
+
+    private MappedWord2Vec() {
+
+    }
+
+    /**
+     * This method maps previously saved model into memory
+     *
+     * @param file model file
+     * @return
+     * @throws IOException
+     */
+    public static MappedWord2Vec load(@NonNull File file) throws IOException {
+        MappedWord2Vec vectors = new MappedWord2Vec();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE).order(ORDER);
+            if (header.getInt() != MAGIC)
+                throw new IllegalStateException("File [" + file.getAbsolutePath() + "] isn't a mapped word vectors model");
+
+            int version = header.getInt();
+            if (version != VERSION)
+                throw new IllegalStateException("Unsupported mapped model version: [" + version + "]");
+
+            long numWords = header.getLong();
+            if (numWords > Integer.MAX_VALUE)
+                throw new IllegalStateException("Number of words exceeds Integer.MAX_VALUE: [" + numWords + "]");
+
+            vectors.numWords = (int) numWords;
+            vectors.vectorLength = header.getInt();
+            header.getInt();
+
+            long offsetsPosition = header.getLong();
+            long sortedPosition = header.getLong();
+            long labelsPosition = header.getLong();
+            long vectorsPosition = header.getLong();
+
+            vectors.offsets = map(channel, offsetsPosition, (numWords + 1) * 8).asLongBuffer();
+            vectors.sorted = map(channel, sortedPosition, numWords * 4).asIntBuffer();
+
+            long labelsLength = vectors.offsets.get(vectors.numWords);
+            vectors.labels = map(channel, labelsPosition, labelsLength);
+
+            // single mapping can't exceed 2GB, so vectors region is split into chunks aligned on rows
+            long rowBytes = (long) vectors.vectorLength * 4;
+            vectors.rowsPerChunk = (int) Math.max(1, Math.min(Integer.MAX_VALUE / Math.max(rowBytes, 1), numWords));
+            int numChunks = (int) ((numWords + vectors.rowsPerChunk - 1) / vectors.rowsPerChunk);
+            vectors.vectors = new FloatBuffer[numChunks];
+            for (int c = 0; c < numChunks; c++) {
+                long firstRow = (long) c * vectors.rowsPerChunk;
+                long rows = Math.min(vectors.rowsPerChunk, numWords - firstRow);
+                vectors.vectors[c] = map(channel, vectorsPosition + firstRow * rowBytes, rows * rowBytes).asFloatBuffer();
+            }
+        }
+
+        log.info("Mapped model [{}]: {} words, vector length {}", file.getAbsolutePath(), vectors.numWords,
+                        vectors.vectorLength);
+        return vectors;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long length) throws IOException {
+        if (length > Integer.MAX_VALUE)
+            throw new IllegalStateException("Region at [" + position + "] is too large to be mapped: [" + length + "]");
+
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+        buffer.order(ORDER);
+        return buffer;
+    }
+
+    /**
+     * This method writes given WordVectors into mapped format
+     *
+     * @param source WordVectors to be saved
+     * @param file target file
+     * @throws IOException
+     */
+    public static void write(@NonNull WordVectors source, @NonNull File file) throws IOException {
+        VocabCache<?> vocab = source.vocab();
+        int numWords = vocab.numWords();
+        int vectorLength = source.vectorSize();
+
+        final byte[][] labels = new byte[numWords][];
+        long labelsLength = 0;
+        for (int i = 0; i < numWords; i++) {
+            String label = vocab.wordAtIndex(i);
+            labels[i] = label == null ? new byte[0] : label.getBytes(StandardCharsets.UTF_8);
+            labelsLength += labels[i].length;
+        }
+
+        Integer[] sorted = new Integer[numWords];
+        for (int i = 0; i < numWords; i++)
+            sorted[i] = i;
+        Arrays.sort(sorted, (a, b) -> compare(labels[a], labels[b]));
+
+        long offsetsPosition = HEADER_SIZE;
+        long sortedPosition = offsetsPosition + (numWords + 1L) * 8;
+        long labelsPosition = sortedPosition + numWords * 4L;
+        long vectorsPosition = align(labelsPosition + labelsLength);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+            ChannelWriter writer = new ChannelWriter(channel);
+
+            writer.putInt(MAGIC);
+            writer.putInt(VERSION);
+            writer.putLong(numWords);
+            writer.putInt(vectorLength);
+            writer.putInt(0);
+            writer.putLong(offsetsPosition);
+            writer.putLong(sortedPosition);
+            writer.putLong(labelsPosition);
+            writer.putLong(vectorsPosition);
+            writer.pad(HEADER_SIZE);
+
+            long offset = 0;
+            for (int i = 0; i < numWords; i++) {
+                writer.putLong(offset);
+                offset += labels[i].length;
+            }
+            writer.putLong(offset);
+
+            for (int i = 0; i < numWords; i++)
+                writer.putInt(sorted[i]);
+
+            for (int i = 0; i < numWords; i++)
+                writer.put(labels[i]);
+
+            writer.pad(vectorsPosition);
+
+            for (int i = 0; i < numWords; i++) {
+                INDArray vector = labels[i].length == 0 ? null : source.getWordVectorMatrix(vocab.wordAtIndex(i));
+                float[] values = vector == null ? new float[vectorLength] : vector.toFloatVector();
+                if (values.length != vectorLength)
+                    throw new IllegalStateException("Vector for word [" + vocab.wordAtIndex(i) + "] has length ["
+                                    + values.length + "], expected [" + vectorLength + "]");
+
+                for (float value : values)
+                    writer.putFloat(value);
+            }
+
+            writer.flush();
+        }
+    }
+
+    private static long align(long position) {
+        return (position + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    private static int compare(byte[] a, byte[] b) {
+        int length = Math.min(a.length, b.length);
+        for (int i = 0; i < length; i++) {
+            int cmp = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (cmp != 0)
+                return cmp;
+        }
+        return a.length - b.length;
+    }
+
+    private int compareLabel(int index, byte[] key) {
+        int start = (int) offsets.get(index);
+        int length = (int) offsets.get(index + 1) - start;
+        int limit = Math.min(length, key.length);
+        for (int i = 0; i < limit; i++) {
+            int cmp = (labels.get(start + i) & 0xFF) - (key[i] & 0xFF);
+            if (cmp != 0)
+                return cmp;
+        }
+        return length - key.length;
+    }
+
+    /**
+     * This method returns label of the word at given vocabulary index
+     *
+     * @param index
+     * @return
+     */
+    public String wordAtIndex(int index) {
+        if (index < 0 || index >= numWords)
+            return null;
+
+        int start = (int) offsets.get(index);
+        byte[] bytes = new byte[(int) offsets.get(index + 1) - start];
+        ByteBuffer view = labels.duplicate();
+        view.position(start);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String getUNK() {
+        return unk;
+    }
+
+    @Override
+    public void setUNK(String newUNK) {
+        this.unk = newUNK;
+    }
+
+    /**
+     * Returns true if the model has this word in the vocab
+     *
+     * @param word the word to test for
+     * @return true if the model has the word in the vocab
+     */
+    @Override
+    public boolean hasWord(String word) {
+        return indexOf(word) >= 0;
+    }
+
+    @Override
+    public int indexOf(String word) {
+        if (word == null)
+            return -1;
+
+        byte[] key = word.getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = numWords - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int index = sorted.get(mid);
+            int cmp = compareLabel(index, key);
+            if (cmp < 0)
+                low = mid + 1;
+            else if (cmp > 0)
+                high = mid - 1;
+            else
+                return index;
+        }
+        return -1;
+    }
+
+    @Override
+    public Collection<String> wordsNearest(INDArray words, int top) {
+        throw new UnsupportedOperationException("Method isn't implemented. Please use usual Word2Vec implementation");
+    }
+
+    @Override
+    public Collection<String> wordsNearestSum(INDArray words, int top) {
+        throw new UnsupportedOperationException("Method isn't implemented. Please use usual Word2Vec implementation");
+    }
+
+    /**
+     * PLEASE NOTE: This method is not available in this implementation.
+     */
+    @Override
+    public Collection<String> wordsNearestSum(String word, int n) {
+        throw new UnsupportedOperationException("Method isn't implemented. Please use usual Word2Vec implementation");
+    }
+
+    /**
+     * PLEASE NOTE: This method is not available in this implementation.
+     */
+    @Override
+    public Collection<String> wordsNearestSum(Collection<String> positive, Collection<String> negative, int top) {
+        throw new UnsupportedOperationException("Method isn't implemented. Please use usual Word2Vec implementation");
+    }
+
+    /**
+     * PLEASE NOTE: This method is not available in this implementation.
+     */
+    @Override
+    public Map<String, Double> accuracy(List<String> questions) {
+        throw new UnsupportedOperationException("Method isn't implemented. Please use usual Word2Vec implementation");
+    }
+
+    /**
+     * PLEASE NOTE: This method is not available in this implementation.
+     */
+    @Override
+    public List<String> similarWordsInVocabTo(String word, double accuracy) {
+        throw new UnsupportedOperationException("Method isn't implemented. Please use usual Word2Vec implementation");
+    }
+
+    /**
+     * This method copies vector of the word at given vocabulary index into provided array
+     *
+     * @param index vocabulary index
+     * @param target array of vectorLength elements
+     */
+    public void readVector(int index, @NonNull float[] target) {
+        if (index < 0 || index >= numWords)
+            throw new IndexOutOfBoundsException("Index [" + index + "] is out of vocabulary bounds");
+
+        FloatBuffer view = vectors[index / rowsPerChunk].duplicate();
+        view.position((index % rowsPerChunk) * vectorLength);
+        view.get(target, 0, vectorLength);
+    }
+
+    private int resolveIndex(String word) {
+        int index = indexOf(word);
+        if (index < 0 && unk != null)
+            index = indexOf(unk);
+        return index;
+    }
+
+    @Override
+    public double[] getWordVector(String word) {
+        INDArray vector = getWordVectorMatrix(word);
+        return vector == null ? null : vector.toDoubleVector();
+    }
+
+    @Override
+    public INDArray getWordVectorMatrixNormalized(String word) {
+        INDArray vector = getWordVectorMatrix(word);
+        return vector == null ? null : Transforms.unitVec(vector);
+    }
+
+    @Override
+    public INDArray getWordVectorMatrix(String word) {
+        int index = resolveIndex(word);
+        if (index < 0)
+            return null;
+
+        float[] vector = new float[vectorLength];
+        readVector(index, vector);
+        return Nd4j.createFromArray(vector);
+    }
+
+    /**
+     * This method returns 2D array, where each row represents corresponding word/label
+     *
+     * @param labels
+     * @return
+     */
+    @Override
+    public INDArray getWordVectors(@NonNull Collection<String> labels) {
+        List<float[]> rows = new ArrayList<>(labels.size());
+        for (String label : labels) {
+            int index = resolveIndex(label);
+            if (index < 0)
+                continue;
+
+            float[] vector = new float[vectorLength];
+            readVector(index, vector);
+            rows.add(vector);
+        }
+
+        if (rows.isEmpty())
+            return Nd4j.empty();
+
+        return Nd4j.createFromArray(rows.toArray(new float[0][]));
+    }
+
+    @Override
+    public INDArray getWordVectorsMean(Collection<String> labels) {
+        return getWordVectors(labels).mean(0);
+    }
+
+    /**
+     * PLEASE NOTE: This method is not available in this implementation.
+     */
+    @Override
+    public Collection<String> wordsNearest(Collection<String> positive, Collection<String> negative, int top) {
+        throw new UnsupportedOperationException("Method isn't implemented. Please use usual Word2Vec implementation");
+    }
+
+    /**
+     * PLEASE NOTE: This method is not available in this implementation.
+     */
+    @Override
+    public Collection<String> wordsNearest(String word, int n) {
+        throw new UnsupportedOperationException("Method isn't implemented. Please use usual Word2Vec implementation");
+    }
+
+    @Override
+    public double similarity(String label1, String label2) {
+        INDArray vec1 = label1 == null ? null : getWordVectorMatrix(label1);
+        INDArray vec2 = label2 == null ? null : getWordVectorMatrix(label2);
+
+        if (vec1 == null || vec2 == null) {
+            log.debug(label1 + ": " + (vec1 == null ? "null" : "exists") + ";" + label2 + " vec2:"
+                            + (vec2 == null ? "null" : "exists"));
+            return Double.NaN;
+        }
+
+        if (label1.equals(label2))
+            return 1.0;
+
+        return Transforms.cosineSim(Transforms.unitVec(vec1), Transforms.unitVec(vec2));
+    }
+
+    /**
+     * Vocab for the vectors.
+     * PLEASE NOTE: vocabulary isn't kept on heap in this implementation, so it's built on first call of this method.
+     *
+     * @return
+     */
+    @Override
+    public synchronized VocabCache vocab() {
+        if (vocabCache == null) {
+            VocabCache<VocabWord> cache = new AbstractCache.Builder<VocabWord>().build();
+            for (int i = 0; i < numWords; i++) {
+                VocabWord word = new VocabWord(1.0, wordAtIndex(i));
+                word.setIndex(i);
+                cache.addToken(word);
+                cache.addWordToIndex(i, word.getLabel());
+            }
+            vocabCache = cache;
+        }
+        return vocabCache;
+    }
+
+    /**
+     * PLEASE NOTE: This method is not available in this implementation.
+     */
+    @Override
+    public WeightLookupTable lookupTable() {
+        throw new UnsupportedOperationException("Method isn't implemented. Please use usual Word2Vec implementation");
+    }
+
+    /**
+     * PLEASE NOTE: This method has no effect in this implementation.
+     */
+    @Override
+    public void setModelUtils(ModelUtils utils) {
+        // no-op
+    }
+
+    @Override
+    public void loadWeightsInto(INDArray array) {
+        float[] vector = new float[vectorLength];
+        for (int i = 0; i < numWords; i++) {
+            readVector(i, vector);
+            array.putRow(i, Nd4j.createFromArray(vector).castTo(array.dataType()));
+        }
+    }
+
+    @Override
+    public long vocabSize() {
+        return numWords;
+    }
+
+    @Override
+    public int vectorSize() {
+        return vectorLength;
+    }
+
+    @Override
+    public boolean jsonSerializable() {
+        return false;
+    }
+
+    @Override
+    public boolean outOfVocabularySupported() {
+        return false;
+    }
+
+    /**
+     * Simple buffered writer on top of FileChannel, since DataOutputStream is big endian only
+     */
+    private static class ChannelWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(4 * 1024 * 1024).order(ORDER);
+        private long position = 0;
+
+        private ChannelWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes)
+                flush();
+        }
+
+        private void putInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+            position += 4;
+        }
+
+        private void putLong(long value) throws IOException {
+            ensure(8);
+            buffer.putLong(value);
+            position += 8;
+        }
+
+        private void putFloat(float value) throws IOException {
+            ensure(4);
+            buffer.putFloat(value);
+            position += 4;
+        }
+
+        private void put(byte[] bytes) throws IOException {
+            int offset = 0;
+            while (offset < bytes.length) {
+                ensure(1);
+                int length = Math.min(buffer.remaining(), bytes.length - offset);
+                buffer.put(bytes, offset, length);
+                offset += length;
+            }
+            position += bytes.length;
+        }
+
+        private void pad(long target) throws IOException {
+            while (position < target) {
+                ensure(1);
+                buffer.put((byte) 0);
+                position++;
+            }
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            buffer.clear();
+        }
+    }
+}
@@ -646,6 +646,20 @@ public class Word2Vec extends SequenceVectors<VocabWord> {
             return this;
         }
 
+        /**
+         * This method enables/disables sharded, spill-to-disk vocabulary construction
+         *
+         * Default value: disabled
+         *
+         * @param reallyUse
+         * @return
+         */
+        @Override
+        public Builder useShardedVocabCounting(boolean reallyUse) {
+            super.useShardedVocabCounting(reallyUse);
+            return this;
+        }
+
         /**
          * This method enables/disables Hierarchic softmax
          *
@@ -726,6 +740,7 @@ public class Word2Vec extends SequenceVectors<VocabWord> {
             ret.variableWindows = this.variableWindows;
             ret.seed = this.seed;
             ret.enableScavenger = this.enableScavenger;
+            ret.shardedVocabCounting = this.shardedVocabCounting;
             ret.vocabLimit = this.vocabLimit;
 
             if (ret.unknownElement == null)
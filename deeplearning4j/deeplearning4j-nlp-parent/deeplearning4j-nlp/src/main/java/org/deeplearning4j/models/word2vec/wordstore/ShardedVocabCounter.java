@@ -0,0 +1,507 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.models.word2vec.wordstore;
+
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+import lombok.NonNull;
+import org.deeplearning4j.models.sequencevectors.interfaces.SequenceIterator;
+import org.deeplearning4j.models.sequencevectors.sequence.Sequence;
+import org.deeplearning4j.models.sequencevectors.sequence.SequenceElement;
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.deeplearning4j.models.word2vec.wordstore.inmemory.AbstractCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exact, memory-bounded element counter used by {@link VocabConstructor} for very large corpora.
+ *
+ * Each worker thread counts elements into its own primitive hash map and periodically merges it into a shared
+ * resident shard. Once the resident shard grows beyond {@code maxResidentEntries}, its low-frequency half is
+ * written out to a sorted run file. When the source is exhausted, all runs are combined with an external k-way merge,
+ * so resulting frequencies are exact - nothing is lost the way scavenger truncation loses counts. Run files are deleted
+ * once merged, or if counting fails.
+ *
+ * PLEASE NOTE: VocabWord elements are re-created from their labels after the merge. For any other element type
+ * the first-seen instance of every element is kept in memory, so only counters are spilled.
+ */
+public class ShardedVocabCounter<T extends SequenceElement> {
+    protected static final Logger log = LoggerFactory.getLogger(ShardedVocabCounter.class);
+
+    private final int numWorkers;
+    private final long maxResidentEntries;
+    private final int mergeInterval;
+    private final File spillDirectory;
+    private final Collection<String> stopWords;
+    private final boolean fetchLabels;
+
+    // resident shard. Swapped out while it's being spilled, so workers can keep merging into a fresh one
+    private Object2LongOpenHashMap<String> counts = new Object2LongOpenHashMap<>();
+    private Object2LongOpenHashMap<String> docCounts = new Object2LongOpenHashMap<>();
+    private final Map<String, T> prototypes = new ConcurrentHashMap<>();
+    private final Map<String, T> labels = new ConcurrentHashMap<>();
+    private final List<File> runs = new ArrayList<>();
+
+    private final AtomicLong sequencesCounter = new AtomicLong(0);
+    private final AtomicLong elementsCounter = new AtomicLong(0);
+    private final AtomicInteger runsCounter = new AtomicInteger(0);
+
+    // marker instance, used to tell workers that source is exhausted
+    private final Sequence<T> poisonPill = new Sequence<>();
+
+    /**
+     * @param numWorkers number of counting threads
+     * @param maxResidentEntries maximal number of distinct elements kept in memory before spilling to disk
+     * @param mergeInterval number of sequences each worker processes before merging its local counters
+     * @param spillDirectory directory for run files. If null, system temp directory is used
+     * @param stopWords elements to be skipped. Can be null
+     * @param fetchLabels if true, sequence labels will be collected as well
+     */
+    public ShardedVocabCounter(int numWorkers, long maxResidentEntries, int mergeInterval, File spillDirectory,
+                    Collection<String> stopWords, boolean fetchLabels) {
+        if (numWorkers < 1)
+            throw new IllegalArgumentException("Number of workers should be positive value");
+
+        if (maxResidentEntries < 2)
+            throw new IllegalArgumentException("maxResidentEntries should be at least 2");
+
+        this.numWorkers = numWorkers;
+        this.maxResidentEntries = maxResidentEntries;
+        this.mergeInterval = Math.max(1, mergeInterval);
+        this.spillDirectory = spillDirectory;
+        this.stopWords = stopWords;
+        this.fetchLabels = fetchLabels;
+    }
+
+    /**
+     * This method counts all elements available in the given iterator. Can be called multiple times, counters are accumulated.
+     *
+     * @param iterator source of sequences, it's expected to be reset already
+     */
+    public void count(@NonNull SequenceIterator<T> iterator) {
+        BlockingQueue<Sequence<T>> queue = new LinkedBlockingQueue<>(numWorkers * 64);
+        ExecutorService executor = Executors.newFixedThreadPool(numWorkers, r -> {
+            Thread t = new Thread(r, "ShardedVocabCounter");
+            t.setDaemon(true);
+            return t;
+        });
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int e = 0; e < numWorkers; e++)
+            futures.add(executor.submit(new CountingWorker(queue)));
+
+        boolean success = false;
+        try {
+            while (iterator.hasMoreSequences()) {
+                Sequence<T> sequence = iterator.nextSequence();
+                sequencesCounter.incrementAndGet();
+                elementsCounter.addAndGet(sequence.size());
+                enqueue(queue, sequence, futures);
+            }
+
+            for (int e = 0; e < numWorkers; e++)
+                enqueue(queue, poisonPill, futures);
+
+            for (Future<?> future : futures)
+                future.get();
+            success = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+            if (!success) {
+                try {
+                    executor.awaitTermination(1, TimeUnit.MINUTES);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                deleteRuns();
+            }
+        }
+
+        log.debug("Sequences counted: [{}]; Resident elements: [{}]; Runs spilled: [{}]", sequencesCounter.get(),
+                        counts.size(), runs.size());
+    }
+
+    private void enqueue(BlockingQueue<Sequence<T>> queue, Sequence<T> sequence, List<Future<?>> futures)
+                    throws InterruptedException, ExecutionException {
+        while (!queue.offer(sequence, 100, TimeUnit.MILLISECONDS)) {
+            // if any of workers has failed, there's no point in waiting for free space in queue
+            for (Future<?> future : futures)
+                if (future.isDone())
+                    future.get();
+        }
+    }
+
+    /**
+     * This method merges all counters (resident and spilled ones), and transfers elements with frequency >= minFrequency
+     * into the given vocabulary. Labels are transferred regardless of their frequency.
+     *
+     * @param holder target vocabulary
+     * @param minFrequency elements below this frequency are skipped. Values <= 0 disable filtering
+     * @return number of elements transferred
+     */
+    public long transferTo(@NonNull AbstractCache<T> holder, int minFrequency) {
+        long transferred = 0;
+        for (T label : labels.values()) {
+            holder.addToken(label);
+            transferred++;
+        }
+
+        try {
+            if (runs.isEmpty()) {
+                for (Object2LongMap.Entry<String> entry : counts.object2LongEntrySet()) {
+                    if (emit(holder, entry.getKey(), entry.getLongValue(), docCounts.getLong(entry.getKey()), minFrequency))
+                        transferred++;
+                }
+            } else {
+                spill(true);
+                transferred += mergeRuns(holder, minFrequency);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        } finally {
+            counts.clear();
+            docCounts.clear();
+            deleteRuns();
+        }
+
+        holder.incrementTotalDocCount(sequencesCounter.get());
+        return transferred;
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean emit(AbstractCache<T> holder, String label, long frequency, long sequences, int minFrequency) {
+        if (minFrequency > 0 && frequency < minFrequency)
+            return false;
+
+        T element = prototypes.remove(label);
+        if (element == null)
+            element = (T) new VocabWord(frequency, label);
+
+        element.setElementFrequency(frequency);
+        element.setSequencesCount(sequences);
+        holder.addToken(element);
+        return true;
+    }
+
+    private long mergeRuns(AbstractCache<T> holder, int minFrequency) throws IOException {
+        PriorityQueue<RunReader> queue = new PriorityQueue<>(runs.size(), Comparator.comparing(RunReader::getLabel));
+        long transferred = 0;
+        try {
+            for (File run : runs) {
+                RunReader reader = new RunReader(run);
+                if (reader.advance())
+                    queue.add(reader);
+                else
+                    reader.close();
+            }
+
+            while (!queue.isEmpty()) {
+                RunReader head = queue.poll();
+                String label = head.getLabel();
+                long frequency = head.getFrequency();
+                long sequences = head.getSequences();
+                requeue(queue, head);
+
+                while (!queue.isEmpty() && queue.peek().getLabel().equals(label)) {
+                    RunReader reader = queue.poll();
+                    frequency += reader.getFrequency();
+                    sequences += reader.getSequences();
+                    requeue(queue, reader);
+                }
+
+                if (emit(holder, label, frequency, sequences, minFrequency))
+                    transferred++;
+            }
+        } finally {
+            for (RunReader reader : queue)
+                reader.close();
+        }
+
+        return transferred;
+    }
+
+    private static void requeue(PriorityQueue<RunReader> queue, RunReader reader) throws IOException {
+        if (reader.advance())
+            queue.add(reader);
+        else
+            reader.close();
+    }
+
+    /**
+     * This method merges worker-local counters into the resident shard, spilling it to disk if memory limit is exceeded
+     */
+    protected void mergeShard(Object2LongOpenHashMap<String> localCounts,
+                    Object2LongOpenHashMap<String> localDocCounts, Map<String, T> localPrototypes) throws IOException {
+        boolean full;
+        synchronized (this) {
+            for (Object2LongMap.Entry<String> entry : localCounts.object2LongEntrySet())
+                counts.addTo(entry.getKey(), entry.getLongValue());
+
+            for (Object2LongMap.Entry<String> entry : localDocCounts.object2LongEntrySet())
+                docCounts.addTo(entry.getKey(), entry.getLongValue());
+
+            full = counts.size() > maxResidentEntries;
+        }
+
+        for (Map.Entry<String, T> entry : localPrototypes.entrySet())
+            prototypes.putIfAbsent(entry.getKey(), entry.getValue());
+
+        if (full)
+            spill(false);
+    }
+
+    /**
+     * This method writes resident counters to a run file, sorted by label. The resident shard is swapped out under the
+     * lock, so other workers keep merging while it's sorted and written; counters that aren't spilled are merged back.
+     *
+     * @param everything if false, only elements with frequency at or below the median are spilled, so frequent elements stay resident
+     */
+    protected void spill(boolean everything) throws IOException {
+        Object2LongOpenHashMap<String> shardCounts;
+        Object2LongOpenHashMap<String> shardDocCounts;
+        synchronized (this) {
+            // another worker might have spilled the shard already
+            if (counts.isEmpty() || (!everything && counts.size() <= maxResidentEntries))
+                return;
+
+            shardCounts = counts;
+            shardDocCounts = docCounts;
+            counts = new Object2LongOpenHashMap<>();
+            docCounts = new Object2LongOpenHashMap<>();
+        }
+
+        long threshold = Long.MAX_VALUE;
+        if (!everything) {
+            long[] values = shardCounts.values().toLongArray();
+            Arrays.sort(values);
+            threshold = values[values.length / 2];
+        }
+
+        List<String> spilled = new ArrayList<>();
+        for (Object2LongMap.Entry<String> entry : shardCounts.object2LongEntrySet())
+            if (entry.getLongValue() <= threshold)
+                spilled.add(entry.getKey());
+
+        Collections.sort(spilled);
+
+        File run = File.createTempFile("vocab_run_", ".bin", spillDirectory);
+        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), 1024 * 1024))) {
+            for (String label : spilled) {
+                byte[] bytes = label.getBytes(StandardCharsets.UTF_8);
+                dos.writeInt(bytes.length);
+                dos.write(bytes);
+                dos.writeLong(shardCounts.removeLong(label));
+                dos.writeLong(shardDocCounts.removeLong(label));
+            }
+        } catch (IOException | RuntimeException e) {
+            run.delete();
+            throw e;
+        }
+
+        // Object2LongOpenHashMap doesn't shrink on removal
+        shardCounts.trim();
+        shardDocCounts.trim();
+
+        int resident;
+        synchronized (this) {
+            runs.add(run);
+            runsCounter.incrementAndGet();
+
+            if (counts.isEmpty() && docCounts.isEmpty()) {
+                counts = shardCounts;
+                docCounts = shardDocCounts;
+            } else {
+                for (Object2LongMap.Entry<String> entry : shardCounts.object2LongEntrySet())
+                    counts.addTo(entry.getKey(), entry.getLongValue());
+
+                for (Object2LongMap.Entry<String> entry : shardDocCounts.object2LongEntrySet())
+                    docCounts.addTo(entry.getKey(), entry.getLongValue());
+            }
+            resident = counts.size();
+        }
+
+        log.debug("Spilled [{}] elements to [{}]; Resident elements: [{}]", spilled.size(), run.getAbsolutePath(),
+                        resident);
+    }
+
+    private synchronized void deleteRuns() {
+        for (File run : runs)
+            if (!run.delete() && run.exists())
+                log.warn("Unable to delete run file [{}]", run.getAbsolutePath());
+
+        runs.clear();
+    }
+
+    /**
+     * @return number of sequences processed so far
+     */
+    public long getNumberOfSequences() {
+        return sequencesCounter.get();
+    }
+
+    /**
+     * @return number of elements processed so far, including stop words
+     */
+    public long getNumberOfElements() {
+        return elementsCounter.get();
+    }
+
+    /**
+     * @return number of run files spilled to disk so far
+     */
+    public int getNumberOfRuns() {
+        return runsCounter.get();
+    }
+
+    protected class CountingWorker implements Runnable {
+        private final BlockingQueue<Sequence<T>> queue;
+        private final Object2LongOpenHashMap<String> localCounts = new Object2LongOpenHashMap<>();
+        private final Object2LongOpenHashMap<String> localDocCounts = new Object2LongOpenHashMap<>();
+        private final Map<String, T> localPrototypes = new HashMap<>();
+        private final Set<String> seen = new ObjectOpenHashSet<>();
+
+        protected CountingWorker(@NonNull BlockingQueue<Sequence<T>> queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public void run() {
+            try {
+                long processed = 0;
+                while (true) {
+                    Sequence<T> sequence = queue.take();
+                    if (sequence == poisonPill)
+                        break;
+
+                    process(sequence);
+
+                    if (++processed % mergeInterval == 0 || localCounts.size() > maxResidentEntries / numWorkers)
+                        flush();
+                }
+
+                flush();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private void process(Sequence<T> sequence) {
+            if (fetchLabels && sequence.getSequenceLabels() != null) {
+                for (T label : sequence.getSequenceLabels()) {
+                    if (!labels.containsKey(label.getLabel())) {
+                        label.setSpecial(true);
+                        label.markAsLabel(true);
+                        label.setElementFrequency(1);
+                        labels.putIfAbsent(label.getLabel(), label);
+                    }
+                }
+            }
+
+            seen.clear();
+            for (String token : sequence.asLabels()) {
+                if (token == null || token.isEmpty())
+                    continue;
+                if (stopWords != null && stopWords.contains(token))
+                    continue;
+
+                if (localCounts.addTo(token, 1) == 0) {
+                    // VocabWord can be restored from label, everything else has to be kept as is
+                    T element = sequence.getElementByLabel(token);
+                    if (element != null && !(element instanceof VocabWord))
+                        localPrototypes.put(token, element);
+                }
+
+                if (seen.add(token))
+                    localDocCounts.addTo(token, 1);
+            }
+        }
+
+        private void flush() throws IOException {
+            if (localCounts.isEmpty())
+                return;
+
+            mergeShard(localCounts, localDocCounts, localPrototypes);
+            localCounts.clear();
+            localDocCounts.clear();
+            localPrototypes.clear();
+        }
+    }
+
+    private static class RunReader implements Closeable {
+        private final DataInputStream stream;
+        private String label;
+        private long frequency;
+        private long sequences;
+
+        private RunReader(File file) throws IOException {
+            this.stream = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 256 * 1024));
+        }
+
+        private boolean advance() throws IOException {
+            int length;
+            try {
+                length = stream.readInt();
+            } catch (EOFException e) {
+                return false;
+            }
+
+            byte[] bytes = new byte[length];
+            stream.readFully(bytes);
+            label = new String(bytes, StandardCharsets.UTF_8);
+            frequency = stream.readLong();
+            sequences = stream.readLong();
+            return true;
+        }
+
+        private String getLabel() {
+            return label;
+        }
+
+        private long getFrequency() {
+            return frequency;
+        }
+
+        private long getSequences() {
+            return sequences;
+        }
+
+        @Override
+        public void close() throws IOException {
+            stream.close();
+        }
+    }
+}
@@ -36,6 +36,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.threadly.concurrent.PriorityScheduler;
 
+import java.io.File;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -54,6 +55,10 @@ public class VocabConstructor<T extends SequenceElement> {
     private T unk;
     private boolean allowParallelBuilder = true;
     private boolean lockf = false;
+    private boolean useShardedCounting = false;
+    private int shardedWorkers = Math.max(Runtime.getRuntime().availableProcessors() / 2, 2);
+    private long maxResidentEntries = 10000000;
+    private File spillDirectory;
 
     protected static final Logger log = LoggerFactory.getLogger(VocabConstructor.class);
 
@@ -291,7 +296,24 @@ public class VocabConstructor<T extends SequenceElement> {
             AbstractCache<T> tempHolder = new AbstractCache.Builder<T>().build();
 
             int sequences = 0;
-            while (iterator.hasMoreSequences()) {
+            boolean sharded = useShardedCounting && index == null;
+            if (sharded) {
+                /*
+                    Sharded counting: worker threads count into their own maps, and spill to disk if vocab doesn't fit into memory.
+                    Frequencies are exact, so minWordFrequency can be applied during final merge
+                 */
+                ShardedVocabCounter<T> counter = new ShardedVocabCounter<>(shardedWorkers, maxResidentEntries, 1000,
+                                spillDirectory, stopWords, fetchLabels);
+                counter.count(iterator);
+                counter.transferTo(tempHolder, source.getMinWordFrequency());
+
+                seqCount.addAndGet(counter.getNumberOfSequences());
+                parsedCount.addAndGet(counter.getNumberOfElements());
+                log.info("Sequences checked: [{}]; Current vocabulary size: [{}]; Runs spilled: [{}];", seqCount.get(),
+                                tempHolder.numWords(), counter.getNumberOfRuns());
+            }
+
+            while (!sharded && iterator.hasMoreSequences()) {
                 Sequence<T> document = iterator.nextSequence();
 
                 seqCount.incrementAndGet();
@@ -451,6 +473,10 @@ public class VocabConstructor<T extends SequenceElement> {
         private T unk;
         private boolean allowParallelBuilder = true;
         private boolean lockf = false;
+        private boolean useShardedCounting = false;
+        private int shardedWorkers = Math.max(Runtime.getRuntime().availableProcessors() / 2, 2);
+        private long maxResidentEntries = 10000000;
+        private File spillDirectory;
 
         public Builder() {
 
@@ -558,6 +584,59 @@ public class VocabConstructor<T extends SequenceElement> {
             return this;
         }
 
+        /**
+         * This method enables/disables sharded counting: elements are counted by worker threads into their own maps,
+         * and partial counters are spilled to disk once vocabulary doesn't fit into memory. Resulting frequencies are exact,
+         * so scavenger isn't used in this mode.
+         *
+         * PLEASE NOTE: InvertedIndex isn't supported in this mode, so if index is set, default path will be used.
+         *
+         * Default value: disabled
+         *
+         * @param reallyUse
+         * @return
+         */
+        public Builder<T> useShardedCounting(boolean reallyUse) {
+            this.useShardedCounting = reallyUse;
+            return this;
+        }
+
+        /**
+         * This method sets number of counting threads used in sharded mode
+         *
+         * @param numWorkers
+         * @return
+         */
+        public Builder<T> setShardedWorkers(int numWorkers) {
+            this.shardedWorkers = numWorkers;
+            return this;
+        }
+
+        /**
+         * This method sets maximal number of distinct elements kept in memory in sharded mode.
+         * Once this limit is exceeded, low-frequency elements are spilled to disk.
+         *
+         * Default value: 10M
+         *
+         * @param maxEntries
+         * @return
+         */
+        public Builder<T> setMaxResidentEntries(long maxEntries) {
+            this.maxResidentEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * This method sets directory for run files in sharded mode. System temp directory is used by default.
+         *
+         * @param directory
+         * @return
+         */
+        public Builder<T> setSpillDirectory(File directory) {
+            this.spillDirectory = directory;
+            return this;
+        }
+
         public VocabConstructor<T> build() {
             VocabConstructor<T> constructor = new VocabConstructor<>();
             constructor.sources = this.sources;
@@ -571,6 +650,10 @@ public class VocabConstructor<T extends SequenceElement> {
             constructor.unk = this.unk;
             constructor.allowParallelBuilder = this.allowParallelBuilder;
             constructor.lockf = this.lockf;
+            constructor.useShardedCounting = this.useShardedCounting;
+            constructor.shardedWorkers = this.shardedWorkers;
+            constructor.maxResidentEntries = this.maxResidentEntries;
+            constructor.spillDirectory = this.spillDirectory;
 
             return constructor;
         }
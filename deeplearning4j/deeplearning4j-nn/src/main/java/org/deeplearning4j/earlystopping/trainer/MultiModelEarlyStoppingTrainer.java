@@ -0,0 +1,473 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.earlystopping.trainer;
+
+import lombok.NonNull;
+import org.deeplearning4j.earlystopping.EarlyStoppingConfiguration;
+import org.deeplearning4j.earlystopping.EarlyStoppingResult;
+import org.deeplearning4j.earlystopping.listener.EarlyStoppingListener;
+import org.deeplearning4j.earlystopping.scorecalc.ScoreCalculator;
+import org.deeplearning4j.earlystopping.termination.EpochTerminationCondition;
+import org.deeplearning4j.earlystopping.termination.IterationTerminationCondition;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.optimize.api.TrainingListener;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.dataset.AsyncDataSetIterator;
+import org.nd4j.linalg.dataset.AsyncMultiDataSetIterator;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Early stopping trainer for multiple independent models (for example, a hyperparameter sweep), all trained from a
+ * single pass over the training data per epoch.<br>
+ * Each minibatch is read (and preprocessed) once, then handed to one worker thread per model. Each model has its own
+ * {@link EarlyStoppingConfiguration}: termination conditions, score calculation and model saving are per model, and
+ * a model that terminates is simply dropped from subsequent minibatches while the others continue. Training ends when
+ * all models have terminated.<br>
+ * <br>
+ * Notes:<br>
+ * - Each configuration must use its own ScoreCalculator (including any iterator it uses), model saver and termination
+ * condition instances, as these are used concurrently from different threads<br>
+ * - Minibatches are shared (read only) between models, so the training iterator is not used with workspaces<br>
+ * - Early stopping listeners are called from the worker thread of the corresponding model<br>
+ * - Each worker buffers up to {@code queueSize} minibatches, so faster models do not wait for slower ones within an
+ * epoch; models are synchronized only at the end of each epoch
+ *
+ * @param <T> Type of model: {@link MultiLayerNetwork} or {@link ComputationGraph}
+ */
+public class MultiModelEarlyStoppingTrainer<T extends Model> {
+
+    private static final Logger log = LoggerFactory.getLogger(MultiModelEarlyStoppingTrainer.class);
+    private static final int DEFAULT_QUEUE_SIZE = 4;
+
+    private final List<EarlyStoppingConfiguration<T>> esConfigs;
+    private final List<T> models;
+    private final DataSetIterator train;
+    private final MultiDataSetIterator trainMulti;
+    private final int queueSize;
+    private EarlyStoppingListener<T> listener;
+
+    public MultiModelEarlyStoppingTrainer(@NonNull List<EarlyStoppingConfiguration<T>> esConfigs, @NonNull List<T> models,
+                                          @NonNull DataSetIterator train) {
+        this(esConfigs, models, train, null, DEFAULT_QUEUE_SIZE);
+    }
+
+    public MultiModelEarlyStoppingTrainer(@NonNull List<EarlyStoppingConfiguration<T>> esConfigs, @NonNull List<T> models,
+                                          @NonNull MultiDataSetIterator train) {
+        this(esConfigs, models, null, train, DEFAULT_QUEUE_SIZE);
+    }
+
+    /**
+     * @param esConfigs  Early stopping configuration for each model
+     * @param models     Models to train. Must be distinct instances
+     * @param train      Training data (DataSetIterator). Exactly one of train and trainMulti must be non-null
+     * @param trainMulti Training data (MultiDataSetIterator)
+     * @param queueSize  Maximum number of minibatches buffered for each model
+     */
+    public MultiModelEarlyStoppingTrainer(@NonNull List<EarlyStoppingConfiguration<T>> esConfigs, @NonNull List<T> models,
+                                          DataSetIterator train, MultiDataSetIterator trainMulti, int queueSize) {
+        Preconditions.checkArgument(!models.isEmpty(), "No models provided");
+        Preconditions.checkArgument(esConfigs.size() == models.size(), "Number of early stopping configurations (%s) must match the number of models (%s)",
+                esConfigs.size(), models.size());
+        Preconditions.checkArgument((train == null) != (trainMulti == null), "Exactly one of train and trainMulti must be non-null");
+        Preconditions.checkArgument(queueSize > 0, "Queue size must be positive, got %s", queueSize);
+        Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (T m : models) {
+            Preconditions.checkArgument(m instanceof MultiLayerNetwork || m instanceof ComputationGraph,
+                    "Only MultiLayerNetwork and ComputationGraph models are supported, got %s", m.getClass());
+            Preconditions.checkArgument(seen.add(m), "Models must be distinct instances");
+        }
+        seen.clear();
+        for (EarlyStoppingConfiguration<T> c : esConfigs) {
+            Preconditions.checkArgument(c.getScoreCalculatorSupplier() != null || seen.add(c.getScoreCalculator()),
+                    "Each early stopping configuration must use a distinct ScoreCalculator instance");
+        }
+
+        this.esConfigs = esConfigs;
+        this.models = models;
+        this.train = train;
+        this.trainMulti = trainMulti;
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * Set the early stopping listener, used for all models
+     */
+    public void setListener(EarlyStoppingListener<T> listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Conduct early stopping training for all models
+     *
+     * @return Early stopping results, in the same order as the models
+     */
+    public List<EarlyStoppingResult<T>> fit() {
+        List<ModelTrainer> trainers = new ArrayList<>();
+        for (int i = 0; i < models.size(); i++) {
+            trainers.add(new ModelTrainer(i, esConfigs.get(i), models.get(i)));
+        }
+
+        //No workspaces: the same minibatch is used concurrently by all models
+        Iterator<?> iter;
+        if (train != null) {
+            iter = train.asyncSupported() ? new AsyncDataSetIterator(train, queueSize, false) : train;
+        } else {
+            iter = trainMulti.asyncSupported() ? new AsyncMultiDataSetIterator(trainMulti, queueSize, false) : trainMulti;
+        }
+
+        try {
+            for (ModelTrainer t : trainers) {
+                t.start();
+            }
+
+            int epochCount = 0;
+            while (true) {
+                List<ModelTrainer> active = new ArrayList<>();
+                for (ModelTrainer t : trainers) {
+                    if (!t.isDone())
+                        active.add(t);
+                }
+                if (active.isEmpty())
+                    break;
+
+                resetIterator(iter);
+                final int epoch = epochCount;
+                for (ModelTrainer t : active) {
+                    t.submit(() -> t.startEpoch(epoch));
+                }
+
+                while (iter.hasNext()) {
+                    final Object next = iter.next();
+                    boolean any = false;
+                    for (ModelTrainer t : active) {
+                        if (!t.isDone()) {
+                            t.submit(() -> t.fitMinibatch(next));
+                            any = true;
+                        }
+                    }
+                    if (!any)
+                        break;  //All models terminated within this epoch
+                }
+
+                boolean endOfEpoch = !iter.hasNext();
+                CountDownLatch latch = new CountDownLatch(active.size());
+                for (ModelTrainer t : active) {
+                    t.submit(() -> {
+                        try {
+                            t.endEpoch(epoch, endOfEpoch);
+                        } finally {
+                            latch.countDown();
+                        }
+                    });
+                }
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted during early stopping training", e);
+                }
+                epochCount++;
+            }
+        } finally {
+            for (ModelTrainer t : trainers) {
+                t.shutdown();
+            }
+            if (iter instanceof AsyncDataSetIterator) {
+                ((AsyncDataSetIterator) iter).shutdown();
+            } else if (iter instanceof AsyncMultiDataSetIterator) {
+                ((AsyncMultiDataSetIterator) iter).shutdown();
+            }
+        }
+
+        List<EarlyStoppingResult<T>> results = new ArrayList<>();
+        for (ModelTrainer t : trainers) {
+            results.add(t.result);
+        }
+        return results;
+    }
+
+    private void resetIterator(Iterator<?> iter) {
+        if (iter instanceof DataSetIterator) {
+            ((DataSetIterator) iter).reset();
+        } else {
+            ((MultiDataSetIterator) iter).reset();
+        }
+    }
+
+    //Trigger epoch listener methods manually - these won't be triggered due to not calling fit(DataSetIterator) etc
+    private static void triggerEpochListeners(boolean epochStart, Model model, int epochNum) {
+        Collection<TrainingListener> listeners;
+        if (model instanceof MultiLayerNetwork) {
+            MultiLayerNetwork n = ((MultiLayerNetwork) model);
+            listeners = n.getListeners();
+            n.setEpochCount(epochNum);
+        } else {
+            ComputationGraph cg = ((ComputationGraph) model);
+            listeners = cg.getListeners();
+            cg.getConfiguration().setEpochCount(epochNum);
+        }
+
+        if (listeners != null && !listeners.isEmpty()) {
+            for (TrainingListener l : listeners) {
+                if (epochStart) {
+                    l.onEpochStart(model);
+                } else {
+                    l.onEpochEnd(model);
+                }
+            }
+        }
+    }
+
+    /**
+     * Training state for one model. All methods other than submit/shutdown are executed on the model's worker thread
+     */
+    private class ModelTrainer implements Runnable {
+        private final int index;
+        private final EarlyStoppingConfiguration<T> esConfig;
+        private final T model;
+        private final BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(queueSize);
+        private final Thread thread;
+        private final Integer deviceId;
+
+        private final Map<Integer, Double> scoreVsEpoch = new LinkedHashMap<>();
+        private double bestModelScore;
+        private int bestModelEpoch = -1;
+        private int iterCount;
+        private volatile boolean done;
+        private volatile boolean shutdown;
+        private EarlyStoppingResult<T> result;
+
+        private ModelTrainer(int index, EarlyStoppingConfiguration<T> esConfig, T model) {
+            this.index = index;
+            this.esConfig = esConfig;
+            this.model = model;
+            this.deviceId = Nd4j.getAffinityManager().getDeviceForCurrentThread();
+            this.thread = new Thread(this, "MultiModelEarlyStoppingTrainer-" + index);
+            this.thread.setDaemon(true);
+        }
+
+        private void start() {
+            esConfig.validate();
+            if (esConfig.getIterationTerminationConditions() != null) {
+                for (IterationTerminationCondition c : esConfig.getIterationTerminationConditions()) {
+                    c.initialize();
+                }
+            }
+            if (esConfig.getEpochTerminationConditions() != null) {
+                for (EpochTerminationCondition c : esConfig.getEpochTerminationConditions()) {
+                    c.initialize();
+                }
+            }
+            Preconditions.checkNotNull(esConfig.getScoreCalculator(), "Score calculator cannot be null");
+            bestModelScore = esConfig.getScoreCalculator().minimizeScore() ? Double.MAX_VALUE : -Double.MAX_VALUE;
+            if (listener != null) {
+                listener.onStart(esConfig, model);
+            }
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            Nd4j.getAffinityManager().unsafeSetDevice(deviceId);
+            while (!shutdown) {
+                Runnable r;
+                try {
+                    r = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                try {
+                    r.run();
+                } catch (Throwable t) {
+                    //Should not happen: exceptions during fit and scoring are converted to results. Stop this model only
+                    log.error("Unexpected error in early stopping training for model {}", index, t);
+                    finishWithError(t);
+                }
+            }
+        }
+
+        private void submit(Runnable r) {
+            try {
+                queue.put(r);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted during early stopping training", e);
+            }
+        }
+
+        private void shutdown() {
+            shutdown = true;
+            thread.interrupt();
+        }
+
+        private boolean isDone() {
+            return done;
+        }
+
+        private void startEpoch(int epoch) {
+            iterCount = 0;
+            triggerEpochListeners(true, model, epoch);
+        }
+
+        private void fitMinibatch(Object next) {
+            if (done)
+                return;
+            try {
+                if (next instanceof DataSet) {
+                    if (model instanceof MultiLayerNetwork)
+                        ((MultiLayerNetwork) model).fit((DataSet) next);
+                    else
+                        ((ComputationGraph) model).fit((DataSet) next);
+                } else {
+                    if (model instanceof MultiLayerNetwork)
+                        ((MultiLayerNetwork) model).fit((MultiDataSet) next);
+                    else
+                        ((ComputationGraph) model).fit((MultiDataSet) next);
+                }
+            } catch (Exception e) {
+                log.warn("Early stopping training terminated for model {} due to exception at iteration {}", index, iterCount, e);
+                finishWithError(e);
+                return;
+            }
+
+            double lastScore = model.score();
+            for (IterationTerminationCondition c : esConfig.getIterationTerminationConditions()) {
+                if (c.terminate(lastScore)) {
+                    log.info("Hit per iteration termination condition for model {} at iteration {}. Reason: {}", index, iterCount, c);
+                    if (esConfig.isSaveLastModel()) {
+                        try {
+                            esConfig.getModelSaver().saveLatestModel(model, 0.0);
+                        } catch (IOException e) {
+                            throw new RuntimeException("Error saving most recent model", e);
+                        }
+                    }
+                    finish(EarlyStoppingResult.TerminationReason.IterationTerminationCondition, c.toString(), scoreVsEpoch.size());
+                    return;
+                }
+            }
+            iterCount++;
+        }
+
+        private void endEpoch(int epochCount, boolean endOfEpoch) {
+            if (done)
+                return;
+            if (endOfEpoch) {
+                triggerEpochListeners(false, model, epochCount);
+            }
+            log.info("Completed training epoch {} for model {}", epochCount, index);
+
+            if ((epochCount == 0 && esConfig.getEvaluateEveryNEpochs() == 1) || epochCount % esConfig.getEvaluateEveryNEpochs() == 0) {
+                ScoreCalculator<T> sc = esConfig.getScoreCalculator();
+                double score;
+                try {
+                    score = sc.calculateScore(model);
+                } catch (Exception e) {
+                    log.warn("Early stopping training terminated for model {} due to exception during scoring at epoch {}", index, epochCount, e);
+                    finishWithError(e);
+                    return;
+                }
+                scoreVsEpoch.put(epochCount, score);
+
+                boolean invalidScore = Double.isNaN(score) || Double.isInfinite(score);
+                if (invalidScore) {
+                    log.warn("Score is not finite for model {}, epoch {}: score = {}", index, epochCount, score);
+                }
+
+                if ((sc.minimizeScore() && score < bestModelScore) || (!sc.minimizeScore() && score > bestModelScore) || (bestModelEpoch == -1 && invalidScore)) {
+                    log.info("New best model {}: score = {}, epoch = {}", index, score, epochCount);
+                    bestModelScore = score;
+                    bestModelEpoch = epochCount;
+                    try {
+                        esConfig.getModelSaver().saveBestModel(model, score);
+                    } catch (IOException e) {
+                        throw new RuntimeException("Error saving best model", e);
+                    }
+                } else {
+                    log.info("Score for model {} at epoch {}: {}", index, epochCount, score);
+                }
+
+                if (esConfig.isSaveLastModel()) {
+                    try {
+                        esConfig.getModelSaver().saveLatestModel(model, score);
+                    } catch (IOException e) {
+                        throw new RuntimeException("Error saving most recent model", e);
+                    }
+                }
+
+                if (listener != null) {
+                    listener.onEpoch(epochCount, score, esConfig, model);
+                }
+
+                for (EpochTerminationCondition c : esConfig.getEpochTerminationConditions()) {
+                    if (c.terminate(epochCount, score, sc.minimizeScore())) {
+                        log.info("Hit epoch termination condition for model {} at epoch {}. Details: {}", index, epochCount, c);
+                        finish(EarlyStoppingResult.TerminationReason.EpochTerminationCondition, c.toString(), epochCount + 1);
+                        return;
+                    }
+                }
+            }
+        }
+
+        private void finishWithError(Throwable t) {
+            if (done)
+                return;
+            finish(EarlyStoppingResult.TerminationReason.Error, t.toString(), scoreVsEpoch.size());
+        }
+
+        private void finish(EarlyStoppingResult.TerminationReason reason, String details, int totalEpochs) {
+            T bestModel;
+            try {
+                bestModel = esConfig.getModelSaver().getBestModel();
+            } catch (IOException e) {
+                log.warn("Unable to load best model for model {}", index, e);
+                bestModel = null;
+            }
+            result = new EarlyStoppingResult<>(reason, details, scoreVsEpoch, bestModelEpoch, bestModelScore, totalEpochs, bestModel);
+            done = true;
+            if (listener != null) {
+                listener.onCompletion(result);
+            }
+        }
+    }
+}
@@ -41,7 +41,16 @@ public class PrecisionRecallCurve extends org.nd4j.evaluation.curves.PrecisionRe
                     @JsonProperty("precision") double[] precision, @JsonProperty("recall") double[] recall,
                     @JsonProperty("tpCount") int[] tpCount, @JsonProperty("fpCount") int[] fpCount,
                     @JsonProperty("fnCount") int[] fnCount, @JsonProperty("totalCount") int totalCount) {
-        super(threshold, precision, recall, tpCount, fpCount, fnCount, totalCount);
+        super(threshold, precision, recall, toLong(tpCount), toLong(fpCount), toLong(fnCount), totalCount);
+    }
+
+    private static long[] toLong(int[] counts) {
+        if (counts == null)
+            return null;
+        long[] out = new long[counts.length];
+        for (int i = 0; i < counts.length; i++)
+            out[i] = counts[i];
+        return out;
     }
 
     public static class Point extends org.nd4j.evaluation.curves.PrecisionRecallCurve.Point{
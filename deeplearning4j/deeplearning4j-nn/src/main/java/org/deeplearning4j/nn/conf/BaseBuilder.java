@@ -49,6 +49,7 @@ public abstract class BaseBuilder {
     protected boolean validateTbpttConfig = true;
     protected DataType dataType;
     protected boolean overrideNinUponBuild = true;
+    protected int activationCheckpointInterval = 0;
 
 
     /**
@@ -213,6 +214,27 @@ public abstract class BaseBuilder {
         return (T) this;
     }
 
+    /**
+     * Enable activation checkpointing (recomputation) during training, to reduce the memory required for the layer
+     * activations. Layers are split into consecutive segments of the specified number of layers: only the output
+     * of each segment is retained in memory during the forward pass, and the activations inside each segment are
+     * recomputed (one segment at a time) from that retained output during backpropagation. The final segment (which
+     * contains the output layer) is never recomputed.<br>
+     * This trades an additional forward pass through most of the network for a reduction in activation memory from
+     * O(numLayers) to approximately O(numLayers / interval + interval). A value of 0 or 1 (default: 0) disables
+     * activation checkpointing.<br>
+     * Note: activation checkpointing is not used for truncated BPTT. Training listeners will see null for the
+     * activations that are recomputed.
+     *
+     * @param interval Number of layers per checkpointed segment. 0 or 1 to disable
+     */
+    public <T extends BaseBuilder> T activationCheckpointInterval(int interval) {
+        if (interval < 0)
+            throw new IllegalArgumentException("Activation checkpoint interval must be >= 0, got " + interval);
+        this.activationCheckpointInterval = interval;
+        return (T) this;
+    }
+
     public abstract <T> T build();
 
 
@@ -40,6 +40,7 @@ import org.deeplearning4j.nn.conf.serde.JsonMappers;
 import org.deeplearning4j.nn.conf.serde.MultiLayerConfigurationDeserializer;
 import org.deeplearning4j.nn.weights.IWeightInit;
 import org.deeplearning4j.nn.weights.WeightInit;
+import org.deeplearning4j.util.ActivationCheckpointUtil;
 import org.deeplearning4j.util.OutputLayerUtil;
 import org.nd4j.common.base.Preconditions;
 import org.nd4j.linalg.activations.Activation;
@@ -85,6 +86,9 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
 
     protected boolean validateOutputLayerConfig = true;     //Default for 1.0.0-beta3 and earlier nets
 
+    //Number of vertices (in topological order) per activation checkpointing segment. 0 or 1: disabled
+    protected int activationCheckpointInterval = 0;
+
 
     /**
      * List of inputs to the network, by name
@@ -389,6 +393,7 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
         conf.defaultConfiguration.cacheMode = this.cacheMode;
         conf.validateOutputLayerConfig = this.validateOutputLayerConfig;
         conf.dataType = this.dataType;
+        conf.activationCheckpointInterval = this.activationCheckpointInterval;
 
         return conf;
     }
@@ -758,8 +763,16 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             memoryReportMap.put(s, mr);
         }
 
-        return new NetworkMemoryReport(memoryReportMap, ComputationGraphConfiguration.class, "ComputationGraph",
-                inputTypes);
+        NetworkMemoryReport report = new NetworkMemoryReport(memoryReportMap, ComputationGraphConfiguration.class,
+                "ComputationGraph", inputTypes);
+        if (backpropType != BackpropType.TruncatedBPTT) {
+            List<List<String>> segments = ActivationCheckpointUtil.graphRecomputedSegments(topologicalOrdering,
+                    vertexInputs, networkInputs, networkOutputs, activationCheckpointInterval);
+            if (!segments.isEmpty()) {
+                report.setRecomputedSegments(segments);
+            }
+        }
+        return report;
     }
 
     @Data
@@ -788,6 +801,7 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
         protected boolean allowNoOutput = false;
         protected boolean validateOutputConfig = true;
         protected boolean validateTbpttConfig = true;
+        protected int activationCheckpointInterval = 0;
 
         protected String lastAdded = null;
 
@@ -807,6 +821,7 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             this.backpropType = clonedConf.getBackpropType();
             this.tbpttFwdLength = clonedConf.getTbpttFwdLength();
             this.tbpttBackLength = clonedConf.getTbpttBackLength();
+            this.activationCheckpointInterval = clonedConf.getActivationCheckpointInterval();
             this.globalConfiguration = globalConfiguration;
             //this.getGlobalConfiguration().setSeed(clonedConf.getDefaultConfiguration().getSeed());
         }
@@ -1198,6 +1213,23 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             return this;
         }
 
+        /**
+         * Enable activation checkpointing (recomputation) during training, to reduce the memory required for the
+         * activations. Vertices are split into consecutive segments of the specified size, in topological order: only
+         * the activations of each segment that are used outside of it (by later segments or by output layers) are
+         * retained during the forward pass. The remaining activations are recomputed, one segment at a time, during
+         * backpropagation. The final segment is never recomputed.<br>
+         * A value of 0 or 1 (default: 0) disables activation checkpointing. Activation checkpointing is not used for
+         * truncated BPTT. Training listeners will not see the activations that are recomputed.
+         *
+         * @param interval Number of vertices per checkpointed segment. 0 or 1 to disable
+         */
+        public GraphBuilder activationCheckpointInterval(int interval) {
+            Preconditions.checkArgument(interval >= 0, "Activation checkpoint interval must be >= 0, got %s", interval);
+            this.activationCheckpointInterval = interval;
+            return this;
+        }
+
         /**
          * For the (perhaps partially constructed) network configuration, return a map of activation sizes for each
          * layer and vertex in the graph.<br>
@@ -1256,6 +1288,7 @@ public class ComputationGraphConfiguration implements Serializable, Cloneable {
             conf.cacheMode = globalConfiguration.cacheMode;
             conf.validateOutputLayerConfig = validateOutputConfig;
             conf.dataType = globalConfiguration.dataType;
+            conf.activationCheckpointInterval = activationCheckpointInterval;
 
             conf.defaultConfiguration = globalConfiguration.build();
 
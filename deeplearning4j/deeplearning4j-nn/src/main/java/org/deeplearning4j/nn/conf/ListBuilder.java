@@ -80,6 +80,12 @@ public class ListBuilder extends BaseBuilder {
 
 
 
+    @Override
+    public ListBuilder activationCheckpointInterval(int interval) {
+        super.activationCheckpointInterval(interval);
+        return this;
+    }
+
     @Override
     public ListBuilder tBPTTLength(int bpttLength) {
         super.tBPTTLength(bpttLength);
@@ -195,6 +201,7 @@ public class ListBuilder extends BaseBuilder {
                 .trainingWorkspaceMode(wsmTrain).cacheMode(globalConfig.cacheMode)
                 .inferenceWorkspaceMode(wsmTest).confs(list).validateOutputLayerConfig(validateOutputConfig)
                 .overrideNinUponBuild(overrideNinUponBuild)
+                .activationCheckpointInterval(activationCheckpointInterval)
                 .dataType(globalConfig.dataType);
         return builder.build();
     }
@@ -36,6 +36,7 @@ import org.deeplearning4j.nn.conf.serde.JsonMappers;
 import org.deeplearning4j.nn.conf.serde.MultiLayerConfigurationDeserializer;
 import org.deeplearning4j.nn.weights.IWeightInit;
 import org.deeplearning4j.nn.weights.WeightInit;
+import org.deeplearning4j.util.ActivationCheckpointUtil;
 import org.deeplearning4j.util.OutputLayerUtil;
 import org.nd4j.linalg.activations.Activation;
 import org.nd4j.linalg.activations.IActivation;
@@ -86,6 +87,9 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
     @Setter
     protected DataType dataType = DataType.FLOAT;   //Default to float for deserialization of beta3 and earlier nets
 
+    //Number of layers per activation checkpointing segment. 0 or 1: disabled
+    protected int activationCheckpointInterval = 0;
+
     //Counter for the number of parameter updates so far
     // This is important for learning rate schedules, for example, and is stored here to ensure it is persisted
     // for Spark and model serialization
@@ -444,6 +448,7 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
             clone.cacheMode = this.cacheMode;
             clone.validateOutputLayerConfig = this.validateOutputLayerConfig;
             clone.dataType = this.dataType;
+            clone.activationCheckpointInterval = this.activationCheckpointInterval;
 
             return clone;
 
@@ -486,7 +491,22 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
             inputType = confs.get(i).getLayer().getOutputType(i, inputType);
         }
 
-        return new NetworkMemoryReport(memoryReportMap, MultiLayerConfiguration.class, "MultiLayerNetwork", inputType);
+        NetworkMemoryReport report = new NetworkMemoryReport(memoryReportMap, MultiLayerConfiguration.class, "MultiLayerNetwork", inputType);
+        if (backpropType != BackpropType.TruncatedBPTT) {
+            //Activation checkpointing: the training forward pass excludes the output layer. The last layer of each
+            // recomputed segment is retained, as the input to the next segment
+            int numSegments = ActivationCheckpointUtil.numRecomputedSegments(nLayers - 1, activationCheckpointInterval);
+            if (numSegments > 0 && memoryReportMap.size() == nLayers) {
+                List<String> names = new ArrayList<>(memoryReportMap.keySet());
+                List<List<String>> segments = new ArrayList<>();
+                for (int s = 0; s < numSegments; s++) {
+                    int start = s * activationCheckpointInterval;
+                    segments.add(new ArrayList<>(names.subList(start, start + activationCheckpointInterval - 1)));
+                }
+                report.setRecomputedSegments(segments);
+            }
+        }
+        return report;
     }
 
     /**
@@ -620,6 +640,7 @@ public class MultiLayerConfiguration implements Serializable, Cloneable {
             conf.inferenceWorkspaceMode = inferenceWorkspaceMode;
             conf.cacheMode = cacheMode;
             conf.dataType = dataType;
+            conf.activationCheckpointInterval = activationCheckpointInterval;
 
             Nd4j.getRandom().setSeed(conf.getConf(0).getSeed());
 
@@ -0,0 +1,224 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.nn.conf.layers.misc;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.deeplearning4j.nn.api.layers.LayerConstraint;
+import org.deeplearning4j.nn.conf.InputPreProcessor;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.Layer;
+import org.deeplearning4j.nn.conf.layers.NoParamLayer;
+import org.deeplearning4j.nn.conf.memory.LayerMemoryReport;
+import org.deeplearning4j.optimize.api.TrainingListener;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Inference-only, post-training quantized version of a {@link org.deeplearning4j.nn.conf.layers.DenseLayer} or
+ * {@link org.deeplearning4j.nn.conf.layers.ConvolutionLayer}.<br>
+ * The weights are stored as an INT8 array with one (symmetric) scale per output channel, such that
+ * {@code W ~= weights * weightScales}; the bias (if any) is stored unquantized. The quantized arrays are not part of
+ * the configuration (or of the network's floating point parameters): they are held by the layer implementation
+ * ({@link org.deeplearning4j.nn.layers.QuantizedLayer#setQuantizedParams(INDArray, INDArray, INDArray)}) and saved in
+ * binary form by {@link org.deeplearning4j.util.ModelSerializer}. A quantized layer has no trainable parameters and
+ * cannot be fit.<br>
+ * Usually created using {@link org.deeplearning4j.util.QuantizationUtil} rather than directly.
+ *
+ * @see Execution
+ */
+@Data
+@ToString(callSuper = true)
+@EqualsAndHashCode(callSuper = false)
+public class QuantizedLayer extends NoParamLayer {
+
+    /**
+     * How the quantized layer is executed
+     */
+    public enum Execution {
+        /**
+         * Weights are dequantized to the network data type once, on the first forward pass, and the underlying layer
+         * implementation is used as normal. Fastest on CPUs with BLAS support, but the dequantized copy needs as much
+         * memory at runtime as the original weights.
+         */
+        DEQUANTIZE,
+        /**
+         * Inputs are quantized to INT8 using the calibrated input scale, and the matrix multiplication is performed
+         * with integer accumulation, reproducing the numerics of an integer-only deployment. For convolution layers,
+         * inputs are quantized but the convolution itself runs on dequantized values. Falls back to
+         * {@link #DEQUANTIZE} if no input scale was calibrated.
+         */
+        INTEGER
+    }
+
+    /**
+     * The original (float) layer configuration
+     */
+    protected Layer layer;
+    /**
+     * Dimension of the weights array corresponding to output channels, along which weightScales is applied
+     */
+    protected int channelDimension;
+    /**
+     * Scale of the INT8 input activations, from calibration. 0 if not calibrated
+     */
+    protected double inputScale;
+    protected Execution execution = Execution.DEQUANTIZE;
+
+    private QuantizedLayer() {
+        //No-arg constructor for Jackson JSON
+    }
+
+    private QuantizedLayer(Builder builder) {
+        super(builder);
+        this.layer = builder.layer;
+        this.channelDimension = builder.channelDimension;
+        this.inputScale = builder.inputScale;
+        this.execution = builder.execution;
+    }
+
+    public NeuralNetConfiguration getInnerConf(NeuralNetConfiguration conf) {
+        NeuralNetConfiguration nnc = conf.clone();
+        nnc.setLayer(layer);
+        return nnc;
+    }
+
+    @Override
+    public Layer clone() {
+        QuantizedLayer l = (QuantizedLayer) super.clone();
+        l.layer = layer.clone();
+        return l;
+    }
+
+    @Override
+    public org.deeplearning4j.nn.api.Layer instantiate(NeuralNetConfiguration conf,
+                                                       Collection<TrainingListener> trainingListeners, int layerIndex, INDArray layerParamsView,
+                                                       boolean initializeParams, DataType networkDataType) {
+        org.deeplearning4j.nn.layers.QuantizedLayer ret = new org.deeplearning4j.nn.layers.QuantizedLayer(conf, networkDataType);
+        ret.setListeners(trainingListeners);
+        ret.setIndex(layerIndex);
+        ret.setParamsViewArray(layerParamsView);
+        ret.setParamTable(initializer().init(conf, layerParamsView, initializeParams));
+        ret.setConf(conf);
+        return ret;
+    }
+
+    @Override
+    public InputType getOutputType(int layerIndex, InputType inputType) {
+        return layer.getOutputType(layerIndex, inputType);
+    }
+
+    @Override
+    public void setNIn(InputType inputType, boolean override) {
+        layer.setNIn(inputType, override);
+    }
+
+    @Override
+    public InputPreProcessor getPreProcessorForInputType(InputType inputType) {
+        return layer.getPreProcessorForInputType(inputType);
+    }
+
+    @Override
+    public boolean isPretrainParam(String paramName) {
+        return false;
+    }
+
+    @Override
+    public LayerMemoryReport getMemoryReport(InputType inputType) {
+        //No parameters; the quantized weights and their dequantized (or widened) copy are layer state
+        LayerMemoryReport r = layer.getMemoryReport(inputType);
+        return new LayerMemoryReport.Builder(layerName, QuantizedLayer.class, r.getInputType(), r.getOutputType())
+                .standardMemory(0, 0)
+                .workingMemory(r.getWorkingMemoryFixedInference(), r.getWorkingMemoryVariableInference(),
+                        r.getWorkingMemoryFixedTrain(), r.getWorkingMemoryVariableTrain())
+                .cacheMemory(r.getCacheModeMemFixed(), r.getCacheModeMemVariablePerEx())
+                .build();
+    }
+
+    @Override
+    public void setLayerName(String layerName) {
+        super.setLayerName(layerName);
+        if (layer != null)
+            layer.setLayerName(layerName);
+    }
+
+    @Override
+    public void setConstraints(List<LayerConstraint> constraints) {
+        this.constraints = constraints;
+        if (layer != null)
+            layer.setConstraints(constraints);
+    }
+
+    @Getter
+    @Setter
+    public static class Builder extends Layer.Builder<Builder> {
+
+        private Layer layer;
+        private int channelDimension;
+        private double inputScale;
+        private Execution execution = Execution.DEQUANTIZE;
+
+        /**
+         * @param layer The original layer configuration. Must be a DenseLayer or ConvolutionLayer
+         */
+        public Builder layer(Layer layer) {
+            this.setLayer(layer);
+            return this;
+        }
+
+        /**
+         * @param channelDimension Dimension of the weights array corresponding to output channels
+         */
+        public Builder channelDimension(int channelDimension) {
+            this.setChannelDimension(channelDimension);
+            return this;
+        }
+
+        /**
+         * @param inputScale Scale for quantizing the layer input activations to INT8, usually from calibration.
+         *                   Only used for {@link Execution#INTEGER}
+         */
+        public Builder inputScale(double inputScale) {
+            this.setInputScale(inputScale);
+            return this;
+        }
+
+        public Builder execution(Execution execution) {
+            this.setExecution(execution);
+            return this;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public QuantizedLayer build() {
+            Preconditions.checkState(layer != null, "Original layer configuration must be set");
+            return new QuantizedLayer(this);
+        }
+    }
+}
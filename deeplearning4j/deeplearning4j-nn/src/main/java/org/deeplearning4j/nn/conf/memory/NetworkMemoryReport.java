@@ -23,6 +23,7 @@ package org.deeplearning4j.nn.conf.memory;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import lombok.NonNull;
+import lombok.Setter;
 import org.deeplearning4j.nn.conf.CacheMode;
 import org.deeplearning4j.nn.conf.inputs.InputType;
 import org.nd4j.linalg.api.buffer.DataBuffer;
@@ -31,8 +32,11 @@ import org.nd4j.shade.jackson.annotation.JsonProperty;
 
 import java.text.DecimalFormat;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @Getter
 @EqualsAndHashCode(callSuper = true)
@@ -44,6 +48,13 @@ public class NetworkMemoryReport extends MemoryReport {
     private final Class<?> modelClass;
     private final String modelName;
     private final InputType[] networkInputTypes;
+    /**
+     * Activation checkpointing: for each recomputed segment, the names of the layers/vertices whose activations are
+     * not retained for the full forward and backward pass. At most one segment is in memory at any time during
+     * training. Null or empty if activation checkpointing is not used
+     */
+    @Setter
+    private List<List<String>> recomputedSegments;
 
     public NetworkMemoryReport(
                     @NonNull @JsonProperty("layerAndVertexReports") Map<String, MemoryReport> layerAndVertexReports,
@@ -74,20 +85,21 @@ public class NetworkMemoryReport extends MemoryReport {
         //As per MemoryReport javadoc: we need
         // sum_layers (StdFixed + minibatch * StdVariable) + sum_layers (CacheFixed + minibatch * CacheVariable)
         // + max_layers ( WorkingMemoryFixed + minibatch * WorkingMemoryVariable)
+        //With activation checkpointing, activations and cache memory for recomputed segments is only required for
+        // one segment at a time - see getMemoryBytes
 
         long totalBytes = 0;
+        for (MemoryType mt : MemoryType.values()) {
+            if (mt == MemoryType.WORKING_MEMORY_FIXED || mt == MemoryType.WORKING_MEMORY_VARIABLE) {
+                continue;
+            }
+            totalBytes += getMemoryBytes(mt, minibatchSize, memoryUseMode, cacheMode, dataType);
+        }
+
         long maxWorking = 0;
         long maxWorkingFixed = 0;
         long maxWorkingVariable = 0;
         for (MemoryReport lmr : layerAndVertexReports.values()) {
-
-            for (MemoryType mt : MemoryType.values()) {
-                if (mt == MemoryType.WORKING_MEMORY_FIXED || mt == MemoryType.WORKING_MEMORY_VARIABLE) {
-                    continue;
-                }
-                totalBytes += lmr.getMemoryBytes(mt, minibatchSize, memoryUseMode, cacheMode, dataType);
-            }
-
             long workFixed = lmr.getMemoryBytes(MemoryType.WORKING_MEMORY_FIXED, minibatchSize, memoryUseMode,
                             cacheMode, dataType);
             long workVar = lmr.getMemoryBytes(MemoryType.WORKING_MEMORY_VARIABLE, minibatchSize, memoryUseMode,
@@ -107,6 +119,30 @@ public class NetworkMemoryReport extends MemoryReport {
     @Override
     public long getMemoryBytes(MemoryType memoryType, int minibatchSize, MemoryUseMode memoryUseMode,
                     CacheMode cacheMode, DataType dataType) {
+        if (isRecomputed(memoryType, memoryUseMode)) {
+            //Activation checkpointing: only one recomputed segment is held in memory at any time
+            Set<String> recomputed = new HashSet<>();
+            long maxSegmentBytes = 0;
+            for (List<String> segment : recomputedSegments) {
+                long segmentBytes = 0;
+                for (String s : segment) {
+                    MemoryReport r = layerAndVertexReports.get(s);
+                    if (r != null && recomputed.add(s)) {
+                        segmentBytes += r.getMemoryBytes(memoryType, minibatchSize, memoryUseMode, cacheMode, dataType);
+                    }
+                }
+                maxSegmentBytes = Math.max(maxSegmentBytes, segmentBytes);
+            }
+
+            long retainedBytes = 0;
+            for (Map.Entry<String, MemoryReport> e : layerAndVertexReports.entrySet()) {
+                if (!recomputed.contains(e.getKey())) {
+                    retainedBytes += e.getValue().getMemoryBytes(memoryType, minibatchSize, memoryUseMode, cacheMode, dataType);
+                }
+            }
+            return retainedBytes + maxSegmentBytes;
+        }
+
         long totalBytes = 0;
         for (MemoryReport lmr : layerAndVertexReports.values()) {
 
@@ -122,6 +158,14 @@ public class NetworkMemoryReport extends MemoryReport {
         return totalBytes;
     }
 
+    private boolean isRecomputed(MemoryType memoryType, MemoryUseMode memoryUseMode) {
+        if (memoryUseMode != MemoryUseMode.TRAINING || recomputedSegments == null || recomputedSegments.isEmpty()) {
+            return false;
+        }
+        return memoryType == MemoryType.ACTIVATIONS || memoryType == MemoryType.CACHED_MEMORY_FIXED
+                        || memoryType == MemoryType.CACHED_MEMORY_VARIABLE;
+    }
+
     @Override
     public String toString() {
 
@@ -155,6 +199,10 @@ public class NetworkMemoryReport extends MemoryReport {
                         .append("  # Layers:                           ").append(layerAndVertexReports.size())
                         .append("\n").append("  Layer Types:                        ").append(sbLayerCounts)
                         .append("\n");
+        if (recomputedSegments != null && !recomputedSegments.isEmpty()) {
+            sb.append("  Activation Checkpointing:           ").append(recomputedSegments.size())
+                            .append(" recomputed segments\n");
+        }
 
         appendFixedPlusVariable(sb, "  Inference Memory (FP32)             ", fixedMemBytes, perEx);
         appendFixedPlusVariable(sb, "  Training Memory (FP32):             ", fixedMemBytesTrain, perExTrain);
@@ -63,6 +63,7 @@ import org.deeplearning4j.optimize.api.ConvexOptimizer;
 import org.deeplearning4j.optimize.api.TrainingListener;
 import org.nd4j.common.base.Preconditions;
 import org.nd4j.evaluation.IEvaluation;
+import org.nd4j.evaluation.ParallelEvaluation;
 import org.nd4j.evaluation.classification.Evaluation;
 import org.nd4j.evaluation.classification.ROC;
 import org.nd4j.evaluation.classification.ROCMultiClass;
@@ -139,6 +140,18 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
      */
     protected static final String WS_RNN_LOOP_WORKING_MEM = "WS_RNN_LOOP_WORKING_MEM";
 
+    /**
+     * Workspace for the activations of one segment of vertices when activation checkpointing is enabled. Opened and
+     * closed once per recomputed segment, in both the forward pass and in backprop
+     */
+    protected static final String WS_CHECKPOINT_SEGMENT = "WS_CHECKPOINT_SEGMENT";
+
+    //Activation checkpointing state from the last training forward pass - consumed by calcBackpropGradients
+    protected transient CheckpointState checkpointState;
+    //Activation checkpointing: vertices (by index) whose activations are recomputed, for the interval below
+    protected transient boolean[] checkpointRecomputed;
+    protected transient int checkpointRecomputedInterval;
+
     /**
      * Workspace for output methods that use OutputAdapter
      */
@@ -1421,6 +1434,9 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                 }
             }
 
+        } finally {
+            //Normally already consumed by calcBackpropGradients, but not if the forward pass or a listener threw an exception
+            checkpointState = null;
         }
 
         for(GraphVertex gv : vertices) {
@@ -1922,6 +1938,8 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
 
         setInputs(features);
         setLayerMaskArrays(fMask, lMask);
+        //Not followed by calcBackpropGradients: checkpointed activations from an earlier forward pass are no longer valid
+        checkpointState = null;
 
         //Verify that no workspace is open externally
         WorkspaceUtils.assertNoWorkspacesOpen("Expected no workspace active before call to ffToLayerActivationsDetached", true);
@@ -2121,81 +2139,138 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         } else {
             stopIndex = topologicalOrder.length - 1;
         }
-        for (int i = 0; i <= stopIndex; i++) {
-            GraphVertex current = vertices[topologicalOrder[i]];
-            String vName = current.getVertexName();
-            int vIdx = current.getVertexIndex();
 
-            if(traceLog) {
-                log.trace("About forward pass: {} (\"{}\") - {}", i, vName, current.getClass().getSimpleName());
-            }
+        //Activation checkpointing: vertices in recomputed segments place their activations in a separate workspace
+        // that is closed at the end of each segment. Only activations used outside of their segment are retained (in
+        // WS_ALL_LAYERS_ACT); the rest are recomputed in calcBackpropGradients
+        checkpointState = null;
+        int cpInterval = configuration.getActivationCheckpointInterval();
+        int numSegments = 0;
+        if (train && fwdPassType == FwdPassType.STANDARD && !clearInputs && stopIndex == topologicalOrder.length - 1) {
+            numSegments = ActivationCheckpointUtil.numRecomputedSegments(topologicalOrder.length, cpInterval);
+        }
+        int recomputedEnd = numSegments * cpInterval;
+        LayerWorkspaceMgr segmentMgr = null;
+        if (numSegments > 0) {
+            checkpointState = new CheckpointState(cpInterval, numSegments, checkpointRecomputedVertices(cpInterval),
+                    excludeIdxs, fMask, lMask);
+            segmentMgr = wsm == WorkspaceMode.NONE ? workspaceMgr : checkpointSegmentWorkspaceMgr(input[0]);
+        }
+        MemoryWorkspace wsSegment = null;
 
-            if(excludeIdxs != null && ArrayUtils.contains(excludeIdxs, vIdx)) {
-                continue;
-            }
+        try {
+            for (int i = 0; i <= stopIndex; i++) {
+                GraphVertex current = vertices[topologicalOrder[i]];
+                String vName = current.getVertexName();
+                int vIdx = current.getVertexIndex();
 
+                if (checkpointState != null && i % cpInterval == 0) {
+                    if (wsSegment != null) {
+                        endCheckpointSegment(wsSegment, i / cpInterval - 1, wsm == WorkspaceMode.NONE);
+                        wsSegment = null;
+                    }
+                    if (i < recomputedEnd) {
+                        checkpointState.startSegment(i / cpInterval);
+                        wsSegment = segmentMgr.notifyScopeEntered(ArrayType.ACTIVATIONS);
+                    }
+                }
 
-            VertexIndices[] inputsTo = current.getOutputVertices();
+                if(traceLog) {
+                    log.trace("About forward pass: {} (\"{}\") - {}", i, vName, current.getClass().getSimpleName());
+                }
 
-            try(MemoryWorkspace wsFFWorking = workspaceMgr.notifyScopeEntered(ArrayType.FF_WORKING_MEM)) {
+                if(excludeIdxs != null && ArrayUtils.contains(excludeIdxs, vIdx)) {
+                    continue;
+                }
 
-                INDArray out;
-                if (current.isInputVertex()) {
-                    out = inputs[vIdx];
-                } else {
-                    if (fwdPassType == FwdPassType.STANDARD) {
-                        out = current.doForward(train, workspaceMgr);
-                    } else if (fwdPassType == FwdPassType.RNN_ACTIVATE_WITH_STORED_STATE) {
-                        if (current.hasLayer()) {
-                            Layer l = current.getLayer();
-                            if (l instanceof RecurrentLayer) {
-                                out = ((RecurrentLayer) l).rnnActivateUsingStoredState(
-                                        current.getInputs()[0], train,
-                                        storeLastForTBPTT, workspaceMgr);
-                            } else if (l instanceof org.deeplearning4j.nn.layers.wrapper.BaseWrapperLayer &&
-                                    ((org.deeplearning4j.nn.layers.wrapper.BaseWrapperLayer) l).getUnderlying() instanceof RecurrentLayer) {
-                                RecurrentLayer rl = (RecurrentLayer) ((org.deeplearning4j.nn.layers.wrapper.BaseWrapperLayer) l).getUnderlying();
-                                out = rl.rnnActivateUsingStoredState(current.getInputs()[0], train, storeLastForTBPTT, workspaceMgr);
-                            } else if (l instanceof MultiLayerNetwork) {
-                                List<INDArray> temp = ((MultiLayerNetwork) l).rnnActivateUsingStoredState(
-                                        current.getInputs()[0], train, storeLastForTBPTT);
-                                out = temp.get(temp.size() - 1);
+
+                VertexIndices[] inputsTo = current.getOutputVertices();
+                LayerWorkspaceMgr mgr = i < recomputedEnd ? segmentMgr : workspaceMgr;
+
+                try(MemoryWorkspace wsFFWorking = workspaceMgr.notifyScopeEntered(ArrayType.FF_WORKING_MEM)) {
+
+                    INDArray out;
+                    if (current.isInputVertex()) {
+                        out = inputs[vIdx];
+                    } else {
+                        if (fwdPassType == FwdPassType.STANDARD) {
+                            out = current.doForward(train, mgr);
+                        } else if (fwdPassType == FwdPassType.RNN_ACTIVATE_WITH_STORED_STATE) {
+                            if (current.hasLayer()) {
+                                Layer l = current.getLayer();
+                                if (l instanceof RecurrentLayer) {
+                                    out = ((RecurrentLayer) l).rnnActivateUsingStoredState(
+                                            current.getInputs()[0], train,
+                                            storeLastForTBPTT, workspaceMgr);
+                                } else if (l instanceof org.deeplearning4j.nn.layers.wrapper.BaseWrapperLayer &&
+                                        ((org.deeplearning4j.nn.layers.wrapper.BaseWrapperLayer) l).getUnderlying() instanceof RecurrentLayer) {
+                                    RecurrentLayer rl = (RecurrentLayer) ((org.deeplearning4j.nn.layers.wrapper.BaseWrapperLayer) l).getUnderlying();
+                                    out = rl.rnnActivateUsingStoredState(current.getInputs()[0], train, storeLastForTBPTT, workspaceMgr);
+                                } else if (l instanceof MultiLayerNetwork) {
+                                    List<INDArray> temp = ((MultiLayerNetwork) l).rnnActivateUsingStoredState(
+                                            current.getInputs()[0], train, storeLastForTBPTT);
+                                    out = temp.get(temp.size() - 1);
+                                } else {
+                                    //non-recurrent layer
+                                    out = current.doForward(train, workspaceMgr);
+                                }
                             } else {
-                                //non-recurrent layer
                                 out = current.doForward(train, workspaceMgr);
                             }
                         } else {
-                            out = current.doForward(train, workspaceMgr);
+                            throw new IllegalStateException("FwdPassType not supported for this method: " + fwdPassType);
                         }
-                    } else {
-                        throw new IllegalStateException("FwdPassType not supported for this method: " + fwdPassType);
-                    }
 
-                    validateArrayWorkspaces(workspaceMgr, out, ArrayType.ACTIVATIONS, vName, false, "Feed forward (inference)");
-                }
+                        validateArrayWorkspaces(mgr, out, ArrayType.ACTIVATIONS, vName, false, "Feed forward (inference)");
+                    }
 
-                activations.put(current.getVertexName(), out);
+                    if (i < recomputedEnd) {
+                        if (!checkpointState.recomputed[vIdx]) {
+                            //Used outside of this segment: retain
+                            if (!current.isInputVertex()) {
+                                out = workspaceMgr.leverageTo(ArrayType.ACTIVATIONS, out);
+                            }
+                            checkpointState.retained[vIdx] = out;
+                            activations.put(current.getVertexName(), out);
+                        }
+                    } else {
+                        activations.put(current.getVertexName(), out);
+                    }
 
-                if (inputsTo != null) {
-                    //Can be null for output layers
-                    for (VertexIndices v : inputsTo) {
-                        //Note that we don't have to do anything special here: the activations are always detached in
-                        // this method
-                        int inputToIndex = v.getVertexIndex();
-                        int vIdxEdge = v.getVertexEdgeNumber();
-                        vertices[inputToIndex].setInput(vIdxEdge, out, workspaceMgr);
+                    if (inputsTo != null) {
+                        //Can be null for output layers
+                        for (VertexIndices v : inputsTo) {
+                            //Note that we don't have to do anything special here: the activations are always detached in
+                            // this method
+                            int inputToIndex = v.getVertexIndex();
+                            int vIdxEdge = v.getVertexEdgeNumber();
+                            LayerWorkspaceMgr inputMgr = checkpointState != null
+                                    && checkpointState.isInRecomputedSegment(inputToIndex, i / cpInterval) ? segmentMgr : workspaceMgr;
+                            vertices[inputToIndex].setInput(vIdxEdge, out, inputMgr);
+                        }
                     }
-                }
 
-                if (clearInputs) {
-                    current.clear();
-                }
+                    if (clearInputs) {
+                        current.clear();
+                    }
 
 
-                if (traceLog) {
-                    log.trace("Completed forward pass: {} (\"{}\") - {}", i, vName, current.getClass().getSimpleName());
+                    if (traceLog) {
+                        log.trace("Completed forward pass: {} (\"{}\") - {}", i, vName, current.getClass().getSimpleName());
+                    }
                 }
             }
+
+            if (wsSegment != null) {
+                endCheckpointSegment(wsSegment, numSegments - 1, wsm == WorkspaceMode.NONE);
+                wsSegment = null;
+            }
+        } finally {
+            if (wsSegment != null) {
+                //Only on exception
+                wsSegment.close();
+                checkpointState = null;
+            }
         }
 
         Nd4j.getMemoryManager().setCurrentWorkspace(null);
@@ -2239,6 +2314,8 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         }
         setInputs(features);
         setLayerMaskArrays(fMask, lMasks);
+        //Not followed by calcBackpropGradients: checkpointed activations from an earlier forward pass are no longer valid
+        checkpointState = null;
 
         MemoryWorkspace outputPrevious = null;
         if(outputWorkspace == null || outputWorkspace instanceof DummyWorkspace) {
@@ -2622,6 +2699,11 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
 
         boolean traceLog = log.isTraceEnabled();
 
+        //Activation checkpointing: set by the preceding forward pass, if any. Not applicable for TBPTT
+        CheckpointState cp = truncatedBPTT ? null : checkpointState;
+        checkpointState = null;
+        MemoryWorkspace wsCheckpointSegment = null;
+
         Throwable t = null;
         try {
             for (int i = topologicalOrder.length - 1; i >= 0; i--) {
@@ -2630,6 +2712,11 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                 int vIdx = current.getVertexIndex();
                 String vertexName = current.getVertexName();
 
+                if (cp != null && i < cp.recomputedEnd() && (i + 1) % cp.interval == 0) {
+                    //Last vertex of a segment whose activations were not retained: recompute them before backprop
+                    wsCheckpointSegment = recomputeCheckpointSegment(cp, i / cp.interval, initialWorkspace);
+                }
+
                 if (traceLog) {
                     log.trace("About backprop: {} (\"{}\") - {}", i, vertexName, current.getClass().getSimpleName());
                 }
@@ -2774,6 +2861,12 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
                 }
 
 
+                if (wsCheckpointSegment != null && i % cp.interval == 0) {
+                    //First vertex of the recomputed segment is done - the segment's activations are no longer required
+                    wsCheckpointSegment.close();
+                    wsCheckpointSegment = null;
+                }
+
                 if (traceLog) {
                     log.trace("Completed backprop: {} (\"{}\") - {}", i, vertexName, current.getClass().getSimpleName());
                 }
@@ -2781,6 +2874,10 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         } catch (Throwable t2) {
             t = t2;
         } finally {
+            if (wsCheckpointSegment != null) {
+                //Should only be non-null on exception
+                wsCheckpointSegment.close();
+            }
             Nd4j.getMemoryManager().setCurrentWorkspace(initialWorkspace);
 
             if(t != null){
@@ -2815,10 +2912,205 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
 
     }
 
+    /**
+     * Workspace manager for the vertices of one activation checkpointing segment: activations and layer inputs are
+     * placed in WS_CHECKPOINT_SEGMENT, which is released as soon as the segment is complete
+     */
+    protected LayerWorkspaceMgr checkpointSegmentWorkspaceMgr(INDArray networkInput) {
+        LayerWorkspaceMgr mgr = LayerWorkspaceMgr.builder()
+                .with(ArrayType.ACTIVATIONS, WS_CHECKPOINT_SEGMENT, WS_ALL_LAYERS_ACT_CONFIG)
+                .with(ArrayType.INPUT, WS_CHECKPOINT_SEGMENT, WS_ALL_LAYERS_ACT_CONFIG)
+                .with(ArrayType.FF_WORKING_MEM, WS_LAYER_WORKING_MEM, WS_LAYER_WORKING_MEM_CONFIG)
+                .with(ArrayType.RNN_FF_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM_CONFIG)
+                .build();
+
+        if(networkInput != null && networkInput.isAttached()) {
+            //Don't leverage out of async DataMultiSetIterator workspaces
+            mgr.setNoLeverageOverride(networkInput.data().getParentWorkspace().getId());
+        }
+
+        if(configuration.getCacheMode() != CacheMode.NONE) {
+            mgr.setWorkspace(ArrayType.FF_CACHE, WS_CHECKPOINT_SEGMENT, WS_ALL_LAYERS_ACT_CONFIG);
+        }
+        mgr.setHelperWorkspacePointers(helperWorkspaces);
+        return mgr;
+    }
+
+    /**
+     * @return Vertices (by vertex index) whose activations are not retained in the forward pass, for the given
+     * activation checkpoint interval
+     */
+    protected boolean[] checkpointRecomputedVertices(int interval) {
+        if (checkpointRecomputed == null || checkpointRecomputedInterval != interval) {
+            List<String> order = new ArrayList<>(topologicalOrder.length);
+            for (int idx : topologicalOrder) {
+                order.add(vertices[idx].getVertexName());
+            }
+            List<List<String>> segments = ActivationCheckpointUtil.graphRecomputedSegments(order,
+                    configuration.getVertexInputs(), configuration.getNetworkInputs(), configuration.getNetworkOutputs(), interval);
+            boolean[] recomputed = new boolean[vertices.length];
+            for (List<String> segment : segments) {
+                for (String name : segment) {
+                    recomputed[verticesMap.get(name).getVertexIndex()] = true;
+                }
+            }
+            checkpointRecomputed = recomputed;
+            checkpointRecomputedInterval = interval;
+        }
+        return checkpointRecomputed;
+    }
+
+    /**
+     * Close the workspace for a recomputed segment at the end of the forward pass for that segment. Without
+     * workspaces, the vertex inputs in the segment are cleared instead, so they can be garbage collected
+     */
+    private void endCheckpointSegment(MemoryWorkspace wsSegment, int segment, boolean noWorkspaces) {
+        wsSegment.close();
+        if (noWorkspaces) {
+            for (int i = segment * checkpointState.interval; i < (segment + 1) * checkpointState.interval; i++) {
+                int vIdx = topologicalOrder[i];
+                if (checkpointState.isInRecomputedSegment(vIdx, segment)) {
+                    vertices[vIdx].clear();
+                }
+            }
+        }
+    }
+
+    /**
+     * Repeat the forward pass for the specified activation checkpointing segment, from the retained activations and
+     * with the same RNG state as the original forward pass (so dropout masks etc are identical). This sets the vertex
+     * and layer inputs as required for backprop of the segment. The RNG state is restored afterwards, so the random
+     * sequence seen by the rest of training is the same as without activation checkpointing.
+     *
+     * @return The (open) workspace containing the recomputed activations, to be closed once backprop through the
+     * segment is complete
+     */
+    protected MemoryWorkspace recomputeCheckpointSegment(CheckpointState cp, int segment, MemoryWorkspace initialWorkspace) {
+        boolean noWorkspaces = configuration.getTrainingWorkspaceMode() == WorkspaceMode.NONE;
+        LayerWorkspaceMgr mgr = noWorkspaces ? LayerWorkspaceMgr.noWorkspaces() : checkpointSegmentWorkspaceMgr(inputs[0]);
+        if (noWorkspaces) {
+            //Vertices in the segment were cleared after the forward pass, including their masks
+            setLayerMaskArrays(cp.fMask, cp.lMask);
+        }
+
+        MemoryWorkspace ws = mgr.notifyScopeEntered(ArrayType.ACTIVATIONS);
+        ws.setPreviousWorkspace(initialWorkspace);
+        org.nd4j.linalg.api.rng.Random rng = Nd4j.getRandom();
+        long rootState = rng.rootState();
+        long nodeState = rng.nodeState();
+        rng.setStates(cp.segmentRootStates[segment], cp.segmentNodeStates[segment]);
+        int start = segment * cp.interval;
+        try {
+            for (int i = start; i < start + cp.interval; i++) {
+                GraphVertex current = vertices[topologicalOrder[i]];
+                int vIdx = current.getVertexIndex();
+                if (!cp.isInRecomputedSegment(vIdx, segment)) {
+                    //Output layers: skipped in the forward pass. Their inputs are retained
+                    continue;
+                }
+
+                if (noWorkspaces && current.getInputVertices() != null) {
+                    //Inputs from earlier segments are always retained
+                    VertexIndices[] inputsFrom = current.getInputVertices();
+                    for (int j = 0; j < inputsFrom.length; j++) {
+                        int from = inputsFrom[j].getVertexIndex();
+                        if (cp.position[from] < start && cp.retained[from] != null) {
+                            current.setInput(j, cp.retained[from], mgr);
+                        }
+                    }
+                }
+
+                INDArray out;
+                try (MemoryWorkspace wsFFWorking = mgr.notifyScopeEntered(ArrayType.FF_WORKING_MEM)) {
+                    out = current.isInputVertex() ? inputs[vIdx] : current.doForward(true, mgr);
+                }
+                if (cp.retained[vIdx] != null) {
+                    out = cp.retained[vIdx];
+                }
+
+                if (current.getOutputVertices() != null) {
+                    for (VertexIndices v : current.getOutputVertices()) {
+                        if (cp.isInRecomputedSegment(v.getVertexIndex(), segment)) {
+                            vertices[v.getVertexIndex()].setInput(v.getVertexEdgeNumber(), out, mgr);
+                        }
+                    }
+                }
+            }
+        } catch (Throwable t) {
+            ws.close();
+            throw t;
+        } finally {
+            rng.setStates(rootState, nodeState);
+        }
+        Nd4j.getMemoryManager().setCurrentWorkspace(initialWorkspace);
+        return ws;
+    }
+
+    /**
+     * Activation checkpointing state for one training iteration: the retained activations, and the RNG state at the
+     * start of each recomputed segment during the forward pass
+     */
+    protected class CheckpointState {
+        protected final int interval;
+        protected final int numSegments;
+        protected final boolean[] recomputed;
+        protected final boolean[] excluded;
+        protected final int[] position;
+        protected final INDArray[] retained;
+        protected final long[] segmentRootStates;
+        protected final long[] segmentNodeStates;
+        protected final INDArray[] fMask;
+        protected final INDArray[] lMask;
+
+        protected CheckpointState(int interval, int numSegments, boolean[] recomputed, int[] excludeIdxs,
+                                  INDArray[] fMask, INDArray[] lMask) {
+            this.interval = interval;
+            this.numSegments = numSegments;
+            this.recomputed = recomputed;
+            this.excluded = new boolean[vertices.length];
+            if (excludeIdxs != null) {
+                for (int idx : excludeIdxs) {
+                    excluded[idx] = true;
+                }
+            }
+            this.position = new int[vertices.length];
+            for (int i = 0; i < topologicalOrder.length; i++) {
+                position[topologicalOrder[i]] = i;
+            }
+            this.retained = new INDArray[vertices.length];
+            this.segmentRootStates = new long[numSegments];
+            this.segmentNodeStates = new long[numSegments];
+            this.fMask = fMask;
+            this.lMask = lMask;
+        }
+
+        /**
+         * Record the current RNG state so that stochastic layers (dropout, weight noise etc) in the segment can be
+         * reproduced exactly when it is recomputed
+         */
+        protected void startSegment(int segment) {
+            segmentRootStates[segment] = Nd4j.getRandom().rootState();
+            segmentNodeStates[segment] = Nd4j.getRandom().nodeState();
+        }
+
+        protected int recomputedEnd() {
+            return numSegments * interval;
+        }
+
+        /**
+         * @return True if the vertex is part of the specified recomputed segment, and is not skipped in the forward pass
+         */
+        protected boolean isInRecomputedSegment(int vertexIdx, int segment) {
+            int pos = position[vertexIdx];
+            return segment < numSegments && pos / interval == segment && !excluded[vertexIdx];
+        }
+    }
+
     @Override
     public ComputationGraph clone() {
         ComputationGraph cg = new ComputationGraph(configuration.clone());
         cg.init(params().dup(), false);
+        QuantizationUtil.copyQuantizedParams(this, cg);
         if (solver != null) {
             //If  solver is null: updater hasn't been initialized -> getUpdater call will force initialization, however
             ComputationGraphUpdater u = this.getUpdater();
@@ -3426,6 +3718,7 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         labels = null;
         inputMaskArrays = null;
         labelMaskArrays = null;
+        checkpointState = null;
     }
 
     @Override
@@ -4119,6 +4412,68 @@ public class ComputationGraph implements Serializable, Model, NeuralNetwork {
         }
     }
 
+    /**
+     * Perform evaluation on the given data (DataSetIterator) with the given {@link IEvaluation} instances, using
+     * multiple threads. See {@link #evaluate(MultiDataSetIterator, Map, int)} for details
+     *
+     * @param iterator    Test data to evaluate on
+     * @param numThreads  Number of threads to use
+     * @param evaluations IEvaluation instances
+     * @return The input IEvaluation instances, after performing evaluation on the test data
+     */
+    public <T extends IEvaluation> T[] doEvaluation(DataSetIterator iterator, int numThreads, T... evaluations) {
+        return doEvaluation(new MultiDataSetIteratorAdapter(iterator), numThreads, evaluations);
+    }
+
+    /**
+     * Perform evaluation on the given data (MultiDataSetIterator) with the given {@link IEvaluation} instances, using
+     * multiple threads. See {@link #evaluate(MultiDataSetIterator, Map, int)} for details
+     *
+     * @param iterator    Test data to evaluate on
+     * @param numThreads  Number of threads to use
+     * @param evaluations IEvaluation instances
+     * @return The input IEvaluation instances, after performing evaluation on the test data
+     */
+    public <T extends IEvaluation> T[] doEvaluation(MultiDataSetIterator iterator, int numThreads, T... evaluations) {
+        return evaluate(iterator, Collections.singletonMap(0, evaluations), numThreads).get(0);
+    }
+
+    /**
+     * Perform evaluation for networks with multiple outputs, using multiple threads.<br>
+     * Each thread uses its own copy of the network (sharing the parameters with this network) and its own copy of
+     * the evaluations; minibatches are assigned to threads as they become free. The per-thread evaluations are merged
+     * into the provided evaluation instances at the end.
+     *
+     * @param iterator    Data to evaluate
+     * @param evaluations Evaluation instances. Key: the network output number (0 to numOutputs-1). Value: the IEvaluation
+     *                    instances to perform evaluation with, for that output only
+     * @param numThreads  Number of threads to use. If 1 or less: equivalent to {@link #evaluate(MultiDataSetIterator, Map)}
+     * @return The same evaluation map, after performing evaluation
+     */
+    public <T extends IEvaluation> Map<Integer, T[]> evaluate(MultiDataSetIterator iterator, Map<Integer,T[]> evaluations, int numThreads){
+        if (numThreads <= 1)
+            return evaluate(iterator, evaluations);
+
+        final INDArray params = params();
+        List<Map<Integer, T[]>> results = ParallelEvaluation.execute(iterator, numThreads, it -> {
+            ComputationGraph worker = new ComputationGraph(configuration.clone());
+            worker.init(params, false);
+            Map<Integer, T[]> copies = new HashMap<>();
+            for (Map.Entry<Integer, T[]> e : evaluations.entrySet()) {
+                copies.put(e.getKey(), e.getValue() == null ? null : ParallelEvaluation.newInstances(e.getValue()));
+            }
+            return worker.evaluate(it, copies);
+        });
+
+        for (Map<Integer, T[]> m : results) {
+            for (Map.Entry<Integer, T[]> e : evaluations.entrySet()) {
+                if (e.getValue() != null)
+                    ParallelEvaluation.merge(e.getValue(), Collections.singletonList(m.get(e.getKey())));
+            }
+        }
+        return evaluations;
+    }
+
     @SuppressWarnings("unchecked")
     @SafeVarargs
     private final <T extends IEvaluation> T[] doEvaluationHelper(MultiDataSetIterator iterator, T... evaluations) {
@@ -0,0 +1,311 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.nn.layers;
+
+import lombok.NonNull;
+import org.deeplearning4j.exception.DL4JInvalidInputException;
+import org.deeplearning4j.nn.api.MaskState;
+import org.deeplearning4j.nn.api.ParamInitializer;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.misc.QuantizedLayer.Execution;
+import org.deeplearning4j.nn.gradient.Gradient;
+import org.deeplearning4j.nn.params.DefaultParamInitializer;
+import org.deeplearning4j.nn.workspace.ArrayType;
+import org.deeplearning4j.nn.workspace.LayerWorkspaceMgr;
+import org.deeplearning4j.util.ConvolutionUtils;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.common.primitives.Pair;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.broadcast.BroadcastMulOp;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Implementation for {@link org.deeplearning4j.nn.conf.layers.misc.QuantizedLayer}. Inference only.<br>
+ * The quantized weights are layer state rather than network parameters: they are set using
+ * {@link #setQuantizedParams(INDArray, INDArray, INDArray)} (usually by {@link org.deeplearning4j.util.QuantizationUtil}
+ * or {@link org.deeplearning4j.util.ModelSerializer}).<br>
+ * Only the INT8 weights, scales and bias are held between forward passes. Dequantized (or, for INTEGER execution,
+ * INT32 widened) weights are created for each forward pass in working memory, so that resident weight memory is about
+ * a quarter of that of the original layer. ND4J has no INT8 matrix multiplication with INT32 accumulation, so
+ * INTEGER execution still reads widened weights during the multiplication.
+ */
+public class QuantizedLayer extends AbstractLayer<org.deeplearning4j.nn.conf.layers.misc.QuantizedLayer> {
+
+    public static final String WEIGHT_KEY = DefaultParamInitializer.WEIGHT_KEY;
+    public static final String WEIGHT_SCALES_KEY = "scales";
+    public static final String BIAS_KEY = DefaultParamInitializer.BIAS_KEY;
+
+    private static final double INT8_MAX = 127.0;
+
+    private INDArray weights;
+    private INDArray weightScales;
+    private INDArray bias;
+
+    //Cached on first use: implementation of the original layer. Its parameters are only set during a forward pass
+    private org.deeplearning4j.nn.api.Layer underlying;
+    private NeuralNetConfiguration innerConf;
+    //Cached on first use, outside of workspaces: output scales and bias row for INTEGER execution (one value per output)
+    private INDArray outputScales;
+    private INDArray biasRow;
+
+    public QuantizedLayer(NeuralNetConfiguration conf, DataType dataType) {
+        super(conf, dataType);
+    }
+
+    /**
+     * Set the quantized parameters of this layer
+     *
+     * @param weights      INT8 weights, with the same shape as the original weight parameter
+     * @param weightScales Scale for each output channel
+     * @param bias         Bias parameter, not quantized. May be null if the layer has no bias
+     */
+    public void setQuantizedParams(@NonNull INDArray weights, @NonNull INDArray weightScales, INDArray bias) {
+        Preconditions.checkArgument(weights.dataType() == DataType.INT8, "Weights must be INT8, got %s", weights.dataType());
+        Preconditions.checkArgument(weightScales.length() == weights.size(layerConf().getChannelDimension()),
+                "Expected one weight scale per output channel (%s), got %s", weights.size(layerConf().getChannelDimension()),
+                weightScales.length());
+        this.weights = weights;
+        this.weightScales = weightScales;
+        this.bias = bias;
+        clearCached();
+    }
+
+    /**
+     * @return Number of bytes of the arrays held by this layer between forward passes: the quantized parameters and
+     * the cached per-output scales and bias for INTEGER execution
+     */
+    public long residentBytes() {
+        long bytes = 0;
+        for (INDArray a : quantizedParamTable().values())
+            bytes += a.length() * a.dataType().width();
+        if (outputScales != null)
+            bytes += outputScales.length() * outputScales.dataType().width();
+        if (biasRow != null && (bias == null || biasRow.data() != bias.data()))
+            bytes += biasRow.length() * biasRow.dataType().width();
+        return bytes;
+    }
+
+    /**
+     * @return Quantized parameters of this layer: INT8 weights ({@link #WEIGHT_KEY}), weight scales
+     * ({@link #WEIGHT_SCALES_KEY}) and bias ({@link #BIAS_KEY}) if any. Empty if not set
+     */
+    public Map<String, INDArray> quantizedParamTable() {
+        Map<String, INDArray> m = new LinkedHashMap<>();
+        if (weights != null) {
+            m.put(WEIGHT_KEY, weights);
+            m.put(WEIGHT_SCALES_KEY, weightScales);
+            if (bias != null)
+                m.put(BIAS_KEY, bias);
+        }
+        return m;
+    }
+
+    @Override
+    public double calcRegularizationScore(boolean backpropParamsOnly) {
+        return 0;
+    }
+
+    @Override
+    public Type type() {
+        return layerConf().getLayer() instanceof ConvolutionLayer ? Type.CONVOLUTIONAL : Type.FEED_FORWARD;
+    }
+
+    @Override
+    public Pair<Gradient, INDArray> backpropGradient(INDArray epsilon, LayerWorkspaceMgr workspaceMgr) {
+        throw new UnsupportedOperationException("Quantized layers are inference only: backprop is not supported " + layerId());
+    }
+
+    @Override
+    public void fit(INDArray input, LayerWorkspaceMgr workspaceMgr) {
+        throw new UnsupportedOperationException("Quantized layers are inference only: fitting is not supported " + layerId());
+    }
+
+    @Override
+    public INDArray activate(boolean training, LayerWorkspaceMgr workspaceMgr) {
+        assertInputSet(false);
+        if (weights == null) {
+            throw new IllegalStateException("Quantized parameters have not been set " + layerId() + ": quantized"
+                    + " networks should be created with QuantizationUtil and saved/restored with ModelSerializer");
+        }
+        org.deeplearning4j.nn.conf.layers.misc.QuantizedLayer q = layerConf();
+        boolean integer = q.getExecution() == Execution.INTEGER && q.getInputScale() > 0;
+        if (integer && q.getLayer() instanceof DenseLayer && input.rank() == 2) {
+            return activateInteger(workspaceMgr);
+        }
+
+        INDArray in = integer ? quantizeDequantize(input, workspaceMgr) : input;
+        return activateDequantized(in, workspaceMgr);
+    }
+
+    /**
+     * Dense layer forward pass with INT8 inputs and weights, accumulated in INT32
+     */
+    protected INDArray activateInteger(LayerWorkspaceMgr workspaceMgr) {
+        if (input.columns() != weights.rows()) {
+            throw new DL4JInvalidInputException("Input size (" + input.columns() + " columns; shape = "
+                    + Arrays.toString(input.shape()) + ") is invalid: does not match layer input size (layer # inputs = "
+                    + weights.rows() + ") " + layerId());
+        }
+        initInteger();
+
+        INDArray xq = quantize(input, workspaceMgr);
+        INDArray xi = workspaceMgr.castTo(ArrayType.FF_WORKING_MEM, DataType.INT32, xq, false);
+        //Widened for this forward pass only: INT8 matrix multiplication accumulates in INT8
+        INDArray wi = workspaceMgr.castTo(ArrayType.FF_WORKING_MEM, DataType.INT32, weights, false);
+        INDArray acc = workspaceMgr.createUninitialized(ArrayType.FF_WORKING_MEM, DataType.INT32, new long[]{input.size(0), weights.columns()}, 'f');
+        xi.mmuli(wi, acc);
+
+        INDArray z = workspaceMgr.createUninitialized(ArrayType.ACTIVATIONS, dataType, acc.shape(), 'f');
+        z.assign(acc);
+        z.muliRowVector(outputScales);
+        if (biasRow != null) {
+            z.addiRowVector(biasRow);
+        }
+
+        INDArray ret = ((DenseLayer) layerConf().getLayer()).getActivationFn().getActivation(z, false);
+        if (maskArray != null) {
+            applyMask(ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Forward pass using the original layer implementation, with weights dequantized into working memory
+     */
+    protected INDArray activateDequantized(INDArray in, LayerWorkspaceMgr workspaceMgr) {
+        org.deeplearning4j.nn.conf.layers.misc.QuantizedLayer q = layerConf();
+        if (innerConf == null) {
+            innerConf = q.getInnerConf(conf);
+        }
+        ParamInitializer initializer = q.getLayer().initializer();
+        INDArray flat = workspaceMgr.createUninitialized(ArrayType.FF_WORKING_MEM, dataType,
+                new long[]{1, initializer.numParams(innerConf)}, 'c');
+        Map<String, INDArray> params = initializer.init(innerConf, flat, false);
+        INDArray w = params.get(DefaultParamInitializer.WEIGHT_KEY);
+        w.assign(weights);
+        Nd4j.getExecutioner().exec(new BroadcastMulOp(w, workspaceMgr.castTo(ArrayType.FF_WORKING_MEM, dataType,
+                weightScales, false), w, q.getChannelDimension()));
+        if (bias != null) {
+            params.get(DefaultParamInitializer.BIAS_KEY).assign(bias);
+        }
+
+        if (underlying == null) {
+            underlying = q.getLayer().instantiate(innerConf, Collections.emptyList(), index, flat, false, dataType);
+        }
+        try {
+            underlying.setParamTable(params);
+            underlying.setParamsViewArray(flat);
+            underlying.setInput(in, workspaceMgr);
+            underlying.setMaskArray(maskArray);
+            return underlying.activate(false, workspaceMgr);
+        } finally {
+            //Don't retain references to working memory arrays
+            underlying.clear();
+            underlying.setParamTable(null);
+            underlying.setParamsViewArray(null);
+        }
+    }
+
+    protected void initInteger() {
+        if (outputScales != null) {
+            return;
+        }
+        try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+            outputScales = weightScales.castTo(dataType).mul(layerConf().getInputScale()).reshape(1, weightScales.length());
+            biasRow = bias == null ? null : bias.castTo(dataType).reshape(1, bias.length());
+        }
+    }
+
+    /**
+     * Quantize the input to (integer valued) INT8 range, in the network data type
+     */
+    protected INDArray quantize(INDArray in, LayerWorkspaceMgr workspaceMgr) {
+        INDArray xq = workspaceMgr.castTo(ArrayType.FF_WORKING_MEM, dataType, in, true);
+        xq.divi(layerConf().getInputScale());
+        Transforms.round(xq, false);
+        Transforms.min(xq, INT8_MAX, false);
+        Transforms.max(xq, -INT8_MAX, false);
+        return xq;
+    }
+
+    protected INDArray quantizeDequantize(INDArray in, LayerWorkspaceMgr workspaceMgr) {
+        return quantize(in, workspaceMgr).muli(layerConf().getInputScale());
+    }
+
+    private void clearCached() {
+        underlying = null;
+        innerConf = null;
+        outputScales = null;
+        biasRow = null;
+    }
+
+    @Override
+    public Pair<INDArray, MaskState> feedForwardMaskArray(INDArray maskArray, MaskState currentMaskState, int minibatchSize) {
+        this.maskArray = maskArray;
+        this.maskState = currentMaskState;
+        if (maskArray != null && layerConf().getLayer() instanceof ConvolutionLayer) {
+            ConvolutionLayer c = (ConvolutionLayer) layerConf().getLayer();
+            INDArray outMask = ConvolutionUtils.cnn2dMaskReduction(maskArray, c.getKernelSize(), c.getStride(),
+                    c.getPadding(), c.getDilation(), c.getConvolutionMode());
+            return new Pair<>(outMask, currentMaskState);
+        }
+        return new Pair<>(maskArray, currentMaskState);
+    }
+
+    @Override
+    public void setConf(NeuralNetConfiguration conf) {
+        super.setConf(conf);
+        clearCached();
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        if (underlying != null) {
+            underlying.clear();
+        }
+    }
+
+    @Override
+    public boolean isPretrainLayer() {
+        return false;
+    }
+
+    @Override
+    public void clearNoiseWeightParams() {
+        //No op
+    }
+
+    @Override
+    public INDArray params() {
+        return null;
+    }
+}
@@ -57,6 +57,7 @@ import org.deeplearning4j.util.*;
 import org.nd4j.adapters.OutputAdapter;
 import org.nd4j.common.base.Preconditions;
 import org.nd4j.evaluation.IEvaluation;
+import org.nd4j.evaluation.ParallelEvaluation;
 import org.nd4j.evaluation.classification.Evaluation;
 import org.nd4j.evaluation.classification.ROC;
 import org.nd4j.evaluation.classification.ROCMultiClass;
@@ -160,6 +161,15 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
      */
     protected static final String WS_RNN_LOOP_WORKING_MEM = "WS_RNN_LOOP_WORKING_MEM";
 
+    /**
+     * Workspace for the activations of one segment of layers when activation checkpointing is enabled. Opened and
+     * closed once per recomputed segment, in both the forward pass and in backprop
+     */
+    protected static final String WS_CHECKPOINT_SEGMENT = "WS_CHECKPOINT_SEGMENT";
+
+    //Activation checkpointing state from the last training forward pass - consumed by calcBackpropGradients
+    protected transient CheckpointState checkpointState;
+
 
     protected WorkspaceConfiguration WS_LAYER_WORKING_MEM_CONFIG;
 
@@ -992,6 +1002,8 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                                                            INDArray fMask, INDArray lMask, boolean clearInputs) {
         setInput(input);
         setLayerMaskArrays(fMask, lMask);
+        //Not followed by calcBackpropGradients: checkpointed activations from an earlier forward pass are no longer valid
+        checkpointState = null;
 
 
         LayerWorkspaceMgr workspaceMgr;
@@ -1088,7 +1100,8 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
      * @param input             Input to network
      * @param fMask             Feature mask array. May be null
      * @param lMask             Label mask aray. May be null.
-     * @return
+     * @return Activations (including the input). If activation checkpointing is enabled, activations that are not
+     * retained (and will be recomputed in backprop) are null
      */
     protected  List<INDArray> ffToLayerActivationsInWs(int layerIndex, @NonNull FwdPassType fwdPassType, boolean storeLastForTBPTT,
                                                        @NonNull INDArray input, INDArray fMask, INDArray lMask) {
@@ -1125,13 +1138,38 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         List<INDArray> out = new ArrayList<>();
         out.add(workspaceMgr.leverageTo(ArrayType.INPUT, input));    //Probably unnecessary usually
 
+        //Activation checkpointing: layers in recomputed segments place their activations in a separate workspace that
+        // is closed at the end of each segment. Only the output of each segment is retained (in WS_ALL_LAYERS_ACT);
+        // the rest is recomputed from it in calcBackpropGradients
+        checkpointState = null;
+        int cpInterval = layerWiseConfigurations.getActivationCheckpointInterval();
+        int numSegments = fwdPassType == FwdPassType.STANDARD ?
+                ActivationCheckpointUtil.numRecomputedSegments(layerIndex + 1, cpInterval) : 0;
+        int recomputedEnd = numSegments * cpInterval;
+        boolean noWorkspaces = layerWiseConfigurations.getTrainingWorkspaceMode() == WorkspaceMode.NONE;
+        LayerWorkspaceMgr segmentMgr = null;
+        if (numSegments > 0) {
+            checkpointState = new CheckpointState(cpInterval, numSegments, fMask, lMask);
+            segmentMgr = noWorkspaces ? workspaceMgr : checkpointSegmentWorkspaceMgr(input);
+        }
+        MemoryWorkspace wsSegment = null;
+
         boolean traceLog = log.isTraceEnabled();
         try(MemoryWorkspace wsFFWorking = workspaceMgr.notifyScopeEntered(ArrayType.FF_WORKING_MEM)) {
             for( int i = 0; i <= layerIndex; i++) {
+                LayerWorkspaceMgr mgr = workspaceMgr;
+                if (i < recomputedEnd) {
+                    mgr = segmentMgr;
+                    if (i % cpInterval == 0) {
+                        checkpointState.startSegment(i / cpInterval, input);
+                        wsSegment = segmentMgr.notifyScopeEntered(ArrayType.ACTIVATIONS);
+                    }
+                }
+
                 if (getLayerWiseConfigurations().getInputPreProcess(i) != null) {
-                    input = workspaceMgr.dup(ArrayType.ACTIVATIONS, getLayerWiseConfigurations().getInputPreProcess(i).preProcess(input, getInputMiniBatchSize(), workspaceMgr));
+                    input = mgr.dup(ArrayType.ACTIVATIONS, getLayerWiseConfigurations().getInputPreProcess(i).preProcess(input, getInputMiniBatchSize(), mgr));
                     //Validation: Exception if invalid (bad preprocessor implementation)
-                    validateArrayWorkspaces(workspaceMgr, input, ArrayType.ACTIVATIONS, i, true, "Feed forward to layer (training)");
+                    validateArrayWorkspaces(mgr, input, ArrayType.ACTIVATIONS, i, true, "Feed forward to layer (training)");
                 }
 
                 if(traceLog){
@@ -1139,7 +1177,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                 }
 
                 if(fwdPassType == FwdPassType.STANDARD) {
-                    input = layers[i].activate(input, true, workspaceMgr);
+                    input = layers[i].activate(input, true, mgr);
                 } else if(fwdPassType == FwdPassType.RNN_ACTIVATE_WITH_STORED_STATE) {
                     if (layers[i] instanceof RecurrentLayer) {
                         input = ((RecurrentLayer) layers[i]).rnnActivateUsingStoredState(input, true, storeLastForTBPTT, workspaceMgr);
@@ -1161,15 +1199,39 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                 }
 
                 //Validation: Exception if invalid (bad layer implementation)
-                validateArrayWorkspaces(workspaceMgr, input, ArrayType.ACTIVATIONS, i, false, "Feed forward to layer (training)");
-                validateArrayWorkspaces(workspaceMgr, layers[i].input(), ArrayType.INPUT, i, false, "Feed forward to layer (training)");
-
-                out.add(input);
+                validateArrayWorkspaces(mgr, input, ArrayType.ACTIVATIONS, i, false, "Feed forward to layer (training)");
+                validateArrayWorkspaces(mgr, layers[i].input(), ArrayType.INPUT, i, false, "Feed forward to layer (training)");
+
+                if (i < recomputedEnd) {
+                    if ((i + 1) % cpInterval == 0) {
+                        //End of a recomputed segment: retain only the segment output, as the input to the next segment
+                        input = workspaceMgr.leverageTo(ArrayType.ACTIVATIONS, input);
+                        wsSegment.close();
+                        wsSegment = null;
+                        if (noWorkspaces) {
+                            //Release the layer inputs for garbage collection
+                            for (int j = i + 1 - cpInterval; j <= i; j++) {
+                                layers[j].clear();
+                            }
+                        }
+                        out.add(input);
+                    } else {
+                        out.add(null);
+                    }
+                } else {
+                    out.add(input);
+                }
 
                 if(traceLog) {
                     log.trace("Completed forward pass: {} - {}", i, layers[i].getClass().getSimpleName());
                 }
             }
+        } finally {
+            if (wsSegment != null) {
+                //Only on exception
+                wsSegment.close();
+                checkpointState = null;
+            }
         }
 
         ArrayType[] toClose = {
@@ -1210,6 +1272,8 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
 
         setInput(input);
         setLayerMaskArrays(featureMask, labelsMask);
+        //Not followed by calcBackpropGradients: checkpointed activations from an earlier forward pass are no longer valid
+        checkpointState = null;
 
         /*
         Idea here: we want to minimize memory, and return only the final array
@@ -1509,6 +1573,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         MultiLayerConfiguration conf = this.layerWiseConfigurations.clone();
         MultiLayerNetwork ret = new MultiLayerNetwork(conf);
         ret.init(this.params().dup(), false);
+        QuantizationUtil.copyQuantizedParams(this, ret);
 
         if (solver != null) {
             //If  solver is null: updater hasn't been initialized -> getUpdater call will force initialization, however
@@ -1866,6 +1931,10 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                 p.setSecond(p.getSecond().detach());
             }
             return p;
+        } finally {
+            //Checkpointed activations are only valid until the activations workspace is closed. Normally already
+            // consumed by calcBackpropGradients, but not if the forward pass or a listener threw an exception
+            checkpointState = null;
         }
     }
 
@@ -1960,8 +2029,13 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         Pair<Gradient, INDArray> currPair = null;
         MemoryWorkspace wsActGradCloseNext = null;
         MemoryWorkspace wsActGradTemp = null;
+        MemoryWorkspace wsCheckpointSegment = null;
         MemoryWorkspace initialWorkspace = Nd4j.getMemoryManager().getCurrentWorkspace();
 
+        //Activation checkpointing: set by the preceding forward pass, if any. Not applicable for TBPTT
+        CheckpointState cp = tbptt ? null : checkpointState;
+        checkpointState = null;
+
         boolean traceLog = log.isTraceEnabled();
 
         Throwable t = null;
@@ -1971,6 +2045,11 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                     break;
                 }
 
+                if (cp != null && i < cp.recomputedEnd() && (i + 1) % cp.interval == 0) {
+                    //Last layer of a segment whose activations were not retained: recompute them before backprop
+                    wsCheckpointSegment = recomputeCheckpointSegment(cp, i / cp.interval, initialWorkspace);
+                }
+
                 if (traceLog) {
                     log.trace("About to backprop: {} - {}", i, layers[i].getClass().getSimpleName());
                 }
@@ -2051,6 +2130,12 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                     wsActGradTemp = null;
                 }
 
+                if (wsCheckpointSegment != null && i % cp.interval == 0) {
+                    //First layer of the recomputed segment is done - the segment's activations are no longer required
+                    wsCheckpointSegment.close();
+                    wsCheckpointSegment = null;
+                }
+
                 if (traceLog) {
                     log.trace("Completed backprop: {} - {}", i, layers[i].getClass().getSimpleName());
                 }
@@ -2058,6 +2143,10 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         } catch (Throwable thr) {
             t = thr;
         } finally {
+            if (wsCheckpointSegment != null) {
+                //Should only be non-null on exception or early return
+                wsCheckpointSegment.close();
+            }
             if(wsActGradCloseNext != null) {
                 try {
                     wsActGradCloseNext.close();
@@ -2102,6 +2191,110 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         return new Pair<>(gradient, currPair.getSecond());
     }
 
+    /**
+     * Workspace manager for the layers of one activation checkpointing segment: activations and layer inputs are placed
+     * in WS_CHECKPOINT_SEGMENT, which is released as soon as the segment is complete
+     */
+    protected LayerWorkspaceMgr checkpointSegmentWorkspaceMgr(INDArray networkInput) {
+        LayerWorkspaceMgr mgr = LayerWorkspaceMgr.builder()
+                .with(ArrayType.INPUT, WS_CHECKPOINT_SEGMENT, WS_ALL_LAYERS_ACT_CONFIG)
+                .with(ArrayType.ACTIVATIONS, WS_CHECKPOINT_SEGMENT, WS_ALL_LAYERS_ACT_CONFIG)
+                .with(ArrayType.FF_WORKING_MEM, WS_LAYER_WORKING_MEM, WS_LAYER_WORKING_MEM_CONFIG)
+                .with(ArrayType.RNN_FF_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM, WS_RNN_LOOP_WORKING_MEM_CONFIG)
+                .build();
+
+        if(networkInput != null && networkInput.isAttached()) {
+            //Don't leverage out of async DataSetIterator workspaces
+            mgr.setNoLeverageOverride(networkInput.data().getParentWorkspace().getId());
+        }
+
+        if(layerWiseConfigurations.getCacheMode() != CacheMode.NONE) {
+            mgr.setWorkspace(FF_CACHE, WS_CHECKPOINT_SEGMENT, WS_ALL_LAYERS_ACT_CONFIG);
+            mgr.setWorkspace(ArrayType.BP_WORKING_MEM, WS_LAYER_WORKING_MEM, WS_LAYER_WORKING_MEM_CONFIG);
+        }
+        mgr.setHelperWorkspacePointers(helperWorkspaces);
+        return mgr;
+    }
+
+    /**
+     * Repeat the forward pass for the specified activation checkpointing segment, from the retained segment input and
+     * with the same RNG state as the original forward pass (so dropout masks etc are identical). This sets the layer
+     * inputs as required for backprop of the segment. The RNG state is restored afterwards, so the random sequence
+     * seen by the rest of training is the same as without activation checkpointing.
+     *
+     * @return The (open) workspace containing the recomputed activations, to be closed once backprop through the
+     * segment is complete
+     */
+    protected MemoryWorkspace recomputeCheckpointSegment(CheckpointState cp, int segment, MemoryWorkspace initialWorkspace) {
+        boolean noWorkspaces = layerWiseConfigurations.getTrainingWorkspaceMode() == WorkspaceMode.NONE;
+        LayerWorkspaceMgr mgr = noWorkspaces ? LayerWorkspaceMgr.noWorkspaces() : checkpointSegmentWorkspaceMgr(input);
+        if (noWorkspaces) {
+            //Layers in the segment were cleared after the forward pass, including their masks
+            setLayerMaskArrays(cp.fMask, cp.lMask);
+        }
+
+        MemoryWorkspace ws = mgr.notifyScopeEntered(ArrayType.ACTIVATIONS);
+        ws.setPreviousWorkspace(initialWorkspace);
+
+        org.nd4j.linalg.api.rng.Random rng = Nd4j.getRandom();
+        long rootState = rng.rootState();
+        long nodeState = rng.nodeState();
+        rng.setStates(cp.segmentRootStates[segment], cp.segmentNodeStates[segment]);
+        INDArray in = cp.segmentInputs[segment];
+        int start = segment * cp.interval;
+        try (MemoryWorkspace wsFFWorking = mgr.notifyScopeEntered(ArrayType.FF_WORKING_MEM)) {
+            for (int i = start; i < start + cp.interval; i++) {
+                if (layerWiseConfigurations.getInputPreProcess(i) != null) {
+                    in = mgr.dup(ArrayType.ACTIVATIONS, layerWiseConfigurations.getInputPreProcess(i).preProcess(in, getInputMiniBatchSize(), mgr));
+                }
+                in = layers[i].activate(in, true, mgr);
+            }
+        } catch (Throwable t) {
+            ws.close();
+            throw t;
+        } finally {
+            rng.setStates(rootState, nodeState);
+        }
+        Nd4j.getMemoryManager().setCurrentWorkspace(initialWorkspace);
+        return ws;
+    }
+
+    /**
+     * Activation checkpointing state for one training iteration: the retained input to each recomputed segment, and
+     * the RNG state at the start of each segment during the forward pass
+     */
+    protected static class CheckpointState {
+        protected final int interval;
+        protected final INDArray[] segmentInputs;
+        protected final long[] segmentRootStates;
+        protected final long[] segmentNodeStates;
+        protected final INDArray fMask;
+        protected final INDArray lMask;
+
+        protected CheckpointState(int interval, int numSegments, INDArray fMask, INDArray lMask) {
+            this.interval = interval;
+            this.segmentInputs = new INDArray[numSegments];
+            this.segmentRootStates = new long[numSegments];
+            this.segmentNodeStates = new long[numSegments];
+            this.fMask = fMask;
+            this.lMask = lMask;
+        }
+
+        /**
+         * Record the (retained) input to the specified segment, and the current RNG state so that stochastic layers
+         * (dropout, weight noise etc) can be reproduced exactly when the segment is recomputed
+         */
+        protected void startSegment(int segment, INDArray input) {
+            segmentInputs[segment] = input;
+            segmentRootStates[segment] = Nd4j.getRandom().rootState();
+            segmentNodeStates[segment] = Nd4j.getRandom().nodeState();
+        }
+
+        protected int recomputedEnd() {
+            return segmentInputs.length * interval;
+        }
+    }
+
     protected void doTruncatedBPTT(INDArray input, INDArray labels, INDArray featuresMaskArray,
                                    INDArray labelsMaskArray, LayerWorkspaceMgr workspaceMgr) {
 
@@ -2820,6 +3013,9 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
                     }
                 }
             }
+        } finally {
+            //Normally already consumed by calcBackpropGradients, but not if the forward pass or a listener threw an exception
+            checkpointState = null;
         }
 
         //Clear the post noise/dropconnect parameters on the output layer
@@ -2846,6 +3042,7 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         input = null;
         labels = null;
         solver = null;
+        checkpointState = null;
     }
 
     @Override
@@ -3254,6 +3451,18 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         }
     }
 
+    /**
+     * Create a session for streaming single time step inference over up to {@code maxStreams} concurrent streams.
+     * Unlike {@link #rnnTimeStep(INDArray)}, the state of the session is kept separately from the layers, and all
+     * state and activation arrays are allocated once, up front. See {@link RnnStreamingSession} for details.
+     *
+     * @param maxStreams Maximum number of concurrent streams
+     * @return New streaming session
+     */
+    public RnnStreamingSession rnnStreamingSession(int maxStreams) {
+        return new RnnStreamingSession(this, maxStreams);
+    }
+
     /** Similar to rnnTimeStep and feedForward() methods. Difference here is that this method:<br>
      * (a) like rnnTimeStep does forward pass using stored state for RNN layers, and<br>
      * (b) unlike rnnTimeStep does not modify the RNN layer state<br>
@@ -3435,6 +3644,29 @@ public class MultiLayerNetwork implements Serializable, Classifier, Layer, Neura
         }
     }
 
+    /**
+     * Perform evaluation using an arbitrary IEvaluation instance, using multiple threads.<br>
+     * Each thread uses its own copy of the network (sharing the parameters with this network) and its own copy of
+     * the evaluations; minibatches are assigned to threads as they become free. The per-thread evaluations are merged
+     * into the provided evaluation instances at the end.
+     *
+     * @param iterator    data to evaluate on
+     * @param numThreads  Number of threads to use. If 1 or less: equivalent to {@link #doEvaluation(DataSetIterator, IEvaluation[])}
+     * @param evaluations Evaluation instances. Must support {@link IEvaluation#newInstance()} and {@link IEvaluation#merge(IEvaluation)}
+     */
+    public <T extends IEvaluation> T[] doEvaluation(DataSetIterator iterator, int numThreads, T... evaluations) {
+        if (numThreads <= 1)
+            return doEvaluation(iterator, evaluations);
+
+        final INDArray params = params();
+        List<T[]> results = ParallelEvaluation.execute(iterator, numThreads, it -> {
+            MultiLayerNetwork worker = new MultiLayerNetwork(layerWiseConfigurations.clone());
+            worker.init(params, false);
+            return worker.doEvaluation(it, ParallelEvaluation.newInstances(evaluations));
+        });
+        return ParallelEvaluation.merge(evaluations, results);
+    }
+
     public <T extends IEvaluation> T[] doEvaluationHelper(DataSetIterator iterator, T... evaluations) {
         if (!iterator.hasNext() && iterator.resetSupported()) {
             iterator.reset();
@@ -0,0 +1,440 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.nn.multilayer;
+
+import lombok.NonNull;
+import org.deeplearning4j.nn.api.Layer;
+import org.deeplearning4j.nn.conf.InputPreProcessor;
+import org.deeplearning4j.nn.conf.layers.BaseOutputLayer;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.LSTM;
+import org.deeplearning4j.nn.conf.layers.recurrent.SimpleRnn;
+import org.deeplearning4j.nn.conf.preprocessor.FeedForwardToRnnPreProcessor;
+import org.deeplearning4j.nn.conf.preprocessor.RnnToFeedForwardPreProcessor;
+import org.deeplearning4j.nn.layers.wrapper.BaseWrapperLayer;
+import org.deeplearning4j.nn.params.DefaultParamInitializer;
+import org.deeplearning4j.nn.params.LSTMParamInitializer;
+import org.deeplearning4j.nn.params.SimpleRnnParamInitializer;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.activations.IActivation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import static org.nd4j.linalg.indexing.NDArrayIndex.all;
+import static org.nd4j.linalg.indexing.NDArrayIndex.interval;
+
+/**
+ * A stateful session for streaming, single time step inference of a recurrent {@link MultiLayerNetwork}.<br>
+ * The session serves a fixed number of independent streams, each occupying one row ("slot") of a batch.
+ * All per layer state and activation buffers are allocated once, when the session is created: each call to
+ * {@link #step()} then performs the forward pass for all slots in the batch without allocating any new arrays, and
+ * streams can be added or removed between steps without reallocating anything.<br>
+ * <br>
+ * Usage:
+ * <pre>
+ * {@code
+ * RnnStreamingSession session = net.rnnStreamingSession(1024);
+ * int slot = session.addStream();
+ * session.getInput().putRow(slot, features);     //Shape [nIn]
+ * INDArray out = session.step();                  //Shape [maxStreams, nOut]; row "slot" is the output for that stream
+ * session.removeStream(slot);
+ * }
+ * </pre>
+ * Rows of slots without an active stream are still computed, but their contents are meaningless. The array returned by
+ * {@link #step()} is reused between steps.<br>
+ * <br>
+ * Supported layers: {@link LSTM}, {@link SimpleRnn} (without layer normalization), {@link DenseLayer} (without layer
+ * normalization) and output layers with weights (OutputLayer, RnnOutputLayer). Dropout and other training-only
+ * behaviour is not applied, as with {@link MultiLayerNetwork#rnnTimeStep(INDArray)}. The session holds views of
+ * the network parameters, so parameter updates are visible in later steps. A session is not thread safe.
+ *
+ * @see MultiLayerNetwork#rnnTimeStep(INDArray)
+ */
+public class RnnStreamingSession {
+
+    private final int maxStreams;
+    private final INDArray input;
+    private final StepLayer[] layers;
+    private final INDArray output;
+    private final boolean[] active;
+    private int numActive;
+
+    /**
+     * @param network    Network to perform inference with. Must be initialized
+     * @param maxStreams Maximum number of concurrent streams (i.e., batch size of each step)
+     */
+    public RnnStreamingSession(@NonNull MultiLayerNetwork network, int maxStreams) {
+        Preconditions.checkArgument(maxStreams > 0, "Maximum number of streams must be positive, got %s", maxStreams);
+        Preconditions.checkState(network.getLayers() != null, "Network must be initialized before creating a streaming session");
+        this.maxStreams = maxStreams;
+        this.active = new boolean[maxStreams];
+
+        Layer[] netLayers = network.getLayers();
+        if (netLayers.length == 0)
+            throw new IllegalStateException("Network has no layers");
+        INDArray firstWeights = unwrap(netLayers[0]).getParam(DefaultParamInitializer.WEIGHT_KEY);
+        Preconditions.checkState(firstWeights != null, "First layer of the network has no weights");
+        this.input = Nd4j.create(firstWeights.dataType(), maxStreams, firstWeights.size(0));
+
+        this.layers = new StepLayer[netLayers.length];
+        INDArray in = input;
+        for (int i = 0; i < netLayers.length; i++) {
+            InputPreProcessor pp = network.getLayerWiseConfigurations().getInputPreProcess(i);
+            if (pp != null && !(pp instanceof RnnToFeedForwardPreProcessor) && !(pp instanceof FeedForwardToRnnPreProcessor)) {
+                //RNN <-> feed forward preprocessors are no-ops for single time step, 2d activations
+                throw new UnsupportedOperationException("Input preprocessor " + pp.getClass().getSimpleName()
+                        + " for layer " + i + " is not supported by RnnStreamingSession");
+            }
+
+            Layer l = unwrap(netLayers[i]);
+            org.deeplearning4j.nn.conf.layers.Layer conf = l.conf().getLayer();
+
+            if (conf instanceof LSTM) {
+                layers[i] = new LstmStep(l, (LSTM) conf, in, maxStreams);
+            } else if (conf instanceof SimpleRnn) {
+                Preconditions.checkState(!((SimpleRnn) conf).hasLayerNorm(),
+                        "SimpleRnn with layer normalization is not supported by RnnStreamingSession");
+                layers[i] = new SimpleRnnStep(l, (SimpleRnn) conf, in, maxStreams);
+            } else if (conf instanceof DenseLayer) {
+                Preconditions.checkState(!((DenseLayer) conf).hasLayerNorm(),
+                        "DenseLayer with layer normalization is not supported by RnnStreamingSession");
+                layers[i] = new DenseStep(l, ((DenseLayer) conf).getActivationFn(), ((DenseLayer) conf).hasBias(), in, maxStreams);
+            } else if (conf instanceof BaseOutputLayer) {
+                layers[i] = new DenseStep(l, ((BaseOutputLayer) conf).getActivationFn(), ((BaseOutputLayer) conf).hasBias(), in, maxStreams);
+            } else {
+                throw new UnsupportedOperationException("Layer " + i + " of type " + conf.getClass().getSimpleName()
+                        + " is not supported by RnnStreamingSession");
+            }
+            in = layers[i].output();
+        }
+        this.output = in;
+    }
+
+    private static Layer unwrap(Layer l) {
+        while (l instanceof BaseWrapperLayer) {
+            l = ((BaseWrapperLayer) l).getUnderlying();
+        }
+        return l;
+    }
+
+    /**
+     * @return Maximum number of concurrent streams
+     */
+    public int getMaxStreams() {
+        return maxStreams;
+    }
+
+    /**
+     * @return Number of currently active streams
+     */
+    public int numActiveStreams() {
+        return numActive;
+    }
+
+    /**
+     * @param slot Slot index
+     * @return True if a stream is currently assigned to the slot
+     */
+    public boolean isActive(int slot) {
+        return active[slot];
+    }
+
+    /**
+     * Input buffer for the next step, with shape [maxStreams, nIn]. Row i should be set to the features for the
+     * stream in slot i before calling {@link #step()}. The buffer is not modified by {@link #step()}.
+     *
+     * @return Input buffer
+     */
+    public INDArray getInput() {
+        return input;
+    }
+
+    /**
+     * Assign a new stream to a free slot. The recurrent state for the slot is reset to the initial (zero) state.
+     *
+     * @return Slot index of the new stream
+     * @throws IllegalStateException if all slots are in use
+     */
+    public int addStream() {
+        for (int i = 0; i < maxStreams; i++) {
+            if (!active[i]) {
+                active[i] = true;
+                numActive++;
+                resetStream(i);
+                return i;
+            }
+        }
+        throw new IllegalStateException("All " + maxStreams + " stream slots are in use");
+    }
+
+    /**
+     * Remove the stream in the given slot, making the slot available for {@link #addStream()}.
+     *
+     * @param slot Slot index, as returned by {@link #addStream()}
+     */
+    public void removeStream(int slot) {
+        Preconditions.checkArgument(slot >= 0 && slot < maxStreams, "Invalid slot index: %s", slot);
+        if (active[slot]) {
+            active[slot] = false;
+            numActive--;
+        }
+    }
+
+    /**
+     * Reset the recurrent state of the stream in the given slot to the initial (zero) state.
+     *
+     * @param slot Slot index
+     */
+    public void resetStream(int slot) {
+        Preconditions.checkArgument(slot >= 0 && slot < maxStreams, "Invalid slot index: %s", slot);
+        for (StepLayer l : layers) {
+            l.reset(slot);
+        }
+    }
+
+    /**
+     * Reset the recurrent state of all slots.
+     */
+    public void resetAll() {
+        for (StepLayer l : layers) {
+            l.resetAll();
+        }
+    }
+
+    /**
+     * Perform one time step for all slots, using the current contents of {@link #getInput()}.
+     *
+     * @return Output activations, with shape [maxStreams, nOut]. This array is reused by later steps
+     */
+    public INDArray step() {
+        for (StepLayer l : layers) {
+            l.step();
+        }
+        return output;
+    }
+
+    /**
+     * Copy the given input into the input buffer, then perform one time step. See {@link #step()}
+     *
+     * @param input Input, with shape [maxStreams, nIn]
+     * @return Output activations, with shape [maxStreams, nOut]
+     */
+    public INDArray step(@NonNull INDArray input) {
+        this.input.assign(input);
+        return step();
+    }
+
+
+    private interface StepLayer {
+        void step();
+
+        INDArray output();
+
+        void reset(int slot);
+
+        void resetAll();
+    }
+
+    private static INDArray[] rows(INDArray arr, int n) {
+        //Row views are created once here, so that resetting a stream doesn't create new views
+        INDArray[] rows = new INDArray[n];
+        for (int i = 0; i < n; i++) {
+            rows[i] = arr.getRow(i, true);
+        }
+        return rows;
+    }
+
+    /**
+     * out = activationFn(in * W + b)
+     */
+    private static class DenseStep implements StepLayer {
+        private final INDArray in;
+        private final INDArray w;
+        private final INDArray b;
+        private final IActivation afn;
+        private final INDArray out;
+
+        private DenseStep(Layer l, IActivation afn, boolean hasBias, INDArray in, int batch) {
+            this.in = in;
+            this.w = l.getParam(DefaultParamInitializer.WEIGHT_KEY);
+            this.b = hasBias ? l.getParam(DefaultParamInitializer.BIAS_KEY) : null;
+            this.afn = afn;
+            this.out = Nd4j.create(w.dataType(), new long[]{batch, w.size(1)}, 'f');
+        }
+
+        @Override
+        public void step() {
+            Nd4j.gemm(in, w, out, false, false, 1.0, 0.0);
+            if (b != null)
+                out.addiRowVector(b);
+            afn.getActivation(out, false);
+        }
+
+        @Override
+        public INDArray output() {
+            return out;
+        }
+
+        @Override
+        public void reset(int slot) {
+            //Stateless
+        }
+
+        @Override
+        public void resetAll() {
+            //Stateless
+        }
+    }
+
+    /**
+     * h(t) = activationFn(in * W + h(t-1) * RW + b)
+     */
+    private static class SimpleRnnStep implements StepLayer {
+        private final INDArray in;
+        private final INDArray w;
+        private final INDArray rw;
+        private final INDArray b;
+        private final IActivation afn;
+        private final INDArray preOut;
+        private final INDArray h;
+        private final INDArray[] hRows;
+
+        private SimpleRnnStep(Layer l, SimpleRnn conf, INDArray in, int batch) {
+            this.in = in;
+            this.w = l.getParam(SimpleRnnParamInitializer.WEIGHT_KEY);
+            this.rw = l.getParam(SimpleRnnParamInitializer.RECURRENT_WEIGHT_KEY);
+            this.b = l.getParam(SimpleRnnParamInitializer.BIAS_KEY);
+            this.afn = conf.getActivationFn();
+            DataType dt = w.dataType();
+            this.preOut = Nd4j.create(dt, new long[]{batch, w.size(1)}, 'f');
+            this.h = Nd4j.create(dt, new long[]{batch, w.size(1)}, 'f');
+            this.hRows = rows(h, batch);
+        }
+
+        @Override
+        public void step() {
+            Nd4j.gemm(in, w, preOut, false, false, 1.0, 0.0);
+            Nd4j.gemm(h, rw, preOut, false, false, 1.0, 1.0);
+            preOut.addiRowVector(b);
+            afn.getActivation(preOut, false);
+            h.assign(preOut);
+        }
+
+        @Override
+        public INDArray output() {
+            return h;
+        }
+
+        @Override
+        public void reset(int slot) {
+            hRows[slot].assign(0);
+        }
+
+        @Override
+        public void resetAll() {
+            h.assign(0);
+        }
+    }
+
+    /**
+     * Same calculation as {@code LSTMHelpers.activateHelper} (without peephole connections), for a single step:
+     * <pre>
+     * [a, f, o, g] = in * W + h(t-1) * RW + b
+     * c(t) = gateFn(f) * c(t-1) + gateFn(g) * activationFn(a)
+     * h(t) = gateFn(o) * activationFn(c(t))
+     * </pre>
+     */
+    private static class LstmStep implements StepLayer {
+        private final INDArray in;
+        private final INDArray w;
+        private final INDArray rw;
+        private final INDArray b;
+        private final IActivation afn;
+        private final IActivation gateFn;
+        private final INDArray ifog;
+        private final INDArray inputAct;
+        private final INDArray forgetGate;
+        private final INDArray outputGate;
+        private final INDArray inputModGate;
+        private final INDArray c;
+        private final INDArray h;
+        private final INDArray[] cRows;
+        private final INDArray[] hRows;
+
+        private LstmStep(Layer l, LSTM conf, INDArray in, int batch) {
+            this.in = in;
+            this.w = l.getParam(LSTMParamInitializer.INPUT_WEIGHT_KEY);
+            this.rw = l.getParam(LSTMParamInitializer.RECURRENT_WEIGHT_KEY);
+            this.b = l.getParam(LSTMParamInitializer.BIAS_KEY);
+            this.afn = conf.getActivationFn();
+            this.gateFn = conf.getGateActivationFn();
+            long n = rw.size(0);
+            DataType dt = w.dataType();
+            //'f' order: each of the 4 gate blocks is a contiguous view
+            this.ifog = Nd4j.create(dt, new long[]{batch, 4 * n}, 'f');
+            this.inputAct = ifog.get(all(), interval(0, n));
+            this.forgetGate = ifog.get(all(), interval(n, 2 * n));
+            this.outputGate = ifog.get(all(), interval(2 * n, 3 * n));
+            this.inputModGate = ifog.get(all(), interval(3 * n, 4 * n));
+            this.c = Nd4j.create(dt, new long[]{batch, n}, 'f');
+            this.h = Nd4j.create(dt, new long[]{batch, n}, 'f');
+            this.cRows = rows(c, batch);
+            this.hRows = rows(h, batch);
+        }
+
+        @Override
+        public void step() {
+            Nd4j.gemm(in, w, ifog, false, false, 1.0, 0.0);
+            Nd4j.gemm(h, rw, ifog, false, false, 1.0, 1.0);
+            ifog.addiRowVector(b);
+
+            afn.getActivation(inputAct, false);
+            gateFn.getActivation(forgetGate, false);
+            gateFn.getActivation(outputGate, false);
+            gateFn.getActivation(inputModGate, false);
+
+            c.muli(forgetGate);
+            c.addi(inputModGate.muli(inputAct));
+
+            h.assign(c);
+            afn.getActivation(h, false);
+            h.muli(outputGate);
+        }
+
+        @Override
+        public INDArray output() {
+            return h;
+        }
+
+        @Override
+        public void reset(int slot) {
+            cRows[slot].assign(0);
+            hRows[slot].assign(0);
+        }
+
+        @Override
+        public void resetAll() {
+            c.assign(0);
+            h.assign(0);
+        }
+    }
+}
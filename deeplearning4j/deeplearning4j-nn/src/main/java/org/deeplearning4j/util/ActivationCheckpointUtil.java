@@ -0,0 +1,114 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.util;
+
+import lombok.NonNull;
+
+import java.util.*;
+
+/**
+ * Utilities for activation checkpointing (recomputation of activations during backprop).<br>
+ * The forward pass positions (layers for MultiLayerNetwork, vertices in topological order for ComputationGraph) are
+ * split into consecutive segments of {@code interval} positions. All segments except the one containing the final
+ * position are "recomputed" segments: only the activations of a recomputed segment that are needed outside of that
+ * segment are retained after the forward pass, and the other activations are recalculated from the retained ones
+ * immediately before the segment is backpropagated.
+ *
+ * @see org.deeplearning4j.nn.conf.BaseBuilder#activationCheckpointInterval(int)
+ * @see org.deeplearning4j.nn.conf.ComputationGraphConfiguration.GraphBuilder#activationCheckpointInterval(int)
+ */
+public class ActivationCheckpointUtil {
+
+    private ActivationCheckpointUtil() {
+    }
+
+    /**
+     * @param numPositions Number of positions (layers or vertices) in the forward pass
+     * @param interval     Activation checkpoint interval. 0 or 1: disabled
+     * @return Number of segments that are recomputed during backprop. Segment i covers positions
+     * [i*interval, (i+1)*interval)
+     */
+    public static int numRecomputedSegments(int numPositions, int interval) {
+        if (interval <= 1 || numPositions <= 1) {
+            return 0;
+        }
+        return (numPositions - 1) / interval;
+    }
+
+    /**
+     * Determine the vertices whose activations are not retained during the forward pass of a ComputationGraph.<br>
+     * A vertex in a recomputed segment has its activations retained if it is a network input or output, or if any of
+     * the vertices it feeds into is a network output or is in a later segment.
+     *
+     * @param topologicalOrder Vertex names, in the topological order used for the forward pass
+     * @param vertexInputs     Map of vertex name to the names of the vertices that are inputs to it
+     * @param networkInputs    Names of the network inputs
+     * @param networkOutputs   Names of the network outputs
+     * @param interval         Activation checkpoint interval
+     * @return For each recomputed segment, the names of the vertices in that segment whose activations are recomputed.
+     * Empty if activation checkpointing is disabled
+     */
+    public static List<List<String>> graphRecomputedSegments(@NonNull List<String> topologicalOrder,
+                                                             @NonNull Map<String, List<String>> vertexInputs,
+                                                             @NonNull Collection<String> networkInputs,
+                                                             @NonNull Collection<String> networkOutputs, int interval) {
+        int numSegments = numRecomputedSegments(topologicalOrder.size(), interval);
+        if (numSegments == 0) {
+            return Collections.emptyList();
+        }
+
+        Map<String, Integer> position = new HashMap<>();
+        for (int i = 0; i < topologicalOrder.size(); i++) {
+            position.put(topologicalOrder.get(i), i);
+        }
+
+        //Latest position that consumes the output of each vertex. Outputs of vertices feeding network outputs are
+        // needed until the score is calculated, after backprop
+        Map<String, Integer> lastConsumer = new HashMap<>();
+        for (Map.Entry<String, List<String>> e : vertexInputs.entrySet()) {
+            if (e.getValue() == null || !position.containsKey(e.getKey())) {
+                continue;
+            }
+            int consumerPos = networkOutputs.contains(e.getKey()) ? Integer.MAX_VALUE : position.get(e.getKey());
+            for (String in : e.getValue()) {
+                Integer curr = lastConsumer.get(in);
+                lastConsumer.put(in, curr == null ? consumerPos : Math.max(curr, consumerPos));
+            }
+        }
+
+        List<List<String>> out = new ArrayList<>(numSegments);
+        for (int s = 0; s < numSegments; s++) {
+            int segmentEnd = (s + 1) * interval;
+            List<String> recomputed = new ArrayList<>();
+            for (int i = s * interval; i < segmentEnd; i++) {
+                String name = topologicalOrder.get(i);
+                Integer last = lastConsumer.get(name);
+                boolean retained = networkInputs.contains(name) || networkOutputs.contains(name)
+                        || (last != null && last >= segmentEnd);
+                if (!retained) {
+                    recomputed.add(name);
+                }
+            }
+            out.add(recomputed);
+        }
+        return out;
+    }
+}
@@ -63,6 +63,7 @@ public class ModelSerializer {
     public static final String COEFFICIENTS_BIN = "coefficients.bin";
     public static final String NO_PARAMS_MARKER = "noParams.marker";
     public static final String PREPROCESSOR_BIN = "preprocessor.bin";
+    public static final String QUANTIZED_PARAMS_BIN = "quantizedParams.bin";
 
     private ModelSerializer() {}
 
@@ -184,6 +185,17 @@ public class ModelSerializer {
         }
 
 
+        if (!QuantizationUtil.quantizedLayers(model).isEmpty()) {
+            // INT8 weights of quantized layers: held by the layers, not part of the parameters
+            ZipEntry quantized = new ZipEntry(QUANTIZED_PARAMS_BIN);
+            zipfile.putNextEntry(quantized);
+            try {
+                QuantizationUtil.writeQuantizedParams(model, dos);
+            } finally {
+                dos.flush();
+            }
+        }
+
         if(dataNormalization != null) {
             // now, add our normalizer as additional entry
             ZipEntry nEntry = new ZipEntry(NORMALIZER_BIN);
@@ -342,6 +354,7 @@ public class ModelSerializer {
                 confFromJson.setDataType(params.dataType());
             MultiLayerNetwork network = new MultiLayerNetwork(confFromJson);
             network.init(params, false);
+            restoreQuantizedParams(network, zipFile);
 
             if (gotUpdaterState && updaterState != null) {
                 network.getUpdater().setStateViewArray(network, updaterState, false);
@@ -569,6 +582,7 @@ public class ModelSerializer {
 
             ComputationGraph cg = new ComputationGraph(confFromJson);
             cg.init(params, false);
+            restoreQuantizedParams(cg, files);
 
 
             if (gotUpdaterState && updaterState != null) {
@@ -709,7 +723,8 @@ public class ModelSerializer {
         Preconditions.checkState(f.exists(), "File must exist: %s", f);
         Preconditions.checkArgument(!(UPDATER_BIN.equalsIgnoreCase(key) || NORMALIZER_BIN.equalsIgnoreCase(key)
                 || CONFIGURATION_JSON.equalsIgnoreCase(key) || COEFFICIENTS_BIN.equalsIgnoreCase(key)
-                || NO_PARAMS_MARKER.equalsIgnoreCase(key) || PREPROCESSOR_BIN.equalsIgnoreCase(key)),
+                || NO_PARAMS_MARKER.equalsIgnoreCase(key) || PREPROCESSOR_BIN.equalsIgnoreCase(key)
+                || QUANTIZED_PARAMS_BIN.equalsIgnoreCase(key)),
                 "Invalid key: Key is reserved for internal use: \"%s\"", key);
         File tempFile = null;
         try {
@@ -776,7 +791,8 @@ public class ModelSerializer {
         Preconditions.checkState(f.exists(), "File must exist: %s", f);
         Preconditions.checkArgument(!(UPDATER_BIN.equalsIgnoreCase(key) || NORMALIZER_BIN.equalsIgnoreCase(key)
                         || CONFIGURATION_JSON.equalsIgnoreCase(key) || COEFFICIENTS_BIN.equalsIgnoreCase(key)
-                        || NO_PARAMS_MARKER.equalsIgnoreCase(key) || PREPROCESSOR_BIN.equalsIgnoreCase(key)),
+                        || NO_PARAMS_MARKER.equalsIgnoreCase(key) || PREPROCESSOR_BIN.equalsIgnoreCase(key)
+                        || QUANTIZED_PARAMS_BIN.equalsIgnoreCase(key)),
                 "Invalid key: Key is reserved for internal use: \"%s\"", key);
 
         try (ZipFile zipFile = new ZipFile(f)) {
@@ -859,6 +875,15 @@ public class ModelSerializer {
         return restoreNormalizerFromMap(files);
     }
 
+    private static void restoreQuantizedParams(Model model, Map<String, byte[]> files) throws IOException {
+        byte[] quantized = files.get(QUANTIZED_PARAMS_BIN);
+        if (quantized != null) {
+            try (DataInputStream dis = new DataInputStream(new ByteArrayInputStream(quantized))) {
+                QuantizationUtil.readQuantizedParams(model, dis);
+            }
+        }
+    }
+
     private static <T extends Normalizer> T restoreNormalizerFromMap(Map<String, byte[]> files) throws IOException {
         byte[] norm = files.get(NORMALIZER_BIN);
 
@@ -0,0 +1,463 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.util;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.graph.GraphVertex;
+import org.deeplearning4j.nn.conf.graph.LayerVertex;
+import org.deeplearning4j.nn.conf.layers.Convolution1D;
+import org.deeplearning4j.nn.conf.layers.Convolution1DLayer;
+import org.deeplearning4j.nn.conf.layers.Convolution2D;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.Layer;
+import org.deeplearning4j.nn.conf.layers.misc.QuantizedLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.params.DefaultParamInitializer;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.enums.WeightsFormat;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.impl.broadcast.BroadcastDivOp;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.adapter.MultiDataSetIteratorAdapter;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.BooleanIndexing;
+import org.nd4j.linalg.indexing.conditions.Conditions;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Post-training INT8 quantization of {@link DenseLayer} and {@link ConvolutionLayer} layers, for inference.<br>
+ * Weights are quantized symmetrically with one scale per output channel. If calibration data is provided, the maximum
+ * absolute value of the input activations to each quantized layer is recorded and used to quantize the activations
+ * for {@link QuantizedLayer.Execution#INTEGER} execution.<br>
+ * The returned network is a copy of the original, where each supported layer is replaced by a {@link QuantizedLayer};
+ * other layers (including output layers) are unchanged. The quantized network is inference only. The INT8 weights
+ * are held by the quantized layers (not the network parameters or configuration), and are saved in binary form by
+ * {@link ModelSerializer}.<br>
+ * Use {@link #compare(MultiLayerNetwork, MultiLayerNetwork, DataSetIterator)} to check the accuracy of the quantized
+ * network against the original.
+ */
+@Slf4j
+public class QuantizationUtil {
+
+    private static final double INT8_MAX = 127.0;
+
+    private QuantizationUtil() {
+    }
+
+    /**
+     * As per {@link #quantize(MultiLayerNetwork, DataSetIterator, QuantizedLayer.Execution)} using
+     * {@link QuantizedLayer.Execution#DEQUANTIZE}
+     */
+    public static MultiLayerNetwork quantize(@NonNull MultiLayerNetwork net, DataSetIterator calibrationData) {
+        return quantize(net, calibrationData, QuantizedLayer.Execution.DEQUANTIZE);
+    }
+
+    /**
+     * Quantize the supported layers of the network
+     *
+     * @param net             Network to quantize. Not modified
+     * @param calibrationData Representative input data, used to calibrate the input activation ranges. May be null,
+     *                        in which case INTEGER execution falls back to DEQUANTIZE
+     * @param execution       How the quantized layers should be executed
+     * @return Quantized copy of the network
+     */
+    public static MultiLayerNetwork quantize(@NonNull MultiLayerNetwork net, DataSetIterator calibrationData,
+                                             @NonNull QuantizedLayer.Execution execution) {
+        MultiLayerConfiguration conf = net.getLayerWiseConfigurations().clone();
+        int nLayers = conf.getConfs().size();
+
+        double[] maxAbs = new double[nLayers];
+        if (calibrationData != null) {
+            if (calibrationData.resetSupported())
+                calibrationData.reset();
+            while (calibrationData.hasNext()) {
+                DataSet ds = calibrationData.next();
+                List<INDArray> acts = net.feedForward(ds.getFeatures(), ds.getFeaturesMaskArray(), ds.getLabelsMaskArray());
+                for (int i = 0; i < nLayers; i++) {
+                    //Activations list includes the network input at position 0: i.e., entry i is the input to layer i
+                    maxAbs[i] = Math.max(maxAbs[i], acts.get(i).amaxNumber().doubleValue());
+                }
+            }
+        }
+
+        Map<Integer, INDArray[]> quantized = new HashMap<>();
+        for (int i = 0; i < nLayers; i++) {
+            Layer l = conf.getConf(i).getLayer();
+            Map<String, INDArray> params = net.getLayer(i).paramTable();
+            if (isQuantizable(l, params)) {
+                quantized.put(i, quantizeWeights(l, params));
+                conf.getConf(i).setLayer(quantizeLayer(l, maxAbs[i] / INT8_MAX, execution));
+            }
+        }
+
+        MultiLayerNetwork out = new MultiLayerNetwork(conf);
+        out.init();
+        Set<String> keys = out.paramTable().keySet();
+        for (Map.Entry<String, INDArray> e : net.paramTable().entrySet()) {
+            if (keys.contains(e.getKey()))
+                out.setParam(e.getKey(), e.getValue());
+        }
+        for (Map.Entry<Integer, INDArray[]> e : quantized.entrySet()) {
+            INDArray[] q = e.getValue();
+            ((org.deeplearning4j.nn.layers.QuantizedLayer) out.getLayer(e.getKey())).setQuantizedParams(q[0], q[1], q[2]);
+        }
+        log.info("Quantized {} of {} layers", quantized.size(), nLayers);
+        return out;
+    }
+
+    /**
+     * As per {@link #quantize(ComputationGraph, MultiDataSetIterator, QuantizedLayer.Execution)} for single input
+     * graphs
+     */
+    public static ComputationGraph quantize(@NonNull ComputationGraph net, DataSetIterator calibrationData,
+                                            @NonNull QuantizedLayer.Execution execution) {
+        return quantize(net, calibrationData == null ? null : new MultiDataSetIteratorAdapter(calibrationData), execution);
+    }
+
+    /**
+     * Quantize the supported layers of the network
+     *
+     * @param net             Network to quantize. Not modified
+     * @param calibrationData Representative input data, used to calibrate the input activation ranges. May be null,
+     *                        in which case INTEGER execution falls back to DEQUANTIZE
+     * @param execution       How the quantized layers should be executed
+     * @return Quantized copy of the network
+     */
+    public static ComputationGraph quantize(@NonNull ComputationGraph net, MultiDataSetIterator calibrationData,
+                                            @NonNull QuantizedLayer.Execution execution) {
+        ComputationGraphConfiguration conf = net.getConfiguration().clone();
+
+        Map<String, Double> maxAbs = new HashMap<>();
+        if (calibrationData != null) {
+            if (calibrationData.resetSupported())
+                calibrationData.reset();
+            while (calibrationData.hasNext()) {
+                MultiDataSet mds = calibrationData.next();
+                Map<String, INDArray> acts = net.feedForward(mds.getFeatures(), false);
+                for (Map.Entry<String, GraphVertex> e : conf.getVertices().entrySet()) {
+                    if (!(e.getValue() instanceof LayerVertex))
+                        continue;
+                    INDArray in = acts.get(conf.getVertexInputs().get(e.getKey()).get(0));
+                    double m = in.amaxNumber().doubleValue();
+                    maxAbs.merge(e.getKey(), m, Math::max);
+                }
+            }
+        }
+
+        Map<String, INDArray[]> quantized = new HashMap<>();
+        for (Map.Entry<String, GraphVertex> e : conf.getVertices().entrySet()) {
+            if (!(e.getValue() instanceof LayerVertex))
+                continue;
+            LayerVertex lv = (LayerVertex) e.getValue();
+            Layer l = lv.getLayerConf().getLayer();
+            Map<String, INDArray> params = net.getLayer(e.getKey()).paramTable();
+            if (isQuantizable(l, params)) {
+                quantized.put(e.getKey(), quantizeWeights(l, params));
+                lv.getLayerConf().setLayer(quantizeLayer(l, maxAbs.getOrDefault(e.getKey(), 0.0) / INT8_MAX, execution));
+            }
+        }
+
+        ComputationGraph out = new ComputationGraph(conf);
+        out.init();
+        Set<String> keys = out.paramTable().keySet();
+        for (Map.Entry<String, INDArray> e : net.paramTable().entrySet()) {
+            if (keys.contains(e.getKey()))
+                out.setParam(e.getKey(), e.getValue());
+        }
+        for (Map.Entry<String, INDArray[]> e : quantized.entrySet()) {
+            INDArray[] q = e.getValue();
+            ((org.deeplearning4j.nn.layers.QuantizedLayer) out.getLayer(e.getKey())).setQuantizedParams(q[0], q[1], q[2]);
+        }
+        log.info("Quantized {} of {} layers", quantized.size(), net.getLayers().length);
+        return out;
+    }
+
+    /**
+     * Compare the outputs of the original and quantized networks on the specified data
+     */
+    public static Comparison compare(@NonNull MultiLayerNetwork original, @NonNull MultiLayerNetwork quantized,
+                                     @NonNull DataSetIterator data) {
+        ComparisonAccumulator acc = new ComparisonAccumulator();
+        if (data.resetSupported())
+            data.reset();
+        while (data.hasNext()) {
+            DataSet ds = data.next();
+            INDArray o1 = original.output(ds.getFeatures(), false, ds.getFeaturesMaskArray(), ds.getLabelsMaskArray());
+            INDArray o2 = quantized.output(ds.getFeatures(), false, ds.getFeaturesMaskArray(), ds.getLabelsMaskArray());
+            acc.add(o1, o2);
+        }
+        return acc.build(modelBytes(original.params(), original.getLayers()), modelBytes(quantized.params(), quantized.getLayers()));
+    }
+
+    /**
+     * Compare the outputs of the original and quantized networks on the specified data. For multiple output networks,
+     * all outputs are included
+     */
+    public static Comparison compare(@NonNull ComputationGraph original, @NonNull ComputationGraph quantized,
+                                     @NonNull MultiDataSetIterator data) {
+        ComparisonAccumulator acc = new ComparisonAccumulator();
+        if (data.resetSupported())
+            data.reset();
+        while (data.hasNext()) {
+            MultiDataSet mds = data.next();
+            INDArray[] o1 = original.output(false, mds.getFeatures(), mds.getFeaturesMaskArrays(), mds.getLabelsMaskArrays());
+            INDArray[] o2 = quantized.output(false, mds.getFeatures(), mds.getFeaturesMaskArrays(), mds.getLabelsMaskArrays());
+            for (int i = 0; i < o1.length; i++) {
+                acc.add(o1[i], o2[i]);
+            }
+        }
+        return acc.build(modelBytes(original.params(), original.getLayers()), modelBytes(quantized.params(), quantized.getLayers()));
+    }
+
+    /**
+     * @return True if the layer is supported for quantization: DenseLayer or (2D/1D) ConvolutionLayer, with no
+     * parameters other than weights and bias
+     */
+    public static boolean isQuantizable(Layer layer, Map<String, INDArray> params) {
+        Class<?> c = layer.getClass();
+        boolean supported = c == DenseLayer.class || c == ConvolutionLayer.class || c == Convolution2D.class
+                || c == Convolution1DLayer.class || c == Convolution1D.class;
+        if (!supported || params == null || !params.containsKey(DefaultParamInitializer.WEIGHT_KEY))
+            return false;
+        Set<String> other = new HashSet<>(params.keySet());
+        other.remove(DefaultParamInitializer.WEIGHT_KEY);
+        other.remove(DefaultParamInitializer.BIAS_KEY);
+        return other.isEmpty();
+    }
+
+    /**
+     * Create the quantized configuration for a single layer. The quantized weights themselves are created with
+     * {@link #quantizeWeights(Layer, Map)} and set on the layer implementation after network initialization
+     *
+     * @param layer      Original layer configuration
+     * @param inputScale Scale for the INT8 input activations, or 0 if not calibrated
+     * @param execution  How the layer should be executed
+     */
+    public static QuantizedLayer quantizeLayer(@NonNull Layer layer, double inputScale,
+                                               @NonNull QuantizedLayer.Execution execution) {
+        return new QuantizedLayer.Builder()
+                .layer(layer.clone())
+                .channelDimension(outputChannelDimension(layer))
+                .inputScale(inputScale)
+                .execution(execution)
+                .name(layer.getLayerName())
+                .build();
+    }
+
+    /**
+     * Quantize the weights of a single layer
+     *
+     * @param layer  Original layer configuration
+     * @param params Parameters of the original layer
+     * @return INT8 weights, weight scale per output channel, and bias (not quantized, null if the layer has no bias)
+     */
+    public static INDArray[] quantizeWeights(@NonNull Layer layer, @NonNull Map<String, INDArray> params) {
+        Preconditions.checkArgument(isQuantizable(layer, params), "Layer %s of type %s cannot be quantized",
+                layer.getLayerName(), layer.getClass().getSimpleName());
+        INDArray w = params.get(DefaultParamInitializer.WEIGHT_KEY);
+        INDArray b = params.get(DefaultParamInitializer.BIAS_KEY);
+        int channelDim = outputChannelDimension(layer);
+
+        int[] reduce = new int[w.rank() - 1];
+        for (int i = 0, j = 0; i < w.rank(); i++) {
+            if (i != channelDim)
+                reduce[j++] = i;
+        }
+
+        try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+            INDArray wf = w.castTo(DataType.FLOAT).dup('c');
+            INDArray scales = Transforms.abs(wf, true).max(reduce).divi(INT8_MAX);
+            BooleanIndexing.replaceWhere(scales, 1.0, Conditions.equals(0.0));      //All zero channel
+
+            Nd4j.getExecutioner().exec(new BroadcastDivOp(wf, scales, wf, channelDim));
+            Transforms.round(wf, false);
+            Transforms.min(wf, INT8_MAX, false);
+            Transforms.max(wf, -INT8_MAX, false);
+            return new INDArray[]{wf.castTo(DataType.INT8), scales, b == null ? null : b.dup()};
+        }
+    }
+
+    /**
+     * @return Quantized layers of the model, keyed by layer index (MultiLayerNetwork) or layer name (ComputationGraph)
+     */
+    public static Map<String, org.deeplearning4j.nn.layers.QuantizedLayer> quantizedLayers(@NonNull Model model) {
+        Map<String, org.deeplearning4j.nn.layers.QuantizedLayer> m = new LinkedHashMap<>();
+        if (model instanceof MultiLayerNetwork) {
+            org.deeplearning4j.nn.api.Layer[] layers = ((MultiLayerNetwork) model).getLayers();
+            for (int i = 0; i < layers.length; i++) {
+                if (layers[i] instanceof org.deeplearning4j.nn.layers.QuantizedLayer)
+                    m.put(String.valueOf(i), (org.deeplearning4j.nn.layers.QuantizedLayer) layers[i]);
+            }
+        } else if (model instanceof ComputationGraph) {
+            for (org.deeplearning4j.nn.api.Layer l : ((ComputationGraph) model).getLayers()) {
+                if (l instanceof org.deeplearning4j.nn.layers.QuantizedLayer)
+                    m.put(l.conf().getLayer().getLayerName(), (org.deeplearning4j.nn.layers.QuantizedLayer) l);
+            }
+        }
+        return m;
+    }
+
+    /**
+     * Write the quantized parameters of all quantized layers of the model, in binary form. Used by
+     * {@link ModelSerializer}
+     */
+    public static void writeQuantizedParams(@NonNull Model model, @NonNull DataOutputStream out) throws IOException {
+        Map<String, org.deeplearning4j.nn.layers.QuantizedLayer> layers = quantizedLayers(model);
+        out.writeInt(layers.size());
+        for (Map.Entry<String, org.deeplearning4j.nn.layers.QuantizedLayer> e : layers.entrySet()) {
+            Map<String, INDArray> params = e.getValue().quantizedParamTable();
+            out.writeUTF(e.getKey());
+            out.writeInt(params.size());
+            for (Map.Entry<String, INDArray> p : params.entrySet()) {
+                out.writeUTF(p.getKey());
+                Nd4j.write(p.getValue(), out);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Read quantized parameters written by {@link #writeQuantizedParams(Model, DataOutputStream)} and set them on the
+     * quantized layers of the model
+     */
+    public static void readQuantizedParams(@NonNull Model model, @NonNull DataInputStream in) throws IOException {
+        Map<String, org.deeplearning4j.nn.layers.QuantizedLayer> layers = quantizedLayers(model);
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            String key = in.readUTF();
+            int numArrays = in.readInt();
+            Map<String, INDArray> params = new HashMap<>();
+            for (int j = 0; j < numArrays; j++) {
+                String name = in.readUTF();
+                params.put(name, Nd4j.read(in));
+            }
+            org.deeplearning4j.nn.layers.QuantizedLayer l = layers.get(key);
+            if (l == null)
+                throw new IllegalStateException("Saved quantized parameters for layer \"" + key + "\", but no such quantized layer exists");
+            l.setQuantizedParams(params.get(org.deeplearning4j.nn.layers.QuantizedLayer.WEIGHT_KEY),
+                    params.get(org.deeplearning4j.nn.layers.QuantizedLayer.WEIGHT_SCALES_KEY),
+                    params.get(org.deeplearning4j.nn.layers.QuantizedLayer.BIAS_KEY));
+        }
+    }
+
+    /**
+     * Set the quantized parameters of the quantized layers of one model on the corresponding layers of another (for
+     * example, a clone). The arrays are shared, not copied: they are never modified
+     */
+    public static void copyQuantizedParams(@NonNull Model from, @NonNull Model to) {
+        Map<String, org.deeplearning4j.nn.layers.QuantizedLayer> target = quantizedLayers(to);
+        for (Map.Entry<String, org.deeplearning4j.nn.layers.QuantizedLayer> e : quantizedLayers(from).entrySet()) {
+            Map<String, INDArray> params = e.getValue().quantizedParamTable();
+            org.deeplearning4j.nn.layers.QuantizedLayer l = target.get(e.getKey());
+            if (l != null && !params.isEmpty()) {
+                l.setQuantizedParams(params.get(org.deeplearning4j.nn.layers.QuantizedLayer.WEIGHT_KEY),
+                        params.get(org.deeplearning4j.nn.layers.QuantizedLayer.WEIGHT_SCALES_KEY),
+                        params.get(org.deeplearning4j.nn.layers.QuantizedLayer.BIAS_KEY));
+            }
+        }
+    }
+
+    private static int outputChannelDimension(Layer layer) {
+        if (layer instanceof ConvolutionLayer) {
+            WeightsFormat f = ConvolutionUtils.getWeightFormat(((ConvolutionLayer) layer).getCnn2dDataFormat());
+            return f == WeightsFormat.YXIO ? 3 : 0;
+        }
+        //Dense: [nIn, nOut]
+        return 1;
+    }
+
+    private static long modelBytes(INDArray params, org.deeplearning4j.nn.api.Layer[] layers) {
+        long bytes = params == null ? 0 : params.length() * params.dataType().width();
+        for (org.deeplearning4j.nn.api.Layer l : layers) {
+            if (l instanceof org.deeplearning4j.nn.layers.QuantizedLayer) {
+                bytes += ((org.deeplearning4j.nn.layers.QuantizedLayer) l).residentBytes();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Difference between the outputs of an original and quantized network
+     */
+    @Data
+    @AllArgsConstructor
+    public static class Comparison {
+        private long numExamples;
+        private double maxAbsDifference;
+        private double meanAbsDifference;
+        /**
+         * Fraction of examples where the index of the maximum output is the same for both networks (i.e., the predicted
+         * class for classifiers). NaN if no outputs were rank 2
+         */
+        private double argMaxAgreement;
+        private long originalModelBytes;
+        private long quantizedModelBytes;
+    }
+
+    private static class ComparisonAccumulator {
+        private long numExamples;
+        private long numValues;
+        private double maxAbs;
+        private double sumAbs;
+        private long argMaxCount;
+        private long argMaxAgree;
+
+        private void add(INDArray original, INDArray quantized) {
+            INDArray diff = Transforms.abs(original.castTo(DataType.DOUBLE).sub(quantized.castTo(DataType.DOUBLE)), false);
+            numExamples += original.size(0);
+            numValues += diff.length();
+            maxAbs = Math.max(maxAbs, diff.maxNumber().doubleValue());
+            sumAbs += diff.sumNumber().doubleValue();
+            if (original.rank() == 2) {
+                argMaxCount += original.size(0);
+                argMaxAgree += Nd4j.argMax(original, 1).eq(Nd4j.argMax(quantized, 1)).castTo(DataType.INT32).sumNumber().longValue();
+            }
+        }
+
+        private Comparison build(long originalBytes, long quantizedBytes) {
+            return new Comparison(numExamples, maxAbs, numValues == 0 ? 0.0 : sumAbs / numValues,
+                    argMaxCount == 0 ? Double.NaN : argMaxAgree / (double) argMaxCount, originalBytes, quantizedBytes);
+        }
+    }
+}
@@ -31,6 +31,8 @@ import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.parallelism.inference.InferenceMode;
 import org.deeplearning4j.parallelism.inference.LoadBalanceMode;
+import org.deeplearning4j.parallelism.inference.WorkspaceSizes;
+import org.nd4j.common.primitives.Pair;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.exception.ND4JIllegalStateException;
 import org.nd4j.linalg.factory.Nd4j;
@@ -38,6 +40,7 @@ import org.nd4j.linalg.factory.Nd4j;
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -76,6 +79,9 @@ public class InplaceParallelInference extends ParallelInference {
 
     @Override
     public synchronized void updateModel(@NonNull Model model) {
+        if (resultCache != null)
+            resultCache.invalidate();
+
         for (val h:holders)
             h.updateModel(model);
     }
@@ -91,8 +97,66 @@ public class InplaceParallelInference extends ParallelInference {
         return models;
     }
 
+    /**
+     * In INPLACE mode inference happens on the calling threads, so warm-up runs every sample through every replica
+     * of every device: on the calling thread for the current device (so its workspaces are sized as well), and on
+     * a temporary thread attached to the target device for other devices (so device caches are populated).<br>
+     * Workspaces of other request threads are not affected: use {@link WorkspaceSizes#applyToCurrentThread()}
+     * on those, with the sizes returned by this method.
+     */
+    @Override
+    protected synchronized WorkspaceSizes doWarmUp(@NonNull List<Pair<INDArray[], INDArray[]>> samples, int iterations) {
+        if (iterations < 1)
+            throw new ND4JIllegalStateException("Number of warm-up iterations must be positive value");
+
+        if (samples.isEmpty())
+            return getWorkspaceSizes();
+
+        Nd4j.getExecutioner().commit();
+
+        ready = false;
+        try {
+            val learned = new WorkspaceSizes();
+            val currentDevice = Nd4j.getAffinityManager().getDeviceForCurrentThread();
+            for (val h : holders) {
+                if (h.targetDeviceId == currentDevice) {
+                    h.warmUp(samples, iterations);
+                    learned.recordCurrentThread();
+                    continue;
+                }
+
+                val exception = new AtomicReference<Throwable>();
+                val t = new Thread(() -> {
+                    Nd4j.getAffinityManager().unsafeSetDevice(h.targetDeviceId);
+                    try {
+                        h.warmUp(samples, iterations);
+                    } catch (Throwable e) {
+                        exception.set(e);
+                    }
+                }, "InplaceWarmUp-" + h.targetDeviceId);
+                t.setDaemon(true);
+                t.start();
+                t.join();
+
+                if (exception.get() != null)
+                    throw new RuntimeException("Exception encountered during warm-up: " + exception.get().getMessage(), exception.get());
+            }
+
+            if (workspaceSizes == null)
+                workspaceSizes = new WorkspaceSizes();
+            workspaceSizes.merge(learned);
+
+            return getWorkspaceSizes();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            ready = true;
+        }
+    }
+
     @Override
-    public INDArray[] output(INDArray[] input, INDArray[] inputMasks) {
+    protected INDArray[] doOutput(INDArray[] input, INDArray[] inputMasks) {
         return selector.output(input, inputMasks);
     }
 
@@ -189,6 +253,7 @@ public class InplaceParallelInference extends ParallelInference {
                 throw new ND4JIllegalStateException("Workers must be positive value");
 
             replicas.clear();
+            queue.clear();
 
             isCG = sourceModel instanceof ComputationGraph;
             isMLN = sourceModel instanceof MultiLayerNetwork;
@@ -262,6 +327,37 @@ public class InplaceParallelInference extends ParallelInference {
             }
         }
 
+        /**
+         * Runs the given samples through every replica, on the calling thread.
+         * Requests are blocked meanwhile, since replicas are used without being acquired
+         */
+        protected void warmUp(List<Pair<INDArray[], INDArray[]>> samples, int iterations) {
+            try {
+                modelLock.writeLock().lock();
+                for (int i = 0; i < iterations; i++) {
+                    for (val model : replicas) {
+                        for (val sample : samples) {
+                            if (isCG) {
+                                if (layersToOutputTo != null)
+                                    ((ComputationGraph) model).output(Arrays.asList(layersToOutputTo), false, sample.getFirst(), sample.getSecond());
+                                else
+                                    ((ComputationGraph) model).output(false, sample.getFirst(), sample.getSecond());
+                            } else if (isMLN) {
+                                val fm = sample.getSecond() == null ? null : sample.getSecond()[0];
+                                if (layerIndicesOutputTo != null)
+                                    ((MultiLayerNetwork) model).feedForwardToLayer(layerIndicesOutputTo[0], sample.getFirst()[0], false);
+                                else
+                                    ((MultiLayerNetwork) model).output(sample.getFirst()[0], false, fm, null);
+                            }
+                            Nd4j.getExecutioner().commit();
+                        }
+                    }
+                }
+            } finally {
+                modelLock.writeLock().unlock();
+            }
+        }
+
         protected INDArray[] output(INDArray[] input, INDArray[] inputMasks) {
             try {
                 modelLock.readLock().lock();
@@ -30,10 +30,14 @@ import org.deeplearning4j.nn.graph.ComputationGraph;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.deeplearning4j.parallelism.inference.InferenceMode;
 import org.deeplearning4j.parallelism.inference.InferenceObservable;
+import org.deeplearning4j.parallelism.inference.InferenceResultCache;
 import org.deeplearning4j.parallelism.inference.LoadBalanceMode;
+import org.deeplearning4j.parallelism.inference.WorkspaceSizes;
 import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObservable;
 import org.deeplearning4j.parallelism.inference.observers.BasicInferenceObserver;
 import org.deeplearning4j.parallelism.inference.observers.BatchedInferenceObservable;
+import org.deeplearning4j.parallelism.inference.observers.WarmUpObservable;
+import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.DataSet;
 import org.nd4j.linalg.exception.ND4JIllegalStateException;
@@ -46,6 +50,7 @@ import java.util.List;
 import java.util.Observer;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -59,6 +64,11 @@ public class ParallelInference {
     protected InferenceMode inferenceMode;
     protected int queueLimit;
     protected LoadBalanceMode loadBalanceMode = LoadBalanceMode.FIFO;
+    protected InferenceResultCache resultCache;
+    protected List<Pair<INDArray[], INDArray[]>> warmUpSamples;
+    protected int warmUpIterations = DEFAULT_WARMUP_ITERATIONS;
+    protected WorkspaceSizes workspaceSizes;
+    protected volatile boolean ready = false;
 
     // this queue holds data for inference
     private BlockingQueue<InferenceObservable> observables;
@@ -76,6 +86,7 @@ public class ParallelInference {
     public final static int DEFAULT_BATCH_LIMIT = 32;
     public final static InferenceMode DEFAULT_INFERENCE_MODE = InferenceMode.BATCHED;
     public final static int DEFAULT_QUEUE_LIMIT = 64;
+    public final static int DEFAULT_WARMUP_ITERATIONS = 3;
 
 
 
@@ -89,6 +100,9 @@ public class ParallelInference {
      * @param model
      */
     public void updateModel(@NonNull Model model) {
+        if (resultCache != null)
+            resultCache.invalidate();
+
         if (zoo != null) {
             for (var w: zoo)
                 w.updateModel(model);
@@ -152,10 +166,126 @@ public class ParallelInference {
         return zoo[workerIdx].getCounterValue();
     }
 
+    /**
+     * This method returns true once this instance is ready to serve requests: that is, after initialization and
+     * warm-up (if any was requested via {@link Builder#warmUp(long[]...)} or {@link Builder#warmUp(List)}) are complete.
+     * While {@link #warmUp(List, int)} is in progress, this method returns false.
+     *
+     * @return
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * This method returns workspace sizes learned during warm-up (merged with sizes provided via
+     * {@link Builder#workspaceSizes(WorkspaceSizes)}, if any). These can be saved via {@link WorkspaceSizes#save(java.io.File)},
+     * and passed to the builder after a restart, to pre-allocate worker workspaces at their final size.
+     *
+     * @return Workspace sizes, never null
+     */
+    public WorkspaceSizes getWorkspaceSizes() {
+        WorkspaceSizes result = new WorkspaceSizes();
+        if (workspaceSizes != null)
+            result.merge(workspaceSizes);
+        return result;
+    }
+
+    /**
+     * This method warms up all workers using random inputs of the given shapes, one shape per input "bucket".
+     * For single input models only: use {@link #warmUp(List, int)} for multi-input models, or if inputs require masks.
+     *
+     * @param inputShapes Representative input shapes, usually including the minibatch sizes expected in production
+     * @return Workspace sizes learned during warm-up
+     */
+    public WorkspaceSizes warmUp(@NonNull long[]... inputShapes) {
+        return doWarmUp(samplesForShapes(model, inputShapes), warmUpIterations);
+    }
+
+    /**
+     * This method warms up all workers using the given representative inputs: every worker runs every sample through
+     * its own model replica, on its own thread, for the given number of iterations. This sizes the workers' workspaces
+     * (which otherwise learn their sizes over the first requests), and populates shape/constant caches, before the
+     * first real request is served. This method blocks until all workers are done.
+     *
+     * @param samples    Representative inputs, one array per model input
+     * @param iterations Number of passes over all samples. At least 2 are needed for workspaces to be allocated
+     *                   at their learned size
+     * @return Workspace sizes learned during warm-up
+     */
+    public WorkspaceSizes warmUp(@NonNull List<INDArray[]> samples, int iterations) {
+        List<Pair<INDArray[], INDArray[]>> pairs = new ArrayList<>(samples.size());
+        for (INDArray[] s : samples)
+            pairs.add(new Pair<>(s, null));
+
+        return doWarmUp(pairs, iterations);
+    }
+
+    protected synchronized WorkspaceSizes doWarmUp(@NonNull List<Pair<INDArray[], INDArray[]>> samples, int iterations) {
+        if (iterations < 1)
+            throw new ND4JIllegalStateException("Number of warm-up iterations must be positive value");
+
+        if (zoo == null)
+            throw new ND4JIllegalStateException("ParallelInference instance was shut down");
+
+        if (samples.isEmpty())
+            return getWorkspaceSizes();
+
+        Nd4j.getExecutioner().commit();
+
+        ready = false;
+        try {
+            WarmUpObservable request = new WarmUpObservable(samples, iterations, zoo.length);
+            for (int e = 0; e < zoo.length; e++)
+                observables.put(request);
+
+            while (!request.awaitDone(5, TimeUnit.SECONDS)) {
+                for (InferenceWorker w : zoo) {
+                    if (w == null || w.isStopped.get())
+                        throw new ND4JIllegalStateException("Inference worker stopped during warm-up");
+                }
+            }
+
+            if (workspaceSizes == null)
+                workspaceSizes = new WorkspaceSizes();
+            workspaceSizes.merge(request.getWorkspaceSizes());
+
+            log.info("Warm-up done: {} samples, {} iterations, {} workers", samples.size(), iterations, zoo.length);
+            return getWorkspaceSizes();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } finally {
+            ready = true;
+        }
+    }
+
+    protected void warmUpOnBuild(long[][] shapes, List<Pair<INDArray[], INDArray[]>> samples) {
+        if (shapes != null)
+            doWarmUp(samplesForShapes(model, shapes), warmUpIterations);
+        else if (samples != null)
+            doWarmUp(samples, warmUpIterations);
+
+        ready = true;
+    }
+
+    /**
+     * Creates random inputs of the given shapes, using the data type of the model parameters
+     */
+    protected static List<Pair<INDArray[], INDArray[]>> samplesForShapes(@NonNull Model model, @NonNull long[]... inputShapes) {
+        DataType dataType = model.params() == null ? Nd4j.defaultFloatingPointType() : model.params().dataType();
+        List<Pair<INDArray[], INDArray[]>> samples = new ArrayList<>(inputShapes.length);
+        for (long[] shape : inputShapes)
+            samples.add(new Pair<>(new INDArray[]{Nd4j.rand(dataType, shape)}, null));
+
+        return samples;
+    }
+
     /**
      * This method gracefully shuts down ParallelInference instance
      */
     public synchronized void shutdown() {
+        ready = false;
         if (zoo == null)
             return;
 
@@ -235,6 +365,26 @@ public class ParallelInference {
     public INDArray[] output(INDArray[] input, INDArray[] inputMasks){
         Nd4j.getExecutioner().commit(); //Commit before passing input to other thread
 
+        if (resultCache != null)
+            return resultCache.output(input, inputMasks, () -> doOutput(input, inputMasks));
+
+        return doOutput(input, inputMasks);
+    }
+
+    /**
+     * This method returns the result cache, if one was configured via {@link Builder#resultCache(int, long, TimeUnit)}
+     *
+     * @return Result cache, or null if caching is disabled
+     */
+    public InferenceResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Executes the forward pass for the given input, bypassing the result cache
+     */
+    protected INDArray[] doOutput(INDArray[] input, INDArray[] inputMasks) {
+
         // basically, depending on model type we either throw stuff to specific model, or wait for batch
         BasicInferenceObserver observer = new BasicInferenceObserver();
         InferenceObservable observable;
@@ -302,8 +452,13 @@ public class ParallelInference {
         private int batchLimit = DEFAULT_BATCH_LIMIT;
         private InferenceMode inferenceMode = DEFAULT_INFERENCE_MODE;
         private int queueLimit = DEFAULT_QUEUE_LIMIT;
+        private List<Pair<INDArray[], INDArray[]>> warmUpSamples;
+        private long[][] warmUpShapes;
+        private int warmUpIterations = DEFAULT_WARMUP_ITERATIONS;
+        private WorkspaceSizes workspaceSizes;
         private String[] layersToOutputTo;
         private int[] layerIndicesOutputTo;
+        private InferenceResultCache resultCache;
 
         protected LoadBalanceMode loadBalanceMode = LoadBalanceMode.FIFO;
 
@@ -412,6 +567,92 @@ public class ParallelInference {
             return this;
         }
 
+        /**
+         * This method enables caching of results: outputs are cached by the exact contents, shape and data type of the
+         * inputs (and input masks), and concurrent requests with identical inputs are coalesced into a single forward pass.
+         * Only inputs identical element by element hit the cache: there are no false hits from hash collisions.
+         * The cache is invalidated whenever the model is replaced via {@link ParallelInference#updateModel(Model)}.<br>
+         * Memory: each cache entry holds a copy of its inputs and masks (as a byte array on the Java heap) in addition
+         * to a copy of the outputs, so the cache can use up to maxEntries times (input size + output size). Every
+         * request, including cache hits, also copies its inputs once to build the lookup key.
+         *
+         * Default: no caching
+         *
+         * @param maxEntries Maximum number of cached results
+         * @param ttl        Time after which cached results expire. 0 for no expiry
+         * @param timeUnit   Time unit for ttl
+         * @return
+         */
+        public Builder resultCache(int maxEntries, long ttl, @NonNull TimeUnit timeUnit) {
+            this.resultCache = new InferenceResultCache(maxEntries, ttl, timeUnit);
+            return this;
+        }
+
+        /**
+         * This method enables warm-up with random inputs of the given shapes (single input models only): before
+         * {@link #build()} returns, every worker runs these through its model replica, so that workspaces are
+         * sized and caches are populated before the first request. See {@link ParallelInference#warmUp(List, int)}
+         *
+         * Default: no warm-up
+         *
+         * @param inputShapes Representative input shapes, one per shape bucket
+         * @return
+         */
+        public Builder warmUp(@NonNull long[]... inputShapes) {
+            this.warmUpShapes = inputShapes;
+            this.warmUpSamples = null;
+            return this;
+        }
+
+        /**
+         * This method enables warm-up with the given representative inputs (one array per model input):
+         * before {@link #build()} returns, every worker runs these through its model replica.
+         * See {@link ParallelInference#warmUp(List, int)}
+         *
+         * Default: no warm-up
+         *
+         * @param samples Representative inputs
+         * @return
+         */
+        public Builder warmUp(@NonNull List<INDArray[]> samples) {
+            this.warmUpSamples = new ArrayList<>(samples.size());
+            for (INDArray[] s : samples)
+                this.warmUpSamples.add(new Pair<>(s, null));
+            this.warmUpShapes = null;
+            return this;
+        }
+
+        /**
+         * This method defines the number of passes over warm-up inputs
+         *
+         * Default value: 3
+         *
+         * @param iterations
+         * @return
+         */
+        public Builder warmUpIterations(int iterations) {
+            if (iterations < 1)
+                throw new ND4JIllegalStateException("Number of warm-up iterations must be positive value");
+
+            this.warmUpIterations = iterations;
+            return this;
+        }
+
+        /**
+         * This method provides workspace sizes learned previously (see {@link ParallelInference#getWorkspaceSizes()}
+         * and {@link WorkspaceSizes#load(java.io.File)}): each worker pre-allocates its workspaces with these sizes
+         * before serving requests, so a restarted instance starts warm.<br>
+         * PLEASE NOTE: for {@link InferenceMode#INPLACE}, inference happens on the calling threads,
+         * so request threads should call {@link WorkspaceSizes#applyToCurrentThread()} themselves
+         *
+         * @param workspaceSizes
+         * @return
+         */
+        public Builder workspaceSizes(@NonNull WorkspaceSizes workspaceSizes) {
+            this.workspaceSizes = workspaceSizes;
+            return this;
+        }
+
         /**
          * This method builds new ParallelInference instance
          *
@@ -426,7 +667,11 @@ public class ParallelInference {
                 inf.layerIndicesOutputTo = this.layerIndicesOutputTo;
                 inf.workers = this.workers;
                 inf.loadBalanceMode = this.loadBalanceMode;
+                inf.resultCache = this.resultCache;
+                inf.warmUpIterations = this.warmUpIterations;
+                inf.workspaceSizes = this.workspaceSizes;
                 inf.init();
+                inf.warmUpOnBuild(warmUpShapes, warmUpSamples);
 
                 return inf;
             } else {
@@ -439,7 +684,11 @@ public class ParallelInference {
                 inference.loadBalanceMode = this.loadBalanceMode;
                 inference.layerIndicesOutputTo = layerIndicesOutputTo;
                 inference.layersToOutputTo = layersToOutputTo;
+                inference.resultCache = this.resultCache;
+                inference.warmUpIterations = this.warmUpIterations;
+                inference.workspaceSizes = this.workspaceSizes;
                 inference.init();
+                inference.warmUpOnBuild(warmUpShapes, warmUpSamples);
 
                 return inference;
             }
@@ -552,13 +801,20 @@ public class ParallelInference {
                 // model should be replicated & initialized here
                 initializeReplicaModel();
 
+                // pre-allocating workspaces with sizes learned earlier, if any
+                WorkspaceSizes sizes = workspaceSizes;
+                if (sizes != null)
+                    sizes.applyToCurrentThread();
+
                 boolean isCG = replicatedModel instanceof  ComputationGraph;
                 boolean isMLN = replicatedModel instanceof  MultiLayerNetwork;
 
                 while (shouldWork.get()) {
                     InferenceObservable request = inputQueue.take();
 
-                    if (request != null) {
+                    if (request instanceof WarmUpObservable) {
+                        warmUp((WarmUpObservable) request);
+                    } else if (request != null) {
                         counter.incrementAndGet();
 
                         // FIXME: get rid of instanceof here, model won't change during runtime anyway
@@ -632,6 +888,44 @@ public class ParallelInference {
             }
         }
 
+        /**
+         * Runs warm-up samples through the replicated model, on this worker thread
+         */
+        protected void warmUp(WarmUpObservable request) throws InterruptedException {
+            // making sure each worker gets exactly one warm-up request
+            request.arriveAndAwait();
+
+            Exception exception = null;
+            try {
+                for (int i = 0; i < request.getIterations(); i++) {
+                    for (Pair<INDArray[], INDArray[]> sample : request.getInputBatches()) {
+                        try {
+                            modelLock.readLock().lock();
+                            if (replicatedModel instanceof ComputationGraph) {
+                                if (layersToOutputTo != null)
+                                    ((ComputationGraph) replicatedModel).output(Arrays.asList(layersToOutputTo), false, sample.getFirst(), sample.getSecond());
+                                else
+                                    ((ComputationGraph) replicatedModel).output(false, sample.getFirst(), sample.getSecond());
+                            } else if (replicatedModel instanceof MultiLayerNetwork) {
+                                INDArray fm = (sample.getSecond() == null ? null : sample.getSecond()[0]);
+                                if (layerIndicesOutputTo != null)
+                                    ((MultiLayerNetwork) replicatedModel).feedForwardToLayer(layerIndicesOutputTo[0], sample.getFirst()[0], false);
+                                else
+                                    ((MultiLayerNetwork) replicatedModel).output(sample.getFirst()[0], false, fm, null);
+                            }
+                        } finally {
+                            Nd4j.getExecutioner().commit();
+                            modelLock.readLock().unlock();
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                exception = e;
+            } finally {
+                request.workerDone(exception);
+            }
+        }
+
         protected void shutdown() {
             shouldWork.set(false);
             while (!isStopped.get()) {
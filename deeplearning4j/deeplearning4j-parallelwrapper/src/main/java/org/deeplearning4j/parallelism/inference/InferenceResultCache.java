@@ -0,0 +1,238 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.parallelism.inference;
+
+import lombok.EqualsAndHashCode;
+import lombok.NonNull;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.common.function.Supplier;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Result cache for {@link org.deeplearning4j.parallelism.ParallelInference}.<br>
+ * Outputs are cached by the exact contents, shape and data type of the input and input mask arrays, and the current
+ * model version: a copy of the inputs is kept as part of each cache key, and compared element by element on lookup.
+ * The cache is bounded in size (least recently used entries are evicted first), and entries optionally expire after a
+ * fixed time.<br>
+ * Concurrent requests for identical inputs are coalesced: only the first one is executed, and the others wait for,
+ * and share, its result.<br>
+ * Each caller receives its own copy of the output arrays, so modifying a returned output does not affect the cache.
+ */
+public class InferenceResultCache {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+
+    private final LinkedHashMap<Key, Entry> cache;
+    private final ConcurrentHashMap<Key, CompletableFuture<INDArray[]>> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong modelVersion = new AtomicLong(0);
+
+    private final AtomicLong hits = new AtomicLong(0);
+    private final AtomicLong misses = new AtomicLong(0);
+    private final AtomicLong coalesced = new AtomicLong(0);
+
+    /**
+     * @param maxEntries Maximum number of cached results
+     * @param ttl        Time after which cached results expire. 0 for no expiry
+     * @param timeUnit   Time unit for ttl
+     */
+    public InferenceResultCache(int maxEntries, long ttl, @NonNull TimeUnit timeUnit) {
+        Preconditions.checkArgument(maxEntries > 0, "Maximum number of entries must be positive, got %s", maxEntries);
+        Preconditions.checkArgument(ttl >= 0, "TTL must be non-negative, got %s", ttl);
+        this.maxEntries = maxEntries;
+        this.ttlNanos = timeUnit.toNanos(ttl);
+        this.cache = new LinkedHashMap<Key, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > InferenceResultCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Get the output for the given input from the cache if present; otherwise compute it (or wait for an identical
+     * in-flight computation) and cache it
+     *
+     * @param input      Network inputs
+     * @param inputMasks Network input masks. May be null
+     * @param compute    Computes the output when it is not cached
+     * @return Network outputs
+     */
+    public INDArray[] output(@NonNull INDArray[] input, INDArray[] inputMasks, @NonNull Supplier<INDArray[]> compute) {
+        Key key = new Key(modelVersion.get(), input, inputMasks);
+
+        INDArray[] cachedOutput = null;
+        synchronized (cache) {
+            Entry e = cache.get(key);
+            if (e != null) {
+                if (ttlNanos > 0 && System.nanoTime() - e.created > ttlNanos) {
+                    cache.remove(key);
+                } else {
+                    cachedOutput = e.output;
+                }
+            }
+        }
+        if (cachedOutput != null) {
+            hits.incrementAndGet();
+            return copy(cachedOutput);
+        }
+
+        CompletableFuture<INDArray[]> f = new CompletableFuture<>();
+        CompletableFuture<INDArray[]> existing = inFlight.putIfAbsent(key, f);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            try {
+                return copy(existing.get());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(ex);
+            } catch (ExecutionException ex) {
+                Throwable t = ex.getCause();
+                throw t instanceof RuntimeException ? (RuntimeException) t : new RuntimeException(t);
+            }
+        }
+
+        misses.incrementAndGet();
+        try {
+            INDArray[] out = compute.get();
+            INDArray[] cached = copy(out);
+            //Results for an outdated model version are never returned, no need to store them
+            if (key.version == modelVersion.get()) {
+                synchronized (cache) {
+                    cache.put(key, new Entry(cached, System.nanoTime()));
+                }
+            }
+            f.complete(cached);
+            return out;
+        } catch (RuntimeException | Error t) {
+            f.completeExceptionally(t);
+            throw t;
+        } finally {
+            inFlight.remove(key, f);
+        }
+    }
+
+    /**
+     * Invalidate all cached results. Called when the model is updated; results computed by in-flight requests for the
+     * previous model are not cached
+     */
+    public void invalidate() {
+        modelVersion.incrementAndGet();
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * @return Current number of cached results
+     */
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * @return Number of requests answered from the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return Number of requests that were executed by the model
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return Number of requests that shared the result of an identical concurrent request
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    private static INDArray[] copy(INDArray[] arrays) {
+        INDArray[] out = new INDArray[arrays.length];
+        try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+            for (int i = 0; i < arrays.length; i++) {
+                out[i] = arrays[i] == null ? null : arrays[i].dup();
+            }
+        }
+        return out;
+    }
+
+    private static class Entry {
+        private final INDArray[] output;
+        private final long created;
+
+        private Entry(INDArray[] output, long created) {
+            this.output = output;
+            this.created = created;
+        }
+    }
+
+    @EqualsAndHashCode
+    private static class Key {
+        private final long version;
+        private final byte[][] contents;
+        private final long[][] shapes;
+        private final String[] dataTypes;
+
+        private Key(long version, INDArray[] input, INDArray[] inputMasks) {
+            this.version = version;
+            int n = input.length + (inputMasks == null ? 0 : inputMasks.length);
+            this.contents = new byte[n][0];
+            this.shapes = new long[n][0];
+            this.dataTypes = new String[n];
+            try (MemoryWorkspace ws = Nd4j.getWorkspaceManager().scopeOutOfWorkspaces()) {
+                for (int i = 0; i < n; i++) {
+                    INDArray arr = i < input.length ? input[i] : inputMasks[i - input.length];
+                    if (arr == null) {
+                        dataTypes[i] = "null";
+                        continue;
+                    }
+                    //Copy of exactly the array's elements in c order: views don't expose the rest of their buffer
+                    contents[i] = arr.isEmpty() ? new byte[0] : arr.dup('c').data().asBytes();
+                    shapes[i] = arr.shape();
+                    dataTypes[i] = arr.dataType().toString();
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Key(version=" + version + ", shapes=" + Arrays.deepToString(shapes) + ")";
+        }
+    }
+}
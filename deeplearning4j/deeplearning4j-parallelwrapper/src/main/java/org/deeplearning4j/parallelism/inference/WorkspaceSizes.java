@@ -0,0 +1,246 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.parallelism.inference;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.shade.jackson.databind.ObjectMapper;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Workspace sizes learned during warm-up of {@link org.deeplearning4j.parallelism.ParallelInference} workers,
+ * keyed by workspace id.<br>
+ * Workspaces used for inference learn their size over the first iterations; a snapshot of the learned sizes can be
+ * saved, and applied to inference threads after a restart, so that each workspace is allocated once, at its final size,
+ * before the first request is served.<br>
+ * The configuration of each workspace (learning, reset and spill policies, ...) is recorded along with its size:
+ * workspaces are pre-allocated with their own configuration, and only the initial size is changed.<br>
+ * Sizes are stored as a plain properties file (workspace id to size in bytes, and workspace id followed by
+ * {@value #CONFIGURATION_SUFFIX} to the JSON workspace configuration).
+ */
+@Slf4j
+public class WorkspaceSizes implements Serializable {
+    public static final String CONFIGURATION_SUFFIX = "@configuration";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Map<String, Long> sizes = new TreeMap<>();
+    //Workspace configurations, as JSON
+    private final Map<String, String> configurations = new TreeMap<>();
+
+    public WorkspaceSizes() {
+        //
+    }
+
+    public WorkspaceSizes(@NonNull Map<String, Long> sizes) {
+        for (Map.Entry<String, Long> e : sizes.entrySet())
+            put(e.getKey(), e.getValue());
+    }
+
+    /**
+     * Records the size of the given workspace, keeping the larger value if the workspace id is already known
+     *
+     * @param workspaceId Workspace id
+     * @param bytes       Workspace size, in bytes
+     */
+    public synchronized void put(@NonNull String workspaceId, long bytes) {
+        if (bytes <= 0)
+            return;
+
+        sizes.merge(workspaceId, bytes, Math::max);
+    }
+
+    /**
+     * Records the size and the configuration of the given workspace, keeping the larger size if the workspace id is
+     * already known
+     *
+     * @param workspaceId   Workspace id
+     * @param bytes         Workspace size, in bytes
+     * @param configuration Configuration of the workspace
+     */
+    public void put(@NonNull String workspaceId, long bytes, @NonNull WorkspaceConfiguration configuration) {
+        String json;
+        try {
+            json = MAPPER.writeValueAsString(configuration);
+        } catch (IOException e) {
+            throw new IllegalStateException("Error serializing configuration of workspace " + workspaceId, e);
+        }
+        putConfiguration(workspaceId, json, bytes);
+    }
+
+    private synchronized void putConfiguration(String workspaceId, String json, long bytes) {
+        if (bytes <= 0)
+            return;
+
+        put(workspaceId, bytes);
+        configurations.put(workspaceId, json);
+    }
+
+    /**
+     * Records the current sizes and the configurations of all workspaces of the calling thread
+     */
+    public void recordCurrentThread() {
+        for (MemoryWorkspace ws : Nd4j.getWorkspaceManager().getAllWorkspacesForCurrentThread())
+            put(ws.getId(), ws.getCurrentSize(), ws.getWorkspaceConfiguration());
+    }
+
+    /**
+     * Merges the given sizes into this instance, keeping the larger value for each workspace id
+     */
+    public void merge(@NonNull WorkspaceSizes other) {
+        Map<String, String> otherConfigurations;
+        synchronized (other) {
+            otherConfigurations = new TreeMap<>(other.configurations);
+        }
+        for (Map.Entry<String, Long> e : other.asMap().entrySet()) {
+            String json = otherConfigurations.get(e.getKey());
+            if (json != null)
+                putConfiguration(e.getKey(), json, e.getValue());
+            else
+                put(e.getKey(), e.getValue());
+        }
+    }
+
+    /**
+     * Pre-allocates workspaces of the calling thread with the recorded sizes, using the recorded configuration of each
+     * workspace with the recorded size as initial size.<br>
+     * Workspaces that already exist for this thread, and workspaces without a recorded configuration, are left as is.
+     * Pre-allocated workspaces still grow, if a later iteration needs more memory than was recorded.<br>
+     * Note that workspaces are thread local: this method has to be called from the thread doing the inference.
+     *
+     * @return Number of workspaces allocated
+     */
+    public int applyToCurrentThread() {
+        int cnt = 0;
+        for (Map.Entry<String, Long> e : asMap().entrySet()) {
+            if (Nd4j.getWorkspaceManager().checkIfWorkspaceExists(e.getKey()))
+                continue;
+
+            WorkspaceConfiguration conf = getConfiguration(e.getKey());
+            if (conf == null) {
+                log.debug("Skipping workspace [{}]: no recorded configuration", e.getKey());
+                continue;
+            }
+            conf.setInitialSize(e.getValue());
+
+            Nd4j.getWorkspaceManager().getWorkspaceForCurrentThread(conf, e.getKey());
+            cnt++;
+        }
+        return cnt;
+    }
+
+    /**
+     * @return Recorded configuration of the given workspace (a new instance), or null if unknown
+     */
+    public WorkspaceConfiguration getConfiguration(@NonNull String workspaceId) {
+        String json;
+        synchronized (this) {
+            json = configurations.get(workspaceId);
+        }
+        if (json == null)
+            return null;
+        try {
+            return MAPPER.readValue(json, WorkspaceConfiguration.class);
+        } catch (IOException e) {
+            throw new IllegalStateException("Error deserializing configuration of workspace " + workspaceId, e);
+        }
+    }
+
+    /**
+     * @return Size of the given workspace in bytes, or 0 if unknown
+     */
+    public synchronized long get(@NonNull String workspaceId) {
+        Long v = sizes.get(workspaceId);
+        return v == null ? 0 : v;
+    }
+
+    public synchronized Map<String, Long> asMap() {
+        return Collections.unmodifiableMap(new TreeMap<>(sizes));
+    }
+
+    public synchronized boolean isEmpty() {
+        return sizes.isEmpty();
+    }
+
+    public synchronized int size() {
+        return sizes.size();
+    }
+
+    /**
+     * Saves recorded sizes to the given file
+     */
+    public void save(@NonNull File file) throws IOException {
+        Properties p = new Properties();
+        synchronized (this) {
+            for (Map.Entry<String, Long> e : sizes.entrySet())
+                p.setProperty(e.getKey(), String.valueOf(e.getValue()));
+            for (Map.Entry<String, String> e : configurations.entrySet())
+                p.setProperty(e.getKey() + CONFIGURATION_SUFFIX, e.getValue());
+        }
+
+        try (Writer w = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(file)), StandardCharsets.UTF_8)) {
+            p.store(w, "Learned workspace sizes, in bytes");
+        }
+    }
+
+    /**
+     * Loads sizes previously saved via {@link #save(File)}
+     */
+    public static WorkspaceSizes load(@NonNull File file) throws IOException {
+        Properties p = new Properties();
+        try (Reader r = new InputStreamReader(new BufferedInputStream(new FileInputStream(file)), StandardCharsets.UTF_8)) {
+            p.load(r);
+        }
+
+        WorkspaceSizes result = new WorkspaceSizes();
+        for (String id : p.stringPropertyNames()) {
+            if (id.endsWith(CONFIGURATION_SUFFIX))
+                continue;
+            long bytes;
+            try {
+                bytes = Long.parseLong(p.getProperty(id).trim());
+            } catch (NumberFormatException e) {
+                log.warn("Skipping invalid size for workspace [{}]: {}", id, p.getProperty(id));
+                continue;
+            }
+            String json = p.getProperty(id + CONFIGURATION_SUFFIX);
+            if (json != null)
+                result.putConfiguration(id, json, bytes);
+            else
+                result.put(id, bytes);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "WorkspaceSizes" + asMap();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.parallelism.inference.observers;
+
+import lombok.Getter;
+import lombok.NonNull;
+import org.deeplearning4j.parallelism.inference.InferenceObservable;
+import org.deeplearning4j.parallelism.inference.WorkspaceSizes;
+import org.nd4j.common.primitives.Pair;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Observable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Warm-up request, shared by all inference workers.<br>
+ * One instance of this observable is queued per worker. A worker taking it waits until every worker has taken one
+ * (so no worker can pick up two of them), then runs all samples through its own model replica, on its own thread,
+ * for the given number of iterations, and records the workspace sizes it has learned.
+ */
+public class WarmUpObservable extends Observable implements InferenceObservable {
+    private final List<Pair<INDArray[], INDArray[]>> samples;
+    @Getter
+    private final int iterations;
+    @Getter
+    private final WorkspaceSizes workspaceSizes = new WorkspaceSizes();
+
+    private final CountDownLatch arrived;
+    private final CountDownLatch finished;
+    private volatile Exception exception;
+
+    public WarmUpObservable(@NonNull List<Pair<INDArray[], INDArray[]>> samples, int iterations, int numWorkers) {
+        this.samples = new ArrayList<>(samples);
+        this.iterations = iterations;
+        this.arrived = new CountDownLatch(numWorkers);
+        this.finished = new CountDownLatch(numWorkers);
+    }
+
+    /**
+     * Called by a worker after taking this request from the queue: blocks until all workers have taken one
+     */
+    public void arriveAndAwait() throws InterruptedException {
+        arrived.countDown();
+        arrived.await();
+    }
+
+    /**
+     * Called by a worker once it's done with warm-up, successfully or not
+     */
+    public void workerDone(Exception e) {
+        if (e != null && exception == null)
+            exception = e;
+
+        workspaceSizes.recordCurrentThread();
+        finished.countDown();
+    }
+
+    /**
+     * Blocks until all workers are done with warm-up
+     *
+     * @return true if all workers are done, false if the timeout has elapsed first
+     */
+    public boolean awaitDone(long timeout, @NonNull TimeUnit timeUnit) throws InterruptedException {
+        boolean done = finished.await(timeout, timeUnit);
+        if (done && exception != null) {
+            if (exception instanceof RuntimeException)
+                throw (RuntimeException) exception;
+
+            throw new RuntimeException("Exception encountered during warm-up: " + exception.getMessage(), exception);
+        }
+        return done;
+    }
+
+    @Override
+    public List<Pair<INDArray[], INDArray[]>> getInputBatches() {
+        return samples;
+    }
+
+    @Override
+    public void addInput(INDArray... input) {
+        throw new UnsupportedOperationException("Inputs can't be added to warm-up requests");
+    }
+
+    @Override
+    public void addInput(INDArray[] input, INDArray[] inputMasks) {
+        throw new UnsupportedOperationException("Inputs can't be added to warm-up requests");
+    }
+
+    @Override
+    public void setOutputBatches(List<INDArray[]> output) {
+        // outputs produced during warm-up are discarded
+    }
+
+    @Override
+    public void setOutputException(Exception e) {
+        this.exception = e;
+    }
+
+    @Override
+    public INDArray[] getOutput() {
+        return null;
+    }
+}
@@ -0,0 +1,891 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.ui.model.storage.columnar;
+
+import lombok.Data;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.config.DL4JClassLoading;
+import org.deeplearning4j.core.storage.*;
+import org.deeplearning4j.ui.model.storage.BaseCollectionStatsStorage;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A file based {@link StatsStorage} intended for long training runs.
+ * <p>
+ * All records are appended to a single binary file. Updates are not kept in memory: for each
+ * session/type/worker, only the columns needed to locate an update (time stamp, file offset, length and class)
+ * are held in primitive arrays, sorted by time stamp. Queries by time (range queries, latest update, update times)
+ * are answered from these columns by binary search, and only the updates actually returned are read and decoded.
+ * <p>
+ * To keep both memory use and query cost bounded for very long runs, the index is automatically downsampled:
+ * the most recent {@code maxFullResolutionUpdates} updates of each worker are always retained, while older updates
+ * are thinned by a factor of 2 each time the index grows to twice that size. The resolution of the history therefore
+ * decreases geometrically with age, which matches how the UI charts it.
+ * <p>
+ * Updates dropped from the index remain in the file until it is compacted. Once they exceed both
+ * {@code compactionThresholdBytes} and the size of the retained updates, the file is rewritten with only the retained
+ * records (and the current static info and metadata) and atomically replaces the original. The file size is
+ * therefore bounded by roughly twice the size of the retained history. The file is also compacted on close, so
+ * reopening it with the same settings restores exactly the same index.
+ *
+ * @see org.deeplearning4j.ui.model.storage.FileStatsStorage
+ */
+@Slf4j
+public class ColumnarStatsStorage extends BaseCollectionStatsStorage {
+
+    private static final int MAGIC = 0x444C3453;
+    private static final int VERSION = 1;
+
+    private static final byte RECORD_CLASS = 1;
+    private static final byte RECORD_SERIES = 2;
+    private static final byte RECORD_STATIC_INFO = 3;
+    private static final byte RECORD_META_DATA = 4;
+    private static final byte RECORD_UPDATE = 5;
+
+    /** Size of an update record, excluding the encoded update */
+    private static final int UPDATE_HEADER_BYTES = 21;
+
+    private final File file;
+    private final int maxFullResolutionUpdates;
+    private final long compactionThresholdBytes;
+    private FileChannel channel;
+    private long position;
+    private boolean isClosed = false;
+
+    //Bytes of update records in the file that are no longer in the index
+    private long unreferencedBytes;
+    //Reads use file offsets from the index: these must not overlap with compaction, which changes them
+    private final ReadWriteLock fileLock = new ReentrantReadWriteLock();
+
+    private final Map<String, Integer> classToInteger = new HashMap<>();
+    private final List<String> integerToClass = Collections.synchronizedList(new ArrayList<String>());
+    private final Map<SessionTypeWorkerId, UpdateSeries> seriesById = new ConcurrentHashMap<>();
+    private final List<UpdateSeries> seriesByIndex = new ArrayList<>();
+
+    public ColumnarStatsStorage(File f) {
+        this(new Builder(f));
+    }
+
+    private ColumnarStatsStorage(Builder builder) {
+        if (builder.getFile() == null)
+            throw new IllegalArgumentException("File must be specified");
+        if (builder.getMaxFullResolutionUpdates() < 1)
+            throw new IllegalArgumentException("maxFullResolutionUpdates must be positive, got "
+                            + builder.getMaxFullResolutionUpdates());
+        this.file = builder.getFile();
+        this.maxFullResolutionUpdates = builder.getMaxFullResolutionUpdates();
+        this.compactionThresholdBytes = builder.getCompactionThresholdBytes();
+
+        sessionIDs = Collections.synchronizedSet(new HashSet<String>());
+        storageMetaData = new ConcurrentHashMap<>();
+        staticInfo = new ConcurrentHashMap<>();
+
+        try {
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                            StandardOpenOption.WRITE);
+            if (channel.size() == 0) {
+                ByteBuffer header = ByteBuffer.allocate(8);
+                header.putInt(MAGIC).putInt(VERSION).flip();
+                writeFully(header, 0);
+                position = 8;
+            } else {
+                position = load();
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Error opening stats storage file " + file, e);
+        }
+    }
+
+    // ----- Loading -----
+
+    private long load() throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC)
+                throw new IOException("File " + file + " is not a columnar stats storage file");
+            int version = in.readInt();
+            if (version != VERSION)
+                throw new IOException("Unsupported columnar stats storage version " + version + " in file " + file);
+
+            long pos = 8;
+            while (true) {
+                long recordStart = pos;
+                try {
+                    byte type = in.readByte();
+                    pos++;
+                    switch (type) {
+                        case RECORD_CLASS: {
+                            byte[] name = readBytes(in);
+                            pos += 4 + name.length;
+                            String className = new String(name, StandardCharsets.UTF_8);
+                            classToInteger.put(className, integerToClass.size());
+                            integerToClass.add(className);
+                            break;
+                        }
+                        case RECORD_SERIES: {
+                            String[] ids = new String[3];
+                            for (int i = 0; i < 3; i++) {
+                                byte[] b = readBytes(in);
+                                pos += 4 + b.length;
+                                ids[i] = new String(b, StandardCharsets.UTF_8);
+                            }
+                            SessionTypeWorkerId id = new SessionTypeWorkerId(ids[0], ids[1], ids[2]);
+                            UpdateSeries s = new UpdateSeries(seriesByIndex.size(), id);
+                            seriesByIndex.add(s);
+                            seriesById.put(id, s);
+                            updates.put(id, s);
+                            sessionIDs.add(ids[0]);
+                            break;
+                        }
+                        case RECORD_STATIC_INFO:
+                        case RECORD_META_DATA: {
+                            int classIdx = in.readInt();
+                            byte[] b = readBytes(in);
+                            pos += 8 + b.length;
+                            Persistable p = decode(classIdx, b);
+                            if (type == RECORD_STATIC_INFO) {
+                                staticInfo.put(new SessionTypeWorkerId(p.getSessionID(), p.getTypeID(),
+                                                p.getWorkerID()), p);
+                                sessionIDs.add(p.getSessionID());
+                            } else {
+                                storageMetaData.put(new SessionTypeId(p.getSessionID(), p.getTypeID()),
+                                                (StorageMetaData) p);
+                            }
+                            break;
+                        }
+                        case RECORD_UPDATE: {
+                            int seriesIdx = in.readInt();
+                            int classIdx = in.readInt();
+                            long timestamp = in.readLong();
+                            int length = in.readInt();
+                            pos += 20;
+                            skipFully(in, length);
+                            unreferencedBytes += seriesByIndex.get(seriesIdx).add(timestamp, pos, length, classIdx);
+                            pos += length;
+                            break;
+                        }
+                        default:
+                            throw new IOException("Corrupt stats storage file " + file + ": unknown record type "
+                                            + type + " at offset " + recordStart);
+                    }
+                } catch (EOFException e) {
+                    if (recordStart != channel.size()) {
+                        //Last record was only partially written, for example due to a crash. Discard it
+                        log.warn("Discarding incomplete record at end of stats storage file {}", file);
+                        channel.truncate(recordStart);
+                    }
+                    return recordStart;
+                }
+            }
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] b = new byte[in.readInt()];
+        in.readFully(b);
+        return b;
+    }
+
+    private static void skipFully(DataInputStream in, int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            int n = in.skipBytes(remaining);
+            if (n <= 0) {
+                //skipBytes may return 0 before the end of the stream; read a byte to tell the two apart
+                in.readByte();
+                n = 1;
+            }
+            remaining -= n;
+        }
+    }
+
+    private Persistable decode(int classIdx, byte[] bytes) {
+        String className;
+        synchronized (integerToClass) {
+            if (classIdx < 0 || classIdx >= integerToClass.size())
+                throw new RuntimeException("Unknown class index: " + classIdx); //Should never happen
+            className = integerToClass.get(classIdx);
+        }
+        Persistable p = DL4JClassLoading.createNewInstance(className);
+        p.decode(bytes);
+        return p;
+    }
+
+    // ----- Writing -----
+
+    private void writeFully(ByteBuffer bb, long pos) throws IOException {
+        writeFully(channel, bb, pos);
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer bb, long pos) throws IOException {
+        while (bb.hasRemaining()) {
+            pos += ch.write(bb, pos);
+        }
+    }
+
+    private static void putBytes(ByteBuffer bb, byte[] bytes) {
+        bb.putInt(bytes.length);
+        bb.put(bytes);
+    }
+
+    /** Append a record; returns the file offset of the record */
+    private long append(ByteBuffer bb) {
+        bb.flip();
+        long start = position;
+        try {
+            writeFully(bb, start);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing to stats storage file " + file, e);
+        }
+        position += bb.limit();
+        return start;
+    }
+
+    private int getIntForClass(Class<?> c) {
+        String str = c.getName();
+        Integer idx = classToInteger.get(str);
+        if (idx != null)
+            return idx;
+        byte[] name = str.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer bb = ByteBuffer.allocate(1 + 4 + name.length);
+        bb.put(RECORD_CLASS);
+        putBytes(bb, name);
+        append(bb);
+        idx = integerToClass.size();
+        classToInteger.put(str, idx);
+        integerToClass.add(str);
+        return idx;
+    }
+
+    private synchronized void appendPersistable(byte recordType, Persistable p) {
+        checkOpen();
+        int classIdx = getIntForClass(p.getClass());
+        append(persistableRecord(recordType, classIdx, p));
+    }
+
+    private static ByteBuffer persistableRecord(byte recordType, int classIdx, Persistable p) {
+        byte[] bytes = p.encode();
+        ByteBuffer bb = ByteBuffer.allocate(1 + 4 + 4 + bytes.length);
+        bb.put(recordType).putInt(classIdx);
+        putBytes(bb, bytes);
+        return bb;
+    }
+
+    private synchronized void appendUpdate(Persistable p) {
+        checkOpen();
+        SessionTypeWorkerId id = new SessionTypeWorkerId(p.getSessionID(), p.getTypeID(), p.getWorkerID());
+        UpdateSeries series = seriesById.get(id);
+        if (series == null) {
+            byte[] sid = p.getSessionID().getBytes(StandardCharsets.UTF_8);
+            byte[] tid = p.getTypeID().getBytes(StandardCharsets.UTF_8);
+            byte[] wid = p.getWorkerID().getBytes(StandardCharsets.UTF_8);
+            ByteBuffer bb = ByteBuffer.allocate(1 + 3 * 4 + sid.length + tid.length + wid.length);
+            bb.put(RECORD_SERIES);
+            putBytes(bb, sid);
+            putBytes(bb, tid);
+            putBytes(bb, wid);
+            append(bb);
+            series = new UpdateSeries(seriesByIndex.size(), id);
+            seriesByIndex.add(series);
+            seriesById.put(id, series);
+            updates.put(id, series);
+        }
+
+        int classIdx = getIntForClass(p.getClass());
+        byte[] bytes = p.encode();
+        ByteBuffer bb = ByteBuffer.allocate(UPDATE_HEADER_BYTES + bytes.length);
+        bb.put(RECORD_UPDATE).putInt(series.index).putInt(classIdx).putLong(p.getTimeStamp()).putInt(bytes.length);
+        bb.put(bytes);
+        long start = append(bb);
+        unreferencedBytes += series.add(p.getTimeStamp(), start + UPDATE_HEADER_BYTES, bytes.length, classIdx);
+
+        if (unreferencedBytes > compactionThresholdBytes && unreferencedBytes > retainedUpdateBytes())
+            compact();
+    }
+
+    private long writePersistable(FileChannel out, long pos, byte recordType, Persistable p) throws IOException {
+        ByteBuffer bb = persistableRecord(recordType, classToInteger.get(p.getClass().getName()), p);
+        bb.flip();
+        writeFully(out, bb, pos);
+        return pos + bb.limit();
+    }
+
+    private long retainedUpdateBytes() {
+        long sum = 0;
+        for (UpdateSeries s : seriesByIndex) {
+            sum += s.bytes();
+        }
+        return sum;
+    }
+
+    // ----- Compaction -----
+
+    /**
+     * Rewrite the file with only the records that are still referenced: class names, series, the current static info
+     * and metadata, and the updates retained in the index. The new file is written next to the existing one and then
+     * moved over it; the index offsets are only switched over once the move has succeeded.
+     */
+    private synchronized void compact() {
+        File tmp = new File(file.getPath() + ".compact");
+        fileLock.writeLock().lock();
+        try {
+            long[][] newOffsets = new long[seriesByIndex.size()][];
+            long newPosition;
+            try (FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE,
+                            StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(8);
+                header.putInt(MAGIC).putInt(VERSION).flip();
+                writeFully(out, header, 0);
+                long pos = 8;
+
+                for (String className : integerToClass) {
+                    byte[] name = className.getBytes(StandardCharsets.UTF_8);
+                    ByteBuffer bb = ByteBuffer.allocate(1 + 4 + name.length);
+                    bb.put(RECORD_CLASS);
+                    putBytes(bb, name);
+                    bb.flip();
+                    writeFully(out, bb, pos);
+                    pos += bb.limit();
+                }
+
+                for (UpdateSeries series : seriesByIndex) {
+                    byte[] sid = series.id.getSessionID().getBytes(StandardCharsets.UTF_8);
+                    byte[] tid = series.id.getTypeID().getBytes(StandardCharsets.UTF_8);
+                    byte[] wid = series.id.getWorkerID().getBytes(StandardCharsets.UTF_8);
+                    ByteBuffer bb = ByteBuffer.allocate(1 + 3 * 4 + sid.length + tid.length + wid.length);
+                    bb.put(RECORD_SERIES);
+                    putBytes(bb, sid);
+                    putBytes(bb, tid);
+                    putBytes(bb, wid);
+                    bb.flip();
+                    writeFully(out, bb, pos);
+                    pos += bb.limit();
+                }
+
+                for (Persistable p : staticInfo.values()) {
+                    pos = writePersistable(out, pos, RECORD_STATIC_INFO, p);
+                }
+                for (Persistable p : storageMetaData.values()) {
+                    pos = writePersistable(out, pos, RECORD_META_DATA, p);
+                }
+
+                for (UpdateSeries series : seriesByIndex) {
+                    //Only appendUpdate (which holds the lock on this storage) modifies the series
+                    long[] offsets = new long[series.size];
+                    for (int i = 0; i < series.size; i++) {
+                        int length = series.lengths[i];
+                        ByteBuffer bb = ByteBuffer.allocate(UPDATE_HEADER_BYTES + length);
+                        bb.put(RECORD_UPDATE).putInt(series.index).putInt(series.classes[i])
+                                        .putLong(series.timestamps[i]).putInt(length);
+                        readFully(bb, series.offsets[i]);
+                        bb.flip();
+                        writeFully(out, bb, pos);
+                        offsets[i] = pos + UPDATE_HEADER_BYTES;
+                        pos += bb.limit();
+                    }
+                    newOffsets[series.index] = offsets;
+                }
+                out.force(true);
+                newPosition = pos;
+            }
+
+            channel.close();
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                                StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                //Original file if the move failed
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+
+            for (UpdateSeries series : seriesByIndex) {
+                series.setOffsets(newOffsets[series.index]);
+            }
+            position = newPosition;
+            unreferencedBytes = 0;
+        } catch (IOException e) {
+            //The existing file and index are still valid; retry once as many updates have been dropped again
+            log.warn("Error compacting stats storage file {}", file, e);
+            unreferencedBytes = 0;
+            tmp.delete();
+        } finally {
+            fileLock.writeLock().unlock();
+        }
+    }
+
+    private void checkOpen() {
+        if (isClosed)
+            throw new IllegalStateException("Stats storage has been closed");
+    }
+
+    private Persistable read(long offset, int length, int classIdx) {
+        ByteBuffer bb = ByteBuffer.allocate(length);
+        try {
+            readFully(bb, offset);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error reading from stats storage file " + file, e);
+        }
+        return decode(classIdx, bb.array());
+    }
+
+    private void readFully(ByteBuffer bb, long pos) throws IOException {
+        while (bb.hasRemaining()) {
+            int n = channel.read(bb, pos);
+            if (n < 0)
+                throw new EOFException("Unexpected end of stats storage file " + file);
+            pos += n;
+        }
+    }
+
+    // ----- Store new info -----
+
+    @Override
+    protected Map<Long, Persistable> getUpdateMap(String sessionID, String typeID, String workerID,
+                    boolean createIfRequired) {
+        //Series are created on the first update, when the record declaring them is written
+        return seriesById.get(new SessionTypeWorkerId(sessionID, typeID, workerID));
+    }
+
+    @Override
+    public void putStaticInfo(Persistable staticInfo) {
+        List<StatsStorageEvent> sses = checkStorageEvents(staticInfo);
+        appendPersistable(RECORD_STATIC_INFO, staticInfo);
+        if (!sessionIDs.contains(staticInfo.getSessionID())) {
+            sessionIDs.add(staticInfo.getSessionID());
+        }
+        SessionTypeWorkerId id = new SessionTypeWorkerId(staticInfo.getSessionID(), staticInfo.getTypeID(),
+                        staticInfo.getWorkerID());
+        this.staticInfo.put(id, staticInfo);
+
+        StatsStorageEvent sse = null;
+        if (!listeners.isEmpty())
+            sse = new StatsStorageEvent(this, StatsStorageListener.EventType.PostStaticInfo, staticInfo.getSessionID(),
+                            staticInfo.getTypeID(), staticInfo.getWorkerID(), staticInfo.getTimeStamp());
+        for (StatsStorageListener l : listeners) {
+            l.notify(sse);
+        }
+
+        notifyListeners(sses);
+    }
+
+    @Override
+    public void putUpdate(Persistable update) {
+        List<StatsStorageEvent> sses = checkStorageEvents(update);
+        appendUpdate(update);
+
+        StatsStorageEvent sse = null;
+        if (!listeners.isEmpty())
+            sse = new StatsStorageEvent(this, StatsStorageListener.EventType.PostUpdate, update.getSessionID(),
+                            update.getTypeID(), update.getWorkerID(), update.getTimeStamp());
+        for (StatsStorageListener l : listeners) {
+            l.notify(sse);
+        }
+
+        notifyListeners(sses);
+    }
+
+    @Override
+    public void putStorageMetaData(StorageMetaData storageMetaData) {
+        List<StatsStorageEvent> sses = checkStorageEvents(storageMetaData);
+        appendPersistable(RECORD_META_DATA, storageMetaData);
+        SessionTypeId id = new SessionTypeId(storageMetaData.getSessionID(), storageMetaData.getTypeID());
+        this.storageMetaData.put(id, storageMetaData);
+
+        StatsStorageEvent sse = null;
+        if (!listeners.isEmpty())
+            sse = new StatsStorageEvent(this, StatsStorageListener.EventType.PostMetaData,
+                            storageMetaData.getSessionID(), storageMetaData.getTypeID(), storageMetaData.getWorkerID(),
+                            storageMetaData.getTimeStamp());
+        for (StatsStorageListener l : listeners) {
+            l.notify(sse);
+        }
+
+        notifyListeners(sses);
+    }
+
+    // ----- Queries answered from the index -----
+
+    @Override
+    public Persistable getLatestUpdate(String sessionID, String typeID, String workerID) {
+        UpdateSeries s = seriesById.get(new SessionTypeWorkerId(sessionID, typeID, workerID));
+        return s == null ? null : s.latest();
+    }
+
+    @Override
+    public List<Persistable> getAllUpdatesAfter(String sessionID, String typeID, String workerID, long timestamp) {
+        return getUpdatesInRange(sessionID, typeID, workerID, timestamp + 1, Long.MAX_VALUE);
+    }
+
+    @Override
+    public List<Persistable> getAllUpdatesAfter(String sessionID, String typeID, long timestamp) {
+        List<Persistable> list = new ArrayList<>();
+        for (Map.Entry<SessionTypeWorkerId, UpdateSeries> e : seriesById.entrySet()) {
+            SessionTypeWorkerId stw = e.getKey();
+            if (stw.getSessionID().equals(sessionID) && stw.getTypeID().equals(typeID)) {
+                list.addAll(e.getValue().range(timestamp + 1, Long.MAX_VALUE));
+            }
+        }
+        list.sort(Comparator.comparingLong(Persistable::getTimeStamp));
+        return list;
+    }
+
+    /**
+     * Get the retained updates for the given session, type and worker with time stamps in the specified range.
+     *
+     * @param sessionID Session ID
+     * @param typeID    Type ID
+     * @param workerID  Worker ID
+     * @param fromTime  Start of the range (inclusive)
+     * @param toTime    End of the range (exclusive)
+     * @return Updates in the range, sorted by time stamp
+     */
+    public List<Persistable> getUpdatesInRange(String sessionID, String typeID, String workerID, long fromTime,
+                    long toTime) {
+        UpdateSeries s = seriesById.get(new SessionTypeWorkerId(sessionID, typeID, workerID));
+        if (s == null)
+            return new ArrayList<>();
+        return s.range(fromTime, toTime);
+    }
+
+    @Override
+    public long[] getAllUpdateTimes(String sessionID, String typeID, String workerID) {
+        UpdateSeries s = seriesById.get(new SessionTypeWorkerId(sessionID, typeID, workerID));
+        return s == null ? new long[0] : s.times();
+    }
+
+    @Override
+    public List<Persistable> getUpdates(String sessionID, String typeID, String workerID, long[] timestamps) {
+        UpdateSeries s = seriesById.get(new SessionTypeWorkerId(sessionID, typeID, workerID));
+        if (s == null)
+            return Collections.emptyList();
+        List<Persistable> ret = new ArrayList<>(timestamps.length);
+        for (long l : timestamps) {
+            Persistable p = s.get(l);
+            if (p != null)
+                ret.add(p);
+        }
+        return ret;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (isClosed)
+            return;
+        if (compactionThresholdBytes != Long.MAX_VALUE && unreferencedBytes > 0) {
+            //Downsampling is replayed when the file is reopened; from a compacted file, this gives the same index
+            compact();
+        }
+        channel.force(true);
+        channel.close();
+        isClosed = true;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return isClosed;
+    }
+
+    @Override
+    public String toString() {
+        return "ColumnarStatsStorage(" + file.getPath() + ")";
+    }
+
+    /**
+     * Column store for the updates of a single session/type/worker, sorted by time stamp. Implements
+     * {@code Map<Long,Persistable>} so that it can be used by {@link BaseCollectionStatsStorage}; values are read
+     * from the file only when requested.
+     */
+    private class UpdateSeries extends AbstractMap<Long, Persistable> {
+        private final int index;
+        private final SessionTypeWorkerId id;
+        private long[] timestamps = new long[16];
+        private long[] offsets = new long[16];
+        private int[] lengths = new int[16];
+        private int[] classes = new int[16];
+        private int size;
+        //Total size of the update records in the index
+        private long bytes;
+
+        private UpdateSeries(int index, SessionTypeWorkerId id) {
+            this.index = index;
+            this.id = id;
+        }
+
+        /**
+         * @return Total size of the update records dropped from the index as a result
+         */
+        private synchronized long add(long timestamp, long offset, int length, int classIdx) {
+            bytes += UPDATE_HEADER_BYTES + length;
+            int pos;
+            if (size == 0 || timestamps[size - 1] < timestamp) {
+                pos = size;
+            } else {
+                pos = Arrays.binarySearch(timestamps, 0, size, timestamp);
+                if (pos >= 0) {
+                    //Same time stamp as an existing update: later update replaces the earlier one
+                    long dropped = UPDATE_HEADER_BYTES + lengths[pos];
+                    bytes -= dropped;
+                    offsets[pos] = offset;
+                    lengths[pos] = length;
+                    classes[pos] = classIdx;
+                    return dropped;
+                }
+                pos = -(pos + 1);
+            }
+
+            if (size == timestamps.length) {
+                int newLength = timestamps.length * 2;
+                timestamps = Arrays.copyOf(timestamps, newLength);
+                offsets = Arrays.copyOf(offsets, newLength);
+                lengths = Arrays.copyOf(lengths, newLength);
+                classes = Arrays.copyOf(classes, newLength);
+            }
+            if (pos < size) {
+                System.arraycopy(timestamps, pos, timestamps, pos + 1, size - pos);
+                System.arraycopy(offsets, pos, offsets, pos + 1, size - pos);
+                System.arraycopy(lengths, pos, lengths, pos + 1, size - pos);
+                System.arraycopy(classes, pos, classes, pos + 1, size - pos);
+            }
+            timestamps[pos] = timestamp;
+            offsets[pos] = offset;
+            lengths[pos] = length;
+            classes[pos] = classIdx;
+            size++;
+
+            if (size >= 2 * maxFullResolutionUpdates)
+                return downsample();
+            return 0;
+        }
+
+        /**
+         * Halve the resolution of everything older than the most recent maxFullResolutionUpdates entries.
+         * The oldest entry is always retained, so the start of the run remains visible
+         */
+        private long downsample() {
+            int thinEnd = size - maxFullResolutionUpdates;
+            int out = 0;
+            long dropped = 0;
+            for (int i = 0; i < size; i++) {
+                if (i >= thinEnd || (i & 1) == 0) {
+                    timestamps[out] = timestamps[i];
+                    offsets[out] = offsets[i];
+                    lengths[out] = lengths[i];
+                    classes[out] = classes[i];
+                    out++;
+                } else {
+                    dropped += UPDATE_HEADER_BYTES + lengths[i];
+                }
+            }
+            size = out;
+            bytes -= dropped;
+            return dropped;
+        }
+
+        private synchronized long bytes() {
+            return bytes;
+        }
+
+        private synchronized void setOffsets(long[] newOffsets) {
+            System.arraycopy(newOffsets, 0, offsets, 0, size);
+        }
+
+        private synchronized long[] times() {
+            return Arrays.copyOf(timestamps, size);
+        }
+
+        private Persistable latest() {
+            fileLock.readLock().lock();
+            try {
+                long offset;
+                int length;
+                int classIdx;
+                synchronized (this) {
+                    if (size == 0)
+                        return null;
+                    offset = offsets[size - 1];
+                    length = lengths[size - 1];
+                    classIdx = classes[size - 1];
+                }
+                return read(offset, length, classIdx);
+            } finally {
+                fileLock.readLock().unlock();
+            }
+        }
+
+        private List<Persistable> range(long fromTime, long toTime) {
+            fileLock.readLock().lock();
+            try {
+                long[] o;
+                int[] l;
+                int[] c;
+                synchronized (this) {
+                    int from = lowerBound(fromTime);
+                    int to = lowerBound(toTime);
+                    if (to <= from)
+                        return new ArrayList<>();
+                    o = Arrays.copyOfRange(offsets, from, to);
+                    l = Arrays.copyOfRange(lengths, from, to);
+                    c = Arrays.copyOfRange(classes, from, to);
+                }
+                List<Persistable> list = new ArrayList<>(o.length);
+                for (int i = 0; i < o.length; i++) {
+                    list.add(read(o[i], l[i], c[i]));
+                }
+                return list;
+            } finally {
+                fileLock.readLock().unlock();
+            }
+        }
+
+        private int lowerBound(long timestamp) {
+            int idx = Arrays.binarySearch(timestamps, 0, size, timestamp);
+            return idx >= 0 ? idx : -(idx + 1);
+        }
+
+        @Override
+        public synchronized int size() {
+            return size;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            if (!(key instanceof Long))
+                return false;
+            synchronized (this) {
+                return Arrays.binarySearch(timestamps, 0, size, (Long) key) >= 0;
+            }
+        }
+
+        @Override
+        public Persistable get(Object key) {
+            if (!(key instanceof Long))
+                return null;
+            fileLock.readLock().lock();
+            try {
+                long offset;
+                int length;
+                int classIdx;
+                synchronized (this) {
+                    int idx = Arrays.binarySearch(timestamps, 0, size, (Long) key);
+                    if (idx < 0)
+                        return null;
+                    offset = offsets[idx];
+                    length = lengths[idx];
+                    classIdx = classes[idx];
+                }
+                return read(offset, length, classIdx);
+            } finally {
+                fileLock.readLock().unlock();
+            }
+        }
+
+        @Override
+        public Set<Entry<Long, Persistable>> entrySet() {
+            final long[] t = times();
+            return new AbstractSet<Entry<Long, Persistable>>() {
+                @Override
+                public Iterator<Entry<Long, Persistable>> iterator() {
+                    return new Iterator<Entry<Long, Persistable>>() {
+                        private int i = 0;
+
+                        @Override
+                        public boolean hasNext() {
+                            return i < t.length;
+                        }
+
+                        @Override
+                        public Entry<Long, Persistable> next() {
+                            if (i >= t.length)
+                                throw new NoSuchElementException();
+                            final long time = t[i++];
+                            //Values are only read from the file if requested
+                            return new AbstractMap.SimpleImmutableEntry<Long, Persistable>(time, null) {
+                                @Override
+                                public Persistable getValue() {
+                                    return UpdateSeries.this.get(time);
+                                }
+                            };
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return t.length;
+                }
+            };
+        }
+    }
+
+    @Data
+    public static class Builder {
+
+        private File file;
+        private int maxFullResolutionUpdates = 10000;
+        private long compactionThresholdBytes = 64L * 1024 * 1024;
+
+        public Builder(@NonNull File file) {
+            this.file = file;
+        }
+
+        /**
+         * @param file File to store the stats in. Existing files are opened, and appended to
+         */
+        public Builder file(@NonNull File file) {
+            this.file = file;
+            return this;
+        }
+
+        /**
+         * Number of most recent updates (per session, type and worker) that are always retained at full
+         * resolution. Older updates are downsampled. Default: 10000
+         */
+        public Builder maxFullResolutionUpdates(int maxFullResolutionUpdates) {
+            this.maxFullResolutionUpdates = maxFullResolutionUpdates;
+            return this;
+        }
+
+        /**
+         * The file is compacted once the updates no longer referenced by the index (as they were downsampled or
+         * replaced) exceed both this threshold and the size of the retained updates, in bytes.
+         * Use {@code Long.MAX_VALUE} to disable compaction. Default: 64 MB
+         */
+        public Builder compactionThresholdBytes(long compactionThresholdBytes) {
+            this.compactionThresholdBytes = compactionThresholdBytes;
+            return this;
+        }
+
+        public ColumnarStatsStorage build() {
+            return new ColumnarStatsStorage(this);
+        }
+    }
+}
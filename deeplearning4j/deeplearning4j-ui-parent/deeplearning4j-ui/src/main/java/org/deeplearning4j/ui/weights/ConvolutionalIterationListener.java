@@ -207,6 +207,8 @@ public class ConvolutionalIterationListener extends BaseTrainingListener {
                 for( int i=0; i<layers.length; i++ ){
                     if(layers[i].type() == Layer.Type.CONVOLUTIONAL){
                         INDArray output = activations.get(i+1); //Offset by 1 - activations list includes input
+                        if (output == null)     //Not retained due to activation checkpointing
+                            continue;
 
                         if (output.shape()[0] - 1 > Integer.MAX_VALUE)
                             throw new ND4JArraySizeException();
@@ -51,6 +51,7 @@ import org.nd4j.common.primitives.Pair;
 import org.nd4j.common.util.ArrayUtil;
 import org.nd4j.common.util.ND4JFileUtils;
 import org.nd4j.evaluation.IEvaluation;
+import org.nd4j.evaluation.ParallelEvaluation;
 import org.nd4j.evaluation.classification.Evaluation;
 import org.nd4j.evaluation.classification.ROC;
 import org.nd4j.graph.*;
@@ -159,6 +160,11 @@ public class SameDiff extends SDBaseOps {
     @Setter
     private boolean enableCache = true;
 
+    //If true: sessions cache the execution order for repeated output calls on static graphs
+    @Getter
+    @Setter
+    private boolean enableExecutionPlans = true;
+
     ///////////////////////////////////////
     //Fields related to training
     @Getter
@@ -2422,7 +2428,25 @@ public class SameDiff extends SDBaseOps {
      * @param listeners              Additional listeners to use during this operation.
      */
     public void evaluate(MultiDataSetIterator iterator, Map<String, List<IEvaluation>> variableEvals, Map<String, Integer> predictionLabelMapping, Listener... listeners) {
-        evaluateHelper(iterator, variableEvals, predictionLabelMapping, At.defaultAt(Operation.EVALUATION), listeners);
+        evaluate(iterator, variableEvals, predictionLabelMapping, 1, listeners);
+    }
+
+    /**
+     * As per {@link #evaluate(MultiDataSetIterator, Map, Map, Listener[])}, but performs evaluation using multiple threads.<br>
+     * Each thread executes the graph independently (using its own session) on the next available minibatch, and
+     * evaluates into its own copies of the evaluations (see {@link IEvaluation#newInstance()}). These are merged into
+     * the provided evaluation instances at the end.<br>
+     * Note: If any listeners are active for evaluation, evaluation is performed on a single thread.
+     *
+     * @param iterator               The iterator - the source of the data for evaluation
+     * @param variableEvals          The evaluations to perform. Key: the name of the variable. Value: the evaluations to perform
+     * @param predictionLabelMapping The output/label mapping. Key: the name of the variable.
+     * @param numThreads             Number of threads to use for evaluation
+     * @param listeners              Additional listeners to use during this operation.
+     */
+    public void evaluate(MultiDataSetIterator iterator, Map<String, List<IEvaluation>> variableEvals, Map<String, Integer> predictionLabelMapping,
+                         int numThreads, Listener... listeners) {
+        evaluateHelper(iterator, variableEvals, predictionLabelMapping, At.defaultAt(Operation.EVALUATION), numThreads, listeners);
     }
 
 
@@ -2471,7 +2495,7 @@ public class SameDiff extends SDBaseOps {
      */
     private void evaluateHelper(MultiDataSetIterator iterator,
                                 Map<String, List<IEvaluation>> variableEvals,
-                                Map<String, Integer> predictionLabelMapping, At at, @NonNull Listener... listeners) {
+                                Map<String, Integer> predictionLabelMapping, At at, int numThreads, @NonNull Listener... listeners) {
         Preconditions.checkState(trainingConfig != null, "Training config has not been set");
 
         Preconditions.checkState(variableEvals.keySet().equals(predictionLabelMapping.keySet()), "Keysets for variable evaluations" +
@@ -2509,6 +2533,45 @@ public class SameDiff extends SDBaseOps {
 
         String[] requiredVarsArr = requiredVars.toArray(new String[0]);
 
+        if (numThreads > 1 && hasListeners) {
+            log.warn("Listeners are active for evaluation: performing evaluation on a single thread instead of {} threads", numThreads);
+            numThreads = 1;
+        }
+
+        if (numThreads > 1) {
+            List<Map<String, List<IEvaluation>>> results = ParallelEvaluation.execute(iterator, numThreads, it -> {
+                Map<String, List<IEvaluation>> copies = new HashMap<>();
+                for (Map.Entry<String, List<IEvaluation>> e : variableEvals.entrySet()) {
+                    List<IEvaluation> l = new ArrayList<>();
+                    for (IEvaluation eval : e.getValue()) {
+                        l.add(eval.newInstance());
+                    }
+                    copies.put(e.getKey(), l);
+                }
+                evaluateBatches(it, copies, predictionLabelMapping, at.copy(), activeListeners, requiredVarsArr);
+                return copies;
+            });
+
+            for (Map<String, List<IEvaluation>> m : results) {
+                for (Map.Entry<String, List<IEvaluation>> e : variableEvals.entrySet()) {
+                    List<IEvaluation> l = m.get(e.getKey());
+                    for (int i = 0; i < l.size(); i++) {
+                        e.getValue().get(i).merge(l.get(i));
+                    }
+                }
+            }
+        } else {
+            evaluateBatches(iterator, variableEvals, predictionLabelMapping, at, activeListeners, requiredVarsArr);
+        }
+
+
+        for (Listener l : activeListeners)
+            l.operationEnd(this, at.operation());
+    }
+
+    private void evaluateBatches(Iterator<MultiDataSet> iterator, Map<String, List<IEvaluation>> variableEvals,
+                                 Map<String, Integer> predictionLabelMapping, At at, List<Listener> activeListeners,
+                                 String[] requiredVarsArr) {
         while (iterator.hasNext()) {
             MultiDataSet ds = iterator.next();
             if(ds.getFeatures() != null)
@@ -2551,10 +2614,6 @@ public class SameDiff extends SDBaseOps {
 
             at.setIteration(at.iteration() + 1);
         }
-
-
-        for (Listener l : activeListeners)
-            l.operationEnd(this, at.operation());
     }
 
     /**
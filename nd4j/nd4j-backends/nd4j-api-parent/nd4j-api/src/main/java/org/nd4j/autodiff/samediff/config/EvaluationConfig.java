@@ -56,6 +56,8 @@ public class EvaluationConfig {
 
     private boolean singleInput = false;
 
+    private int numThreads = 1;
+
     @Setter(AccessLevel.NONE)
     private SameDiff sd;
 
@@ -139,6 +141,15 @@ public class EvaluationConfig {
         return this;
     }
 
+    /**
+     * Set the number of threads to use for evaluation. See {@link SameDiff#evaluate(MultiDataSetIterator, Map, Map, int, Listener...)}
+     */
+    public EvaluationConfig numThreads(int numThreads){
+        Preconditions.checkArgument(numThreads > 0, "Number of threads must be positive, got %s", numThreads);
+        this.numThreads = numThreads;
+        return this;
+    }
+
     /**
      * Set the data to evaluate on.
      *
@@ -194,7 +205,7 @@ public class EvaluationConfig {
             }
         }
 
-        sd.evaluate(data, evaluations, labelIndices, listeners.toArray(new Listener[0]));
+        sd.evaluate(data, evaluations, labelIndices, numThreads, listeners.toArray(new Listener[0]));
         return new EvaluationRecord(evaluations);
     }
 
@@ -33,7 +33,9 @@ import org.nd4j.autodiff.samediff.config.SDValue;
 import org.nd4j.autodiff.samediff.config.SDValueType;
 import org.nd4j.common.base.Preconditions;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.custom.Invoke;
 import org.nd4j.linalg.api.ops.impl.controlflow.compat.*;
+import org.nd4j.linalg.api.ops.impl.shape.tensorops.BaseTensorOp;
 import org.nd4j.linalg.dataset.api.MultiDataSet;
 import org.nd4j.common.function.Predicate;
 
@@ -52,6 +54,12 @@ public abstract class AbstractSession<T, O> {
      */
     public static final String OUTER_FRAME = "main";
 
+    /**
+     * Maximum number of execution plans (i.e., distinct sets of requested outputs)
+     * to cache per session
+     */
+    public static final int MAX_EXECUTION_PLANS = 32;
+
     protected final SameDiff sameDiff;
     @Getter
     protected final Map<VarId, SDValue> nodeValueOutputs = new LinkedHashMap<>(); // Key: variable (at a given frame +
@@ -100,6 +108,17 @@ public abstract class AbstractSession<T, O> {
      */
     protected final Set<String> zeroInputOpsInSubgraph = new HashSet<>();
 
+    /**
+     * Cached execution plans for static graphs, keyed by the set of required
+     * variables. See {@link #buildExecutionPlan(Set)}
+     */
+    protected final Map<Set<String>, ExecutionPlan> executionPlans = new LinkedHashMap<Set<String>, ExecutionPlan>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Set<String>, ExecutionPlan> eldest) {
+            return size() > MAX_EXECUTION_PLANS;
+        }
+    };
+
     public AbstractSession(@NonNull SameDiff sameDiff) {
         this.sameDiff = sameDiff;
     }
@@ -237,12 +256,20 @@ public abstract class AbstractSession<T, O> {
         // Basic plan: work backwards from the variables we want, based on the graph
         // structure, to work out what
         // we actually need to execute
-        // TODO we'll optimize this and cache the results, only recalculating if the
-        // graph structure changes
+        // For static graphs, the result of this (plus a topological ordering of the
+        // ops) is cached as an execution plan, and only recalculated if the graph
+        // structure changes
         Set<String> userRequestedUnique = new LinkedHashSet<>(variables);
         Set<String> allRequired = new LinkedHashSet<>(requiredActivations);
         allRequired.addAll(variables);
-        initSubgraph(allRequired);
+        ExecutionPlan plan = getExecutionPlan(allRequired);
+        if (plan != null) {
+            subgraph.addAll(plan.getSubgraph());
+            subgraphOps.addAll(plan.getSubgraphOps());
+        } else {
+            initSubgraph(allRequired);
+            plan = buildExecutionPlan(allRequired);
+        }
 
         // Step 2: Check that we have required placeholders
         List<String> phNames = sameDiff.inputs();
@@ -290,6 +317,13 @@ public abstract class AbstractSession<T, O> {
             }
         }
 
+        if (plan != null) {
+            // Static graph: no need for the dependency tracker, execute the ops in the
+            // precomputed order
+            return executePlan(plan, userRequestedUnique, allRequired, placeholderValues, otherPlaceHolderValues,
+                    reqOutputVariablesSet, batch, listeners, at);
+        }
+
         // Step 3: Mark the (required) variables, constants and placeholders as
         // available via dependency tracker
         // And also any "zero dependency" ops - i.e., those without any inputs
@@ -717,6 +751,240 @@ public abstract class AbstractSession<T, O> {
                 .valueOutputs(outValues).build();
     }
 
+    /**
+     * Get the cached execution plan for the specified set of required variables, if
+     * one exists and is still valid for the current graph structure
+     *
+     * @param allRequired All required variables (outputs and required activations)
+     * @return The execution plan, or null if no (valid) plan is available
+     */
+    protected ExecutionPlan getExecutionPlan(Set<String> allRequired) {
+        if (!sameDiff.isEnableExecutionPlans()) {
+            executionPlans.clear();
+            return null;
+        }
+
+        ExecutionPlan plan = executionPlans.get(allRequired);
+        if (plan == null)
+            return null;
+        if (!plan.isValid(sameDiff)) {
+            log.trace("Graph structure has changed, discarding execution plan for {}", allRequired);
+            executionPlans.remove(allRequired);
+            return null;
+        }
+        return plan;
+    }
+
+    /**
+     * Build (and cache) an execution plan for the current subgraph - i.e., a fixed
+     * topological ordering of the ops in the subgraph,
+     * with the inputs of each op already resolved. Must be called after
+     * {@link #initSubgraph(Set)}.<br>
+     * Plans are only built for static graphs: if the subgraph contains control flow
+     * ops (loops, switch/merge), TensorArray
+     * ops, invoked subgraphs or control dependencies, the dependency tracker is
+     * required and null is returned.
+     *
+     * @param allRequired All required variables (outputs and required activations)
+     * @return The execution plan, or null if no plan can be built for this subgraph
+     */
+    protected ExecutionPlan buildExecutionPlan(Set<String> allRequired) {
+        if (!sameDiff.isEnableExecutionPlans())
+            return null;
+
+        Map<String, Variable> vars = sameDiff.getVariables();
+        Map<String, SameDiffOp> ops = sameDiff.getOps();
+        List<String> constantsAndVariables = new ArrayList<>();
+        List<String> placeholders = new ArrayList<>();
+        Map<String, VariableType> variableTypes = new HashMap<>();
+        for (String s : subgraph) {
+            Variable v = vars.get(s);
+            if (v == null || v.getVariable() == null || v.getControlDeps() != null && !v.getControlDeps().isEmpty())
+                return null;
+            VariableType vt = v.getVariable().getVariableType();
+            switch (vt) {
+                case VARIABLE:
+                case CONSTANT:
+                    constantsAndVariables.add(s);
+                    break;
+                case PLACEHOLDER:
+                    placeholders.add(s);
+                    break;
+                case ARRAY:
+                    break;
+                default:
+                    return null;
+            }
+            variableTypes.put(s, vt);
+        }
+
+        // Kahn's algorithm over the ops in the subgraph: an op can be executed once all
+        // ops producing its inputs have been executed
+        Map<String, Integer> numPending = new HashMap<>();
+        Map<String, List<String>> consumers = new HashMap<>();
+        Queue<String> ready = new ArrayDeque<>();
+        for (String opName : subgraphOps) {
+            SameDiffOp op = ops.get(opName);
+            if (op == null || op.getOp() == null)
+                return null;
+            DifferentialFunction df = op.getOp();
+            if (df instanceof BaseCompatOp || df instanceof BaseTensorOp || df instanceof Invoke
+                    || op.getControlDeps() != null && !op.getControlDeps().isEmpty()
+                    || op.getVarControlDeps() != null && !op.getVarControlDeps().isEmpty())
+                return null;
+
+            Set<String> inputOps = new HashSet<>();
+            if (op.getInputsToOp() != null) {
+                for (String in : op.getInputsToOp()) {
+                    if (!variableTypes.containsKey(in))
+                        return null;
+                    String outputOf = vars.get(in).getOutputOfOp();
+                    if (outputOf != null && variableTypes.get(in) == VariableType.ARRAY) {
+                        if (!subgraphOps.contains(outputOf))
+                            return null;
+                        inputOps.add(outputOf);
+                    }
+                }
+            }
+            numPending.put(opName, inputOps.size());
+            for (String in : inputOps) {
+                consumers.computeIfAbsent(in, k -> new ArrayList<>()).add(opName);
+            }
+            if (inputOps.isEmpty())
+                ready.add(opName);
+        }
+
+        List<PlanStep> steps = new ArrayList<>(subgraphOps.size());
+        while (!ready.isEmpty()) {
+            String opName = ready.remove();
+            SameDiffOp op = ops.get(opName);
+            List<String> inputNames = op.getInputsToOp();
+            Set<VarId> inputs = null;
+            Set<VarId> allIterInputs = null;
+            Set<String> constAndPhInputs = null;
+            if (inputNames != null && !inputNames.isEmpty()) {
+                inputs = new LinkedHashSet<>();
+                allIterInputs = new LinkedHashSet<>();
+                constAndPhInputs = new LinkedHashSet<>();
+                for (String in : inputNames) {
+                    VariableType vt = variableTypes.get(in);
+                    if (vt == VariableType.CONSTANT || vt == VariableType.PLACEHOLDER) {
+                        constAndPhInputs.add(in);
+                    } else {
+                        inputs.add(new VarId(in, OUTER_FRAME, 0, null));
+                    }
+                }
+            }
+            steps.add(new PlanStep(opName, op, inputNames == null ? null : new ArrayList<>(inputNames),
+                    inputs, allIterInputs, constAndPhInputs));
+
+            List<String> c = consumers.get(opName);
+            if (c != null) {
+                for (String next : c) {
+                    int n = numPending.merge(next, -1, Integer::sum);
+                    if (n == 0)
+                        ready.add(next);
+                }
+            }
+        }
+
+        if (steps.size() != subgraphOps.size()) {
+            // Cycle - can only happen with control flow, which we have excluded above
+            return null;
+        }
+
+        ExecutionPlan plan = new ExecutionPlan(new ArrayList<>(subgraph), new ArrayList<>(subgraphOps),
+                constantsAndVariables, placeholders, variableTypes, steps, ops.size(), vars.size());
+        executionPlans.put(new LinkedHashSet<>(allRequired), plan);
+        return plan;
+    }
+
+    /**
+     * Execute the specified execution plan. The subgraph and placeholder validation
+     * must already have been done by the caller.
+     */
+    protected ExecutionResult executePlan(ExecutionPlan plan, Set<String> userRequestedUnique,
+            Set<String> allRequired, Map<String, T> placeholderValues, Map<String, SDValue> otherPlaceHolderValues,
+            Set<String> reqOutputVariablesSet, MultiDataSet batch, List<Listener> listeners, At at) {
+        Map<String, SDValue> outValues = new LinkedHashMap<>();
+        FrameIter outerFrameIter = new FrameIter(OUTER_FRAME, 0, null);
+
+        for (String s : plan.getConstantsAndVariables()) {
+            VarId vid = outerFrameIter.toVarId(s);
+            T arr = getConstantOrVariable(s);
+            Preconditions.checkNotNull(arr, "Encountered null placeholder array for constant: %s", vid);
+            SDValue value = SDValue.create((INDArray) arr);
+            putNodeValue(value, vid);
+            if (userRequestedUnique.contains(s)) {
+                outValues.put(s, value);
+            }
+        }
+
+        for (String s : plan.getPlaceholders()) {
+            VarId vid = outerFrameIter.toVarId(s);
+            SDValue value = null;
+            if (placeholderValues != null && placeholderValues.containsKey(s)) {
+                value = SDValue.create((INDArray) placeholderValues.get(s));
+            } else if (otherPlaceHolderValues != null && otherPlaceHolderValues.containsKey(s)) {
+                value = otherPlaceHolderValues.get(s);
+                if (value != null && value.getSdValueType() == SDValueType.DICT)
+                    throw new UnsupportedOperationException("Unable to process dictionary types.");
+            }
+            putNodeValue(value, vid);
+
+            if (allRequired.contains(s)) {
+                Preconditions.checkState(value != null,
+                        "No array was provided for the placeholder variable \"%s\" that is required for execution", s);
+                outValues.put(s, value);
+            }
+        }
+
+        for (PlanStep step : plan.getSteps()) {
+            String opName = step.getOpName();
+            log.trace("Executing planned op: {}", opName);
+            O parameterizedOp = getAndParameterizeOp(opName, outerFrameIter, step.getInputs(),
+                    step.getAllIterInputs(), step.getConstAndPhInputs(), placeholderValues, reqOutputVariablesSet,
+                    otherPlaceHolderValues);
+            ExecutionResult opOutputValues = getOutputs(parameterizedOp, outerFrameIter, step.getInputs(),
+                    step.getAllIterInputs(), step.getConstAndPhInputs(), listeners, at, batch, reqOutputVariablesSet,
+                    otherPlaceHolderValues);
+            List<String> opOutVarNames = step.getOp().getOutputsOfOp();
+
+            int lengthToCheck = opOutputValues.numResults();
+            if (!opOutVarNames.isEmpty() && opOutputValues.hasSingle()) {
+                Preconditions.checkState(lengthToCheck == opOutVarNames.size(),
+                        "Unexpected number of outputs from executed op %s:" +
+                                " got %s outputs when %s outputs were expected (%s)",
+                        parameterizedOp.getClass().getSimpleName(), opOutputValues.numResults(),
+                        opOutVarNames.size(), opOutVarNames);
+            }
+
+            for (int i = 0; i < lengthToCheck; i++) {
+                if (opOutputValues.hasSingle() && opOutputValues.resultAt(i) == null)
+                    continue;
+
+                String n = opOutVarNames.get(i);
+                VarId vid = outerFrameIter.toVarId(n);
+                SDValue value;
+                if (opOutputValues.hasValues()) {
+                    value = opOutputValues.valueWithKeyAtIndex(i, false);
+                } else {
+                    value = SDValue.create(opOutputValues.resultAt(i));
+                }
+                // values can be null
+                if (value != null)
+                    putNodeValue(value, vid);
+                if (userRequestedUnique.contains(n)) {
+                    outValues.put(n, value);
+                }
+            }
+        }
+
+        outValues = postProcessOutputValues(outValues);
+        return ExecutionResult.builder()
+                .valueOutputs(outValues).build();
+    }
+
     private FrameIter getExitIter(ExecStep es) {
         FrameIter outFrameIter;
         // Exit node forwards input to parent frame
@@ -1449,4 +1717,61 @@ public abstract class AbstractSession<T, O> {
     }
 
     ;
+    /**
+     * A single op execution in an {@link ExecutionPlan}, with the op inputs already
+     * resolved
+     */
+    @Getter
+    @AllArgsConstructor
+    protected static class PlanStep {
+        protected final String opName;
+        protected final SameDiffOp op;
+        protected final List<String> inputNames;
+        protected final Set<VarId> inputs;
+        protected final Set<VarId> allIterInputs;
+        protected final Set<String> constAndPhInputs;
+    }
+
+    /**
+     * ExecutionPlan: a "frozen" version of the subgraph required to calculate a set
+     * of variables in a static graph
+     * (i.e., no control flow), with the ops in topological order. Plans don't depend
+     * on the placeholder shapes, only on
+     * the graph structure: {@link #isValid(SameDiff)} checks that the graph has not
+     * been modified since the plan was built.
+     */
+    @Getter
+    @AllArgsConstructor
+    protected static class ExecutionPlan {
+        protected final List<String> subgraph;
+        protected final List<String> subgraphOps;
+        protected final List<String> constantsAndVariables;
+        protected final List<String> placeholders;
+        protected final Map<String, VariableType> variableTypes;
+        protected final List<PlanStep> steps;
+        protected final int numOps;
+        protected final int numVariables;
+
+        protected boolean isValid(SameDiff sameDiff) {
+            Map<String, SameDiffOp> ops = sameDiff.getOps();
+            Map<String, Variable> vars = sameDiff.getVariables();
+            if (ops.size() != numOps || vars.size() != numVariables)
+                return false;
+
+            for (PlanStep step : steps) {
+                SameDiffOp op = ops.get(step.getOpName());
+                if (op != step.getOp() || !Objects.equals(op.getInputsToOp(), step.getInputNames())
+                        || op.getControlDeps() != null && !op.getControlDeps().isEmpty())
+                    return false;
+            }
+
+            for (Map.Entry<String, VariableType> e : variableTypes.entrySet()) {
+                Variable v = vars.get(e.getKey());
+                if (v == null || v.getVariable() == null || v.getVariable().getVariableType() != e.getValue()
+                        || v.getControlDeps() != null && !v.getControlDeps().isEmpty())
+                    return false;
+            }
+            return true;
+        }
+    }
 }
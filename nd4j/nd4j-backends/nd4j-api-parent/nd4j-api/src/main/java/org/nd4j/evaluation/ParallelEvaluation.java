@@ -0,0 +1,331 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.evaluation;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.dataset.AsyncDataSetIterator;
+import org.nd4j.linalg.dataset.AsyncMultiDataSetIterator;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
+import org.nd4j.linalg.dataset.api.MultiDataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Utilities for performing evaluation on multiple threads.<br>
+ * The data is split dynamically between threads: each thread takes the next minibatch from the shared iterator as soon
+ * as it has finished the previous one. Each thread should evaluate into its own {@link IEvaluation} instances (see
+ * {@link #newInstances(IEvaluation[])}), which are then combined using {@link #merge(IEvaluation[], List)}.<br>
+ * Note that the order in which minibatches are evaluated is not deterministic; evaluations that retain per-example
+ * metadata may record examples in a different order than single threaded evaluation.
+ */
+@Slf4j
+public class ParallelEvaluation {
+
+    private ParallelEvaluation() {
+    }
+
+    /**
+     * Run the worker function on the specified number of threads. Each worker is given its own DataSetIterator, which
+     * returns minibatches from the shared source iterator until the source is exhausted. The source iterator is reset
+     * first if required, and is asynchronously prefetched if it supports this.
+     *
+     * @param source     Source of data for all workers
+     * @param numThreads Number of threads to use
+     * @param worker     Function to execute in each thread, usually returning that thread's evaluations
+     * @return Results of each worker
+     */
+    public static <R> List<R> execute(@NonNull DataSetIterator source, int numThreads, @NonNull Function<DataSetIterator, R> worker) {
+        Preconditions.checkArgument(numThreads > 0, "Number of threads must be positive, got %s", numThreads);
+        if (!source.hasNext() && source.resetSupported())
+            source.reset();
+
+        //Note: no workspaces here, as multiple minibatches are in use at once by different threads
+        DataSetIterator iter = source.asyncSupported() ? new AsyncDataSetIterator(source, 2 * numThreads, false) : source;
+        try {
+            SharedSource<DataSet> shared = new SharedSource<>(iter);
+            return run(numThreads, shared, () -> worker.apply(new SharedDataSetIterator(shared, iter)));
+        } finally {
+            if (iter != source)
+                ((AsyncDataSetIterator) iter).shutdown();
+        }
+    }
+
+    /**
+     * As per {@link #execute(DataSetIterator, int, Function)} but for MultiDataSetIterator
+     */
+    public static <R> List<R> execute(@NonNull MultiDataSetIterator source, int numThreads, @NonNull Function<MultiDataSetIterator, R> worker) {
+        Preconditions.checkArgument(numThreads > 0, "Number of threads must be positive, got %s", numThreads);
+        if (!source.hasNext() && source.resetSupported())
+            source.reset();
+
+        MultiDataSetIterator iter = source.asyncSupported() ? new AsyncMultiDataSetIterator(source, 2 * numThreads, false) : source;
+        try {
+            SharedSource<MultiDataSet> shared = new SharedSource<>(iter);
+            return run(numThreads, shared, () -> worker.apply(new SharedMultiDataSetIterator(shared)));
+        } finally {
+            if (iter != source)
+                ((AsyncMultiDataSetIterator) iter).shutdown();
+        }
+    }
+
+    /**
+     * Create new, empty instances of each of the specified evaluations, using {@link IEvaluation#newInstance()}
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends IEvaluation> T[] newInstances(@NonNull T[] evaluations) {
+        T[] out = (T[]) Array.newInstance(evaluations.getClass().getComponentType(), evaluations.length);
+        for (int i = 0; i < evaluations.length; i++) {
+            out[i] = (T) evaluations[i].newInstance();
+        }
+        return out;
+    }
+
+    /**
+     * Merge the evaluations from each thread into the target evaluations, element-wise
+     *
+     * @param target Evaluations to merge into
+     * @param others Evaluations to merge. Each array must be the same length as the target
+     * @return The target array
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends IEvaluation> T[] merge(@NonNull T[] target, @NonNull List<T[]> others) {
+        for (T[] o : others) {
+            Preconditions.checkState(o.length == target.length, "Number of evaluations differs: %s vs. %s", target.length, o.length);
+            for (int i = 0; i < target.length; i++) {
+                target[i].merge(o[i]);
+            }
+        }
+        return target;
+    }
+
+    private static <R> List<R> run(int numThreads, final SharedSource<?> shared, final WorkerTask<R> task) {
+        final Integer deviceId = Nd4j.getAffinityManager().getDeviceForCurrentThread();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final List<R> results = Collections.synchronizedList(new ArrayList<R>());
+
+        Thread[] threads = new Thread[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Nd4j.getAffinityManager().unsafeSetDevice(deviceId);
+                    try {
+                        results.add(task.call());
+                    } catch (Throwable t) {
+                        log.error("Error during parallel evaluation", t);
+                        error.compareAndSet(null, t);
+                        shared.abort();     //Stop the other threads early
+                    }
+                }
+            }, "ParallelEvaluation-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+
+        for (Thread t : threads) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while waiting for evaluation threads", e);
+            }
+        }
+
+        Throwable t = error.get();
+        if (t != null) {
+            if (t instanceof RuntimeException)
+                throw (RuntimeException) t;
+            if (t instanceof Error)
+                throw (Error) t;
+            throw new RuntimeException("Error during parallel evaluation", t);
+        }
+        return new ArrayList<>(results);
+    }
+
+    private interface WorkerTask<R> {
+        R call();
+    }
+
+    /**
+     * Shared, thread safe access to the underlying iterator. Returns null once exhausted
+     */
+    private static class SharedSource<T> {
+        private final Iterator<T> iterator;
+        private volatile boolean aborted;
+
+        private SharedSource(Iterator<T> iterator) {
+            this.iterator = iterator;
+        }
+
+        private synchronized T next() {
+            return !aborted && iterator.hasNext() ? iterator.next() : null;
+        }
+
+        private void abort() {
+            aborted = true;
+        }
+    }
+
+    private static class SharedDataSetIterator implements DataSetIterator {
+        private final SharedSource<DataSet> source;
+        private final DataSetIterator underlying;
+        private DataSet next;
+
+        private SharedDataSetIterator(SharedSource<DataSet> source, DataSetIterator underlying) {
+            this.source = source;
+            this.underlying = underlying;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null)
+                next = source.next();
+            return next != null;
+        }
+
+        @Override
+        public DataSet next() {
+            if (!hasNext())
+                throw new IllegalStateException("No next element");
+            DataSet ds = next;
+            next = null;
+            return ds;
+        }
+
+        @Override
+        public DataSet next(int num) {
+            throw new UnsupportedOperationException("Not supported");
+        }
+
+        @Override
+        public int inputColumns() {
+            return underlying.inputColumns();
+        }
+
+        @Override
+        public int totalOutcomes() {
+            return underlying.totalOutcomes();
+        }
+
+        @Override
+        public boolean resetSupported() {
+            return false;
+        }
+
+        @Override
+        public boolean asyncSupported() {
+            return false;
+        }
+
+        @Override
+        public void reset() {
+            throw new UnsupportedOperationException("Reset not supported");
+        }
+
+        @Override
+        public int batch() {
+            return underlying.batch();
+        }
+
+        @Override
+        public void setPreProcessor(DataSetPreProcessor preProcessor) {
+            throw new UnsupportedOperationException("Not supported");
+        }
+
+        @Override
+        public DataSetPreProcessor getPreProcessor() {
+            return null;
+        }
+
+        @Override
+        public List<String> getLabels() {
+            return underlying.getLabels();
+        }
+    }
+
+    private static class SharedMultiDataSetIterator implements MultiDataSetIterator {
+        private final SharedSource<MultiDataSet> source;
+        private MultiDataSet next;
+
+        private SharedMultiDataSetIterator(SharedSource<MultiDataSet> source) {
+            this.source = source;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null)
+                next = source.next();
+            return next != null;
+        }
+
+        @Override
+        public MultiDataSet next() {
+            if (!hasNext())
+                throw new IllegalStateException("No next element");
+            MultiDataSet mds = next;
+            next = null;
+            return mds;
+        }
+
+        @Override
+        public MultiDataSet next(int num) {
+            throw new UnsupportedOperationException("Not supported");
+        }
+
+        @Override
+        public void setPreProcessor(MultiDataSetPreProcessor preProcessor) {
+            throw new UnsupportedOperationException("Not supported");
+        }
+
+        @Override
+        public MultiDataSetPreProcessor getPreProcessor() {
+            return null;
+        }
+
+        @Override
+        public boolean resetSupported() {
+            return false;
+        }
+
+        @Override
+        public boolean asyncSupported() {
+            return false;
+        }
+
+        @Override
+        public void reset() {
+            throw new UnsupportedOperationException("Reset not supported");
+        }
+    }
+}
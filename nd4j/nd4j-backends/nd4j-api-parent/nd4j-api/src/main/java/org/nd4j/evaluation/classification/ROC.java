@@ -82,6 +82,7 @@ public class ROC extends BaseEvaluation<ROC> {
     }
 
     private static final int DEFAULT_EXACT_ALLOC_BLOCK_SIZE = 2048;
+    public static final int DEFAULT_SKETCH_BINS = 4096;
     private final Map<Double, CountsForThreshold> counts = new LinkedHashMap<>();
     private int thresholdSteps;
     private long countActualPositive;
@@ -93,9 +94,10 @@ public class ROC extends BaseEvaluation<ROC> {
 
     private boolean isExact;
     private INDArray probAndLabel;
-    private int exampleCount = 0;
+    private long exampleCount = 0;
     private boolean rocRemoveRedundantPts;
     private int exactAllocBlockSize;
+    private RocSketch sketch;
     protected int axis = 1;
 
 
@@ -153,6 +155,37 @@ public class ROC extends BaseEvaluation<ROC> {
         this.exactAllocBlockSize = exactAllocBlockSize;
     }
 
+    /**
+     * Create a ROC instance that uses a bounded memory {@link RocSketch} instead of storing every prediction (exact mode)
+     * or using fixed thresholds. Memory use is O(maxBins) regardless of the number of examples, instances can be merged
+     * (for example, across threads or workers), and the AUROC error is bounded - see {@link #calculateAUCErrorBound()}.
+     *
+     * @param maxBins Maximum number of bins in the sketch. For example, {@link #DEFAULT_SKETCH_BINS}
+     */
+    public static ROC sketch(int maxBins) {
+        return sketch(maxBins, true);
+    }
+
+    /**
+     * As per {@link #sketch(int)}
+     *
+     * @param maxBins               Maximum number of bins in the sketch
+     * @param rocRemoveRedundantPts Usually set to true. If true,  remove any redundant points from ROC and P-R curves
+     */
+    public static ROC sketch(int maxBins, boolean rocRemoveRedundantPts) {
+        ROC roc = new ROC(0, rocRemoveRedundantPts);
+        roc.isExact = false;
+        roc.sketch = new RocSketch(maxBins);
+        return roc;
+    }
+
+    /**
+     * @return True if this instance uses a {@link RocSketch} - see {@link #sketch(int)}
+     */
+    public boolean isSketchMode() {
+        return sketch != null;
+    }
+
     public static ROC fromJson(String json) {
         return fromJson(json, ROC.class);
     }
@@ -219,7 +252,37 @@ public class ROC extends BaseEvaluation<ROC> {
 
         Preconditions.checkState(exampleCount > 0, "Unable to get ROC curve: no evaluation has been performed (no examples)");
 
-        if (isExact) {
+        if (isSketchMode()) {
+            //Same layout as exact mode: threshold 1.0 (nothing predicted positive), then bins in descending order of
+            //probability, then threshold 0.0 (everything predicted positive)
+            int nBins = sketch.numBins();
+            double[] tOut = new double[nBins + 2];
+            double[] x_fpr_out = new double[nBins + 2];
+            double[] y_tpr_out = new double[nBins + 2];
+            tOut[0] = 1.0;
+            long cumPos = 0;
+            long cumNeg = 0;
+            for (int i = 0; i < nBins; i++) {
+                int b = nBins - 1 - i;
+                cumPos += sketch.getPositives()[b];
+                cumNeg += sketch.getNegatives()[b];
+                tOut[i + 1] = sketch.getLo()[b];
+                x_fpr_out[i + 1] = cumNeg / (double) countActualNegative;
+                y_tpr_out[i + 1] = cumPos / (double) countActualPositive;
+            }
+            x_fpr_out[nBins + 1] = 1.0;
+            y_tpr_out[nBins + 1] = 1.0;
+
+            if (rocRemoveRedundantPts) {
+                double[][] temp = removeRedundant(tOut, x_fpr_out, y_tpr_out, null, null, null).getFirst();
+                tOut = temp[0];
+                x_fpr_out = temp[1];
+                y_tpr_out = temp[2];
+            }
+
+            this.rocCurve = new RocCurve(tOut, x_fpr_out, y_tpr_out);
+            return rocCurve;
+        } else if (isExact) {
             //Sort ascending. As we decrease threshold, more are predicted positive.
             //if(prob <= threshold> predict 0, otherwise predict 1
             //So, as we iterate from i=0..length, first 0 to i (inclusive) are predicted class 1, all others are predicted class 0
@@ -258,7 +321,7 @@ public class ROC extends BaseEvaluation<ROC> {
             //Note: we can have multiple FPR for a given TPR, and multiple TPR for a given FPR
             //These can be omitted, without changing the area (as long as we keep the edge points)
             if (rocRemoveRedundantPts) {
-                Pair<double[][], int[][]> p = removeRedundant(tOut, x_fpr_out, y_tpr_out, null, null, null);
+                Pair<double[][], long[][]> p = removeRedundant(tOut, x_fpr_out, y_tpr_out, null, null, null);
                 double[][] temp = p.getFirst();
                 tOut = temp[0];
                 x_fpr_out = temp[1];
@@ -286,6 +349,20 @@ public class ROC extends BaseEvaluation<ROC> {
         }
     }
 
+    /**
+     * Upper bound on the absolute error of {@link #calculateAUC()}, for ROC instances created with {@link #sketch(int)}.
+     * Returns 0.0 for exact mode. Not available for thresholded mode.
+     *
+     * @return Maximum AUROC error
+     */
+    public double calculateAUCErrorBound() {
+        if (isSketchMode()) {
+            return sketch.calculateAucErrorBound();
+        }
+        Preconditions.checkState(isExact, "AUC error bound is not available for thresholded ROC (thresholdSteps = %s)", thresholdSteps);
+        return 0.0;
+    }
+
     protected INDArray getProbAndLabelUsed() {
         if (probAndLabel == null || exampleCount == 0) {
             return null;
@@ -293,19 +370,19 @@ public class ROC extends BaseEvaluation<ROC> {
         return probAndLabel.get(interval(0, exampleCount), all());
     }
 
-    private static Pair<double[][], int[][]> removeRedundant(double[] threshold, double[] x, double[] y, int[] tpCount,
-                                                             int[] fpCount, int[] fnCount) {
+    private static Pair<double[][], long[][]> removeRedundant(double[] threshold, double[] x, double[] y, long[] tpCount,
+                                                              long[] fpCount, long[] fnCount) {
         double[] t_compacted = new double[threshold.length];
         double[] x_compacted = new double[x.length];
         double[] y_compacted = new double[y.length];
-        int[] tp_compacted = null;
-        int[] fp_compacted = null;
-        int[] fn_compacted = null;
+        long[] tp_compacted = null;
+        long[] fp_compacted = null;
+        long[] fn_compacted = null;
         boolean hasInts = false;
         if (tpCount != null) {
-            tp_compacted = new int[tpCount.length];
-            fp_compacted = new int[fpCount.length];
-            fn_compacted = new int[fnCount.length];
+            tp_compacted = new long[tpCount.length];
+            fp_compacted = new long[fpCount.length];
+            fn_compacted = new long[fnCount.length];
             hasInts = true;
         }
         int lastOutPos = -1;
@@ -345,7 +422,7 @@ public class ROC extends BaseEvaluation<ROC> {
         }
 
         return new Pair<>(new double[][]{t_compacted, x_compacted, y_compacted},
-                hasInts ? new int[][]{tp_compacted, fp_compacted, fn_compacted} : null);
+                hasInts ? new long[][]{tp_compacted, fp_compacted, fn_compacted} : null);
     }
 
     private double getAuprc() {
@@ -391,11 +468,70 @@ public class ROC extends BaseEvaluation<ROC> {
         double[] thresholdOut;
         double[] precisionOut;
         double[] recallOut;
-        int[] tpCountOut;
-        int[] fpCountOut;
-        int[] fnCountOut;
+        long[] tpCountOut;
+        long[] fpCountOut;
+        long[] fnCountOut;
+
+        if (isSketchMode()) {
+            //As per exact mode: points in order of decreasing threshold, then reversed
+            int nBins = sketch.numBins();
+            int nPts = nBins + 2;
+            thresholdOut = new double[nPts];
+            precisionOut = new double[nPts];
+            recallOut = new double[nPts];
+            tpCountOut = new long[nPts];
+            fpCountOut = new long[nPts];
+            fnCountOut = new long[nPts];
+
+            //Edge case: threshold of 1.0, all predictions negative
+            thresholdOut[0] = 1.0;
+            precisionOut[0] = 1.0;
+            recallOut[0] = 0.0;
+            fnCountOut[0] = countActualPositive;
+
+            long cumPos = 0;
+            long cumNeg = 0;
+            for (int i = 0; i < nBins; i++) {
+                int b = nBins - 1 - i;
+                cumPos += sketch.getPositives()[b];
+                cumNeg += sketch.getNegatives()[b];
+                thresholdOut[i + 1] = sketch.getLo()[b];
+                //Only non-empty bins are stored, so cumPos + cumNeg > 0
+                precisionOut[i + 1] = cumPos / (double) (cumPos + cumNeg);
+                recallOut[i + 1] = countActualPositive == 0 ? 1.0 : cumPos / (double) countActualPositive;
+                tpCountOut[i + 1] = cumPos;
+                fpCountOut[i + 1] = cumNeg;
+                fnCountOut[i + 1] = countActualPositive - cumPos;
+            }
 
-        if (isExact) {
+            //Edge case: threshold of 0.0, all predicted positive
+            thresholdOut[nPts - 1] = 0.0;
+            precisionOut[nPts - 1] = countActualPositive / (double) exampleCount;
+            recallOut[nPts - 1] = 1.0;
+            tpCountOut[nPts - 1] = countActualPositive;
+            fpCountOut[nPts - 1] = countActualNegative;
+            fnCountOut[nPts - 1] = 0;
+
+            ArrayUtils.reverse(thresholdOut);
+            ArrayUtils.reverse(precisionOut);
+            ArrayUtils.reverse(recallOut);
+            ArrayUtils.reverse(tpCountOut);
+            ArrayUtils.reverse(fpCountOut);
+            ArrayUtils.reverse(fnCountOut);
+
+            if (rocRemoveRedundantPts) {
+                Pair<double[][], long[][]> pair = removeRedundant(thresholdOut, precisionOut, recallOut, tpCountOut,
+                        fpCountOut, fnCountOut);
+                double[][] temp = pair.getFirst();
+                long[][] temp2 = pair.getSecond();
+                thresholdOut = temp[0];
+                precisionOut = temp[1];
+                recallOut = temp[2];
+                tpCountOut = temp2[0];
+                fpCountOut = temp2[1];
+                fnCountOut = temp2[2];
+            }
+        } else if (isExact) {
             INDArray pl = getProbAndLabelUsed();
             INDArray sorted = Nd4j.sortRows(pl, 0, false);
             INDArray isPositive = sorted.getColumn(1,true);
@@ -438,24 +574,24 @@ public class ROC extends BaseEvaluation<ROC> {
             recallOut = rec.data().asDouble();
 
             //Counts. Note the edge cases
-            tpCountOut = new int[thresholdOut.length];
-            fpCountOut = new int[thresholdOut.length];
-            fnCountOut = new int[thresholdOut.length];
+            tpCountOut = new long[thresholdOut.length];
+            fpCountOut = new long[thresholdOut.length];
+            fnCountOut = new long[thresholdOut.length];
 
             for (int i = 1; i < tpCountOut.length - 1; i++) {
-                tpCountOut[i] = cumSumPos.getInt(i - 1);
+                tpCountOut[i] = cumSumPos.getLong(i - 1);
                 fpCountOut[i] = i - tpCountOut[i]; //predicted positive - true positive
-                fnCountOut[i] = (int) countActualPositive - tpCountOut[i];
+                fnCountOut[i] = countActualPositive - tpCountOut[i];
             }
 
             //Edge cases: last idx -> threshold of 0.0, all predicted positive
-            tpCountOut[tpCountOut.length - 1] = (int) countActualPositive;
-            fpCountOut[tpCountOut.length - 1] = (int) (exampleCount - countActualPositive);
+            tpCountOut[tpCountOut.length - 1] = countActualPositive;
+            fpCountOut[tpCountOut.length - 1] = exampleCount - countActualPositive;
             fnCountOut[tpCountOut.length - 1] = 0;
             //Edge case: first idx -> threshold of 1.0, all predictions negative
             tpCountOut[0] = 0;
-            fpCountOut[0] = 0; //(int)(exampleCount - countActualPositive);  //All negatives are predicted positive
-            fnCountOut[0] = (int) countActualPositive;
+            fpCountOut[0] = 0; //(exampleCount - countActualPositive);  //All negatives are predicted positive
+            fnCountOut[0] = countActualPositive;
 
             //Finally: 2 things to do
             //(a) Reverse order: lowest to highest threshold
@@ -469,10 +605,10 @@ public class ROC extends BaseEvaluation<ROC> {
             ArrayUtils.reverse(fnCountOut);
 
             if (rocRemoveRedundantPts) {
-                Pair<double[][], int[][]> pair = removeRedundant(thresholdOut, precisionOut, recallOut, tpCountOut,
+                Pair<double[][], long[][]> pair = removeRedundant(thresholdOut, precisionOut, recallOut, tpCountOut,
                         fpCountOut, fnCountOut);
                 double[][] temp = pair.getFirst();
-                int[][] temp2 = pair.getSecond();
+                long[][] temp2 = pair.getSecond();
                 thresholdOut = temp[0];
                 precisionOut = temp[1];
                 recallOut = temp[2];
@@ -484,9 +620,9 @@ public class ROC extends BaseEvaluation<ROC> {
             thresholdOut = new double[counts.size()];
             precisionOut = new double[counts.size()];
             recallOut = new double[counts.size()];
-            tpCountOut = new int[counts.size()];
-            fpCountOut = new int[counts.size()];
-            fnCountOut = new int[counts.size()];
+            tpCountOut = new long[counts.size()];
+            fpCountOut = new long[counts.size()];
+            fnCountOut = new long[counts.size()];
 
             int i = 0;
             for (Map.Entry<Double, CountsForThreshold> entry : counts.entrySet()) {
@@ -516,9 +652,9 @@ public class ROC extends BaseEvaluation<ROC> {
                 precisionOut[i] = precision;
                 recallOut[i] = recall;
 
-                tpCountOut[i] = (int) tpCount;
-                fpCountOut[i] = (int) fpCount;
-                fnCountOut[i] = (int) (countActualPositive - tpCount);
+                tpCountOut[i] = tpCount;
+                fpCountOut[i] = fpCount;
+                fnCountOut[i] = countActualPositive - tpCount;
                 i++;
             }
         }
@@ -594,7 +730,30 @@ public class ROC extends BaseEvaluation<ROC> {
         double step = 1.0 / thresholdSteps;
         boolean singleOutput = labels2d.size(1) == 1;
 
-        if (isExact) {
+        if (isSketchMode()) {
+            INDArray probClass1;
+            INDArray labelClass1;
+            if (singleOutput) {
+                probClass1 = predictions2d;
+                labelClass1 = labels2d;
+            } else {
+                probClass1 = predictions2d.getColumn(1,true);
+                labelClass1 = labels2d.getColumn(1,true);
+            }
+            double[] prob = probClass1.dup().data().asDouble();
+            double[] label = labelClass1.dup().data().asDouble();
+            boolean[] isPositive = new boolean[label.length];
+            int countClass1CurrMinibatch = 0;
+            for (int i = 0; i < label.length; i++) {
+                isPositive[i] = label[i] >= 0.5;
+                if (isPositive[i])
+                    countClass1CurrMinibatch++;
+            }
+            sketch.add(prob, isPositive);
+
+            countActualPositive += countClass1CurrMinibatch;
+            countActualNegative += label.length - countClass1CurrMinibatch;
+        } else if (isExact) {
             //Exact approach: simply add them to the storage for later computation/use
 
             if (probAndLabel == null) {
@@ -720,6 +879,9 @@ public class ROC extends BaseEvaluation<ROC> {
      */
     @Override
     public void merge(ROC other) {
+        if (this.isSketchMode() != other.isSketchMode()) {
+            throw new UnsupportedOperationException("Cannot merge sketch and non-sketch ROC instances");
+        }
         if (this.thresholdSteps != other.thresholdSteps) {
             throw new UnsupportedOperationException(
                     "Cannot merge ROC instances with different numbers of threshold steps ("
@@ -733,7 +895,9 @@ public class ROC extends BaseEvaluation<ROC> {
         this.prCurve = null;
 
 
-        if (isExact) {
+        if (isSketchMode()) {
+            sketch.merge(other.sketch);
+        } else if (isExact) {
             if (other.exampleCount == 0) {
                 return;
             }
@@ -774,7 +938,9 @@ public class ROC extends BaseEvaluation<ROC> {
         countActualNegative = 0L;
         counts.clear();
 
-        if (isExact) {
+        if (isSketchMode()) {
+            sketch.reset();
+        } else if (isExact) {
             probAndLabel = null;
         } else {
             double step = 1.0 / thresholdSteps;
@@ -787,6 +953,8 @@ public class ROC extends BaseEvaluation<ROC> {
         exampleCount = 0;
         auc = null;
         auprc = null;
+        rocCurve = null;
+        prCurve = null;
     }
 
     @Override
@@ -798,7 +966,11 @@ public class ROC extends BaseEvaluation<ROC> {
         StringBuilder sb = new StringBuilder();
         sb.append("AUC (Area under ROC Curve):                ").append(calculateAUC()).append("\n");
         sb.append("AUPRC (Area under Precision/Recall Curve): ").append(calculateAUCPR());
-        if (!isExact) {
+        if (isSketchMode()) {
+            sb.append("\n");
+            sb.append("[Note: Sketch AUC/AUPRC calculation used with ").append(sketch.getMaxBins())
+                    .append(" bins; AUC error bound: ").append(calculateAUCErrorBound()).append("]");
+        } else if (!isExact) {
             sb.append("\n");
             sb.append("[Note: Thresholded AUC/AUPRC calculation used with ").append(thresholdSteps)
                     .append(" steps); accuracy may reduced compared to exact mode]");
@@ -832,6 +1004,11 @@ public class ROC extends BaseEvaluation<ROC> {
 
     @Override
     public ROC newInstance() {
+        if (isSketchMode()) {
+            ROC roc = sketch(sketch.getMaxBins(), rocRemoveRedundantPts);
+            roc.setAxis(axis);
+            return roc;
+        }
         return new ROC(thresholdSteps, rocRemoveRedundantPts, exactAllocBlockSize, axis);
     }
 }
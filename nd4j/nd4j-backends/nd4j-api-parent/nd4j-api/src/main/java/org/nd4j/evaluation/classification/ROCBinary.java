@@ -65,6 +65,7 @@ public class ROCBinary extends BaseEvaluation<ROCBinary> {
 
     private int thresholdSteps;
     private boolean rocRemoveRedundantPts;
+    private int sketchBins;
     private List<String> labels;
 
     @EqualsAndHashCode.Exclude      //Exclude axis: otherwise 2 Evaluation instances could contain identical stats and fail equality
@@ -97,6 +98,18 @@ public class ROCBinary extends BaseEvaluation<ROCBinary> {
         this.rocRemoveRedundantPts = rocRemoveRedundantPts;
     }
 
+    /**
+     * Create an instance where each output uses a bounded memory sketch for the ROC calculation.
+     * See {@link ROC#sketch(int)} for details
+     *
+     * @param maxBins Maximum number of bins per output. For example, {@link ROC#DEFAULT_SKETCH_BINS}
+     */
+    public static ROCBinary sketch(int maxBins) {
+        ROCBinary r = new ROCBinary(0, true);
+        r.sketchBins = maxBins;
+        return r;
+    }
+
     /**
      * Set the axis for evaluation - this is the dimension along which the probability (and label independent binary classes) are present.<br>
      * For DL4J, this can be left as the default setting (axis = 1).<br>
@@ -149,7 +162,7 @@ public class ROCBinary extends BaseEvaluation<ROCBinary> {
         if (underlying == null) {
             underlying = new ROC[n];
             for (int i = 0; i < n; i++) {
-                underlying[i] = new ROC(thresholdSteps, rocRemoveRedundantPts);
+                underlying[i] = sketchBins > 0 ? ROC.sketch(sketchBins, rocRemoveRedundantPts) : new ROC(thresholdSteps, rocRemoveRedundantPts);
             }
         }
 
@@ -392,7 +405,11 @@ public class ROCBinary extends BaseEvaluation<ROCBinary> {
                                 getCountActualNegative(i)));
             }
 
-            if(thresholdSteps > 0){
+            if(sketchBins > 0){
+                sb.append("\n");
+                sb.append("[Note: Sketch AUC/AUPRC calculation used with ").append(sketchBins)
+                        .append(" bins; see ROC.calculateAUCErrorBound() for error bounds]");
+            } else if(thresholdSteps > 0){
                 sb.append("\n");
                 sb.append("[Note: Thresholded AUC/AUPRC calculation used with ").append(thresholdSteps)
                         .append(" steps); accuracy may reduced compared to exact mode]");
@@ -437,6 +454,8 @@ public class ROCBinary extends BaseEvaluation<ROCBinary> {
 
     @Override
     public ROCBinary newInstance() {
-        return new ROCBinary(axis, thresholdSteps, rocRemoveRedundantPts, labels);
+        ROCBinary r = new ROCBinary(axis, thresholdSteps, rocRemoveRedundantPts, labels);
+        r.sketchBins = sketchBins;
+        return r;
     }
 }
@@ -61,6 +61,7 @@ public class ROCMultiClass extends BaseEvaluation<ROCMultiClass> {
 
     private int thresholdSteps;
     private boolean rocRemoveRedundantPts;
+    private int sketchBins;
     @JsonSerialize(using = ROCArraySerializer.class)
     private ROC[] underlying;
     private List<String> labels;
@@ -96,6 +97,18 @@ public class ROCMultiClass extends BaseEvaluation<ROCMultiClass> {
         this.rocRemoveRedundantPts = rocRemoveRedundantPts;
     }
 
+    /**
+     * Create an instance where each output uses a bounded memory sketch for the ROC calculation.
+     * See {@link ROC#sketch(int)} for details
+     *
+     * @param maxBins Maximum number of bins per output. For example, {@link ROC#DEFAULT_SKETCH_BINS}
+     */
+    public static ROCMultiClass sketch(int maxBins) {
+        ROCMultiClass r = new ROCMultiClass(0, true);
+        r.sketchBins = maxBins;
+        return r;
+    }
+
     /**
      * Set the axis for evaluation - this is the dimension along which the probability (and label classes) are present.<br>
      * For DL4J, this can be left as the default setting (axis = 1).<br>
@@ -162,7 +175,11 @@ public class ROCMultiClass extends BaseEvaluation<ROCMultiClass> {
 
             sb.append("Average AUC: ").append(String.format("%-12." + printPrecision + "f", calculateAverageAUC()));
 
-            if(thresholdSteps > 0){
+            if(sketchBins > 0){
+                sb.append("\n");
+                sb.append("[Note: Sketch AUC/AUPRC calculation used with ").append(sketchBins)
+                        .append(" bins; see ROC.calculateAUCErrorBound() for error bounds]");
+            } else if(thresholdSteps > 0){
                 sb.append("\n");
                 sb.append("[Note: Thresholded AUC/AUPRC calculation used with ").append(thresholdSteps)
                         .append(" steps); accuracy may reduced compared to exact mode]");
@@ -206,7 +223,7 @@ public class ROCMultiClass extends BaseEvaluation<ROCMultiClass> {
         if (underlying == null) {
             underlying = new ROC[n];
             for (int i = 0; i < n; i++) {
-                underlying[i] = new ROC(thresholdSteps, rocRemoveRedundantPts);
+                underlying[i] = sketchBins > 0 ? ROC.sketch(sketchBins, rocRemoveRedundantPts) : new ROC(thresholdSteps, rocRemoveRedundantPts);
             }
         }
 
@@ -392,6 +409,8 @@ public class ROCMultiClass extends BaseEvaluation<ROCMultiClass> {
 
     @Override
     public ROCMultiClass newInstance() {
-        return new ROCMultiClass(axis, thresholdSteps, rocRemoveRedundantPts, labels);
+        ROCMultiClass r = new ROCMultiClass(axis, thresholdSteps, rocRemoveRedundantPts, labels);
+        r.sketchBins = sketchBins;
+        return r;
     }
 }
@@ -0,0 +1,291 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.evaluation.classification;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.nd4j.common.base.Preconditions;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * A bounded memory, mergeable summary of (probability, label) pairs for ROC and precision-recall calculation.<br>
+ * Predictions are assigned to bins that are fixed ranges of the (order preserving) bit representation of the
+ * probability, at a resolution given by {@code shift}: predictions whose keys are equal after discarding the lowest
+ * {@code shift} bits share a bin. Only non-empty bins are stored. When the number of bins exceeds {@code maxBins}, the
+ * resolution of all bins is halved (shift is incremented) until the limit is met. Because bin boundaries do not depend
+ * on the data, sketches from different threads or workers can be merged without any additional error.<br>
+ * <br>
+ * Any two examples in different bins are ordered correctly relative to each other; only pairs of (positive, negative)
+ * examples that share a bin are ambiguous. Consequently the AUROC calculated from the sketch (which treats pairs in the
+ * same bin as ties) differs from the exact AUROC by at most {@link #calculateAucErrorBound()}, regardless of the
+ * number of examples or the number of merges performed.
+ *
+ * @see ROC#sketch(int)
+ */
+@Data
+@NoArgsConstructor
+public class RocSketch implements Serializable {
+
+    private int maxBins;
+    private int shift;
+    private long[] keys = new long[0];
+    private double[] lo = new double[0];
+    private long[] positives = new long[0];
+    private long[] negatives = new long[0];
+
+    /**
+     * @param maxBins Maximum number of bins to retain. Memory use is O(maxBins), independent of the number of examples
+     */
+    public RocSketch(int maxBins) {
+        Preconditions.checkArgument(maxBins >= 2, "Maximum number of bins must be 2 or more, got %s", maxBins);
+        this.maxBins = maxBins;
+    }
+
+    /**
+     * @return Number of bins currently in use
+     */
+    public int numBins() {
+        return keys.length;
+    }
+
+    /**
+     * Add the specified examples to the sketch
+     *
+     * @param probabilities Predicted probabilities of the positive class
+     * @param isPositive    Whether each example is actually of the positive class
+     */
+    public void add(double[] probabilities, boolean[] isPositive) {
+        Preconditions.checkArgument(probabilities.length == isPositive.length, "Probabilities and labels lengths differ: %s vs. %s",
+                probabilities.length, isPositive.length);
+        if (probabilities.length == 0)
+            return;
+
+        int numPos = 0;
+        for (boolean b : isPositive) {
+            if (b)
+                numPos++;
+        }
+        long[] posKeys = new long[numPos];
+        long[] negKeys = new long[probabilities.length - numPos];
+        int pi = 0;
+        int ni = 0;
+        for (int i = 0; i < probabilities.length; i++) {
+            if (isPositive[i])
+                posKeys[pi++] = toKey(probabilities[i]);
+            else
+                negKeys[ni++] = toKey(probabilities[i]);
+        }
+        Arrays.sort(posKeys);
+        Arrays.sort(negKeys);
+
+        //Convert the batch to bins at the current resolution. Keys are sorted, so the first key in each bin is the minimum
+        long[] bk = new long[probabilities.length];
+        double[] bl = new double[probabilities.length];
+        long[] bp = new long[probabilities.length];
+        long[] bn = new long[probabilities.length];
+        int m = 0;
+        pi = 0;
+        ni = 0;
+        while (pi < posKeys.length || ni < negKeys.length) {
+            boolean takePos = ni >= negKeys.length || (pi < posKeys.length && posKeys[pi] <= negKeys[ni]);
+            long key = takePos ? posKeys[pi++] : negKeys[ni++];
+            long bin = key >> shift;
+            if (m == 0 || bk[m - 1] != bin) {
+                bk[m] = bin;
+                bl[m] = fromKey(key);
+                m++;
+            }
+            if (takePos)
+                bp[m - 1]++;
+            else
+                bn[m - 1]++;
+        }
+
+        combine(bk, bl, bp, bn, m);
+    }
+
+    /**
+     * Merge the other sketch into this one. The other sketch is not modified
+     */
+    public void merge(RocSketch other) {
+        if (other.shift > shift) {
+            coarsen(other.shift);
+            combine(other.keys, other.lo, other.positives, other.negatives, other.numBins());
+        } else {
+            RocSketch o = new RocSketch(Math.max(2, other.numBins()));
+            o.shift = other.shift;
+            o.keys = other.keys.clone();
+            o.lo = other.lo.clone();
+            o.positives = other.positives.clone();
+            o.negatives = other.negatives.clone();
+            o.coarsen(shift);
+            combine(o.keys, o.lo, o.positives, o.negatives, o.numBins());
+        }
+    }
+
+    public void reset() {
+        shift = 0;
+        keys = new long[0];
+        lo = new double[0];
+        positives = new long[0];
+        negatives = new long[0];
+    }
+
+    /**
+     * @return Total number of positive examples
+     */
+    public long totalPositives() {
+        long sum = 0;
+        for (long l : positives)
+            sum += l;
+        return sum;
+    }
+
+    /**
+     * @return Total number of negative examples
+     */
+    public long totalNegatives() {
+        long sum = 0;
+        for (long l : negatives)
+            sum += l;
+        return sum;
+    }
+
+    /**
+     * Upper bound on the absolute difference between the AUROC calculated from this sketch and the exact AUROC
+     * (where the exact AUROC counts tied predictions as half correct). This is the fraction of (positive, negative)
+     * pairs that share a bin, divided by 2.
+     *
+     * @return Maximum AUROC error
+     */
+    public double calculateAucErrorBound() {
+        double p = totalPositives();
+        double n = totalNegatives();
+        if (p == 0 || n == 0)
+            return 0.0;
+        double ambiguous = 0.0;
+        for (int i = 0; i < keys.length; i++) {
+            ambiguous += (double) positives[i] * negatives[i];
+        }
+        return 0.5 * ambiguous / (p * n);
+    }
+
+    /**
+     * Merge sorted bins (at the current resolution) into this sketch, then coarsen if more than maxBins are present
+     */
+    private void combine(long[] oKeys, double[] oLo, long[] oPos, long[] oNeg, int oSize) {
+        int size = keys.length;
+        int total = size + oSize;
+        long[] nKeys = new long[total];
+        double[] nLo = new double[total];
+        long[] nPos = new long[total];
+        long[] nNeg = new long[total];
+        int m = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size || j < oSize) {
+            boolean takeThis = j >= oSize || (i < size && keys[i] <= oKeys[j]);
+            long k;
+            double l;
+            long p, n;
+            if (takeThis) {
+                k = keys[i];
+                l = lo[i];
+                p = positives[i];
+                n = negatives[i];
+                i++;
+            } else {
+                k = oKeys[j];
+                l = oLo[j];
+                p = oPos[j];
+                n = oNeg[j];
+                j++;
+            }
+
+            if (m > 0 && nKeys[m - 1] == k) {
+                nLo[m - 1] = Math.min(nLo[m - 1], l);
+                nPos[m - 1] += p;
+                nNeg[m - 1] += n;
+            } else {
+                nKeys[m] = k;
+                nLo[m] = l;
+                nPos[m] = p;
+                nNeg[m] = n;
+                m++;
+            }
+        }
+
+        keys = Arrays.copyOf(nKeys, m);
+        lo = Arrays.copyOf(nLo, m);
+        positives = Arrays.copyOf(nPos, m);
+        negatives = Arrays.copyOf(nNeg, m);
+
+        int s = shift;
+        while (keys.length > maxBins) {
+            coarsen(++s);
+        }
+    }
+
+    /**
+     * Reduce the resolution of all bins to the specified shift, combining bins that become equal
+     */
+    private void coarsen(int newShift) {
+        if (newShift <= shift)
+            return;
+        int diff = newShift - shift;
+        int m = 0;
+        for (int i = 0; i < keys.length; i++) {
+            long k = diff >= 64 ? (keys[i] < 0 ? -1 : 0) : keys[i] >> diff;
+            if (m > 0 && keys[m - 1] == k) {
+                lo[m - 1] = Math.min(lo[m - 1], lo[i]);
+                positives[m - 1] += positives[i];
+                negatives[m - 1] += negatives[i];
+            } else {
+                keys[m] = k;
+                lo[m] = lo[i];
+                positives[m] = positives[i];
+                negatives[m] = negatives[i];
+                m++;
+            }
+        }
+        shift = newShift;
+        if (m < keys.length) {
+            keys = Arrays.copyOf(keys, m);
+            lo = Arrays.copyOf(lo, m);
+            positives = Arrays.copyOf(positives, m);
+            negatives = Arrays.copyOf(negatives, m);
+        }
+    }
+
+    /**
+     * Map a double to a long, such that the order of the longs matches the order of the doubles
+     */
+    private static long toKey(double d) {
+        long bits = Double.doubleToLongBits(d == 0.0 ? 0.0 : d);      //Avoid -0.0 and 0.0 having different keys
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+
+    private static double fromKey(long key) {
+        return Double.longBitsToDouble(key ^ ((key >> 63) & Long.MAX_VALUE));
+    }
+}
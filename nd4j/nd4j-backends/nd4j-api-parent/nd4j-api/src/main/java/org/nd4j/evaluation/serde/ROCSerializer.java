@@ -54,6 +54,10 @@ public class ROCSerializer extends JsonSerializer<ROC> {
             jsonGenerator.writeObjectField("rocCurve", roc.getRocCurve());
             jsonGenerator.writeObjectField("prCurve", roc.getPrecisionRecallCurve());
         }
+        if (roc.isSketchMode()) {
+            //Sketch is bounded in size, and curves can be recalculated from it once deserialized
+            jsonGenerator.writeObjectField("sketch", roc.getSketch());
+        }
         jsonGenerator.writeBooleanField("isExact", roc.isExact());
         jsonGenerator.writeNumberField("exampleCount", roc.getExampleCount());
         jsonGenerator.writeBooleanField("rocRemoveRedundantPts", roc.isRocRemoveRedundantPts());
@@ -1115,6 +1115,16 @@ public abstract class DefaultOpExecutioner implements OpExecutioner {
     @Override
     public List<LongShapeDescriptor> calculateOutputShape(@NonNull CustomOp op, OpContext opContext) {
         val hash = op.opHash();
+
+        //In steady state, the same shape calculations are repeated over and over: avoid the native call if possible
+        OutputShapeCache shapeCache = OutputShapeCache.getInstance();
+        OutputShapeCache.Key key = shapeCache.key(op, opContext);
+        if (key != null) {
+            List<LongShapeDescriptor> cached = shapeCache.get(key);
+            if (cached != null)
+                return cached;
+        }
+
         val result = new ArrayList<LongShapeDescriptor>();
 
         OpaqueShapeList ptrptr;
@@ -1156,6 +1166,9 @@ public abstract class DefaultOpExecutioner implements OpExecutioner {
             DifferentialFunction differentialFunction = (DifferentialFunction) op;
             log.trace("Calculated output shapes for op of name {} and type {} - {}", differentialFunction.getOwnName(), op.getClass().getName(), Arrays.toString(arr));
         }
+
+        if (key != null)
+            shapeCache.put(key, result);
         return result;
     }
 
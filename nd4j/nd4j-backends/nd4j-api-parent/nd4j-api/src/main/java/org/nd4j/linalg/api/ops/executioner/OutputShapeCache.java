@@ -0,0 +1,419 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.linalg.api.ops.executioner;
+
+import lombok.Getter;
+import org.nd4j.common.config.ND4JSystemProperties;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.CustomOp;
+import org.nd4j.linalg.api.ops.OpContext;
+import org.nd4j.linalg.api.shape.LongShapeDescriptor;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide cache of custom op output shapes, as calculated by
+ * {@link OpExecutioner#calculateOutputShape(CustomOp, OpContext)}.<br>
+ * In steady state inference, the same (op, input shapes, arguments) combinations are seen over and over again,
+ * and each shape calculation otherwise requires a native call. Entries are keyed by:
+ * <ul>
+ *     <li>The op hash</li>
+ *     <li>The full shape information (shape, stride, order, data type and flags) and offset of each input</li>
+ *     <li>The values of the shape inputs of the op, if any - i.e., the small shape/axis/size inputs used by ops such
+ *     as reshape, range, fill or tile</li>
+ *     <li>The integer, floating point, boolean and data type arguments</li>
+ * </ul>
+ * Only ops known to have an output shape that depends on nothing else are cached: see {@link #SHAPE_INPUTS}. All
+ * other ops (including any op whose output shape depends on the content of its inputs, such as unique, where or non
+ * max suppression) go through the native shape function every time. Other than the shape inputs, no input values
+ * are ever read.<br>
+ * The cache is a bounded LRU cache. The size may be configured using the
+ * {@link ND4JSystemProperties#OUTPUT_SHAPE_CACHE_SIZE} system property. A size of 0 disables the cache.
+ */
+public class OutputShapeCache {
+
+    public static final int DEFAULT_MAX_SIZE = 4096;
+    /**
+     * Maximum length of a shape input. Ops with longer shape inputs are not cached
+     */
+    public static final int MAX_SHAPE_INPUT_VALUES = 64;
+
+    private static final int[] NONE = new int[0];
+
+    /**
+     * Ops that may be cached, and the indices of their shape inputs - i.e., the inputs whose values (not just their
+     * shapes) determine the output shape, such as the new shape for reshape or the axis for argmax. Negative indices
+     * count from the end of the input list. For all other inputs, only the shape and data type impact the output shape.
+     * Ops not in this map are never cached.
+     */
+    protected static final Map<String, int[]> SHAPE_INPUTS = new HashMap<>();
+
+    static {
+        for (String s : new String[]{
+                //Broadcastable pairwise ops
+                "add", "subtract", "multiply", "divide", "realdiv", "reversesubtract", "reversedivide", "maximum",
+                "minimum", "squaredsubtract", "floordiv", "floormod", "Pow", "equals", "not_equals", "greater", "less",
+                "greater_equal", "less_equal", "mergeadd",
+                //Layers
+                "matmul", "xw_plus_b", "biasadd", "batchnorm", "layer_norm", "softmax", "log_softmax", "relu6", "lrn",
+                "conv1d", "conv2d", "conv3dnew", "deconv2d", "depthwise_conv2d", "maxpool2d", "avgpool2d",
+                "maxpool3dnew", "avgpool3dnew", "upsampling2d", "space_to_depth", "depth_to_space", "lstmLayer", "gru",
+                "dot_product_attention", "multi_head_dot_product_attention",
+                //Shape ops, with shape information in the i/b/d args only
+                "stack", "unstack", "identity", "cast", "zeroslike", "ones_as", "shape_of", "size", "rank",
+                "gather_nd", "embedding_lookup"}) {
+            SHAPE_INPUTS.put(s, NONE);
+        }
+        for (String s : new String[]{"reshape", "permute", "transpose", "tile", "expand_dims", "squeeze", "pad",
+                "mirror_pad", "broadcast_to", "onehot", "resize_bilinear", "resize_nearest_neighbor", "argmax",
+                "argmin", "reduce_sum", "reduce_mean", "reduce_max", "reduce_min", "reduce_prod", "reduce_norm1",
+                "reduce_norm2", "reduce_sqnorm"}) {
+            SHAPE_INPUTS.put(s, new int[]{1});
+        }
+        SHAPE_INPUTS.put("gather", new int[]{2});
+        SHAPE_INPUTS.put("slice", new int[]{1, 2});
+        SHAPE_INPUTS.put("strided_slice", new int[]{1, 2, 3});
+        SHAPE_INPUTS.put("fill", new int[]{0});
+        SHAPE_INPUTS.put("range", new int[]{0, 1, 2});
+        //Axis may be provided as the last input: only a scalar can be an axis, so larger inputs are simply ignored
+        SHAPE_INPUTS.put("concat", new int[]{-1});
+    }
+
+    private static final OutputShapeCache INSTANCE = new OutputShapeCache(
+            Integer.parseInt(System.getProperty(ND4JSystemProperties.OUTPUT_SHAPE_CACHE_SIZE, String.valueOf(DEFAULT_MAX_SIZE))));
+
+    //Access ordered, for LRU eviction. Guarded by itself
+    private final LinkedHashMap<Key, List<LongShapeDescriptor>> cache = new LinkedHashMap<Key, List<LongShapeDescriptor>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, List<LongShapeDescriptor>> eldest) {
+            if (size() <= maxSize)
+                return false;
+            evictions.increment();
+            return true;
+        }
+    };
+    @Getter
+    private volatile int maxSize;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder uncacheable = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    protected OutputShapeCache(int maxSize) {
+        this.maxSize = Math.max(0, maxSize);
+    }
+
+    public static OutputShapeCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return True if the cache is enabled (i.e., max size > 0)
+     */
+    public boolean isEnabled() {
+        return maxSize > 0;
+    }
+
+    /**
+     * Set the maximum number of entries in the cache. Set to 0 to disable caching
+     */
+    public void setMaxSize(int maxSize) {
+        this.maxSize = Math.max(0, maxSize);
+        synchronized (cache) {
+            //Evict the least recently used entries, if the cache is now too large
+            Iterator<Key> iter = cache.keySet().iterator();
+            while (iter.hasNext() && cache.size() > this.maxSize) {
+                iter.next();
+                iter.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Create the cache key for the specified op and context.
+     *
+     * @return The key, or null if the output shape of this op (with these inputs) can't be cached
+     */
+    public Key key(CustomOp op, OpContext ctx) {
+        if (!isEnabled())
+            return null;
+
+        int[] shapeInputs = SHAPE_INPUTS.get(op.opName());
+        if (shapeInputs == null) {
+            uncacheable.increment();
+            return null;
+        }
+
+        List<INDArray> inputs = ctx != null ? ctx.getInputArrays() : op.inputArguments();
+        List<Long> iArgs = ctx != null ? ctx.getIArguments() : toList(op.iArgs());
+        List<Double> tArgs = ctx != null ? ctx.getTArguments() : toList(op.tArgs());
+        List<Boolean> bArgs = ctx != null ? ctx.getBArguments() : toList(op.bArgs());
+        List<DataType> dArgs = ctx != null ? ctx.getDArguments() : toList(op.dArgs());
+
+        KeyBuilder kb = new KeyBuilder();
+        kb.add(op.opHash());
+        int nIn = inputs == null ? 0 : inputs.size();
+        kb.add(nIn);
+        for (int i = 0; i < nIn; i++) {
+            INDArray in = inputs.get(i);
+            if (in == null) {
+                kb.add(-1);
+                continue;
+            }
+            DataType dt = in.dataType();
+            if (dt == DataType.UTF8 || dt == DataType.UTF16 || dt == DataType.UTF32 || dt == DataType.COMPRESSED) {
+                uncacheable.increment();
+                return null;
+            }
+
+            long[] shapeInfo = in.shapeInfoJava();
+            kb.add(shapeInfo.length);
+            kb.add(shapeInfo);
+            kb.add(in.offset());
+
+            if (!isShapeInput(shapeInputs, i, nIn))
+                continue;
+            long length = in.isEmpty() ? 0 : in.length();
+            if (length > MAX_SHAPE_INPUT_VALUES) {
+                if (shapeInputs.length == 1 && shapeInputs[0] < 0)
+                    continue;       //Optional trailing axis input: a large input is data, not an axis
+                uncacheable.increment();
+                return null;
+            }
+            for (int j = 0; j < length; j++) {
+                kb.add(dt.isFPType() ? Double.doubleToLongBits(in.getDouble(j)) : in.getLong(j));
+            }
+        }
+
+        kb.add(iArgs == null ? 0 : iArgs.size());
+        if (iArgs != null) {
+            for (Long l : iArgs)
+                kb.add(l);
+        }
+        kb.add(tArgs == null ? 0 : tArgs.size());
+        if (tArgs != null) {
+            for (Double d : tArgs)
+                kb.add(Double.doubleToLongBits(d));
+        }
+        kb.add(bArgs == null ? 0 : bArgs.size());
+        if (bArgs != null) {
+            for (Boolean b : bArgs)
+                kb.add(b ? 1 : 0);
+        }
+        kb.add(dArgs == null ? 0 : dArgs.size());
+        if (dArgs != null) {
+            for (DataType d : dArgs)
+                kb.add(d.ordinal());
+        }
+
+        return kb.build();
+    }
+
+    /**
+     * Get the cached output shapes for the specified key, if present
+     *
+     * @return A copy of the cached output shapes, or null if not present
+     */
+    public List<LongShapeDescriptor> get(Key key) {
+        List<LongShapeDescriptor> l;
+        synchronized (cache) {
+            l = cache.get(key);
+        }
+        if (l == null) {
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        List<LongShapeDescriptor> out = new ArrayList<>(l.size());
+        for (LongShapeDescriptor d : l) {
+            out.add(copy(d));
+        }
+        return out;
+    }
+
+    /**
+     * Put the calculated output shapes in the cache
+     */
+    public void put(Key key, List<LongShapeDescriptor> shapes) {
+        if (!isEnabled())
+            return;
+        List<LongShapeDescriptor> l = new ArrayList<>(shapes.size());
+        for (LongShapeDescriptor d : shapes) {
+            l.add(copy(d));
+        }
+        synchronized (cache) {
+            cache.put(key, Collections.unmodifiableList(l));
+        }
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    public void resetStats() {
+        hits.reset();
+        misses.reset();
+        uncacheable.reset();
+        evictions.reset();
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return Number of shape calculations that could not be cached (ops not known to be cacheable, string inputs etc)
+     */
+    public long getUncacheable() {
+        return uncacheable.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return Fraction of cache lookups that were hits, or 0 if no lookups have been performed
+     */
+    public double getHitRate() {
+        long h = hits.sum();
+        long total = h + misses.sum();
+        return total == 0 ? 0.0 : h / (double) total;
+    }
+
+    @Override
+    public String toString() {
+        return "OutputShapeCache(size=" + size() + ",maxSize=" + maxSize + ",hits=" + getHits() + ",misses=" + getMisses()
+                + ",uncacheable=" + getUncacheable() + ",evictions=" + getEvictions() + ",hitRate=" + getHitRate() + ")";
+    }
+
+    protected static boolean isShapeInput(int[] shapeInputs, int idx, int numInputs) {
+        for (int i : shapeInputs) {
+            if (i == idx || i < 0 && numInputs + i == idx)
+                return true;
+        }
+        return false;
+    }
+
+    protected static LongShapeDescriptor copy(LongShapeDescriptor d) {
+        return new LongShapeDescriptor(d.getShape(), d.getStride(), d.getOffset(), d.getEws(), d.getOrder(), d.getExtras());
+    }
+
+    private static List<Long> toList(long[] arr) {
+        if (arr == null)
+            return null;
+        List<Long> l = new ArrayList<>(arr.length);
+        for (long v : arr)
+            l.add(v);
+        return l;
+    }
+
+    private static List<Double> toList(double[] arr) {
+        if (arr == null)
+            return null;
+        List<Double> l = new ArrayList<>(arr.length);
+        for (double v : arr)
+            l.add(v);
+        return l;
+    }
+
+    private static List<Boolean> toList(boolean[] arr) {
+        if (arr == null)
+            return null;
+        List<Boolean> l = new ArrayList<>(arr.length);
+        for (boolean v : arr)
+            l.add(v);
+        return l;
+    }
+
+    private static List<DataType> toList(DataType[] arr) {
+        return arr == null ? null : Arrays.asList(arr);
+    }
+
+    /**
+     * Cache key: all relevant information, packed into a long array
+     */
+    public static class Key {
+        private final long[] values;
+        private final int hash;
+
+        private Key(long[] values) {
+            this.values = values;
+            this.hash = Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o)
+                return true;
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key) o;
+            return hash == k.hash && Arrays.equals(values, k.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static class KeyBuilder {
+        private long[] values = new long[32];
+        private int size;
+
+        private void ensureCapacity(int n) {
+            if (size + n > values.length)
+                values = Arrays.copyOf(values, Math.max(values.length * 2, size + n));
+        }
+
+        private void add(long v) {
+            ensureCapacity(1);
+            values[size++] = v;
+        }
+
+        private void add(long[] v) {
+            ensureCapacity(v.length);
+            System.arraycopy(v, 0, values, size, v.length);
+            size += v.length;
+        }
+
+        private Key build() {
+            return new Key(Arrays.copyOf(values, size));
+        }
+    }
+}
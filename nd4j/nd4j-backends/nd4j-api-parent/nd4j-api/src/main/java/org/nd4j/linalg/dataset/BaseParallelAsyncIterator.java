@@ -0,0 +1,336 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.linalg.dataset;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
+import org.nd4j.linalg.api.memory.enums.AllocationPolicy;
+import org.nd4j.linalg.api.memory.enums.LearningPolicy;
+import org.nd4j.linalg.api.memory.enums.ResetPolicy;
+import org.nd4j.linalg.api.memory.enums.SpillPolicy;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base class for {@link ParallelAsyncDataSetIterator} and {@link ParallelAsyncMultiDataSetIterator}.<br>
+ * The source is split into shards (for example, one iterator per file split or record reader partition). Shards are
+ * assigned to worker threads round-robin (worker {@code w} handles shards {@code w, w + numWorkers, ...}, one after
+ * the other), and each worker produces complete minibatches, including any preprocessing, into a queue and
+ * (optionally) its own workspace. Each worker has at most queueSize minibatches produced but not yet taken by the
+ * consumer, in both modes, so that its (circular) workspace is never overwritten while minibatches are still in use.<br>
+ * In ordered mode, minibatches are returned by taking one minibatch from each worker in turn, so the order is
+ * deterministic and independent of thread timing. In unordered mode, minibatches are returned as soon as any worker
+ * has produced one.
+ *
+ * @param <T> Type of element: DataSet or MultiDataSet
+ * @param <I> Type of shard iterator
+ */
+@Slf4j
+public abstract class BaseParallelAsyncIterator<T, I extends Iterator<T>> {
+
+    protected final List<I> shards;
+    protected final int numWorkers;
+    protected final int queueSize;
+    protected final boolean ordered;
+    protected final boolean useWorkspace;
+    protected final Integer deviceId;
+    protected final String workspaceId;
+
+    //Unique marker object: end of data for one worker
+    protected final Object terminator = new Object();
+    protected List<BlockingQueue<Object>> queues;
+    //Per worker: permits for minibatches produced but not yet taken by the consumer
+    protected List<Semaphore> permits;
+    protected List<PrefetchWorker> workers;
+    protected volatile RuntimeException throwable;
+
+    protected Object nextElement;
+    protected int nextWorker;
+    protected int depletedWorkers;
+    protected boolean[] depleted;
+
+    protected BaseParallelAsyncIterator(@NonNull List<I> shards, int numWorkers, int queueSize, boolean ordered,
+                                        boolean useWorkspace, Integer deviceId) {
+        Preconditions.checkArgument(!shards.isEmpty(), "At least one shard is required");
+        Preconditions.checkArgument(numWorkers > 0, "Number of workers must be positive, got %s", numWorkers);
+        this.shards = new ArrayList<>(shards);
+        this.numWorkers = Math.min(numWorkers, shards.size());
+        this.queueSize = Math.max(queueSize, 1);
+        this.ordered = ordered;
+        this.useWorkspace = useWorkspace;
+        this.deviceId = deviceId;
+        this.workspaceId = "PADSI_ITER-" + java.util.UUID.randomUUID().toString();
+    }
+
+    /**
+     * Reset the given shard, so it can be iterated from the start again
+     */
+    protected abstract void resetShard(I shard);
+
+    /**
+     * Called on the worker thread for each minibatch, after it has been produced
+     */
+    protected abstract void onFetched(T element);
+
+    protected void startWorkers() {
+        throwable = null;
+        nextElement = null;
+        nextWorker = 0;
+        depletedWorkers = 0;
+        depleted = new boolean[numWorkers];
+
+        queues = new ArrayList<>();
+        permits = new ArrayList<>();
+        workers = new ArrayList<>();
+        //Queues are bounded by the per-worker permits (plus one terminator per worker)
+        BlockingQueue<Object> shared = ordered ? null : new LinkedBlockingQueue<>((queueSize + 1) * numWorkers);
+        for (int w = 0; w < numWorkers; w++) {
+            BlockingQueue<Object> q = ordered ? new LinkedBlockingQueue<>(queueSize + 1) : shared;
+            Semaphore sem = new Semaphore(queueSize);
+            permits.add(sem);
+            List<I> workerShards = new ArrayList<>();
+            for (int s = w; s < shards.size(); s += numWorkers) {
+                workerShards.add(shards.get(s));
+            }
+            if (ordered || w == 0)
+                queues.add(q);
+            workers.add(new PrefetchWorker(w, q, sem, workerShards));
+        }
+        for (PrefetchWorker w : workers) {
+            w.start();
+        }
+    }
+
+    protected void stopWorkers() {
+        if (workers == null)
+            return;
+        for (BlockingQueue<Object> q : queues) {
+            q.clear();
+        }
+        for (PrefetchWorker w : workers) {
+            w.interrupt();
+        }
+        for (PrefetchWorker w : workers) {
+            try {
+                w.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            w.destroyWorkspace();
+        }
+        for (BlockingQueue<Object> q : queues) {
+            q.clear();
+        }
+        workers = null;
+    }
+
+    protected void resetInternal() {
+        stopWorkers();
+        for (I shard : shards) {
+            resetShard(shard);
+        }
+        startWorkers();
+    }
+
+    /**
+     * This method will terminate the background threads AND will destroy the attached workspaces (if any).
+     * PLEASE NOTE: After shutdown() call, this instance can't be used anymore
+     */
+    public void shutdown() {
+        stopWorkers();
+    }
+
+    public boolean hasNext() {
+        if (throwable != null)
+            throw throwable;
+        if (nextElement != null)
+            return true;
+
+        try {
+            while (depletedWorkers < numWorkers) {
+                BlockingQueue<Object> q = ordered ? queues.get(nextWorker) : queues.get(0);
+                Object o = q.take();
+                if (throwable != null)
+                    throw throwable;
+                if (o == terminator) {
+                    depletedWorkers++;
+                    depleted[nextWorker] = true;
+                } else {
+                    Fetched f = (Fetched) o;
+                    permits.get(f.worker).release();
+                    nextElement = f.element;
+                }
+                if (ordered) {
+                    advanceWorker();
+                }
+                if (nextElement != null)
+                    return true;
+            }
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void advanceWorker() {
+        if (depletedWorkers >= numWorkers)
+            return;
+        do {
+            nextWorker = (nextWorker + 1) % numWorkers;
+        } while (depleted[nextWorker]);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected T nextElement() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        T ret = (T) nextElement;
+        nextElement = null;
+        return ret;
+    }
+
+    public void remove() {
+        //No op
+    }
+
+    private static class Fetched {
+        private final int worker;
+        private final Object element;
+
+        private Fetched(int worker, Object element) {
+            this.worker = worker;
+            this.element = element;
+        }
+    }
+
+    protected class PrefetchWorker extends Thread {
+        private final int index;
+        private final BlockingQueue<Object> queue;
+        private final Semaphore permits;
+        private final List<I> workerShards;
+        private final WorkspaceConfiguration configuration = WorkspaceConfiguration.builder().minSize(10 * 1024L * 1024L)
+                .overallocationLimit(queueSize + 2).policyReset(ResetPolicy.ENDOFBUFFER_REACHED)
+                .policyLearning(LearningPolicy.FIRST_LOOP).policyAllocation(AllocationPolicy.OVERALLOCATE)
+                .policySpill(SpillPolicy.REALLOCATE).build();
+        private MemoryWorkspace workspace;
+        //Not relying only on interrupts, as the underlying iterator may swallow them
+        private volatile boolean shouldWork = true;
+
+        protected PrefetchWorker(int index, BlockingQueue<Object> queue, Semaphore permits, List<I> workerShards) {
+            this.index = index;
+            this.queue = queue;
+            this.permits = permits;
+            this.workerShards = workerShards;
+            this.setDaemon(true);
+            this.setName("PADSI prefetch thread " + index);
+        }
+
+        @Override
+        public void run() {
+            Nd4j.getAffinityManager().unsafeSetDevice(deviceId);
+            try {
+                if (useWorkspace)
+                    workspace = Nd4j.getWorkspaceManager().getWorkspaceForCurrentThread(configuration, workspaceId);
+
+                for (I shard : workerShards) {
+                    while (shouldWork && shard.hasNext()) {
+                        //Wait until fewer than queueSize of this worker's minibatches are outstanding, before
+                        //allocating the next one in the workspace
+                        if (!acquire())
+                            return;
+                        T element;
+                        if (useWorkspace) {
+                            try (MemoryWorkspace ws = workspace.notifyScopeEntered()) {
+                                element = shard.next();
+                                if (element != null)
+                                    onFetched(element);
+                            }
+                        } else {
+                            element = shard.next();
+                            if (element != null)
+                                onFetched(element);
+                        }
+
+                        // we want to ensure underlying iterator finished dataset creation
+                        Nd4j.getExecutioner().commit();
+
+                        if (element == null) {
+                            permits.release();
+                        } else if (!put(new Fetched(index, element))) {
+                            return;
+                        }
+                    }
+                }
+                put(terminator);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Throwable t) {
+                throwable = t instanceof RuntimeException ? (RuntimeException) t : new RuntimeException(t);
+                //Unblock the consumer, which will then rethrow
+                queue.clear();
+                queue.offer(terminator);
+            }
+        }
+
+        private boolean acquire() throws InterruptedException {
+            while (shouldWork) {
+                if (permits.tryAcquire(100, TimeUnit.MILLISECONDS))
+                    return true;
+            }
+            return false;
+        }
+
+        private boolean put(Object o) throws InterruptedException {
+            while (shouldWork) {
+                if (queue.offer(o, 100, TimeUnit.MILLISECONDS))
+                    return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void interrupt() {
+            shouldWork = false;
+            super.interrupt();
+        }
+
+        protected void destroyWorkspace() {
+            if (workspace != null) {
+                log.debug("Manually destroying PADSI workspace");
+                workspace.destroyWorkspace(true);
+                workspace = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.linalg.dataset;
+
+import lombok.NonNull;
+import org.nd4j.linalg.dataset.api.DataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.dataset.callbacks.DataSetCallback;
+import org.nd4j.linalg.dataset.callbacks.DefaultCallback;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.List;
+
+/**
+ * Asynchronous prefetching DataSetIterator with multiple worker threads, the multi-threaded equivalent of
+ * {@link AsyncDataSetIterator}.<br>
+ * The data is provided as a list of shards, each a DataSetIterator over a disjoint part of the data (for example, one
+ * iterator per file split or record reader partition). Each worker thread produces complete minibatches from its
+ * shards, so expensive per-minibatch work (parsing, preprocessing, normalization) is spread over all workers.<br>
+ * When {@code ordered} is true, the output order is deterministic: one minibatch is taken from each worker in turn,
+ * where worker {@code w} iterates over shards {@code w, w + numWorkers, ...} sequentially. Otherwise minibatches are
+ * returned in whatever order they are produced.<br>
+ * Note that any preprocessor set on this iterator is set on all shards, and is called from the worker threads.
+ *
+ * @see BaseParallelAsyncIterator
+ */
+public class ParallelAsyncDataSetIterator extends BaseParallelAsyncIterator<DataSet, DataSetIterator>
+        implements DataSetIterator {
+
+    protected DataSetCallback callback;
+
+    /**
+     * Create an iterator with one worker per shard, a queue size of 4 per worker, ordered output and workspaces
+     *
+     * @param shards Disjoint shards of the data
+     */
+    public ParallelAsyncDataSetIterator(@NonNull List<DataSetIterator> shards) {
+        this(shards, shards.size(), 4, true);
+    }
+
+    /**
+     * @param shards     Disjoint shards of the data
+     * @param numWorkers Number of worker threads. Capped at the number of shards
+     * @param queueSize  Number of minibatches to prefetch, per worker
+     * @param ordered    If true: return minibatches in a deterministic order
+     */
+    public ParallelAsyncDataSetIterator(@NonNull List<DataSetIterator> shards, int numWorkers, int queueSize, boolean ordered) {
+        this(shards, numWorkers, queueSize, ordered, true);
+    }
+
+    public ParallelAsyncDataSetIterator(@NonNull List<DataSetIterator> shards, int numWorkers, int queueSize, boolean ordered,
+                                        boolean useWorkspace) {
+        this(shards, numWorkers, queueSize, ordered, useWorkspace, new DefaultCallback(),
+                Nd4j.getAffinityManager().getDeviceForCurrentThread());
+    }
+
+    public ParallelAsyncDataSetIterator(@NonNull List<DataSetIterator> shards, int numWorkers, int queueSize, boolean ordered,
+                                        boolean useWorkspace, DataSetCallback callback, Integer deviceId) {
+        super(shards, numWorkers, queueSize, ordered, useWorkspace, deviceId);
+        this.callback = callback;
+
+        for (DataSetIterator shard : shards) {
+            if (shard.resetSupported() && !shard.hasNext())
+                shard.reset();
+        }
+        startWorkers();
+    }
+
+    @Override
+    protected void resetShard(DataSetIterator shard) {
+        shard.reset();
+    }
+
+    @Override
+    protected void onFetched(DataSet element) {
+        if (callback != null)
+            callback.call(element);
+    }
+
+    @Override
+    public DataSet next(int num) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int inputColumns() {
+        return shards.get(0).inputColumns();
+    }
+
+    @Override
+    public int totalOutcomes() {
+        return shards.get(0).totalOutcomes();
+    }
+
+    @Override
+    public boolean resetSupported() {
+        for (DataSetIterator shard : shards) {
+            if (!shard.resetSupported())
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        return false;
+    }
+
+    @Override
+    public void reset() {
+        resetInternal();
+    }
+
+    @Override
+    public int batch() {
+        return shards.get(0).batch();
+    }
+
+    @Override
+    public void setPreProcessor(DataSetPreProcessor preProcessor) {
+        for (DataSetIterator shard : shards) {
+            shard.setPreProcessor(preProcessor);
+        }
+    }
+
+    @Override
+    public DataSetPreProcessor getPreProcessor() {
+        return shards.get(0).getPreProcessor();
+    }
+
+    @Override
+    public List<String> getLabels() {
+        return shards.get(0).getLabels();
+    }
+
+    @Override
+    public DataSet next() {
+        return nextElement();
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.linalg.dataset;
+
+import lombok.NonNull;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
+import org.nd4j.linalg.dataset.api.MultiDataSetPreProcessor;
+import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
+import org.nd4j.linalg.dataset.callbacks.DataSetCallback;
+import org.nd4j.linalg.dataset.callbacks.DefaultCallback;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.List;
+
+/**
+ * Asynchronous prefetching MultiDataSetIterator with multiple worker threads, the multi-threaded equivalent of
+ * {@link AsyncMultiDataSetIterator}. See {@link ParallelAsyncDataSetIterator} for details.
+ *
+ * @see BaseParallelAsyncIterator
+ */
+public class ParallelAsyncMultiDataSetIterator extends BaseParallelAsyncIterator<MultiDataSet, MultiDataSetIterator>
+        implements MultiDataSetIterator {
+
+    protected DataSetCallback callback;
+
+    /**
+     * Create an iterator with one worker per shard, a queue size of 4 per worker, ordered output and workspaces
+     *
+     * @param shards Disjoint shards of the data
+     */
+    public ParallelAsyncMultiDataSetIterator(@NonNull List<MultiDataSetIterator> shards) {
+        this(shards, shards.size(), 4, true);
+    }
+
+    /**
+     * @param shards     Disjoint shards of the data
+     * @param numWorkers Number of worker threads. Capped at the number of shards
+     * @param queueSize  Number of minibatches to prefetch, per worker
+     * @param ordered    If true: return minibatches in a deterministic order
+     */
+    public ParallelAsyncMultiDataSetIterator(@NonNull List<MultiDataSetIterator> shards, int numWorkers, int queueSize,
+                                             boolean ordered) {
+        this(shards, numWorkers, queueSize, ordered, true);
+    }
+
+    public ParallelAsyncMultiDataSetIterator(@NonNull List<MultiDataSetIterator> shards, int numWorkers, int queueSize,
+                                             boolean ordered, boolean useWorkspace) {
+        this(shards, numWorkers, queueSize, ordered, useWorkspace, new DefaultCallback(),
+                Nd4j.getAffinityManager().getDeviceForCurrentThread());
+    }
+
+    public ParallelAsyncMultiDataSetIterator(@NonNull List<MultiDataSetIterator> shards, int numWorkers, int queueSize,
+                                             boolean ordered, boolean useWorkspace, DataSetCallback callback, Integer deviceId) {
+        super(shards, numWorkers, queueSize, ordered, useWorkspace, deviceId);
+        this.callback = callback;
+
+        for (MultiDataSetIterator shard : shards) {
+            if (shard.resetSupported() && !shard.hasNext())
+                shard.reset();
+        }
+        startWorkers();
+    }
+
+    @Override
+    protected void resetShard(MultiDataSetIterator shard) {
+        shard.reset();
+    }
+
+    @Override
+    protected void onFetched(MultiDataSet element) {
+        if (callback != null)
+            callback.call(element);
+    }
+
+    @Override
+    public MultiDataSet next(int num) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setPreProcessor(MultiDataSetPreProcessor preProcessor) {
+        for (MultiDataSetIterator shard : shards) {
+            shard.setPreProcessor(preProcessor);
+        }
+    }
+
+    @Override
+    public MultiDataSetPreProcessor getPreProcessor() {
+        return shards.get(0).getPreProcessor();
+    }
+
+    @Override
+    public boolean resetSupported() {
+        for (MultiDataSetIterator shard : shards) {
+            if (!shard.resetSupported())
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean asyncSupported() {
+        return false;
+    }
+
+    @Override
+    public void reset() {
+        resetInternal();
+    }
+
+    @Override
+    public MultiDataSet next() {
+        return nextElement();
+    }
+}
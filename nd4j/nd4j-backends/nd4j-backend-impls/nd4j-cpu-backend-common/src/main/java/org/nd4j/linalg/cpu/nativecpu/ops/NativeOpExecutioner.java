@@ -81,6 +81,12 @@ public class NativeOpExecutioner extends DefaultOpExecutioner {
 
     protected AtomicBoolean experimentalMode = new AtomicBoolean(false);
 
+    /**
+     * Optional pure Java execution of ops on tiny arrays, to avoid the JNI overhead. Disabled by default
+     */
+    @Getter
+    protected SmallArrayExecutioner smallArrayExecutioner = new SmallArrayExecutioner();
+
 
     public NativeOpExecutioner() {
         tadManager.init(Nd4j.getNativeOps(), constantHandler);
@@ -302,6 +308,17 @@ public class NativeOpExecutioner extends DefaultOpExecutioner {
 
 
 
+        INDArray javaZ = null;
+        if (smallArrayExecutioner.canExec(op, x, y, z)) {
+            if (!smallArrayExecutioner.isVerify()) {
+                smallArrayExecutioner.exec(op, x, z);
+                profilingConfigurableHookOut(op, oc, st);
+                return z;
+            }
+            javaZ = z.ulike();
+            smallArrayExecutioner.exec(op, x, javaZ);
+        }
+
         /**
          * Note because dimension arrays don't change,
          * we use an {@link ConstantHandler} which knows how to reserve memory
@@ -425,6 +442,8 @@ public class NativeOpExecutioner extends DefaultOpExecutioner {
             errorMessage.append(Nd4j.getNativeOps().lastErrorMessage());
             throw new RuntimeException(errorMessage.toString());
         }
+        if (javaZ != null)
+            smallArrayExecutioner.verify(op.opName(), javaZ, z);
         profilingConfigurableHookOut(op, oc, st);
         return getZ(op, oc);
     }
@@ -510,6 +529,17 @@ public class NativeOpExecutioner extends DefaultOpExecutioner {
             return getZ(op, oc);
         }
 
+        INDArray javaZ = null;
+        if (smallArrayExecutioner.canExec(op, getX(op, oc), getZ(op, oc))) {
+            if (!smallArrayExecutioner.isVerify()) {
+                smallArrayExecutioner.exec(op, getX(op, oc), getZ(op, oc));
+                profilingConfigurableHookOut(op, oc, st);
+                return getZ(op, oc);
+            }
+            javaZ = getZ(op, oc).ulike();
+            smallArrayExecutioner.exec(op, getX(op, oc), javaZ);
+        }
+
         val x = OpaqueNDArray.fromINDArray(getX(op, oc));
         val scalar = OpaqueNDArray.fromINDArray(op.scalar());
         val z =  OpaqueNDArray.fromINDArray(getZ(op, oc));
@@ -535,6 +565,8 @@ public class NativeOpExecutioner extends DefaultOpExecutioner {
             errorMessage.append(Nd4j.getNativeOps().lastErrorMessage());
             throw new RuntimeException(errorMessage.toString());
         }
+        if (javaZ != null)
+            smallArrayExecutioner.verify(op.opName(), javaZ, getZ(op, oc));
         profilingConfigurableHookOut(op, oc, st);
         return getZ(op, oc);
     }
@@ -556,6 +588,7 @@ public class NativeOpExecutioner extends DefaultOpExecutioner {
         INDArray x = getX(op, oc);
         INDArray y = getY(op, oc);
         INDArray z = getZ(op, oc);
+        INDArray javaZ = null;
         long st = profilingConfigurableHookIn(op,oc);
         //redirect assign so we support more ops cases lke strings
         if(op instanceof Assign) {
@@ -650,6 +683,16 @@ public class NativeOpExecutioner extends DefaultOpExecutioner {
 
                 op.validateDataTypes(oc, experimentalMode.get());
 
+                if (smallArrayExecutioner.canExec(op, x, null, z)) {
+                    if (!smallArrayExecutioner.isVerify()) {
+                        smallArrayExecutioner.exec(op, x, z);
+                        profilingConfigurableHookOut(op, oc, st);
+                        return;
+                    }
+                    javaZ = z.ulike();
+                    smallArrayExecutioner.exec(op, x, javaZ);
+                }
+
                 val xb = OpaqueNDArray.fromINDArray(x);
                 val zb = OpaqueNDArray.fromINDArray(z);
 
@@ -691,6 +734,8 @@ public class NativeOpExecutioner extends DefaultOpExecutioner {
                 errorMessage.append(Nd4j.getNativeOps().lastErrorMessage());
                 throw new RuntimeException(errorMessage.toString());
             }
+            if (javaZ != null)
+                smallArrayExecutioner.verify(op.opName(), javaZ, z);
         }
 
 
@@ -925,6 +970,13 @@ public class NativeOpExecutioner extends DefaultOpExecutioner {
     @Override
     public  INDArray[] exec(@NonNull CustomOp op) {
         val name = op.opName();
+        INDArray javaZ = null;
+        if (smallArrayExecutioner.canExec(op)) {
+            if (!smallArrayExecutioner.isVerify())
+                return smallArrayExecutioner.exec(op);
+            javaZ = smallArrayExecutioner.execToNewArray(op);
+        }
+
         try (val context = buildContext()) {
             op.setupOpContextFromCustomOp(context);
             boolean shapeOverride = op.initializeOutputs(context);
@@ -939,6 +991,8 @@ public class NativeOpExecutioner extends DefaultOpExecutioner {
             Nd4j.getRandom().setStates(states.getFirst(), states.getSecond());
             profilingConfigurableHookOut(op,context,start);
 
+            if (javaZ != null && result.length == 1)
+                smallArrayExecutioner.verify(name, javaZ, result[0]);
             return result;
         } catch (ND4JOpProfilerException e) {
 
@@ -0,0 +1,737 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  * See the NOTICE file distributed with this work for additional
+ *  * information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.linalg.cpu.nativecpu.ops;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.javacpp.indexer.DoubleIndexer;
+import org.bytedeco.javacpp.indexer.FloatIndexer;
+import org.bytedeco.javacpp.indexer.Indexer;
+import org.bytedeco.javacpp.indexer.IntIndexer;
+import org.bytedeco.javacpp.indexer.LongIndexer;
+import org.nd4j.common.config.ND4JSystemProperties;
+import org.nd4j.linalg.cpu.nativecpu.buffer.BaseCpuDataBuffer;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.CustomOp;
+import org.nd4j.linalg.api.ops.ReduceOp;
+import org.nd4j.linalg.api.ops.ScalarOp;
+import org.nd4j.linalg.api.ops.TransformOp;
+import org.nd4j.linalg.api.ops.impl.reduce.floating.AMean;
+import org.nd4j.linalg.api.ops.impl.reduce.floating.Mean;
+import org.nd4j.linalg.api.ops.impl.reduce.floating.Norm1;
+import org.nd4j.linalg.api.ops.impl.reduce.floating.Norm2;
+import org.nd4j.linalg.api.ops.impl.reduce.floating.SquaredNorm;
+import org.nd4j.linalg.api.ops.impl.reduce.same.ASum;
+import org.nd4j.linalg.api.ops.impl.reduce.same.Prod;
+import org.nd4j.linalg.api.ops.impl.reduce.same.Sum;
+import org.nd4j.linalg.api.ops.impl.scalar.RectifiedLinear;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarAdd;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarDivision;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarMax;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarMin;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarMultiplication;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarReverseDivision;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarReverseSubtraction;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarSubtraction;
+import org.nd4j.linalg.api.ops.impl.transforms.floating.Sqrt;
+import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.AddOp;
+import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.DivOp;
+import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.MulOp;
+import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.RDivOp;
+import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.RSubOp;
+import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.RealDivOp;
+import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.SubOp;
+import org.nd4j.linalg.api.ops.impl.transforms.same.Abs;
+import org.nd4j.linalg.api.ops.impl.transforms.same.Ceil;
+import org.nd4j.linalg.api.ops.impl.transforms.same.Floor;
+import org.nd4j.linalg.api.ops.impl.transforms.same.Negative;
+import org.nd4j.linalg.api.ops.impl.transforms.same.OneMinus;
+import org.nd4j.linalg.api.ops.impl.transforms.same.Reciprocal;
+import org.nd4j.linalg.api.ops.impl.transforms.same.Square;
+import org.nd4j.linalg.api.ops.impl.transforms.strict.Cos;
+import org.nd4j.linalg.api.ops.impl.transforms.strict.Exp;
+import org.nd4j.linalg.api.ops.impl.transforms.strict.Expm1;
+import org.nd4j.linalg.api.ops.impl.transforms.strict.Log;
+import org.nd4j.linalg.api.ops.impl.transforms.strict.Log1p;
+import org.nd4j.linalg.api.ops.impl.transforms.strict.Sigmoid;
+import org.nd4j.linalg.api.ops.impl.transforms.strict.Sin;
+import org.nd4j.linalg.api.ops.impl.transforms.strict.Swish;
+import org.nd4j.linalg.api.ops.impl.transforms.strict.Tanh;
+import org.nd4j.linalg.api.shape.Shape;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * Pure Java execution of common legacy ops on very small arrays, used by {@link NativeOpExecutioner} to avoid the
+ * JNI round trip (and OpaqueNDArray creation) when the actual work is only a handful of floating point operations.<br>
+ * Supported:
+ * <ul>
+ *     <li>Scalar ops: add, sub, mul, div, rsub, rdiv, max, min, relu</li>
+ *     <li>Pairwise (custom) arithmetic ops: add, sub, mul, div, rsub, rdiv - including numpy style broadcasting</li>
+ *     <li>Unary transforms: tanh, sigmoid, exp, log, sqrt, abs, neg, square, etc (floating point only)</li>
+ *     <li>Full array reductions: sum, mean, prod, asum, amean, norm1, norm2, squared norm</li>
+ * </ul>
+ * Only float, double, int and long arrays (with the same data type for all inputs and outputs) are supported.
+ * Arrays may have arbitrary strides. Anything else is left to the native executioner.<br>
+ * The fast path is disabled by default: enable it with {@link #setThreshold(int)} or the
+ * {@link ND4JSystemProperties#CPU_JAVA_FAST_PATH_THRESHOLD} system property. For validation, setting
+ * {@link ND4JSystemProperties#CPU_JAVA_FAST_PATH_VERIFY} to true makes the executioner run both paths and log
+ * any differences between the Java and native results.<br>
+ * Note that the loops here are plain Java: the JIT is able to auto-vectorize the contiguous ones.
+ */
+@Slf4j
+public class SmallArrayExecutioner {
+
+    public static final double VERIFY_EPS = 1e-5;
+    //Same as the libnd4j limit
+    protected static final int MAX_RANK = 32;
+
+    protected enum BinaryOp {
+        ADD, SUB, MUL, DIV, RSUB, RDIV, MAX, MIN;
+
+        double exec(double x, double y) {
+            switch (this) {
+                case ADD: return x + y;
+                case SUB: return x - y;
+                case MUL: return x * y;
+                case DIV: return x / y;
+                case RSUB: return y - x;
+                case RDIV: return y / x;
+                case MAX: return x < y ? y : x;
+                case MIN: return x > y ? y : x;
+                default: throw new IllegalStateException();
+            }
+        }
+
+        long exec(long x, long y) {
+            switch (this) {
+                case ADD: return x + y;
+                case SUB: return x - y;
+                case MUL: return x * y;
+                case RSUB: return y - x;
+                case MAX: return Math.max(x, y);
+                case MIN: return Math.min(x, y);
+                default: throw new IllegalStateException();
+            }
+        }
+
+        boolean supportsIntegers() {
+            //Integer division by zero semantics differ between Java and c++
+            return this != DIV && this != RDIV;
+        }
+    }
+
+    protected enum ReduceKind {
+        SUM, MEAN, PROD, ASUM, AMEAN, NORM1, NORM2, SQUARED_NORM;
+
+        boolean supportsIntegers() {
+            return this == SUM || this == PROD || this == ASUM;
+        }
+    }
+
+    private static final Map<Class<?>, BinaryOp> SCALAR_OPS = new HashMap<>();
+    private static final Map<Class<?>, BinaryOp> PAIRWISE_OPS = new HashMap<>();
+    private static final Map<Class<?>, DoubleUnaryOperator> TRANSFORM_OPS = new HashMap<>();
+    private static final Map<Class<?>, ReduceKind> REDUCE_OPS = new HashMap<>();
+
+    static {
+        SCALAR_OPS.put(ScalarAdd.class, BinaryOp.ADD);
+        SCALAR_OPS.put(ScalarSubtraction.class, BinaryOp.SUB);
+        SCALAR_OPS.put(ScalarMultiplication.class, BinaryOp.MUL);
+        SCALAR_OPS.put(ScalarDivision.class, BinaryOp.DIV);
+        SCALAR_OPS.put(ScalarReverseSubtraction.class, BinaryOp.RSUB);
+        SCALAR_OPS.put(ScalarReverseDivision.class, BinaryOp.RDIV);
+        SCALAR_OPS.put(ScalarMax.class, BinaryOp.MAX);
+        SCALAR_OPS.put(ScalarMin.class, BinaryOp.MIN);
+        //relu(x, cutoff) = x < cutoff ? cutoff : x
+        SCALAR_OPS.put(RectifiedLinear.class, BinaryOp.MAX);
+
+        PAIRWISE_OPS.put(AddOp.class, BinaryOp.ADD);
+        PAIRWISE_OPS.put(SubOp.class, BinaryOp.SUB);
+        PAIRWISE_OPS.put(MulOp.class, BinaryOp.MUL);
+        PAIRWISE_OPS.put(DivOp.class, BinaryOp.DIV);
+        PAIRWISE_OPS.put(RealDivOp.class, BinaryOp.DIV);
+        PAIRWISE_OPS.put(RSubOp.class, BinaryOp.RSUB);
+        PAIRWISE_OPS.put(RDivOp.class, BinaryOp.RDIV);
+
+        //Formulas match the libnd4j implementations, not necessarily the "most accurate" Java equivalent
+        TRANSFORM_OPS.put(Tanh.class, Math::tanh);
+        TRANSFORM_OPS.put(Sigmoid.class, x -> 1.0 / (1.0 + Math.exp(-x)));
+        TRANSFORM_OPS.put(Swish.class, x -> x * (1.0 / (1.0 + Math.exp(-x))));
+        TRANSFORM_OPS.put(Exp.class, Math::exp);
+        TRANSFORM_OPS.put(Expm1.class, x -> Math.exp(x) - 1.0);
+        TRANSFORM_OPS.put(Log.class, Math::log);
+        TRANSFORM_OPS.put(Log1p.class, x -> Math.log(1.0 + x));
+        TRANSFORM_OPS.put(Sqrt.class, Math::sqrt);
+        TRANSFORM_OPS.put(Sin.class, Math::sin);
+        TRANSFORM_OPS.put(Cos.class, Math::cos);
+        TRANSFORM_OPS.put(Abs.class, Math::abs);
+        TRANSFORM_OPS.put(Negative.class, x -> -x);
+        TRANSFORM_OPS.put(Square.class, x -> x * x);
+        TRANSFORM_OPS.put(Reciprocal.class, x -> 1.0 / x);
+        TRANSFORM_OPS.put(OneMinus.class, x -> 1.0 - x);
+        TRANSFORM_OPS.put(Floor.class, Math::floor);
+        TRANSFORM_OPS.put(Ceil.class, Math::ceil);
+
+        REDUCE_OPS.put(Sum.class, ReduceKind.SUM);
+        REDUCE_OPS.put(Mean.class, ReduceKind.MEAN);
+        REDUCE_OPS.put(Prod.class, ReduceKind.PROD);
+        REDUCE_OPS.put(ASum.class, ReduceKind.ASUM);
+        REDUCE_OPS.put(AMean.class, ReduceKind.AMEAN);
+        REDUCE_OPS.put(Norm1.class, ReduceKind.NORM1);
+        REDUCE_OPS.put(Norm2.class, ReduceKind.NORM2);
+        REDUCE_OPS.put(SquaredNorm.class, ReduceKind.SQUARED_NORM);
+    }
+
+    private volatile int threshold;
+    private volatile boolean verify;
+    private final AtomicLong numExecuted = new AtomicLong();
+    private final AtomicLong numVerifyFailures = new AtomicLong();
+
+    public SmallArrayExecutioner() {
+        this(Integer.parseInt(System.getProperty(ND4JSystemProperties.CPU_JAVA_FAST_PATH_THRESHOLD, "0")),
+                Boolean.parseBoolean(System.getProperty(ND4JSystemProperties.CPU_JAVA_FAST_PATH_VERIFY, "false")));
+    }
+
+    public SmallArrayExecutioner(int threshold, boolean verify) {
+        this.threshold = threshold;
+        this.verify = verify;
+    }
+
+    /**
+     * @return The maximum number of elements (of the output array) for which the Java path is used. 0 if disabled
+     */
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * @param threshold The maximum number of elements (of the output array) for which the Java path is used.
+     *                  Set to 0 to disable
+     */
+    public void setThreshold(int threshold) {
+        this.threshold = Math.max(0, threshold);
+    }
+
+    public boolean isVerify() {
+        return verify;
+    }
+
+    /**
+     * @param verify If true: also execute the native op, and log any differences
+     */
+    public void setVerify(boolean verify) {
+        this.verify = verify;
+    }
+
+    public boolean isEnabled() {
+        return threshold > 0;
+    }
+
+    /**
+     * @return Number of ops executed in Java
+     */
+    public long getNumExecuted() {
+        return numExecuted.get();
+    }
+
+    /**
+     * @return Number of Java op executions that did not match the native result (verify mode only)
+     */
+    public long getNumVerifyFailures() {
+        return numVerifyFailures.get();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Scalar ops
+
+    public boolean canExec(ScalarOp op, INDArray x, INDArray z) {
+        if (!isEnabled() || op.dimensions() != null || op.extraArgs() != null && op.extraArgs().length > 0)
+            return false;
+        BinaryOp bo = SCALAR_OPS.get(op.getClass());
+        INDArray s = op.scalar();
+        return bo != null && s != null && s.length() == 1 && isSmall(x) && z != null && isCpuBuffer(z)
+                && sameShapeAndType(x, z) && typeSupported(x.dataType(), bo.supportsIntegers());
+    }
+
+    public void exec(ScalarOp op, INDArray x, INDArray z) {
+        BinaryOp bo = SCALAR_OPS.get(op.getClass());
+        int n = (int) z.length();
+        Scratch sc = scratch(n);
+        int[] xOff = offsets(x, z.shape(), sc.ox, sc.coord);
+        int[] zOff = offsets(z, z.shape(), sc.oz, sc.coord);
+        if (x.dataType().isFPType()) {
+            double s = op.scalar().getDouble(0);
+            if (x.dataType() == DataType.FLOAT)
+                s = (float) s;      //Scalar is cast to the array type before the op is applied
+            double[] xv = readDouble(x, xOff, n, sc.x);
+            for (int i = 0; i < n; i++) {
+                xv[i] = bo.exec(xv[i], s);
+            }
+            writeDouble(z, zOff, xv, n);
+        } else {
+            long s = op.scalar().getLong(0);
+            long[] xv = readLong(x, xOff, n, sc.lx);
+            for (int i = 0; i < n; i++) {
+                xv[i] = bo.exec(xv[i], s);
+            }
+            writeLong(z, zOff, xv, n);
+        }
+        numExecuted.incrementAndGet();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Unary transform ops
+
+    public boolean canExec(TransformOp op, INDArray x, INDArray y, INDArray z) {
+        if (!isEnabled() || y != null || op.extraArgs() != null && op.extraArgs().length > 0)
+            return false;
+        return TRANSFORM_OPS.containsKey(op.getClass()) && isSmall(x) && z != null && isCpuBuffer(z)
+                && sameShapeAndType(x, z) && typeSupported(x.dataType(), false);
+    }
+
+    public void exec(TransformOp op, INDArray x, INDArray z) {
+        DoubleUnaryOperator f = TRANSFORM_OPS.get(op.getClass());
+        int n = (int) z.length();
+        Scratch sc = scratch(n);
+        double[] xv = readDouble(x, offsets(x, z.shape(), sc.ox, sc.coord), n, sc.x);
+        for (int i = 0; i < n; i++) {
+            xv[i] = f.applyAsDouble(xv[i]);
+        }
+        writeDouble(z, offsets(z, z.shape(), sc.oz, sc.coord), xv, n);
+        numExecuted.incrementAndGet();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Reductions
+
+    /**
+     * Full array reductions only - i.e., z must be a scalar
+     */
+    public boolean canExec(ReduceOp op, INDArray x, INDArray y, INDArray z) {
+        if (!isEnabled() || y != null || z == null || z.length() != 1 || op.extraArgs() != null && op.extraArgs().length > 0)
+            return false;
+        ReduceKind rk = REDUCE_OPS.get(op.getClass());
+        if (rk == null || !isSmall(x) || x.isEmpty() || !isCpuBuffer(z))
+            return false;
+        DataType dt = x.dataType();
+        return typeSupported(dt, rk.supportsIntegers()) && z.dataType() == dt;
+    }
+
+    public void exec(ReduceOp op, INDArray x, INDArray z) {
+        ReduceKind rk = REDUCE_OPS.get(op.getClass());
+        int n = (int) x.length();
+        Scratch sc = scratch(n);
+        int[] xOff = offsets(x, x.shape(), sc.ox, sc.coord);
+        if (!x.dataType().isFPType() && rk.supportsIntegers()) {
+            long[] xv = readLong(x, xOff, n, sc.lx);
+            long acc = rk == ReduceKind.PROD ? 1 : 0;
+            for (int i = 0; i < n; i++) {
+                switch (rk) {
+                    case SUM: acc += xv[i]; break;
+                    case PROD: acc *= xv[i]; break;
+                    case ASUM: acc += Math.abs(xv[i]); break;
+                    default: throw new IllegalStateException();
+                }
+            }
+            sc.lx[0] = acc;
+            writeLong(z, null, sc.lx, 1);
+        } else {
+            double[] xv = readDouble(x, xOff, n, sc.x);
+            double acc = rk == ReduceKind.PROD ? 1.0 : 0.0;
+            for (int i = 0; i < n; i++) {
+                double v = xv[i];
+                switch (rk) {
+                    case SUM:
+                    case MEAN: acc += v; break;
+                    case PROD: acc *= v; break;
+                    case ASUM:
+                    case AMEAN:
+                    case NORM1: acc += Math.abs(v); break;
+                    case NORM2:
+                    case SQUARED_NORM: acc += v * v; break;
+                    default: throw new IllegalStateException();
+                }
+            }
+            if (rk == ReduceKind.MEAN || rk == ReduceKind.AMEAN)
+                acc /= n;
+            else if (rk == ReduceKind.NORM2)
+                acc = Math.sqrt(acc);
+            sc.x[0] = acc;
+            writeDouble(z, null, sc.x, 1);
+        }
+        numExecuted.incrementAndGet();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Pairwise (custom) ops
+
+    public boolean canExec(CustomOp op) {
+        if (!isEnabled())
+            return false;
+        BinaryOp bo = PAIRWISE_OPS.get(op.getClass());
+        if (bo == null || op.numInputArguments() != 2 || op.numOutputArguments() > 1)
+            return false;
+        if (op.tArgs() != null && op.tArgs().length > 0 || op.iArgs() != null && op.iArgs().length > 0)
+            return false;
+
+        List<INDArray> in = op.inputArguments();
+        INDArray x = in.get(0);
+        INDArray y = in.get(1);
+        if (x == null || y == null || x.dataType() != y.dataType() || !typeSupported(x.dataType(), bo.supportsIntegers())
+                || !isSmall(x) || !isSmall(y))
+            return false;
+        long[] outShape = numpyBroadcastShape(x.shape(), y.shape());
+        if (outShape == null)
+            return false;
+        INDArray z = op.numOutputArguments() == 1 ? op.getOutputArgument(0) : null;
+        if (z == null)
+            return !op.isInplaceCall() && isSmall(outShape);
+        return isSmall(z) && z.dataType() == x.dataType() && Arrays.equals(z.shape(), outShape);
+    }
+
+    public INDArray[] exec(CustomOp op) {
+        INDArray z = op.numOutputArguments() == 1 ? op.getOutputArgument(0) : null;
+        if (z == null) {
+            z = createOutput(op);
+            op.addOutputArgument(z);
+        }
+        execPairwise(PAIRWISE_OPS.get(op.getClass()), op.getInputArgument(0), op.getInputArgument(1), z);
+        return new INDArray[]{z};
+    }
+
+    /**
+     * Execute the op, but write the result to a new array instead of the op output array. Used for verification
+     */
+    public INDArray execToNewArray(CustomOp op) {
+        INDArray z = createOutput(op);
+        execPairwise(PAIRWISE_OPS.get(op.getClass()), op.getInputArgument(0), op.getInputArgument(1), z);
+        return z;
+    }
+
+    protected INDArray createOutput(CustomOp op) {
+        INDArray x = op.getInputArgument(0);
+        INDArray y = op.getInputArgument(1);
+        return Nd4j.createUninitialized(x.dataType(), numpyBroadcastShape(x.shape(), y.shape()));
+    }
+
+    protected void execPairwise(BinaryOp bo, INDArray x, INDArray y, INDArray z) {
+        long[] outShape = z.shape();
+        int n = (int) z.length();
+        Scratch sc = scratch(n);
+        int[] xOff = offsets(x, outShape, sc.ox, sc.coord);
+        int[] yOff = offsets(y, outShape, sc.oy, sc.coord);
+        int[] zOff = offsets(z, outShape, sc.oz, sc.coord);
+        if (x.dataType().isFPType()) {
+            double[] xv = readDouble(x, xOff, n, sc.x);
+            double[] yv = readDouble(y, yOff, n, sc.y);
+            for (int i = 0; i < n; i++) {
+                xv[i] = bo.exec(xv[i], yv[i]);
+            }
+            writeDouble(z, zOff, xv, n);
+        } else {
+            long[] xv = readLong(x, xOff, n, sc.lx);
+            long[] yv = readLong(y, yOff, n, sc.ly);
+            for (int i = 0; i < n; i++) {
+                xv[i] = bo.exec(xv[i], yv[i]);
+            }
+            writeLong(z, zOff, xv, n);
+        }
+        numExecuted.incrementAndGet();
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Verification
+
+    /**
+     * Compare the Java result with the native result, logging any differences
+     *
+     * @return True if the results match
+     */
+    public boolean verify(String opName, INDArray javaResult, INDArray nativeResult) {
+        boolean match = javaResult.length() == nativeResult.length();
+        for (long i = 0; match && i < javaResult.length(); i++) {
+            double a = javaResult.getDouble(i);
+            double b = nativeResult.getDouble(i);
+            if (Double.isNaN(a) && Double.isNaN(b))
+                continue;
+            double diff = Math.abs(a - b);
+            match = diff <= VERIFY_EPS || diff <= VERIFY_EPS * Math.max(Math.abs(a), Math.abs(b));
+        }
+        if (!match) {
+            numVerifyFailures.incrementAndGet();
+            log.warn("Java and native results differ for op {}: java={}, native={}", opName, javaResult, nativeResult);
+        }
+        return match;
+    }
+
+    ////////////////////////////////////////////////////////////////////////////////////////////////////////////////
+    // Helpers
+
+    /**
+     * Per thread scratch arrays for values and offsets, reused across ops so that the Java path does not allocate.
+     * All arrays have at least {@link #capacity} elements
+     */
+    protected static class Scratch {
+        protected int capacity;
+        protected double[] x = new double[0];
+        protected double[] y = new double[0];
+        protected long[] lx = new long[0];
+        protected long[] ly = new long[0];
+        protected int[] ox = new int[0];
+        protected int[] oy = new int[0];
+        protected int[] oz = new int[0];
+        protected final long[] coord = new long[MAX_RANK];
+
+        protected void ensureCapacity(int n) {
+            if (n <= capacity)
+                return;
+            capacity = n;
+            x = new double[n];
+            y = new double[n];
+            lx = new long[n];
+            ly = new long[n];
+            ox = new int[n];
+            oy = new int[n];
+            oz = new int[n];
+        }
+    }
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    protected Scratch scratch(int n) {
+        Scratch sc = SCRATCH.get();
+        //Size for the threshold up front, so the arrays are allocated only once per thread
+        sc.ensureCapacity(Math.max(1, Math.max(n, threshold)));
+        return sc;
+    }
+
+    protected boolean isSmall(INDArray arr) {
+        return !arr.isEmpty() && arr.length() <= threshold && !arr.isCompressed() && isCpuBuffer(arr)
+                && arr.rank() <= MAX_RANK;
+    }
+
+    protected static boolean isCpuBuffer(INDArray arr) {
+        return arr.data() instanceof BaseCpuDataBuffer;
+    }
+
+    protected boolean isSmall(long[] shape) {
+        long length = 1;
+        for (long l : shape)
+            length *= l;
+        return length > 0 && length <= threshold && shape.length <= MAX_RANK;
+    }
+
+    protected static boolean sameShapeAndType(INDArray x, INDArray z) {
+        return x.dataType() == z.dataType() && Arrays.equals(x.shape(), z.shape());
+    }
+
+    protected static boolean typeSupported(DataType dt, boolean integersAllowed) {
+        switch (dt) {
+            case FLOAT:
+            case DOUBLE:
+                return true;
+            case INT:
+            case LONG:
+                return integersAllowed;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Numpy style broadcast shape, or null if the shapes are not broadcastable (or broadcasting would be ambiguous)
+     */
+    protected static long[] numpyBroadcastShape(long[] a, long[] b) {
+        if (Arrays.equals(a, b))
+            return a;
+        int rank = Math.max(a.length, b.length);
+        long[] out = new long[rank];
+        for (int i = 0; i < rank; i++) {
+            int ia = i - (rank - a.length);
+            int ib = i - (rank - b.length);
+            long sa = ia >= 0 ? a[ia] : 1;
+            long sb = ib >= 0 ? b[ib] : 1;
+            if (sa != sb && sa != 1 && sb != 1)
+                return null;
+            out[i] = sa == 1 ? sb : sa;
+        }
+        return out;
+    }
+
+    /**
+     * Buffer offsets (relative to arr.offset()) for each element of an output of the specified shape, in c order,
+     * with broadcasting, written to the out array. Returns null if the offsets are simply 0 to n-1.
+     */
+    protected static int[] offsets(INDArray arr, long[] outShape, int[] out, long[] coord) {
+        long[] shape = arr.shape();
+        if (arr.ordering() == 'c' && Arrays.equals(shape, outShape) && Shape.hasDefaultStridesForShape(arr))
+            return null;
+
+        long[] stride = arr.stride();
+        int rank = outShape.length;
+        int n = 1;
+        for (long l : outShape)
+            n *= (int) l;
+        Arrays.fill(coord, 0, rank, 0);
+        long offset = 0;
+        for (int i = 0; i < n; i++) {
+            out[i] = (int) offset;
+            //Increment c-order coordinates, and update the offset. Broadcast dimensions have stride 0
+            for (int d = rank - 1; d >= 0; d--) {
+                int ia = d - (rank - shape.length);
+                long bStride = ia >= 0 && shape[ia] != 1 ? stride[ia] : 0;
+                coord[d]++;
+                offset += bStride;
+                if (coord[d] < outShape[d])
+                    break;
+                offset -= coord[d] * bStride;
+                coord[d] = 0;
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Indexer for the array's buffer, after making sure it points to the current host memory of the buffer
+     */
+    protected static Indexer indexer(INDArray arr) {
+        BaseCpuDataBuffer buffer = (BaseCpuDataBuffer) arr.data();
+        buffer.actualizePointerAndIndexer();
+        return buffer.indexer();
+    }
+
+    protected static double[] readDouble(INDArray arr, int[] offsets, int n, double[] out) {
+        Indexer idx = indexer(arr);
+        long base = arr.offset();
+        switch (arr.dataType()) {
+            case DOUBLE: {
+                DoubleIndexer d = (DoubleIndexer) idx;
+                if (offsets == null) {
+                    for (int i = 0; i < n; i++)
+                        out[i] = d.get(base + i);
+                } else {
+                    for (int i = 0; i < n; i++)
+                        out[i] = d.get(base + offsets[i]);
+                }
+                break;
+            }
+            case FLOAT: {
+                FloatIndexer f = (FloatIndexer) idx;
+                if (offsets == null) {
+                    for (int i = 0; i < n; i++)
+                        out[i] = f.get(base + i);
+                } else {
+                    for (int i = 0; i < n; i++)
+                        out[i] = f.get(base + offsets[i]);
+                }
+                break;
+            }
+            case INT: {
+                IntIndexer f = (IntIndexer) idx;
+                for (int i = 0; i < n; i++)
+                    out[i] = f.get(base + (offsets == null ? i : offsets[i]));
+                break;
+            }
+            case LONG: {
+                LongIndexer f = (LongIndexer) idx;
+                for (int i = 0; i < n; i++)
+                    out[i] = f.get(base + (offsets == null ? i : offsets[i]));
+                break;
+            }
+            default:
+                throw new UnsupportedOperationException("Unsupported data type: " + arr.dataType());
+        }
+        return out;
+    }
+
+    protected static long[] readLong(INDArray arr, int[] offsets, int n, long[] out) {
+        Indexer idx = indexer(arr);
+        long base = arr.offset();
+        switch (arr.dataType()) {
+            case INT: {
+                IntIndexer f = (IntIndexer) idx;
+                for (int i = 0; i < n; i++)
+                    out[i] = f.get(base + (offsets == null ? i : offsets[i]));
+                break;
+            }
+            case LONG: {
+                LongIndexer f = (LongIndexer) idx;
+                for (int i = 0; i < n; i++)
+                    out[i] = f.get(base + (offsets == null ? i : offsets[i]));
+                break;
+            }
+            default:
+                throw new UnsupportedOperationException("Unsupported data type: " + arr.dataType());
+        }
+        return out;
+    }
+
+    protected static void writeDouble(INDArray arr, int[] offsets, double[] values, int n) {
+        Indexer idx = indexer(arr);
+        long base = arr.offset();
+        switch (arr.dataType()) {
+            case DOUBLE: {
+                DoubleIndexer d = (DoubleIndexer) idx;
+                for (int i = 0; i < n; i++)
+                    d.put(base + (offsets == null ? i : offsets[i]), values[i]);
+                break;
+            }
+            case FLOAT: {
+                //Note: a single +,-,*,/ or sqrt op in double precision, rounded to float, gives the same result as the
+                // same op in float precision
+                FloatIndexer f = (FloatIndexer) idx;
+                for (int i = 0; i < n; i++)
+                    f.put(base + (offsets == null ? i : offsets[i]), (float) values[i]);
+                break;
+            }
+            default:
+                throw new UnsupportedOperationException("Unsupported data type: " + arr.dataType());
+        }
+    }
+
+    protected static void writeLong(INDArray arr, int[] offsets, long[] values, int n) {
+        Indexer idx = indexer(arr);
+        long base = arr.offset();
+        switch (arr.dataType()) {
+            case INT: {
+                IntIndexer f = (IntIndexer) idx;
+                for (int i = 0; i < n; i++)
+                    f.put(base + (offsets == null ? i : offsets[i]), (int) values[i]);
+                break;
+            }
+            case LONG: {
+                LongIndexer f = (LongIndexer) idx;
+                for (int i = 0; i < n; i++)
+                    f.put(base + (offsets == null ? i : offsets[i]), values[i]);
+                break;
+            }
+            default:
+                throw new UnsupportedOperationException("Unsupported data type: " + arr.dataType());
+        }
+    }
+}
@@ -287,6 +287,31 @@ public class ND4JSystemProperties {
      */
     public final static String ND4J_EVENT_LOG_POINT_OF_ORIGIN_PATTERNS = "org.nd4j.linalg.profiler.pointoforigin.patterns";
 
+    /**
+     * Applicability: Always<br>
+     * Description: Maximum number of entries in the process-wide custom op output shape cache
+     * (org.nd4j.linalg.api.ops.executioner.OutputShapeCache). Set to 0 to disable output shape caching.<br>
+     * Default: 4096
+     */
+    public final static String OUTPUT_SHAPE_CACHE_SIZE = "org.nd4j.linalg.api.ops.outputshapecache.size";
+
+    /**
+     * Applicability: nd4j-native (CPU) backend<br>
+     * Description: Maximum number of elements for which legacy scalar, transform, full reduction and pairwise
+     * arithmetic ops are executed in pure Java instead of via JNI. Avoids the JNI overhead for tiny arrays.
+     * Set to 0 to disable.<br>
+     * Default: 0 (disabled)
+     */
+    public final static String CPU_JAVA_FAST_PATH_THRESHOLD = "org.nd4j.linalg.cpu.javafastpath.threshold";
+
+    /**
+     * Applicability: nd4j-native (CPU) backend, when {@link #CPU_JAVA_FAST_PATH_THRESHOLD} is set<br>
+     * Description: If true, ops executed in Java are also executed natively, and any differences are logged.
+     * For validation only.<br>
+     * Default: false
+     */
+    public final static String CPU_JAVA_FAST_PATH_VERIFY = "org.nd4j.linalg.cpu.javafastpath.verify";
+
     private ND4JSystemProperties() {
     }
 }
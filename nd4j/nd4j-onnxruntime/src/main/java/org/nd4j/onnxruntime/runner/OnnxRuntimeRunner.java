@@ -19,6 +19,7 @@
  */
 package org.nd4j.onnxruntime.runner;
 
+import lombok.AccessLevel;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
@@ -30,8 +31,11 @@ import org.nd4j.autodiff.samediff.config.SDValue;
 import org.nd4j.common.base.Preconditions;
 import org.nd4j.linalg.api.buffer.DataBuffer;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.shape.Shape;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.onnxruntime.runner.enums.GraphOptimizationLevel;
 import org.nd4j.onnxruntime.runner.enums.ONNXType;
+import org.nd4j.onnxruntime.runner.enums.OrtLoggingLevel;
 import org.nd4j.onnxruntime.util.ONNXUtils;
 
 import java.io.Closeable;
@@ -42,6 +46,12 @@ import java.util.*;
 import static org.bytedeco.onnxruntime.global.onnxruntime.*;
 import static org.nd4j.onnxruntime.util.ONNXUtils.*;
 
+/**
+ * Runs an ONNX model using ONNX Runtime.<br>
+ * Input/output names and types are read from the session once, when the model is loaded. The exec methods may be
+ * called concurrently from multiple threads on the same runner, as ONNX Runtime sessions support concurrent Run calls.
+ * Use {@link #exec(Map, Map)} to have outputs written directly into preallocated arrays.
+ */
 @Slf4j
 @Getter
 public class OnnxRuntimeRunner implements Closeable  {
@@ -53,22 +63,62 @@ public class OnnxRuntimeRunner implements Closeable  {
     private SessionOptions sessionOptions;
     private   static Env env;
     private Pointer bp;
+    private String modelUri;
     private Onnx.ModelProto modelProto;
-    @Getter
-    private List<Onnx.TensorProto> initializers = new ArrayList<>();
-    @Getter
-    private List<Onnx.ValueInfoProto> inputs = new ArrayList<>();
-    @Builder
+    private List<Onnx.TensorProto> initializers;
+    private List<Onnx.ValueInfoProto> inputs;
+
+    //Cached at load: the names are used for every call
+    private List<String> inputNames = new ArrayList<>();
+    private List<String> outputNames = new ArrayList<>();
+    private List<ONNXType> inputTypes = new ArrayList<>();
+    private List<ONNXType> outputTypes = new ArrayList<>();
+    //Hold references to the allocated names: the PointerPointers below do not, and the names are freed when collected
+    @Getter(AccessLevel.NONE)
+    private BytePointer[] inputNamePointers;
+    @Getter(AccessLevel.NONE)
+    private BytePointer[] outputNamePointers;
+    @Getter(AccessLevel.NONE)
+    private PointerPointer<BytePointer> inputNodeNames;
+    @Getter(AccessLevel.NONE)
+    private PointerPointer<BytePointer> outputNodeNames;
+
     public OnnxRuntimeRunner(String modelUri) {
+        this(modelUri, null, null, null, null, null, null);
+    }
+
+    /**
+     * @param modelUri               Path to the ONNX model file
+     * @param intraOpNumThreads      Number of threads used to parallelize execution within operations.
+     *                               Default: 1, which is usually best when exec is called concurrently from many
+     *                               threads. 0 to let ONNX Runtime decide
+     * @param interOpNumThreads      Number of threads used to execute independent operations in parallel; only
+     *                               used when parallelExecution is true. Default: 0 (ONNX Runtime decides)
+     * @param graphOptimizationLevel Graph optimization level. Default: ORT_ENABLE_EXTENDED
+     * @param enableCpuMemArena      Whether to use the CPU memory arena. Default: true
+     * @param parallelExecution      Whether to execute independent operations in parallel. Default: false
+     * @param logLevel               ONNX Runtime session log level. Default: derived from this class' logger
+     */
+    @Builder
+    public OnnxRuntimeRunner(String modelUri, Integer intraOpNumThreads, Integer interOpNumThreads,
+                             GraphOptimizationLevel graphOptimizationLevel, Boolean enableCpuMemArena,
+                             Boolean parallelExecution, OrtLoggingLevel logLevel) {
         if(env == null) {
             env = new Env(ONNXUtils.getOnnxLogLevelFromLogger(log), new BytePointer("nd4j-serving-onnx-session-" + UUID.randomUUID()));
             env.retainReference();
         }
 
+        this.modelUri = modelUri;
         sessionOptions = new SessionOptions();
-        sessionOptions.SetGraphOptimizationLevel(ORT_ENABLE_EXTENDED);
-        sessionOptions.SetIntraOpNumThreads(1);
-        sessionOptions.SetLogSeverityLevel(ORT_LOGGING_LEVEL_VERBOSE);
+        sessionOptions.SetGraphOptimizationLevel(graphOptimizationLevel == null ? ORT_ENABLE_EXTENDED : graphOptimizationLevel.getMethodIndex());
+        sessionOptions.SetIntraOpNumThreads(intraOpNumThreads == null ? 1 : intraOpNumThreads);
+        if(interOpNumThreads != null)
+            sessionOptions.SetInterOpNumThreads(interOpNumThreads);
+        if(parallelExecution != null && parallelExecution)
+            sessionOptions.SetExecutionMode(ORT_PARALLEL);
+        if(enableCpuMemArena != null && !enableCpuMemArena)
+            sessionOptions.DisableCpuMemArena();
+        sessionOptions.SetLogSeverityLevel(logLevel == null ? ONNXUtils.getOnnxLogLevelFromLogger(log) : logLevel.getMethodIndex());
         sessionOptions.retainReference();
         allocator = new OrtAllocator();
         allocator.retainReference();
@@ -77,27 +127,69 @@ public class OnnxRuntimeRunner implements Closeable  {
             session = new Session(env, bp, sessionOptions);
             //retain the session reference to prevent pre emptive release of the session.
             session.retainReference();
-            try {
-                modelProto = Onnx.ModelProto.parseFrom(FileUtils.readFileToByteArray(new File(modelUri)));
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+            initIOMetadata();
+        }
+        runOptions = new RunOptions();
+        memoryInfo = MemoryInfo.CreateCpu(OrtArenaAllocator, OrtMemTypeDefault);
 
-            for(int i = 0; i < modelProto.getGraph().getInitializerCount(); i++) {
-                Onnx.TensorProto initializer = modelProto.getGraph().getInitializer(i);
-                initializers.add(initializer);
-            }
 
-            for(int i = 0; i < modelProto.getGraph().getInputCount(); i++) {
-                inputs.add(modelProto.getGraph().getInput(i));
-            }
+    }
 
+    private void initIOMetadata() {
+        long numInputNodes = session.GetInputCount();
+        long numOutputNodes = session.GetOutputCount();
+        inputNodeNames = new PointerPointer<>(numInputNodes);
+        outputNodeNames = new PointerPointer<>(numOutputNodes);
+        inputNamePointers = new BytePointer[(int) numInputNodes];
+        outputNamePointers = new BytePointer[(int) numOutputNodes];
 
+        for (int i = 0; i < numInputNodes; i++) {
+            BytePointer inputName = session.GetInputNameAllocated(i, allocator);
+            inputNodeNames.put(i, inputName);
+            inputNamePointers[i] = inputName;
+            inputNames.add(inputName.getString());
+            inputTypes.add(getTypeForInput(session, i));
         }
-        runOptions = new RunOptions();
-        memoryInfo = MemoryInfo.CreateCpu(OrtArenaAllocator, OrtMemTypeDefault);
 
+        for (int i = 0; i < numOutputNodes; i++) {
+            BytePointer outputName = session.GetOutputNameAllocated(i, allocator);
+            outputNodeNames.put(i, outputName);
+            outputNamePointers[i] = outputName;
+            outputNames.add(outputName.getString());
+            outputTypes.add(getTypeForOutput(session, i));
+        }
+    }
+
+    /**
+     * The model proto. Only parsed (from the model file) when first requested, as the session itself does not need it
+     */
+    public synchronized Onnx.ModelProto getModelProto() {
+        if(modelProto == null && modelUri != null) {
+            try {
+                modelProto = Onnx.ModelProto.parseFrom(FileUtils.readFileToByteArray(new File(modelUri)));
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to read ONNX model from " + modelUri, e);
+            }
+        }
+        return modelProto;
+    }
+
+    public synchronized List<Onnx.TensorProto> getInitializers() {
+        if(initializers == null) {
+            initializers = new ArrayList<>();
+            if(getModelProto() != null)
+                initializers.addAll(modelProto.getGraph().getInitializerList());
+        }
+        return initializers;
+    }
 
+    public synchronized List<Onnx.ValueInfoProto> getInputs() {
+        if(inputs == null) {
+            inputs = new ArrayList<>();
+            if(getModelProto() != null)
+                inputs.addAll(modelProto.getGraph().getInputList());
+        }
+        return inputs;
     }
 
 
@@ -122,18 +214,14 @@ public class OnnxRuntimeRunner implements Closeable  {
      * @return a map of the names of the ndarrays
      */
     public Map<String,SDValue> execValues(Map<String, SDValue> input) {
-        long numInputNodes = session.GetInputCount();
-        long numOutputNodes = session.GetOutputCount();
-
-        PointerPointer<BytePointer> inputNodeNames = new PointerPointer<>(numInputNodes);
-        PointerPointer<BytePointer> outputNodeNames = new PointerPointer<>(numOutputNodes);
+        long numInputNodes = inputNames.size();
+        long numOutputNodes = outputNames.size();
 
         Value inputVal = new Value(numInputNodes);
-        for (long i = 0; i < numInputNodes; i++) {
-            BytePointer inputName = session.GetInputNameAllocated(i, allocator);
-            inputNodeNames.put(i, inputName);
-            ONNXType typeForInput = getTypeForInput(session, i);
-            List<INDArray> arr = input.get(inputName.getString()).getListValue();
+        for (int i = 0; i < numInputNodes; i++) {
+            String inputName = inputNames.get(i);
+            ONNXType typeForInput = inputTypes.get(i);
+            List<INDArray> arr = input.get(inputName).getListValue();
             if(arr.size() == 1 && typeForInput == ONNXType.ONNX_TYPE_TENSOR) {
                 INDArray arr2 = arr.get(0);
                 Value inputTensor = getTensor(arr2, memoryInfo);
@@ -142,7 +230,7 @@ public class OnnxRuntimeRunner implements Closeable  {
             }
             //empty sequence
             else if(arr.size() == 0) {
-                throw new IllegalArgumentException("Onnx Runtime does not support empty sequences! Found at input name " + inputName.getString());
+                throw new IllegalArgumentException("Onnx Runtime does not support empty sequences! Found at input name " + inputName);
             } else if(arr.size() > 1 || typeForInput == ONNXType.ONNX_TYPE_SEQUENCE) {
                 ValueVector inputTensor = getSequence(arr, memoryInfo);
                 inputVal.position(i).put(Value.CreateSequence(inputTensor));
@@ -153,14 +241,6 @@ public class OnnxRuntimeRunner implements Closeable  {
         //reset position after iterating
         inputVal.position(0);
 
-
-
-        for (int i = 0; i < numOutputNodes; i++) {
-            BytePointer outputName = session.GetOutputNameAllocated(i, allocator);
-            outputNodeNames.put(i, outputName);
-        }
-
-
         ValueVector outputVector = session.Run(
                 runOptions,
                 inputNodeNames,
@@ -177,10 +257,10 @@ public class OnnxRuntimeRunner implements Closeable  {
             outValue.retainReference();
             if(outValue.IsTensor()) {
                 INDArray arr = getArray(outValue);
-                ret.put((outputNodeNames.get(BytePointer.class, i)).getString(), SDValue.create(arr));
+                ret.put(outputNames.get(i), SDValue.create(arr));
             } else  {
                 INDArray[] seq = ndarraysFromSequence(outValue,allocator);
-                ret.put((outputNodeNames.get(BytePointer.class, i)).getString(), SDValue.create(Arrays.asList(seq)));
+                ret.put(outputNames.get(i), SDValue.create(Arrays.asList(seq)));
             }
 
         }
@@ -199,32 +279,10 @@ public class OnnxRuntimeRunner implements Closeable  {
      * @return a map of the names of the ndarrays
      */
     public Map<String,INDArray> exec(Map<String,INDArray> input) {
-        long numInputNodes = session.GetInputCount();
-        long numOutputNodes = session.GetOutputCount();
-
-        PointerPointer<BytePointer> inputNodeNames = new PointerPointer<>(numInputNodes);
-        PointerPointer<BytePointer> outputNodeNames = new PointerPointer<>(numOutputNodes);
+        long numInputNodes = inputNames.size();
+        long numOutputNodes = outputNames.size();
 
-        Value inputVal = new Value(numInputNodes);
-
-        for (int i = 0; i < numInputNodes; i++) {
-            BytePointer inputName = session.GetInputNameAllocated(i, allocator);
-            inputNodeNames.put(i, inputName);
-            INDArray arr = input.get(inputName.getString());
-            Value inputTensor = getTensor(arr, memoryInfo);
-            Preconditions.checkState(inputTensor.IsTensor(),"Input must be a tensor.");
-            inputVal.position(i).put(inputTensor);
-        }
-
-        //reset position after iterating
-        inputVal.position(0);
-
-
-
-        for (long i = 0; i < numOutputNodes; i++) {
-            BytePointer outputName = session.GetOutputNameAllocated(i, allocator);
-            outputNodeNames.put(i, outputName);
-        }
+        Value inputVal = getInputTensors(input);
 
         ValueVector outputVector = session.Run(
                 runOptions,
@@ -240,7 +298,7 @@ public class OnnxRuntimeRunner implements Closeable  {
         for (int i = 0; i < numOutputNodes; i++) {
             Value outValue = outputVector.get(i);
             outValue.retainReference();
-            ONNXType typeForOutput = getTypeForOutput(session, i);
+            ONNXType typeForOutput = outputTypes.get(i);
             switch(typeForOutput) {
                 case ONNX_TYPE_SEQUENCE:
                     long count = outValue.GetCount();
@@ -252,9 +310,9 @@ public class OnnxRuntimeRunner implements Closeable  {
                     if(longPointer != null) {
                         long[] shape = new long[(int) longPointer.capacity()];
                         longPointer.get(shape);
-                        ret.put((outputNodeNames.get(BytePointer.class, i)).getString(), Nd4j.create(buffer).reshape(shape));
+                        ret.put(outputNames.get(i), Nd4j.create(buffer).reshape(shape));
                     } else {
-                        ret.put((outputNodeNames.get(BytePointer.class, i)).getString(), Nd4j.create(buffer));
+                        ret.put(outputNames.get(i), Nd4j.create(buffer));
 
                     }
                     break;
@@ -275,4 +333,60 @@ public class OnnxRuntimeRunner implements Closeable  {
     }
 
 
+    /**
+     * Execute the {@link #session} using the given inputs, writing the outputs directly into the given preallocated
+     * arrays. Only the outputs present in the map are computed.<br>
+     * Output arrays must be tensors with the exact shape and data type of the model output, and must be
+     * contiguous and in 'c' order.
+     *
+     * @param input   the input map
+     * @param outputs the output arrays to write to, by output name
+     * @return the outputs map
+     */
+    public Map<String,INDArray> exec(Map<String,INDArray> input, Map<String,INDArray> outputs) {
+        Preconditions.checkState(outputs != null && !outputs.isEmpty(), "No output arrays provided");
+        Value inputVal = getInputTensors(input);
+
+        int numOutputs = outputs.size();
+        PointerPointer<BytePointer> names = new PointerPointer<>(numOutputs);
+        Value outputVal = new Value(numOutputs);
+        int i = 0;
+        for (Map.Entry<String,INDArray> e : outputs.entrySet()) {
+            int idx = outputNames.indexOf(e.getKey());
+            Preconditions.checkState(idx >= 0, "Unknown output name %s, model outputs are %s", e.getKey(), outputNames);
+            Preconditions.checkState(outputTypes.get(idx) == ONNXType.ONNX_TYPE_TENSOR, "Only tensor outputs can be preallocated, output %s is of type %s",
+                    e.getKey(), outputTypes.get(idx));
+            INDArray arr = e.getValue();
+            Preconditions.checkState(arr != null && arr.ordering() == 'c' && Shape.hasDefaultStridesForShape(arr) && arr.offset() == 0,
+                    "Output array for %s must be a contiguous 'c' order array", e.getKey());
+
+            TensorTypeAndShapeInfo info = session.GetOutputTypeInfo(idx).GetTensorTypeAndShapeInfo();
+            Preconditions.checkState(info.GetElementType() == onnxTypeForDataType(arr.dataType()),
+                    "Output array for %s has data type %s, which does not match the model output", e.getKey(), arr.dataType());
+
+            names.put(i, outputNamePointers[idx]);
+            outputVal.position(i).put(getTensor(arr, memoryInfo));
+            i++;
+        }
+        outputVal.position(0);
+
+        session.Run(runOptions, inputNodeNames, inputVal, inputNames.size(), names, outputVal, numOutputs);
+        return outputs;
+    }
+
+    private Value getInputTensors(Map<String,INDArray> input) {
+        long numInputNodes = inputNames.size();
+        Value inputVal = new Value(numInputNodes);
+        for (int i = 0; i < numInputNodes; i++) {
+            INDArray arr = input.get(inputNames.get(i));
+            Value inputTensor = getTensor(arr, memoryInfo);
+            Preconditions.checkState(inputTensor.IsTensor(),"Input must be a tensor.");
+            inputVal.position(i).put(inputTensor);
+        }
+
+        //reset position after iterating
+        inputVal.position(0);
+        return inputVal;
+    }
+
 }
@@ -39,4 +39,8 @@ public enum GraphOptimizationLevel {
     GraphOptimizationLevel(int index) {
         this.methodIndex = index;
     }
+
+    public int getMethodIndex() {
+        return methodIndex;
+    }
 }
\ No newline at end of file
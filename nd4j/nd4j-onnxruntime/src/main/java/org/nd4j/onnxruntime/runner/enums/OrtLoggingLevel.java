@@ -40,4 +40,8 @@ public enum OrtLoggingLevel {
     OrtLoggingLevel(int index) {
         this.methodIndex = index;
     }
+
+    public int getMethodIndex() {
+        return methodIndex;
+    }
 }
\ No newline at end of file
@@ -25,14 +25,19 @@ import org.junit.jupiter.api.Test;
 import org.nd4j.common.io.ClassPathResource;
 import org.nd4j.common.tests.tags.NativeTag;
 import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.onnxruntime.runner.enums.GraphOptimizationLevel;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 @Tag(TagNames.FILE_IO)
 @Tag(TagNames.DL4J_OLD_API)
@@ -59,4 +64,47 @@ public class OnnxRuntimeRunnerTests {
         assertEquals(2.0,z.sumNumber().doubleValue(),1e-1);
     }
 
+    @Test
+    @Disabled
+    public void testPreallocatedOutputsConcurrent() throws Exception {
+        ClassPathResource classPathResource = new ClassPathResource("add.onnx");
+        File f = classPathResource.getFile();
+        try(OnnxRuntimeRunner onnxRuntimeRunner = OnnxRuntimeRunner.builder()
+                .modelUri(f.getAbsolutePath())
+                .intraOpNumThreads(1)
+                .graphOptimizationLevel(GraphOptimizationLevel.ORT_ENABLE_ALL)
+                .build()) {
+            assertEquals(Arrays.asList("x", "y"), onnxRuntimeRunner.getInputNames());
+            assertEquals(Collections.singletonList("z"), onnxRuntimeRunner.getOutputNames());
+
+            int numThreads = 4;
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            Thread[] threads = new Thread[numThreads];
+            for (int t = 0; t < numThreads; t++) {
+                final float value = t;
+                threads[t] = new Thread(() -> {
+                    try {
+                        INDArray out = Nd4j.create(DataType.FLOAT, 1, 1);
+                        for (int i = 0; i < 100; i++) {
+                            Map<String,INDArray> inputs = new LinkedHashMap<>();
+                            inputs.put("x", Nd4j.scalar(value).reshape(1, 1));
+                            inputs.put("y", Nd4j.scalar((float) i).reshape(1, 1));
+                            Map<String,INDArray> outputs = Collections.singletonMap("z", out);
+                            Map<String,INDArray> exec = onnxRuntimeRunner.exec(inputs, outputs);
+                            assertSame(out, exec.get("z"));
+                            assertEquals(value + i, out.getFloat(0), 1e-5);
+                        }
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    }
+                });
+                threads[t].start();
+            }
+            for (Thread t : threads) {
+                t.join();
+            }
+            assertNull(failure.get());
+        }
+    }
+
 }
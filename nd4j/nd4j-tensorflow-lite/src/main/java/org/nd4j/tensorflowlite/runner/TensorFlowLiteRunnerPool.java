@@ -0,0 +1,443 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+package org.nd4j.tensorflowlite.runner;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.javacpp.*;
+import org.bytedeco.tensorflowlite.*;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import static org.bytedeco.tensorflowlite.global.tensorflowlite.*;
+import static org.nd4j.tensorflowlite.util.TFLiteUtils.*;
+
+/**
+ * A pool of TensorFlow Lite interpreters for concurrent inference on one model.<br>
+ * A single {@link Interpreter} is not thread safe, so {@link TensorFlowLiteRunner} can only serve one request at a
+ * time. This pool builds {@code poolSize} interpreters from one {@link FlatBufferModel} (the model is loaded and
+ * memory mapped once, and shared by all interpreters), and lends one interpreter to each request.<br>
+ * Input and output arrays are views of the interpreter's own tensor buffers:
+ * <ul>
+ *     <li>{@link #exec(Map)} copies the inputs into the interpreter's input tensors (no copy is made if the input
+ *     already is the input tensor view), and returns copies of the outputs</li>
+ *     <li>{@link #exec(Map, Map)} writes the outputs into preallocated arrays instead</li>
+ *     <li>{@link #acquire()} gives direct (zero copy) access to the input and output tensors of one interpreter, for
+ *     callers that can write their inputs in place and consume the outputs before releasing the interpreter</li>
+ * </ul>
+ * Execution latency and the time spent waiting for a free interpreter are recorded for the pool.<br>
+ * {@link #close()} waits until all interpreters have been returned to the pool before releasing them.
+ */
+@Slf4j
+public class TensorFlowLiteRunnerPool implements Closeable {
+    private FlatBufferModel model;
+    private BuiltinOpResolver resolver;
+    private InterpreterBuilder builder;
+    private final List<PooledInterpreter> interpreters = new ArrayList<>();
+    private final BlockingQueue<PooledInterpreter> available;
+    private final List<String> inputNames;
+    private final List<String> outputNames;
+    private volatile boolean closed;
+
+    private final LongAdder numExecutions = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    /**
+     * @param modelUri   Path of the model file
+     * @param poolSize   Number of interpreters. Defaults to the number of available processors
+     * @param numThreads Number of threads used by each interpreter. Defaults to 1, as parallelism comes from the pool
+     */
+    @Builder
+    public TensorFlowLiteRunnerPool(@NonNull String modelUri, Integer poolSize, Integer numThreads) {
+        int size = poolSize == null ? Runtime.getRuntime().availableProcessors() : poolSize;
+        int threads = numThreads == null ? 1 : numThreads;
+        Preconditions.checkArgument(size > 0, "Pool size must be positive, got %s", size);
+        Preconditions.checkArgument(threads > 0, "Number of threads must be positive, got %s", threads);
+
+        // Load model once, shared by all interpreters
+        model = FlatBufferModel.BuildFromFile(modelUri);
+        if (model == null || model.isNull()) {
+            throw new RuntimeException("Cannot load " + modelUri);
+        }
+        model.retainReference();
+        resolver = new BuiltinOpResolver();
+        builder = new InterpreterBuilder(model, resolver);
+        resolver.retainReference();
+        builder.retainReference();
+
+        available = new ArrayBlockingQueue<>(size);
+        for (int i = 0; i < size; i++) {
+            Interpreter interpreter = new Interpreter((Pointer) null);
+            builder.apply(interpreter);
+            if (interpreter == null || interpreter.isNull()) {
+                close();
+                throw new RuntimeException("Cannot build interpreter for " + modelUri);
+            }
+            interpreter.retainReference();
+            interpreter.SetNumThreads(threads);
+            if (interpreter.AllocateTensors() != kTfLiteOk) {
+                interpreter.releaseReference();
+                close();
+                throw new RuntimeException("Cannot allocate tensors for " + modelUri);
+            }
+            PooledInterpreter p = new PooledInterpreter(interpreter);
+            interpreters.add(p);
+            available.add(p);
+        }
+
+        Interpreter first = interpreters.get(0).interpreter;
+        List<String> in = new ArrayList<>();
+        for (int i = 0; i < first.inputs().capacity(); i++) {
+            in.add(first.GetInputName(i).getString());
+        }
+        List<String> out = new ArrayList<>();
+        for (int i = 0; i < first.outputs().capacity(); i++) {
+            out.add(first.GetOutputName(i).getString());
+        }
+        inputNames = Collections.unmodifiableList(in);
+        outputNames = Collections.unmodifiableList(out);
+        log.info("Created pool of {} interpreters for {}: inputs {}, outputs {}", size, modelUri, inputNames, outputNames);
+    }
+
+    /**
+     * @return Names of the model inputs, in order
+     */
+    public List<String> getInputNames() {
+        return inputNames;
+    }
+
+    /**
+     * @return Names of the model outputs, in order
+     */
+    public List<String> getOutputNames() {
+        return outputNames;
+    }
+
+    /**
+     * @return Number of interpreters in the pool
+     */
+    public int getPoolSize() {
+        return interpreters.size();
+    }
+
+    /**
+     * Execute the model using the given inputs, on the first free interpreter
+     * @param input the input map
+     * @return a map of the names of the outputs to copies of the output arrays
+     */
+    public Map<String,INDArray> exec(@NonNull Map<String,INDArray> input) {
+        try (Lease lease = acquire()) {
+            lease.setInputs(input);
+            lease.run();
+            Map<String,INDArray> ret = new LinkedHashMap<>();
+            for (int i = 0; i < outputNames.size(); i++) {
+                ret.put(outputNames.get(i), lease.getOutput(i).dup());
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * Execute the model using the given inputs, on the first free interpreter, and write the outputs into the given
+     * preallocated arrays. Outputs that are not present in the output map are not copied
+     * @param input   the input map
+     * @param outputs the output map: output names to arrays of the output shape and data type
+     */
+    public void exec(@NonNull Map<String,INDArray> input, @NonNull Map<String,INDArray> outputs) {
+        for (String name : outputs.keySet()) {
+            Preconditions.checkArgument(outputNames.contains(name), "Unknown output \"%s\", model outputs are %s", name, outputNames);
+        }
+        try (Lease lease = acquire()) {
+            lease.setInputs(input);
+            lease.run();
+            for (Map.Entry<String,INDArray> e : outputs.entrySet()) {
+                INDArray src = lease.getOutput(e.getKey());
+                INDArray dst = e.getValue();
+                Preconditions.checkArgument(Arrays.equals(src.shape(), dst.shape()), "Output \"%s\" has shape %s, preallocated array has shape %s",
+                        e.getKey(), src.shape(), dst.shape());
+                dst.assign(src);
+            }
+        }
+    }
+
+    /**
+     * Borrow an interpreter from the pool, waiting until one is free. The lease must be closed to return the
+     * interpreter to the pool; arrays obtained from the lease must not be used after that.
+     * @return the lease
+     */
+    public Lease acquire() {
+        long start = System.nanoTime();
+        PooledInterpreter p = null;
+        try {
+            //Poll rather than take, so that waiting threads notice when the pool is closed
+            while (p == null) {
+                Preconditions.checkState(!closed, "Runner pool has been closed");
+                p = available.poll(100, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for an interpreter", e);
+        }
+        if (closed) {
+            //Closed while waiting: hand the interpreter over to close()
+            available.add(p);
+            throw new IllegalStateException("Runner pool has been closed");
+        }
+        return new Lease(p, System.nanoTime() - start);
+    }
+
+    /**
+     * @return Number of model executions since creation or the last {@link #resetMetrics()}
+     */
+    public long getNumExecutions() {
+        return numExecutions.sum();
+    }
+
+    /**
+     * @return Mean execution latency (input binding, inference and output read) in nanoseconds
+     */
+    public double getMeanLatencyNanos() {
+        long n = numExecutions.sum();
+        return n == 0 ? 0.0 : totalLatencyNanos.sum() / (double) n;
+    }
+
+    /**
+     * @return Maximum execution latency in nanoseconds
+     */
+    public long getMaxLatencyNanos() {
+        return maxLatencyNanos.get();
+    }
+
+    /**
+     * @return Mean time, in nanoseconds, spent waiting for a free interpreter per execution. Leases that were
+     * closed without being used are not counted, as for {@link #getNumExecutions()}
+     */
+    public double getMeanWaitNanos() {
+        long n = numExecutions.sum();
+        return n == 0 ? 0.0 : totalWaitNanos.sum() / (double) n;
+    }
+
+    /**
+     * Reset the latency metrics
+     */
+    public void resetMetrics() {
+        numExecutions.reset();
+        totalLatencyNanos.reset();
+        totalWaitNanos.reset();
+        maxLatencyNanos.set(0);
+    }
+
+    /**
+     * Close the pool, and release the interpreters and the model. Blocks until all leased interpreters have been
+     * returned: an interpreter may still be in use (running Invoke, or with its tensors being read) until then
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        boolean interrupted = false;
+        int returned = 0;
+        while (returned < interpreters.size()) {
+            try {
+                available.take();
+                returned++;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        for (PooledInterpreter p : interpreters) {
+            p.interpreter.releaseReference();
+        }
+        interpreters.clear();
+        if (builder != null) {
+            builder.releaseReference();
+            builder = null;
+        }
+        if (resolver != null) {
+            resolver.releaseReference();
+            resolver = null;
+        }
+        if (model != null) {
+            model.releaseReference();
+            model = null;
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void record(long latencyNanos, long waitNanos) {
+        numExecutions.increment();
+        totalLatencyNanos.add(latencyNanos);
+        totalWaitNanos.add(waitNanos);
+        maxLatencyNanos.accumulateAndGet(latencyNanos, Math::max);
+    }
+
+    private static class PooledInterpreter {
+        private final Interpreter interpreter;
+        private final INDArray[] inputViews;
+
+        private PooledInterpreter(Interpreter interpreter) {
+            this.interpreter = interpreter;
+            //Input tensor buffers are fixed once tensors are allocated
+            this.inputViews = new INDArray[(int) interpreter.inputs().capacity()];
+            for (int i = 0; i < inputViews.length; i++) {
+                inputViews[i] = getArray(interpreter.input_tensor(i));
+            }
+        }
+    }
+
+    /**
+     * Exclusive access to one interpreter of the pool. Not thread safe.
+     */
+    public class Lease implements Closeable {
+        private PooledInterpreter p;
+        private final long waitNanos;
+        private long bindStart = -1;
+
+        private Lease(PooledInterpreter p, long waitNanos) {
+            this.p = p;
+            this.waitNanos = waitNanos;
+        }
+
+        /**
+         * @param name input name
+         * @return a view of the input tensor. Writing to it sets the input without any further copy
+         */
+        public INDArray getInput(String name) {
+            return getInput(indexOf(inputNames, name));
+        }
+
+        /**
+         * @param index input index
+         * @return a view of the input tensor
+         */
+        public INDArray getInput(int index) {
+            checkOpen();
+            startTimer();
+            return p.inputViews[index];
+        }
+
+        /**
+         * Copy the given arrays into the input tensors. Arrays that already are input tensor views are not copied
+         * @param input the input map. Must contain all model inputs
+         */
+        public void setInputs(@NonNull Map<String,INDArray> input) {
+            checkOpen();
+            startTimer();
+            for (int i = 0; i < inputNames.size(); i++) {
+                INDArray arr = input.get(inputNames.get(i));
+                Preconditions.checkArgument(arr != null, "No array provided for input \"%s\"", inputNames.get(i));
+                INDArray view = p.inputViews[i];
+                if (arr == view) {
+                    continue;
+                }
+                Preconditions.checkArgument(arr.length() == view.length(), "Input \"%s\" has %s elements, model expects shape %s",
+                        inputNames.get(i), arr.length(), view.shape());
+                if (Arrays.equals(arr.shape(), view.shape())) {
+                    view.assign(arr);
+                } else {
+                    view.assign(arr.reshape(view.shape()));
+                }
+            }
+        }
+
+        /**
+         * Run inference with the current input tensors
+         */
+        public void run() {
+            checkOpen();
+            startTimer();
+            if (p.interpreter.Invoke() != kTfLiteOk) {
+                throw new RuntimeException("Cannot invoke interpreter for " + model);
+            }
+        }
+
+        /**
+         * @param name output name
+         * @return a view of the output tensor, valid until the next {@link #run()} or until this lease is closed
+         */
+        public INDArray getOutput(String name) {
+            return getOutput(indexOf(outputNames, name));
+        }
+
+        /**
+         * @param index output index
+         * @return a view of the output tensor, valid until the next {@link #run()} or until this lease is closed
+         */
+        public INDArray getOutput(int index) {
+            checkOpen();
+            //Output tensors may be reallocated by Invoke for models with dynamic shapes
+            return getArray(p.interpreter.output_tensor(index));
+        }
+
+        /**
+         * Return the interpreter to the pool
+         */
+        @Override
+        public void close() {
+            if (p == null) {
+                return;
+            }
+            if (bindStart >= 0) {
+                record(System.nanoTime() - bindStart, waitNanos);
+            }
+            PooledInterpreter toRelease = p;
+            p = null;
+            //Returned even if the pool is closed: close() is waiting for it
+            available.add(toRelease);
+        }
+
+        private void startTimer() {
+            if (bindStart < 0) {
+                bindStart = System.nanoTime();
+            }
+        }
+
+        private void checkOpen() {
+            Preconditions.checkState(p != null, "Lease has already been closed");
+        }
+
+        private int indexOf(List<String> names, String name) {
+            int idx = names.indexOf(name);
+            Preconditions.checkArgument(idx >= 0, "Unknown tensor \"%s\", expected one of %s", name, names);
+            return idx;
+        }
+    }
+}
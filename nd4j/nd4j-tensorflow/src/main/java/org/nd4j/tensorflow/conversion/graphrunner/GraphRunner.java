@@ -23,6 +23,7 @@ package org.nd4j.tensorflow.conversion.graphrunner;
 import lombok.*;
 import org.apache.commons.io.FileUtils;
 import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.common.io.ClassPathResource;
 import org.nd4j.common.primitives.Pair;
@@ -75,6 +76,10 @@ public class GraphRunner implements Closeable {
     @Singular
     private Map<String,TensorDataType> inputDataTypes,outputDataTypes;
     private static Map<Pair<TensorDataType,TensorDataType>,GraphRunner> recastGraphDefs;
+    //prepared call for the default input and output order, used by run(Map)
+    private volatile PreparedGraphRun defaultRun;
+    //prepared calls by input and output names
+    private final Map<Pair<List<String>,List<String>>,PreparedGraphRun> preparedRuns = new ConcurrentHashMap<>();
 
     static {
         recastGraphDefs = new ConcurrentHashMap<>();
@@ -95,6 +100,8 @@ public class GraphRunner implements Closeable {
      * @param graphBytes the in memory bytes of the graph
      * @param inputDataTypes the expected input data types
      * @param outputDataTypes the expected output data types
+     * @param intraOpParallelismThreads the number of threads used within an op (overrides the session configuration, may be null)
+     * @param interOpParallelismThreads the number of threads used to run independent ops (overrides the session configuration, may be null)
      */
 
 
@@ -110,10 +117,12 @@ public class GraphRunner implements Closeable {
                        File graphPath,
                        byte[] graphBytes,
                        Map<String, TensorDataType> inputDataTypes,
-                       Map<String, TensorDataType> outputDataTypes) {
+                       Map<String, TensorDataType> outputDataTypes,
+                       Integer intraOpParallelismThreads,
+                       Integer interOpParallelismThreads) {
         try {
             if(sessionOptionsConfigProto == null) {
-                if(sessionOptionsConfigProto != null) {
+                if(sessionOptionsProtoBytes != null) {
                     this.sessionOptionsConfigProto = ConfigProto.parseFrom(sessionOptionsProtoBytes);
                 }
                 else if(sessionOptionsProtoPath != null) {
@@ -124,6 +133,14 @@ public class GraphRunner implements Closeable {
             else
                 this.sessionOptionsConfigProto = sessionOptionsConfigProto;
 
+            if(intraOpParallelismThreads != null || interOpParallelismThreads != null) {
+                ConfigProto.Builder configBuilder = this.sessionOptionsConfigProto == null ? ConfigProto.newBuilder() : this.sessionOptionsConfigProto.toBuilder();
+                if(intraOpParallelismThreads != null)
+                    configBuilder.setIntraOpParallelismThreads(intraOpParallelismThreads);
+                if(interOpParallelismThreads != null)
+                    configBuilder.setInterOpParallelismThreads(interOpParallelismThreads);
+                this.sessionOptionsConfigProto = configBuilder.build();
+            }
 
             this.inputDataTypes = inputDataTypes;
             this.outputDataTypes = outputDataTypes;
@@ -436,6 +453,10 @@ public class GraphRunner implements Closeable {
      *
      *
      *
+     * The outputs are copied out of the tensorflow tensors,
+     * which are released when the call completes.
+     * Concurrent calls share the same session.
+     *
      * @param inputs the inputs to use for each
      *               {@link INDArray}
      * @return a map of the output names to the
@@ -448,18 +469,129 @@ public class GraphRunner implements Closeable {
             run(inputs);
             isTfWarmedUp = true;
         }
-        Map<String, TF_Tensor> inputTensors = new LinkedHashMap<>();
-        for(Map.Entry<String,INDArray> input : inputs.entrySet()) {
-            inputTensors.put(input.getKey(),conversion.tensorFromNDArray(input.getValue()));
+
+        if(!inputs.isEmpty() && inputOrder != null && inputs.size() != inputOrder.size()) {
+            throw new IllegalArgumentException("Number of inputs specified do not match number of arrays specified.");
+        }
+
+        if(!canCastWithNd4j(inputDataTypes)) {
+            //casts to types without an nd4j equivalent go through the tensorflow cast graphs
+            Map<String, TF_Tensor> inputTensors = new LinkedHashMap<>();
+            for(Map.Entry<String,INDArray> input : inputs.entrySet()) {
+                inputTensors.put(input.getKey(),conversion.tensorFromNDArray(input.getValue()));
+            }
+
+            Map<String, TF_Tensor> outputTensors = runTfTensor(inputTensors);
+            Map<String,INDArray> output = new LinkedHashMap<>();
+            for(Map.Entry<String, TF_Tensor> outputTensor : outputTensors.entrySet()) {
+                output.put(outputTensor.getKey(),conversion.ndArrayFromTensor(outputTensor.getValue()));
+            }
+
+            return output;
+        }
+
+        return prepare().run(inputs);
+    }
+
+    /**
+     * Run the graph with the given inputs, writing the outputs into preallocated arrays.
+     * See {@link PreparedGraphRun#run(Map, Map)}
+     * @param inputs the inputs to use for each {@link INDArray}
+     * @param outputs preallocated arrays for some or all of the outputs. May be null
+     * @return a map of the output names to the output arrays
+     */
+    public Map<String,INDArray> run(Map<String,INDArray> inputs, Map<String,INDArray> outputs) {
+        return prepare().run(inputs, outputs);
+    }
+
+    /**
+     * Prepare a call with the configured input and output order.
+     * See {@link #prepare(List, List)}
+     * @return the prepared call
+     */
+    public PreparedGraphRun prepare() {
+        PreparedGraphRun prepared = defaultRun;
+        if(prepared != null)
+            return prepared;
+        prepared = prepare(inputOrder == null ? Collections.<String>emptyList() : inputOrder,
+                outputOrder == null ? Collections.<String>emptyList() : outputOrder);
+        defaultRun = prepared;
+        return prepared;
+    }
+
+    /**
+     * Prepare a call on this runner's session for a fixed list of inputs and outputs.
+     * The graph operations are looked up once, and inputs are passed to tensorflow without a copy where possible.
+     * The returned call may be run concurrently from multiple threads.
+     * Prepared calls are cached: preparing the same inputs and outputs again returns the same instance.
+     * For saved models, names in the input and output order are mapped to the signature's tensor names.
+     * @param feeds the input names
+     * @param fetches the output names
+     * @return the prepared call
+     */
+    public PreparedGraphRun prepare(@NonNull List<String> feeds, @NonNull List<String> fetches) {
+        Preconditions.checkState(session != null, "Session not initialized.");
+        return preparedRuns.computeIfAbsent(new Pair<>(new ArrayList<>(feeds), new ArrayList<>(fetches)),
+                k -> createPreparedRun(k.getFirst(), k.getSecond()));
+    }
+
+    private PreparedGraphRun createPreparedRun(List<String> feeds, List<String> fetches) {
+        List<String> feedNames = new ArrayList<>();
+        DataType[] feedDataTypes = new DataType[feeds.size()];
+        for(int i = 0; i < feeds.size(); i++) {
+            feedNames.add(graphTensorName(feeds.get(i), inputOrder, savedModelConfig == null ? null : savedModelConfig.getSavedModelInputOrder()));
+            TensorDataType tensorDataType = inputDataTypes == null ? null : inputDataTypes.get(feeds.get(i));
+            feedDataTypes[i] = tensorDataType == null ? null : TensorDataType.toNd4jType(tensorDataType);
+        }
+
+        List<String> fetchNames = new ArrayList<>();
+        for(String fetch : fetches) {
+            fetchNames.add(graphTensorName(fetch, outputOrder, savedModelConfig == null ? null : savedModelConfig.getSaveModelOutputOrder()));
         }
 
-        Map<String, TF_Tensor> outputTensors = runTfTensor(inputTensors);
-        Map<String,INDArray> output = new LinkedHashMap<>();
-        for(Map.Entry<String, TF_Tensor> outputTensor : outputTensors.entrySet()) {
-            output.put(outputTensor.getKey(),conversion.ndArrayFromTensor(outputTensor.getValue()));
+        return new PreparedGraphRun(graph, session, feeds, feedNames, fetches, fetchNames, feedDataTypes);
+    }
+
+    private static String graphTensorName(String name, List<String> order, List<String> savedModelOrder) {
+        if(savedModelOrder != null && order != null) {
+            int idx = order.indexOf(name);
+            if(idx >= 0 && idx < savedModelOrder.size())
+                return savedModelOrder.get(idx);
         }
+        return name;
+    }
 
-        return output;
+    public void setInputOrder(List<String> inputOrder) {
+        this.inputOrder = inputOrder;
+        clearPreparedRuns();
+    }
+
+    public void setOutputOrder(List<String> outputOrder) {
+        this.outputOrder = outputOrder;
+        clearPreparedRuns();
+    }
+
+    public void setInputDataTypes(Map<String,TensorDataType> inputDataTypes) {
+        this.inputDataTypes = inputDataTypes;
+        clearPreparedRuns();
+    }
+
+    private void clearPreparedRuns() {
+        this.defaultRun = null;
+        preparedRuns.clear();
+    }
+
+    private static boolean canCastWithNd4j(Map<String,TensorDataType> dataTypes) {
+        if(dataTypes == null)
+            return true;
+        for(TensorDataType tensorDataType : dataTypes.values()) {
+            try {
+                TensorDataType.toNd4jType(tensorDataType);
+            } catch (IllegalArgumentException e) {
+                return false;
+            }
+        }
+        return true;
     }
 
 
@@ -649,6 +781,7 @@ public class GraphRunner implements Closeable {
 
     @Override
     public void close() {
+        clearPreparedRuns();
         if(session != null && status != null) {
             TF_CloseSession(session, status);
             TF_DeleteSession(session,status);
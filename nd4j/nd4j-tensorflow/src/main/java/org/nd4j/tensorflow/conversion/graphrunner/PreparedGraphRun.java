@@ -0,0 +1,183 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.nd4j.tensorflow.conversion.graphrunner;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.javacpp.PointerPointer;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.tensorflow.conversion.TensorflowConversion;
+
+import java.lang.ref.Reference;
+import java.util.*;
+
+import org.bytedeco.tensorflow.*;
+import static org.bytedeco.tensorflow.global.tensorflow.*;
+
+/**
+ * A prepared call on a {@link GraphRunner} session, with a fixed list of feeds and fetches
+ * (similar to a tensorflow callable).<br>
+ * The graph operations of the feeds and fetches are resolved once, when the call is prepared, instead of on every run.
+ * Inputs are passed to tensorflow without a copy when they are in c order and not views
+ * (see {@link TensorflowConversion#tensorFromNDArray(INDArray)}); inputs of the wrong data type are cast with nd4j
+ * rather than with a separate tensorflow cast graph.<br>
+ * Output tensors are released as soon as they are read: they are either copied into caller provided arrays (which can
+ * be reused across calls when the output shapes are stable), or into new arrays.<br>
+ * Instances are thread safe: a tensorflow session supports concurrent runs, and all per run state is local to the call.
+ */
+@Slf4j
+public class PreparedGraphRun {
+    private final TF_Session session;
+    private final TensorflowConversion conversion = TensorflowConversion.getInstance();
+    @Getter
+    private final List<String> feeds;
+    @Getter
+    private final List<String> fetches;
+    private final TF_Output feedOutputs;
+    private final TF_Output fetchOutputs;
+    private final DataType[] feedDataTypes;
+
+    /**
+     * @param graph         the graph of the session
+     * @param session       the session to run
+     * @param feeds         the names used for the inputs
+     * @param feedNames     the graph tensor names of the inputs, in the same order as feeds
+     * @param fetches       the names used for the outputs
+     * @param fetchNames    the graph tensor names of the outputs, in the same order as fetches
+     * @param feedDataTypes the data types to cast the inputs to, if they have a different type. Entries may be null
+     */
+    PreparedGraphRun(@NonNull TF_Graph graph, @NonNull TF_Session session,
+                     @NonNull List<String> feeds, @NonNull List<String> feedNames,
+                     @NonNull List<String> fetches, @NonNull List<String> fetchNames,
+                     @NonNull DataType[] feedDataTypes) {
+        Preconditions.checkArgument(feeds.size() == feedNames.size() && feeds.size() == feedDataTypes.length,
+                "Number of feeds, feed names and feed data types must match");
+        Preconditions.checkArgument(fetches.size() == fetchNames.size(), "Number of fetches and fetch names must match");
+        this.session = session;
+        this.feeds = Collections.unmodifiableList(new ArrayList<>(feeds));
+        this.fetches = Collections.unmodifiableList(new ArrayList<>(fetches));
+        this.feedDataTypes = feedDataTypes.clone();
+        this.feedOutputs = resolve(graph, feedNames);
+        this.fetchOutputs = resolve(graph, fetchNames);
+    }
+
+    private static TF_Output resolve(TF_Graph graph, List<String> names) {
+        TF_Output out = new TF_Output(Math.max(1, names.size()));
+        for (int i = 0; i < names.size(); i++) {
+            String[] name = names.get(i).split(":");
+            TF_Operation op = TF_GraphOperationByName(graph, name[0]);
+            if (op == null || op.isNull()) {
+                throw new IllegalArgumentException("Illegal name found " + names.get(i) + " - no op found! Mis specified name perhaps?");
+            }
+            out.position(i).oper(op).index(name.length > 1 ? Integer.parseInt(name[1]) : 0);
+        }
+        out.position(0);
+        return out;
+    }
+
+    /**
+     * Run the prepared call
+     * @param inputs the inputs, by feed name. Must contain all feeds
+     * @return copies of all fetched outputs, by fetch name
+     */
+    public Map<String, INDArray> run(@NonNull Map<String, INDArray> inputs) {
+        return run(inputs, null);
+    }
+
+    /**
+     * Run the prepared call, writing the outputs into preallocated arrays
+     * @param inputs  the inputs, by feed name. Must contain all feeds
+     * @param outputs preallocated arrays for some or all of the fetches, by fetch name. May be null
+     * @return the fetched outputs, by fetch name: the preallocated arrays for fetches in {@code outputs},
+     *         new arrays for the others
+     */
+    public Map<String, INDArray> run(@NonNull Map<String, INDArray> inputs, Map<String, INDArray> outputs) {
+        int numFeeds = feeds.size();
+        int numFetches = fetches.size();
+        //references to the (possibly cast) arrays are kept until the run completes, as tensorflow uses their memory
+        INDArray[] fed = new INDArray[numFeeds];
+        TF_Tensor[] inputTensors = new TF_Tensor[numFeeds];
+        PointerPointer<TF_Tensor> outputTensorsPointer = new PointerPointer<>(Math.max(1, numFetches));
+        TF_Status status = TF_NewStatus();
+        try {
+            for (int i = 0; i < numFeeds; i++) {
+                INDArray arr = inputs.get(feeds.get(i));
+                Preconditions.checkArgument(arr != null, "No array provided for input \"%s\"", feeds.get(i));
+                if (feedDataTypes[i] != null && arr.dataType() != feedDataTypes[i]) {
+                    arr = arr.castTo(feedDataTypes[i]);
+                }
+                if (arr.isView() || arr.ordering() != 'c') {
+                    arr = arr.dup('c');
+                }
+                fed[i] = arr;
+                inputTensors[i] = conversion.tensorFromNDArray(arr);
+            }
+
+            TF_SessionRun(
+                    session,
+                    null,
+                    //inputs
+                    feedOutputs, new PointerPointer<>(inputTensors), numFeeds,
+                    //outputs
+                    fetchOutputs, outputTensorsPointer, numFetches,
+                    //targets
+                    null, 0,
+                    null,
+                    status);
+
+            if (TF_GetCode(status) != TF_OK) {
+                throw new IllegalStateException("ERROR: Unable to run session " + TF_Message(status).getString());
+            }
+
+            Map<String, INDArray> ret = new LinkedHashMap<>();
+            for (int i = 0; i < numFetches; i++) {
+                INDArray view = conversion.ndArrayFromTensor(new TF_Tensor(outputTensorsPointer.get(i)));
+                INDArray out = outputs == null ? null : outputs.get(fetches.get(i));
+                if (out != null) {
+                    Preconditions.checkArgument(Arrays.equals(out.shape(), view.shape()), "Output \"%s\" has shape %s, preallocated array has shape %s",
+                            fetches.get(i), view.shape(), out.shape());
+                    out.assign(view);
+                } else {
+                    out = view.dup();
+                }
+                ret.put(fetches.get(i), out);
+            }
+            return ret;
+        } finally {
+            for (TF_Tensor t : inputTensors) {
+                if (t != null) {
+                    TF_DeleteTensor(t);
+                }
+            }
+            //output tensors are owned by the caller of TF_SessionRun; their contents have been copied at this point
+            for (int i = 0; i < numFetches; i++) {
+                if (outputTensorsPointer.get(i) != null) {
+                    TF_DeleteTensor(new TF_Tensor(outputTensorsPointer.get(i)));
+                }
+            }
+            TF_DeleteStatus(status);
+            Reference.reachabilityFence(fed);
+        }
+    }
+}
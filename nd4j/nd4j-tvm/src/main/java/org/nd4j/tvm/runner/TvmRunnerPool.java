@@ -0,0 +1,413 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+package org.nd4j.tvm.runner;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.javacpp.*;
+import org.bytedeco.tvm.*;
+import org.nd4j.common.base.Preconditions;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.shape.Shape;
+
+import static org.bytedeco.tvm.global.tvm_runtime.*;
+import static org.nd4j.tvm.util.TVMUtils.*;
+
+/**
+ * A pool of TVM graph executors for concurrent inference on one compiled model.<br>
+ * A graph executor holds its own intermediate buffers and is not thread safe, so {@link TvmRunner} can only serve one
+ * request at a time. This pool loads the compiled module once, and creates {@code poolSize} executors from it, lending
+ * one executor to each request.<br>
+ * Inputs and preallocated outputs are bound to the executor without a copy (using {@code set_input_zero_copy} and
+ * {@code set_output_zero_copy}) when their layout matches what TVM requires: same shape and data type, c order with
+ * default strides, no offset and a 64 byte aligned buffer. Other arrays are copied into the executor's own buffers.
+ * After each execution the executor is pointed back to its own buffers, so it never keeps references to caller arrays.<br>
+ * Execution latency and the time spent waiting for a free executor are recorded for the pool.<br>
+ * {@link #close()} waits until all executors have been returned to the pool before releasing them.
+ */
+@Slf4j
+public class TvmRunnerPool implements Closeable {
+    /** Alignment required by TVM for externally provided buffers (kAllocAlignment) */
+    private static final int ALIGNMENT = 64;
+
+    private static DLDevice ctx;
+    private org.bytedeco.tvm.Module modFactory;
+    private final List<PooledExecutor> executors = new ArrayList<>();
+    private final BlockingQueue<PooledExecutor> available;
+    private final Map<String,Integer> inputIndices = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+
+    private final LongAdder numExecutions = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final LongAdder totalWaitNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    /**
+     * @param modelUri Path of the compiled module
+     * @param poolSize Number of graph executors. Defaults to the number of available processors
+     */
+    @Builder
+    public TvmRunnerPool(@NonNull String modelUri, Integer poolSize) {
+        int size = poolSize == null ? Runtime.getRuntime().availableProcessors() : poolSize;
+        Preconditions.checkArgument(size > 0, "Pool size must be positive, got %s", size);
+        synchronized (TvmRunnerPool.class) {
+            if (ctx == null) {
+                ctx = new DLDevice().device_type(kDLCPU).device_id(0);
+                ctx.retainReference();
+            }
+        }
+
+        try (PointerScope scope = new PointerScope()) {
+            modFactory = org.bytedeco.tvm.Module.LoadFromFile(new TVMString(modelUri));
+            modFactory.retainReference();
+            PackedFunc create = modFactory.GetFunction(new TVMString("default"));
+            available = new ArrayBlockingQueue<>(size);
+            for (int i = 0; i < size; i++) {
+                PooledExecutor e = new PooledExecutor(create);
+                executors.add(e);
+                available.add(e);
+            }
+        }
+        log.info("Created pool of {} graph executors for {}", size, modelUri);
+    }
+
+    /**
+     * @return Number of graph executors in the pool
+     */
+    public int getPoolSize() {
+        return executors.size();
+    }
+
+    /**
+     * Execute the model using the given inputs, on the first free executor
+     * @param input the input map
+     * @return a map of the output indices to copies of the output arrays
+     */
+    public Map<String,INDArray> exec(@NonNull Map<String,INDArray> input) {
+        return execInternal(input, null);
+    }
+
+    /**
+     * Execute the model using the given inputs, on the first free executor, and write the outputs into the given
+     * preallocated arrays. Outputs are identified by their index, as in {@link TvmRunner#exec(Map)}; outputs that are
+     * not present in the output map are not returned
+     * @param input   the input map
+     * @param outputs the output map: output indices to arrays of the output shape and data type
+     */
+    public void exec(@NonNull Map<String,INDArray> input, @NonNull Map<String,INDArray> outputs) {
+        execInternal(input, outputs);
+    }
+
+    private Map<String,INDArray> execInternal(Map<String,INDArray> input, Map<String,INDArray> outputs) {
+        long waitStart = System.nanoTime();
+        PooledExecutor e = null;
+        try {
+            //Poll rather than take, so that waiting threads notice when the pool is closed
+            while (e == null) {
+                Preconditions.checkState(!closed, "Runner pool has been closed");
+                e = available.poll(100, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for a graph executor", ex);
+        }
+        if (closed) {
+            //Closed while waiting: hand the executor over to close()
+            available.add(e);
+            throw new IllegalStateException("Runner pool has been closed");
+        }
+        long start = System.nanoTime();
+        totalWaitNanos.add(start - waitStart);
+        try (PointerScope scope = new PointerScope()) {
+            return e.exec(input, outputs);
+        } finally {
+            long latency = System.nanoTime() - start;
+            numExecutions.increment();
+            totalLatencyNanos.add(latency);
+            maxLatencyNanos.accumulateAndGet(latency, Math::max);
+            //Returned even if the pool is closed: close() is waiting for it
+            available.add(e);
+        }
+    }
+
+    /**
+     * @return Number of model executions since creation or the last {@link #resetMetrics()}
+     */
+    public long getNumExecutions() {
+        return numExecutions.sum();
+    }
+
+    /**
+     * @return Mean execution latency (input binding, inference and output read) in nanoseconds
+     */
+    public double getMeanLatencyNanos() {
+        long n = numExecutions.sum();
+        return n == 0 ? 0.0 : totalLatencyNanos.sum() / (double) n;
+    }
+
+    /**
+     * @return Maximum execution latency in nanoseconds
+     */
+    public long getMaxLatencyNanos() {
+        return maxLatencyNanos.get();
+    }
+
+    /**
+     * @return Mean time, in nanoseconds, spent waiting for a free executor per execution
+     */
+    public double getMeanWaitNanos() {
+        long n = numExecutions.sum();
+        return n == 0 ? 0.0 : totalWaitNanos.sum() / (double) n;
+    }
+
+    /**
+     * Reset the latency metrics
+     */
+    public void resetMetrics() {
+        numExecutions.reset();
+        totalLatencyNanos.reset();
+        totalWaitNanos.reset();
+        maxLatencyNanos.set(0);
+    }
+
+    /**
+     * Close the pool, and release the executors and the module. Blocks until all executions in progress have
+     * finished and their executors have been returned
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        boolean interrupted = false;
+        int returned = 0;
+        while (returned < executors.size()) {
+            try {
+                available.take();
+                returned++;
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        for (PooledExecutor e : executors) {
+            e.close();
+        }
+        executors.clear();
+        if (modFactory != null) {
+            modFactory.releaseReference();
+            modFactory = null;
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return true if the array can be handed to TVM as is, in place of the given executor owned array
+     */
+    private static boolean canBind(INDArray arr, INDArray internal) {
+        if (arr.dataType() != internal.dataType() || !Arrays.equals(arr.shape(), internal.shape())
+                || arr.offset() != 0 || arr.ordering() != 'c' || !Shape.hasDefaultStridesForShape(arr)) {
+            return false;
+        }
+        Pointer p = arr.data().pointer();
+        return (p.address() + p.position() * p.sizeof()) % ALIGNMENT == 0;
+    }
+
+    private class PooledExecutor {
+        private final TVMValue values;
+        private final IntPointer codes;
+        private final TVMArgsSetter setter;
+        private final TVMRetValue rv;
+        private final org.bytedeco.tvm.Module gmod;
+        private final PackedFunc getInputIndex;
+        private final PackedFunc getInput;
+        private final PackedFunc setInputZeroCopy;
+        private final PackedFunc getOutput;
+        private final PackedFunc setOutputZeroCopy;
+        private final PackedFunc run;
+        private final int numOutputs;
+
+        //Views of the executor's own input and output buffers
+        private final INDArray[] inputViews;
+        private final INDArray[] outputViews;
+
+        private PooledExecutor(PackedFunc create) {
+            values = new TVMValue(2);
+            codes = new IntPointer(2);
+            setter = new TVMArgsSetter(values, codes);
+            rv = new TVMRetValue();
+            setter.apply(0, ctx);
+            create.CallPacked(new TVMArgs(values, codes, 1), rv);
+            gmod = rv.asModule();
+            getInputIndex = gmod.GetFunction(new TVMString("get_input_index"));
+            getInput = gmod.GetFunction(new TVMString("get_input"));
+            setInputZeroCopy = gmod.GetFunction(new TVMString("set_input_zero_copy"));
+            getOutput = gmod.GetFunction(new TVMString("get_output"));
+            setOutputZeroCopy = gmod.GetFunction(new TVMString("set_output_zero_copy"));
+            run = gmod.GetFunction(new TVMString("run"));
+            PackedFunc getNumInputs = gmod.GetFunction(new TVMString("get_num_inputs"));
+            PackedFunc getNumOutputs = gmod.GetFunction(new TVMString("get_num_outputs"));
+
+            getNumInputs.CallPacked(new TVMArgs(values, codes, 0), rv);
+            int numInputs = (int) rv.asLong();
+            getNumOutputs.CallPacked(new TVMArgs(values, codes, 0), rv);
+            numOutputs = (int) rv.asLong();
+
+            values.retainReference();
+            codes.retainReference();
+            setter.retainReference();
+            rv.retainReference();
+            gmod.retainReference();
+            for (PackedFunc f : functions()) {
+                f.retainReference();
+            }
+
+            inputViews = new INDArray[numInputs];
+            for (int i = 0; i < numInputs; i++) {
+                inputViews[i] = getArray(internalTensor(getInput, i));
+            }
+            outputViews = new INDArray[numOutputs];
+            for (int i = 0; i < numOutputs; i++) {
+                outputViews[i] = getArray(internalTensor(getOutput, i));
+            }
+        }
+
+        /**
+         * @return the tensor owned by the executor for the given input or output, depending on the getter
+         */
+        private DLTensor internalTensor(PackedFunc getter, int index) {
+            setter.apply(0, index);
+            getter.CallPacked(new TVMArgs(values, codes, 1), rv);
+            return rv.asDLTensor();
+        }
+
+        private PackedFunc[] functions() {
+            return new PackedFunc[]{getInputIndex, getInput, setInputZeroCopy, getOutput, setOutputZeroCopy, run};
+        }
+
+        private int inputIndex(String name) {
+            Integer idx = inputIndices.get(name);
+            if (idx == null) {
+                setter.apply(0, new BytePointer(name));
+                getInputIndex.CallPacked(new TVMArgs(values, codes, 1), rv);
+                idx = (int) rv.asLong();
+                Preconditions.checkArgument(idx >= 0 && idx < inputViews.length, "Unknown input \"%s\"", name);
+                inputIndices.put(name, idx);
+            }
+            return idx;
+        }
+
+        private void bind(PackedFunc f, int index, DLTensor tensor) {
+            setter.apply(0, index);
+            setter.apply(1, tensor);
+            f.CallPacked(new TVMArgs(values, codes, 2), rv);
+        }
+
+        private Map<String,INDArray> exec(Map<String,INDArray> input, Map<String,INDArray> outputs) {
+            boolean[] externalInputs = new boolean[inputViews.length];
+            boolean[] externalOutputs = new boolean[numOutputs];
+            try {
+                for (Map.Entry<String,INDArray> e : input.entrySet()) {
+                    int idx = inputIndex(e.getKey());
+                    INDArray arr = e.getValue();
+                    if (canBind(arr, inputViews[idx])) {
+                        bind(setInputZeroCopy, idx, getTensor(arr, ctx));
+                        externalInputs[idx] = true;
+                    } else {
+                        Preconditions.checkArgument(arr.length() == inputViews[idx].length(), "Input \"%s\" has %s elements, model expects shape %s",
+                                e.getKey(), arr.length(), inputViews[idx].shape());
+                        inputViews[idx].assign(arr.dataType() == inputViews[idx].dataType() ? arr.reshape(inputViews[idx].shape())
+                                : arr.castTo(inputViews[idx].dataType()).reshape(inputViews[idx].shape()));
+                    }
+                }
+
+                List<Integer> toCopy = new ArrayList<>();
+                if (outputs != null) {
+                    for (Map.Entry<String,INDArray> e : outputs.entrySet()) {
+                        int idx = Integer.parseInt(e.getKey());
+                        Preconditions.checkArgument(idx >= 0 && idx < numOutputs, "Unknown output \"%s\", model has %s outputs", e.getKey(), numOutputs);
+                        Preconditions.checkArgument(Arrays.equals(e.getValue().shape(), outputViews[idx].shape()),
+                                "Output %s has shape %s, preallocated array has shape %s", idx, outputViews[idx].shape(), e.getValue().shape());
+                        if (canBind(e.getValue(), outputViews[idx])) {
+                            bind(setOutputZeroCopy, idx, getTensor(e.getValue(), ctx));
+                            externalOutputs[idx] = true;
+                        } else {
+                            toCopy.add(idx);
+                        }
+                    }
+                }
+
+                run.CallPacked(new TVMArgs(values, codes, 0), rv);
+
+                if (outputs != null) {
+                    for (int idx : toCopy) {
+                        outputs.get(Integer.toString(idx)).assign(outputViews[idx]);
+                    }
+                    return outputs;
+                }
+                Map<String,INDArray> ret = new LinkedHashMap<>();
+                for (int i = 0; i < numOutputs; i++) {
+                    ret.put(Integer.toString(i), outputViews[i].dup());
+                }
+                return ret;
+            } finally {
+                //Point the executor back to its own buffers
+                for (int i = 0; i < externalInputs.length; i++) {
+                    if (externalInputs[i]) {
+                        bind(setInputZeroCopy, i, internalTensor(getInput, i));
+                    }
+                }
+                for (int i = 0; i < externalOutputs.length; i++) {
+                    if (externalOutputs[i]) {
+                        bind(setOutputZeroCopy, i, internalTensor(getOutput, i));
+                    }
+                }
+            }
+        }
+
+        private void close() {
+            for (PackedFunc f : functions()) {
+                f.releaseReference();
+            }
+            gmod.releaseReference();
+            rv.releaseReference();
+            setter.releaseReference();
+            codes.releaseReference();
+            values.releaseReference();
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.api.records.reader.impl;
+
+import org.apache.commons.io.FileUtils;
+import org.datavec.api.records.Record;
+import org.datavec.api.records.metadata.RecordMetaData;
+import org.datavec.api.records.reader.impl.csv.CSVColumnBatch;
+import org.datavec.api.records.reader.impl.csv.CSVRecordReader;
+import org.datavec.api.records.reader.impl.csv.MappedCSVRecordReader;
+import org.datavec.api.split.CollectionInputSplit;
+import org.datavec.api.split.FileSplit;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.writable.*;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nd4j.common.tests.BaseND4JTest;
+import org.nd4j.common.tests.tags.TagNames;
+
+import java.io.File;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Mapped Csv Record Reader Test")
+@Tag(TagNames.JAVA_ONLY)
+@Tag(TagNames.FILE_IO)
+class MappedCSVRecordReaderTest extends BaseND4JTest {
+
+    private static final Schema SCHEMA = new Schema.Builder()
+            .addColumnInteger("int").addColumnLong("long").addColumnDouble("double").addColumnFloat("float")
+            .addColumnBoolean("bool").addColumnString("str").build();
+
+    @Test
+    @DisplayName("Test Typed Values And Quoting")
+    void testTypedValuesAndQuoting(@TempDir Path testDir) throws Exception {
+        File f = new File(testDir.toFile(), "typed.csv");
+        String str = "int,long,double,float,bool,str\r\n"
+                + "1,10000000000,1.5,2.25,true,plain\r\n"
+                + "\n"
+                + "-2,-3,1e-3,-0.5,FALSE,\"quoted, with delimiter\"\n"
+                + "3,,,7,false,\"multi\nline \"\"quoted\"\"\"\n"
+                + " 4 , 5 ,0.1,3.4028235E38,true,";
+        FileUtils.writeStringToFile(f, str, StandardCharsets.UTF_8);
+
+        List<List<Writable>> exp = new ArrayList<>();
+        exp.add(Arrays.asList(new IntWritable(1), new LongWritable(10000000000L), new DoubleWritable(1.5),
+                new FloatWritable(2.25f), new BooleanWritable(true), new Text("plain")));
+        exp.add(Arrays.asList(new IntWritable(-2), new LongWritable(-3), new DoubleWritable(1e-3),
+                new FloatWritable(-0.5f), new BooleanWritable(false), new Text("quoted, with delimiter")));
+        exp.add(Arrays.asList(new IntWritable(3), NullWritable.INSTANCE, NullWritable.INSTANCE,
+                new FloatWritable(7f), new BooleanWritable(false), new Text("multi\nline \"quoted\"")));
+        exp.add(Arrays.asList(new IntWritable(4), new LongWritable(5), new DoubleWritable(0.1),
+                new FloatWritable(3.4028235E38f), new BooleanWritable(true), new Text("")));
+
+        MappedCSVRecordReader rr = new MappedCSVRecordReader(SCHEMA, 1, ',', '"');
+        //Small chunks: one or two records per chunk
+        rr.setChunkSizeBytes(16);
+        rr.initialize(new FileSplit(f));
+        for (int i = 0; i < 2; i++) {
+            List<List<Writable>> out = new ArrayList<>();
+            while (rr.hasNext()) {
+                out.add(rr.next());
+            }
+            assertEquals(exp, out);
+            rr.reset();
+        }
+        assertEquals(5, rr.getNumRecords(0));
+        assertEquals(exp.get(2), rr.getRecord(0, 3));
+        rr.close();
+    }
+
+    @Test
+    @DisplayName("Test Same As CSV Record Reader")
+    void testSameAsCSVRecordReader(@TempDir Path testDir) throws Exception {
+        Random r = new Random(12345);
+        List<URI> uris = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            File f = new File(testDir.toFile(), "data_" + i + ".csv");
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < 2000; j++) {
+                sb.append(r.nextInt()).append(',').append(r.nextDouble()).append(",text").append(j).append('\n');
+            }
+            FileUtils.writeStringToFile(f, sb.toString(), StandardCharsets.UTF_8);
+            uris.add(f.toURI());
+        }
+
+        CSVRecordReader expReader = new CSVRecordReader();
+        expReader.initialize(new CollectionInputSplit(uris));
+        MappedCSVRecordReader rr = new MappedCSVRecordReader(null);
+        rr.setChunkSizeBytes(4096);
+        rr.setNumThreads(4);
+        rr.initialize(new CollectionInputSplit(uris));
+
+        int count = 0;
+        while (expReader.hasNext()) {
+            assertTrue(rr.hasNext());
+            assertEquals(expReader.next(), rr.next());
+            count++;
+        }
+        assertFalse(rr.hasNext());
+        assertEquals(6000, count);
+        rr.close();
+    }
+
+    @Test
+    @DisplayName("Test Meta Data And Batches")
+    void testMetaDataAndBatches(@TempDir Path testDir) throws Exception {
+        File f = new File(testDir.toFile(), "batches.csv");
+        StringBuilder sb = new StringBuilder();
+        for (int j = 0; j < 500; j++) {
+            sb.append(j).append(',').append(j * 10L).append(',').append(j / 2.0).append(',').append(j / 4.0f)
+                    .append(',').append(j % 2 == 0).append(",s").append(j).append('\n');
+        }
+        FileUtils.writeStringToFile(f, sb.toString(), StandardCharsets.UTF_8);
+
+        MappedCSVRecordReader rr = new MappedCSVRecordReader(SCHEMA);
+        rr.setChunkSizeBytes(1024);
+        rr.initialize(new FileSplit(f));
+
+        List<Record> records = new ArrayList<>();
+        List<RecordMetaData> meta = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Record rec = rr.nextRecord();
+            records.add(rec);
+            meta.add(rec.getMetaData());
+        }
+        List<Record> loaded = rr.loadFromMetaData(meta);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(records.get(i).getRecord(), loaded.get(i).getRecord());
+        }
+
+        int expNext = 10;
+        CSVColumnBatch batch;
+        while ((batch = rr.nextBatch()) != null) {
+            int[] ints = batch.getIntColumn(0);
+            double[] doubles = batch.getDoubleColumn(2);
+            String[] strings = batch.getStringColumn(5);
+            for (int i = 0; i < batch.numRecords(); i++) {
+                assertEquals(expNext, ints[i]);
+                assertEquals(expNext / 2.0, doubles[i], 0.0);
+                assertEquals("s" + expNext, strings[i]);
+                expNext++;
+            }
+        }
+        assertEquals(500, expNext);
+        rr.close();
+    }
+
+    @Test
+    @DisplayName("Test Quote Inside Unquoted Value")
+    void testQuoteInsideUnquotedValue(@TempDir Path testDir) throws Exception {
+        //A quote character that is not at the start of a value is a literal character, not the start of a quoted value
+        File f = new File(testDir.toFile(), "stray_quote.csv");
+        FileUtils.writeStringToFile(f, "12\" pizza,3\nplain,4\n\"quoted\" tail,5\nsub,8\"\n",
+                StandardCharsets.UTF_8);
+
+        List<List<Writable>> exp = new ArrayList<>();
+        exp.add(Arrays.asList(new Text("12\" pizza"), new Text("3")));
+        exp.add(Arrays.asList(new Text("plain"), new Text("4")));
+        exp.add(Arrays.asList(new Text("quoted tail"), new Text("5")));
+        exp.add(Arrays.asList(new Text("sub"), new Text("8\"")));
+
+        for (int chunkSize : new int[]{1, 1024}) {
+            MappedCSVRecordReader rr = new MappedCSVRecordReader(null);
+            rr.setChunkSizeBytes(chunkSize);
+            rr.initialize(new FileSplit(f));
+            List<List<Writable>> out = new ArrayList<>();
+            while (rr.hasNext()) {
+                out.add(rr.next());
+            }
+            assertEquals(exp, out);
+            assertEquals(4, rr.getNumRecords(0));
+            for (int i = 0; i < exp.size(); i++) {
+                assertEquals(exp.get(i), rr.getRecord(0, i));
+            }
+            rr.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Test Random Access Across Index Blocks")
+    void testRandomAccessAcrossIndexBlocks(@TempDir Path testDir) throws Exception {
+        //The index only stores the offset of every 256th record: records in between are found by scanning
+        File f = new File(testDir.toFile(), "blocks.csv");
+        StringBuilder sb = new StringBuilder();
+        for (int j = 0; j < 1000; j++) {
+            sb.append(j).append(",\"s\n").append(j).append("\"\n");
+            if (j % 7 == 0)
+                sb.append('\n');
+        }
+        FileUtils.writeStringToFile(f, sb.toString(), StandardCharsets.UTF_8);
+
+        for (int chunkSize : new int[]{100, 1 << 20}) {
+            MappedCSVRecordReader rr = new MappedCSVRecordReader(null, 3, ',', '"');
+            rr.setChunkSizeBytes(chunkSize);
+            rr.initialize(new FileSplit(f));
+            assertEquals(1000, rr.getNumRecords(0));
+            int expNext = 3;
+            while (rr.hasNext()) {
+                assertEquals(Arrays.asList(new Text(String.valueOf(expNext)), new Text("s\n" + expNext)), rr.next());
+                expNext++;
+            }
+            assertEquals(1000, expNext);
+            for (int i : new int[]{0, 255, 256, 257, 511, 512, 999}) {
+                assertEquals(Arrays.asList(new Text(String.valueOf(i)), new Text("s\n" + i)), rr.getRecord(0, i));
+            }
+            rr.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Test Wrong Number Of Values")
+    void testWrongNumberOfValues(@TempDir Path testDir) throws Exception {
+        File f = new File(testDir.toFile(), "invalid.csv");
+        FileUtils.writeStringToFile(f, "1,2,3.0,4.0,true,a\n1,2,3.0\n", StandardCharsets.UTF_8);
+        MappedCSVRecordReader rr = new MappedCSVRecordReader(SCHEMA);
+        rr.initialize(new FileSplit(f));
+        assertThrows(IllegalStateException.class, () -> {
+            while (rr.hasNext()) {
+                rr.next();
+            }
+        });
+        rr.close();
+    }
+
+    @Override
+    public long getTimeoutMilliseconds() {
+        return Long.MAX_VALUE;
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.jdbc.impl;
+
+import org.apache.commons.dbutils.DbUtils;
+import org.apache.commons.io.FileUtils;
+import org.apache.derby.jdbc.EmbeddedDataSource;
+import org.datavec.api.conf.Configuration;
+import org.datavec.api.writable.*;
+import org.datavec.jdbc.records.reader.impl.jdbc.JDBCRecordReader;
+import org.datavec.jdbc.records.reader.impl.jdbc.PartitionedJDBCRecordReader;
+import org.junit.jupiter.api.*;
+import org.nd4j.common.tests.tags.TagNames;
+
+import java.io.File;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Partitioned Jdbc Record Reader Test")
+@Tag(TagNames.FILE_IO)
+@Tag(TagNames.JAVA_ONLY)
+public class PartitionedJDBCRecordReaderTest {
+
+    private static final int NUM_ROWS = 1000;
+
+    Connection conn;
+
+    EmbeddedDataSource dataSource;
+
+    private final String dbName = "datavecPartitionedTests";
+
+    private final String query = "SELECT Id, Name, Price FROM Items";
+
+    @BeforeEach
+    void setUp() throws Exception {
+        if (new File(dbName).exists())
+            FileUtils.forceDelete(new File(dbName));
+        dataSource = new EmbeddedDataSource();
+        dataSource.setDatabaseName(dbName);
+        dataSource.setCreateDatabase("create");
+        conn = dataSource.getConnection();
+        try (Statement stmt = conn.createStatement()) {
+            try {
+                stmt.execute("DROP TABLE Items");
+            } catch (SQLException ex) {
+            }
+            stmt.execute("CREATE TABLE Items (Id INTEGER, Name VARCHAR(20), Price DOUBLE)");
+        }
+        try (PreparedStatement ps = conn.prepareStatement("INSERT INTO Items VALUES (?, ?, ?)")) {
+            for (int i = 0; i < NUM_ROWS; i++) {
+                //Some rows without a partition key: these must be read as well
+                if (i % 97 == 0)
+                    ps.setNull(1, Types.INTEGER);
+                else
+                    ps.setInt(1, i);
+                ps.setString(2, "Item" + i + " ");
+                ps.setDouble(3, i / 4.0);
+                ps.addBatch();
+            }
+            ps.executeBatch();
+        }
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        DbUtils.closeQuietly(conn);
+    }
+
+    @Test
+    @DisplayName("Test Same Records As Single Cursor Reader")
+    void testSameRecordsAsJdbcRecordReader() throws Exception {
+        List<List<Writable>> expected = new ArrayList<>();
+        try (JDBCRecordReader reader = new JDBCRecordReader(query, dataSource)) {
+            reader.setTrimStrings(true);
+            reader.initialize(null);
+            while (reader.hasNext()) {
+                expected.add(reader.next());
+            }
+        }
+        assertEquals(NUM_ROWS, expected.size());
+
+        try (PartitionedJDBCRecordReader reader = new PartitionedJDBCRecordReader(query, dataSource, "Id", 5)) {
+            reader.setTrimStrings(true);
+            reader.setFetchSize(50);
+            reader.setBatchSize(16);
+            reader.setNumThreads(3);
+            reader.initialize(null);
+            assertTrue(reader.batchesSupported());
+
+            List<List<Writable>> records = new ArrayList<>();
+            while (reader.hasNext()) {
+                records.add(reader.next());
+            }
+            assertEquals(sorted(expected), sorted(records));
+
+            reader.reset();
+            List<List<Writable>> afterReset = new ArrayList<>();
+            while (reader.hasNext()) {
+                afterReset.addAll(reader.next(100));
+            }
+            assertEquals(sorted(expected), sorted(afterReset));
+        }
+    }
+
+    @Test
+    @DisplayName("Test Explicit Bounds")
+    void testExplicitBounds() throws Exception {
+        //Bounds narrower than the data: the first and last partitions are open ended
+        try (PartitionedJDBCRecordReader reader = new PartitionedJDBCRecordReader(query, dataSource, "Id", 4)) {
+            reader.setLowerBound(100);
+            reader.setUpperBound(200);
+            reader.initialize(null);
+            int count = 0;
+            while (reader.hasNext()) {
+                List<Writable> next = reader.next();
+                assertEquals(3, next.size());
+                count++;
+            }
+            assertEquals(NUM_ROWS, count);
+        }
+    }
+
+    @Test
+    @DisplayName("Test Configuration Initialization")
+    void testConfigurationInitialization() throws Exception {
+        try (PartitionedJDBCRecordReader reader = new PartitionedJDBCRecordReader(query)) {
+            Configuration conf = new Configuration();
+            conf.set(JDBCRecordReader.JDBC_URL, "jdbc:derby:" + dbName + ";create=true");
+            conf.set(JDBCRecordReader.JDBC_DRIVER_CLASS_NAME, "org.apache.derby.jdbc.EmbeddedDriver");
+            conf.set(PartitionedJDBCRecordReader.PARTITION_COLUMN, "Id");
+            conf.setInt(PartitionedJDBCRecordReader.NUM_PARTITIONS, 3);
+            reader.initialize(conf, null);
+            int count = 0;
+            while (reader.hasNext()) {
+                reader.next();
+                count++;
+            }
+            assertEquals(NUM_ROWS, count);
+        }
+    }
+
+    @Test
+    @DisplayName("Test Read All Types")
+    void testReadAllTypes() throws Exception {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("DROP TABLE AllTypes");
+        } catch (SQLException ex) {
+        }
+        TestDb.buildAllTypesTable(conn);
+        List<Writable> expected;
+        try (JDBCRecordReader reader = new JDBCRecordReader("SELECT * FROM AllTypes", dataSource)) {
+            reader.initialize(null);
+            expected = reader.next();
+        }
+
+        try (PartitionedJDBCRecordReader reader = new PartitionedJDBCRecordReader("SELECT * FROM AllTypes", dataSource, "integerCol", 2)) {
+            reader.initialize(null);
+            List<Writable> item = reader.next();
+            assertFalse(reader.hasNext());
+            assertEquals(15, item.size());
+            //Same types (and values) as the single cursor reader, see JDBCRecordReaderTest.testReadAllTypes
+            Class<?>[] types = {BooleanWritable.class, Text.class, Text.class, Text.class, Text.class, Text.class,
+                    Text.class,
+                    DoubleWritable.class,   // float to double (derby's float is an alias of double by default)
+                    FloatWritable.class,    // real to float (derby returns a Float for a real column)
+                    DoubleWritable.class, DoubleWritable.class, DoubleWritable.class,
+                    IntWritable.class, IntWritable.class, LongWritable.class};
+            for (int i = 0; i < types.length; i++) {
+                assertEquals(types[i], expected.get(i).getClass(), "Column " + i);
+                assertEquals(types[i], item.get(i).getClass(), "Column " + i);
+            }
+            assertEquals(expected, item);
+        }
+    }
+
+    @Test
+    @DisplayName("Test Close Before End")
+    void testCloseBeforeEnd() throws Exception {
+        PartitionedJDBCRecordReader reader = new PartitionedJDBCRecordReader(query, dataSource, "Id", 8);
+        reader.setBatchSize(1);
+        reader.initialize(null);
+        assertNotNull(reader.next());
+        reader.close();
+    }
+
+    @Test
+    @DisplayName("Test Lacking Partition Column Should Fail")
+    void testLackingPartitionColumnShouldFail() {
+        assertThrows(IllegalStateException.class, () -> {
+            try (PartitionedJDBCRecordReader reader = new PartitionedJDBCRecordReader(query, dataSource, null, 4)) {
+                reader.initialize(null);
+            }
+        });
+    }
+
+    private static List<List<Writable>> sorted(List<List<Writable>> records) {
+        List<List<Writable>> ret = new ArrayList<>(records);
+        ret.sort(Comparator.comparing(Object::toString));
+        return ret;
+    }
+}
@@ -21,25 +21,35 @@
 package org.datavec.local.transforms.analysis;
 
 import org.datavec.api.records.reader.RecordReader;
+import org.datavec.api.records.reader.impl.collection.CollectionRecordReader;
 import org.datavec.api.records.reader.impl.csv.CSVRecordReader;
 import org.datavec.api.split.FileSplit;
 import org.datavec.api.transform.analysis.DataAnalysis;
+import org.datavec.api.transform.analysis.columns.DoubleAnalysis;
+import org.datavec.api.transform.analysis.columns.IntegerAnalysis;
+import org.datavec.api.transform.analysis.columns.NDArrayAnalysis;
 import org.datavec.api.transform.analysis.columns.NumericalColumnAnalysis;
 import org.datavec.api.transform.schema.Schema;
 import org.datavec.api.util.ndarray.RecordConverter;
+import org.datavec.api.writable.DoubleWritable;
+import org.datavec.api.writable.NDArrayWritable;
 import org.datavec.api.writable.Writable;
 import org.datavec.local.transforms.AnalyzeLocal;
+import org.datavec.local.transforms.analysis.sketch.SketchAnalysis;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.nd4j.common.io.ClassPathResource;
 import org.nd4j.common.tests.tags.TagNames;
 import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.*;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 @Tag(TagNames.FILE_IO)
 @Tag(TagNames.JAVA_ONLY)
 public class TestAnalyzeLocal {
@@ -81,4 +91,153 @@ public class TestAnalyzeLocal {
 
     }
 
+    @Test
+    public void testAnalysisSketch() throws Exception {
+        RecordReader rr = new CSVRecordReader();
+        rr.initialize(new FileSplit(new ClassPathResource("iris.txt").getFile()));
+
+        Schema s = new Schema.Builder()
+                .addColumnsDouble("0", "1", "2", "3")
+                .addColumnInteger("label")
+                .build();
+
+        DataAnalysis exact = AnalyzeLocal.analyze(s, rr);
+
+        List<List<Writable>> list = new ArrayList<>();
+        rr.reset();
+        while(rr.hasNext()){
+            list.add(rr.next());
+        }
+
+        //Split the data into 3 parts, analyzed in parallel
+        List<RecordReader> splits = new ArrayList<>();
+        for( int i = 0; i < 3; i++) {
+            splits.add(new CollectionRecordReader(list.subList(i * list.size() / 3, (i + 1) * list.size() / 3)));
+        }
+        SketchAnalysis sketch = AnalyzeLocal.analyzeSketch(s, splits, 30, 3);
+        DataAnalysis da = sketch.getDataAnalysis();
+
+        for( int i = 0; i < 5; i++) {
+            NumericalColumnAnalysis e = (NumericalColumnAnalysis) exact.getColumnAnalysis().get(i);
+            NumericalColumnAnalysis a = (NumericalColumnAnalysis) da.getColumnAnalysis().get(i);
+            assertEquals(e.getCountTotal(), a.getCountTotal());
+            assertEquals(e.getMean(), a.getMean(), 1e-6);
+            assertEquals(e.getSampleStdev(), a.getSampleStdev(), 1e-6);
+            assertEquals(e.getMinDouble(), a.getMinDouble(), 0.0);
+            assertEquals(e.getMaxDouble(), a.getMaxDouble(), 0.0);
+
+            //Approximate histogram: same buckets, same total count, and each bucket within the rank error
+            double[] bins = histogramBuckets(a);
+            long[] counts = histogramCounts(a);
+            assertArrayEquals(histogramBuckets(e), bins, 0.0);
+            assertEquals(list.size(), Arrays.stream(counts).sum());
+            double[] values = new double[list.size()];
+            for( int j = 0; j < values.length; j++) {
+                values[j] = list.get(j).get(i).toDouble();
+            }
+            assertHistogramRankError(bins, histogramCounts(e), counts, values, rankTolerance(list.size()));
+
+            Set<Writable> unique = new HashSet<>();
+            for(List<Writable> l : list) {
+                unique.add(l.get(i));
+            }
+            long approxUnique = sketch.getApproxDistinctCount(s.getName(i));
+            assertEquals(unique.size(), approxUnique, Math.max(2, 0.05 * unique.size()));
+        }
+    }
+
+    @Test
+    public void testAnalysisSketchHistogramRankError() throws Exception {
+        Schema s = new Schema.Builder()
+                .addColumnDouble("d")
+                .build();
+
+        int n = 20000;
+        Random r = new Random(12345);
+        List<List<Writable>> list = new ArrayList<>();
+        double[] values = new double[n];
+        for( int i = 0; i < n; i++) {
+            values[i] = r.nextGaussian();
+            list.add(Collections.<Writable>singletonList(new DoubleWritable(values[i])));
+        }
+
+        List<RecordReader> splits = new ArrayList<>();
+        for( int i = 0; i < 4; i++) {
+            splits.add(new CollectionRecordReader(list.subList(i * n / 4, (i + 1) * n / 4)));
+        }
+        DoubleAnalysis e = (DoubleAnalysis) AnalyzeLocal.analyze(s, new CollectionRecordReader(list), 20).getColumnAnalysis().get(0);
+        DoubleAnalysis a = (DoubleAnalysis) AnalyzeLocal.analyzeSketch(s, splits, 20, 4).getDataAnalysis().getColumnAnalysis().get(0);
+
+        assertArrayEquals(e.getHistogramBuckets(), a.getHistogramBuckets(), 0.0);
+        assertHistogramRankError(a.getHistogramBuckets(), e.getHistogramBucketCounts(), a.getHistogramBucketCounts(),
+                values, rankTolerance(n));
+    }
+
+    @Test
+    public void testAnalysisSketchNDArrayViews() throws Exception {
+        Schema s = new Schema.Builder()
+                .addColumnNDArray("arr", new long[]{2, 2})
+                .build();
+
+        //Views of larger arrays: the values outside of the views must not be included
+        List<List<Writable>> list = new ArrayList<>();
+        for( int i = 0; i < 20; i++) {
+            INDArray base = Nd4j.valueArrayOf(new long[]{4, 4}, 1000.0, DataType.DOUBLE);
+            base.get(NDArrayIndex.interval(1, 3), NDArrayIndex.interval(1, 3)).assign(Nd4j.rand(DataType.DOUBLE, 2, 2));
+            INDArray view = base.get(NDArrayIndex.interval(1, 3), NDArrayIndex.interval(1, 3));
+            list.add(Collections.<Writable>singletonList(new NDArrayWritable(i % 2 == 0 ? view : view.transpose())));
+        }
+
+        DataAnalysis exact = AnalyzeLocal.analyze(s, new CollectionRecordReader(list));
+        SketchAnalysis sketch = AnalyzeLocal.analyzeSketch(s, new CollectionRecordReader(list));
+
+        NDArrayAnalysis e = (NDArrayAnalysis) exact.getColumnAnalysis().get(0);
+        NDArrayAnalysis a = (NDArrayAnalysis) sketch.getDataAnalysis().getColumnAnalysis().get(0);
+        assertEquals(80, e.getTotalNDArrayValues());
+        assertEquals(e.getTotalNDArrayValues(), a.getTotalNDArrayValues());
+        assertTrue(a.getMaxValue() < 1.0);
+        assertArrayEquals(e.getHistogramBuckets(), a.getHistogramBuckets(), 0.0);
+        assertEquals(e.getTotalNDArrayValues(), Arrays.stream(a.getHistogramBucketCounts()).sum());
+    }
+
+    /**
+     * Rank error tolerance for the sketch histograms: 1% of the number of values (at least 1). With the t-digest
+     * compression used by the sketch analysis, the rank error of the cumulative distribution is well below that
+     */
+    private static long rankTolerance(long n) {
+        return Math.max(1, (long) Math.ceil(0.01 * n));
+    }
+
+    /**
+     * Check the approximate histogram against the exact one: at the upper edge of each bucket, the approximate number
+     * of values below the edge must be within the rank tolerance of the exact number. The exact histogram counts values
+     * equal to an edge in the bucket above it, whereas the sketch may count any part of them below it
+     */
+    private static void assertHistogramRankError(double[] bins, long[] exactCounts, long[] approxCounts, double[] values,
+                                                 long rankTolerance) {
+        assertEquals(exactCounts.length, approxCounts.length);
+        long exactCumulative = 0;
+        long approxCumulative = 0;
+        for( int i = 0; i < exactCounts.length; i++) {
+            exactCumulative += exactCounts[i];
+            approxCumulative += approxCounts[i];
+            long ties = 0;
+            for(double d : values) {
+                if(d == bins[i + 1])
+                    ties++;
+            }
+            assertTrue(approxCumulative >= exactCumulative - rankTolerance && approxCumulative <= exactCumulative + ties + rankTolerance,
+                    "Bucket " + i + ": approximate count below " + bins[i + 1] + " is " + approxCumulative + ", exact is "
+                            + exactCumulative + " (" + ties + " values equal to the edge), tolerance " + rankTolerance);
+        }
+    }
+
+    private static double[] histogramBuckets(NumericalColumnAnalysis a) {
+        return a instanceof DoubleAnalysis ? ((DoubleAnalysis) a).getHistogramBuckets() : ((IntegerAnalysis) a).getHistogramBuckets();
+    }
+
+    private static long[] histogramCounts(NumericalColumnAnalysis a) {
+        return a instanceof DoubleAnalysis ? ((DoubleAnalysis) a).getHistogramBucketCounts() : ((IntegerAnalysis) a).getHistogramBucketCounts();
+    }
+
 }
@@ -0,0 +1,195 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.datavec.local.transforms.external;
+
+import org.datavec.api.transform.ReduceOp;
+import org.datavec.api.transform.TransformProcess;
+import org.datavec.api.transform.join.Join;
+import org.datavec.api.transform.reduce.Reducer;
+import org.datavec.api.transform.schema.Schema;
+import org.datavec.api.transform.sequence.comparator.NumericalColumnComparator;
+import org.datavec.api.writable.*;
+import org.datavec.api.writable.comparator.LongWritableComparator;
+import org.datavec.local.transforms.LocalTransformExecutor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nd4j.common.tests.tags.TagNames;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag(TagNames.FILE_IO)
+@Tag(TagNames.JAVA_ONLY)
+public class TestExternalOperations {
+
+    @AfterEach
+    public void after() {
+        LocalTransformExecutor.setSpillConfig(null);
+    }
+
+    private static SpillConfig smallBudget(Path dir) {
+        //A few records per run/partition, to force spilling, multiple merge passes and recursive partitioning
+        return SpillConfig.builder().memoryBudgetBytes(2000).numPartitions(3).maxMergeFanIn(2)
+                .tempDirectory(dir.toFile()).build();
+    }
+
+    private static List<List<Writable>> data(int n, int numKeys) {
+        Random r = new Random(12345);
+        List<List<Writable>> out = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            out.add(Arrays.<Writable>asList(new Text("key" + r.nextInt(numKeys)), new LongWritable(r.nextInt(50)),
+                    new DoubleWritable(i)));
+        }
+        return out;
+    }
+
+    private static List<List<Writable>> sorted(List<List<Writable>> in) {
+        List<List<Writable>> out = new ArrayList<>(in);
+        out.sort(Comparator.comparing(Object::toString));
+        return out;
+    }
+
+    @Test
+    public void testExternalSortStable(@TempDir Path dir) {
+        List<List<Writable>> in = data(500, 10);
+        Comparator<List<Writable>> c = Comparator.comparingLong(l -> l.get(1).toLong());
+        List<List<Writable>> exp = new ArrayList<>(in);
+        exp.sort(c);
+
+        List<List<Writable>> out = new ExternalSorter(smallBudget(dir)).sortToList(in.iterator(), c);
+        assertEquals(exp, out);
+        assertEquals(0, dir.toFile().listFiles().length);
+    }
+
+    @Test
+    public void testCalculateSortedRank(@TempDir Path dir) {
+        Schema s = new Schema.Builder().addColumnString("key").addColumnLong("value").addColumnDouble("idx").build();
+        TransformProcess tp = new TransformProcess.Builder(s)
+                .calculateSortedRank("rank", "value", new LongWritableComparator(), false).build();
+        List<List<Writable>> in = data(500, 10);
+
+        List<List<Writable>> exp = LocalTransformExecutor.execute(in, tp);
+        LocalTransformExecutor.setSpillConfig(smallBudget(dir));
+        List<List<Writable>> out = LocalTransformExecutor.execute(in, tp);
+
+        assertEquals(in.size(), out.size());
+        for (int i = 0; i < out.size(); i++) {
+            assertEquals(i, out.get(i).get(3).toLong());
+            if (i > 0)
+                assertTrue(out.get(i - 1).get(1).toLong() >= out.get(i).get(1).toLong());
+        }
+        assertEquals(sorted(exp), sorted(out));
+    }
+
+    @Test
+    public void testReduceByKey(@TempDir Path dir) {
+        Schema s = new Schema.Builder().addColumnString("key").addColumnLong("value").addColumnDouble("idx").build();
+        TransformProcess tp = new TransformProcess.Builder(s).reduce(new Reducer.Builder(ReduceOp.Sum)
+                .keyColumns("key").countColumns("value").build()).build();
+        List<List<Writable>> in = data(1000, 200);
+
+        List<List<Writable>> exp = LocalTransformExecutor.execute(in, tp);
+        LocalTransformExecutor.setSpillConfig(smallBudget(dir));
+        List<List<Writable>> out = LocalTransformExecutor.execute(in, tp);
+
+        assertEquals(sorted(exp), sorted(out));
+        assertEquals(0, dir.toFile().listFiles().length);
+    }
+
+    @Test
+    public void testConvertToSequence(@TempDir Path dir) {
+        Schema s = new Schema.Builder().addColumnString("key").addColumnLong("value").addColumnDouble("idx").build();
+        TransformProcess tp = new TransformProcess.Builder(s)
+                .convertToSequence("key", new NumericalColumnComparator("idx")).build();
+        List<List<Writable>> in = data(500, 50);
+
+        List<List<List<Writable>>> exp = LocalTransformExecutor.executeToSequence(in, tp);
+        LocalTransformExecutor.setSpillConfig(smallBudget(dir));
+        List<List<List<Writable>>> out = LocalTransformExecutor.executeToSequence(in, tp);
+
+        Comparator<List<List<Writable>>> bySeqKey = Comparator.comparing(seq -> seq.get(0).get(0).toString());
+        exp = new ArrayList<>(exp);
+        out = new ArrayList<>(out);
+        exp.sort(bySeqKey);
+        out.sort(bySeqKey);
+        assertEquals(exp, out);
+        assertEquals(0, dir.toFile().listFiles().length);
+    }
+
+    @Test
+    public void testJoin(@TempDir Path dir) {
+        Schema leftSchema = new Schema.Builder().addColumnLong("id").addColumnString("name").build();
+        Schema rightSchema = new Schema.Builder().addColumnLong("purchaseId").addColumnLong("id").addColumnDouble("amount").build();
+        List<List<Writable>> left = new ArrayList<>();
+        for (int i = 0; i < 200; i += 2) {
+            left.add(Arrays.<Writable>asList(new LongWritable(i), new Text("customer" + i)));
+        }
+        List<List<Writable>> right = new ArrayList<>();
+        Random r = new Random(12345);
+        for (int i = 0; i < 600; i++) {
+            right.add(Arrays.<Writable>asList(new LongWritable(i), new LongWritable(r.nextInt(300)), new DoubleWritable(i / 10.0)));
+        }
+
+        for (Join.JoinType t : Join.JoinType.values()) {
+            Join join = new Join.Builder(t).setJoinColumns("id").setSchemas(leftSchema, rightSchema).build();
+            LocalTransformExecutor.setSpillConfig(null);
+            List<List<Writable>> exp = LocalTransformExecutor.executeJoin(join, left, right);
+            LocalTransformExecutor.setSpillConfig(smallBudget(dir));
+            List<List<Writable>> out = LocalTransformExecutor.executeJoin(join, left, right);
+            assertEquals(sorted(exp), sorted(out), t.toString());
+        }
+        File[] remaining = dir.toFile().listFiles();
+        assertEquals(0, remaining.length);
+    }
+
+    @Test
+    public void testSpillFilesDeletedOnFailure(@TempDir Path dir) {
+        List<List<Writable>> in = data(500, 10);
+        SpillConfig config = smallBudget(dir);
+
+        //Fail part way through the merge passes, after runs and intermediate merged runs have been written
+        AtomicInteger count = new AtomicInteger();
+        Comparator<List<Writable>> failing = (a, b) -> {
+            if (count.incrementAndGet() > 3000)
+                throw new IllegalStateException("Comparator failure");
+            return Long.compare(a.get(1).toLong(), b.get(1).toLong());
+        };
+        assertThrows(IllegalStateException.class, () -> new ExternalSorter(config).sortToList(in.iterator(), failing));
+        assertEquals(0, dir.toFile().listFiles().length);
+
+        //Fail while consuming the groups of a spilled partition
+        AtomicInteger groups = new AtomicInteger();
+        assertThrows(IllegalStateException.class, () -> new ExternalGrouper(config).group(data(500, 50).iterator(),
+                l -> l.get(0).toString(), (k, g) -> {
+                    if (groups.incrementAndGet() > 10)
+                        throw new IllegalStateException("Consumer failure");
+                }));
+        assertEquals(0, dir.toFile().listFiles().length);
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.graph.models.deepwalk;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.graph.Graph;
+import org.deeplearning4j.graph.api.Edge;
+import org.deeplearning4j.graph.models.embeddings.InMemoryGraphLookupTable;
+import org.deeplearning4j.graph.vertexfactory.StringVertexFactory;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@NativeTag
+public class TestBatchedGraphLookupTable extends BaseDL4JTest {
+
+    @Test
+    @Timeout(60000)
+    public void testBatchedMatchesPairwise() {
+        GraphHuffman tree = buildTree(20);
+        InMemoryGraphLookupTable pairwise = new InMemoryGraphLookupTable(20, 8, tree, 0.1);
+        InMemoryGraphLookupTable batched = new InMemoryGraphLookupTable(20, 8, tree, 0.1);
+        batched.setVertexVectors(pairwise.getVertexVectors().dup());
+        batched.getOutWeights().assign(pairwise.getOutWeights());
+
+        Random r = new Random(12345);
+        for (int i = 0; i < 200; i++) {
+            int first = r.nextInt(20);
+            int second = r.nextInt(20);
+            pairwise.iterate(first, second);
+            batched.iterate(new int[]{first}, new int[]{second});
+        }
+
+        //Sigmoid lookup table vs. exact sigmoid
+        assertEquals(0.0, pairwise.getVertexVectors().distance2(batched.getVertexVectors()), 1e-2);
+        assertEquals(0.0, pairwise.getOutWeights().distance2(batched.getOutWeights()), 1e-2);
+    }
+
+    @Test
+    @Timeout(60000)
+    public void testBatchedPaddedPaths() {
+        GraphHuffman tree = buildTree(20);
+        InMemoryGraphLookupTable table = new InMemoryGraphLookupTable(20, 8, tree, 0.1);
+
+        //Pairs with different path lengths: shorter paths are padded within the batch
+        int[] first = {0, 1, 2, 3};
+        int[] second = new int[4];
+        int minLength = Integer.MAX_VALUE;
+        int maxLength = 0;
+        for (int i = 0; i < 20; i++) {
+            if (tree.getCodeLength(i) < minLength) {
+                minLength = tree.getCodeLength(i);
+                second[0] = second[1] = i;
+            }
+            if (tree.getCodeLength(i) > maxLength) {
+                maxLength = tree.getCodeLength(i);
+                second[2] = second[3] = i;
+            }
+        }
+        assertTrue(maxLength > minLength);
+
+        Set<Integer> innerNodes = new HashSet<>();
+        for (int v : second) {
+            for (int j = 0; j < tree.getCodeLength(v); j++)
+                innerNodes.add(tree.getPathInnerNodes(v)[j]);
+        }
+
+        INDArray vectorsBefore = table.getVertexVectors().dup();
+        INDArray weightsBefore = table.getOutWeights().dup();
+        table.iterate(first, second);
+
+        for (int i = 0; i < 20; i++) {
+            boolean updated = i < first.length;
+            assertEquals(!updated, vectorsBefore.getRow(i).equals(table.getVertexVectors().getRow(i)), "Vertex " + i);
+        }
+        for (int i = 0; i < weightsBefore.rows(); i++) {
+            if (!innerNodes.contains(i))
+                assertEquals(weightsBefore.getRow(i), table.getOutWeights().getRow(i), "Inner node " + i);
+        }
+    }
+
+    @Test
+    @Timeout(120000)
+    public void testBatchedFit() {
+        Random r = new Random(12345);
+        int nVertices = 30;
+        Graph<String, String> graph = new Graph<>(nVertices, new StringVertexFactory());
+        for (int i = 0; i < nVertices; i++) {
+            for (int j = 0; j < 4; j++) {
+                int to = r.nextInt(nVertices);
+                graph.addEdge(new Edge<>(i, to, i + "--" + to, false));
+            }
+        }
+
+        DeepWalk<String, String> deepWalk = new DeepWalk.Builder<String, String>().learningRate(0.01)
+                        .vectorSize(20).windowSize(2).batchSize(64).seed(12345).build();
+        assertEquals(64, deepWalk.getBatchSize());
+        deepWalk.initialize(graph);
+
+        INDArray before = ((InMemoryGraphLookupTable) deepWalk.lookupTable()).getVertexVectors().dup();
+        deepWalk.fit(graph, 6);
+        INDArray after = ((InMemoryGraphLookupTable) deepWalk.lookupTable()).getVertexVectors();
+
+        assertNotEquals(before, after);
+        for (int i = 0; i < nVertices; i++)
+            assertFalse(Double.isNaN(deepWalk.getVertexVector(i).sumNumber().doubleValue()));
+    }
+
+    private static GraphHuffman buildTree(int nVertices) {
+        int[] degrees = new int[nVertices];
+        for (int i = 0; i < nVertices; i++)
+            degrees[i] = 1 + (i * 7) % 5;
+        GraphHuffman tree = new GraphHuffman(nVertices);
+        tree.buildTree(degrees);
+        return tree;
+    }
+}
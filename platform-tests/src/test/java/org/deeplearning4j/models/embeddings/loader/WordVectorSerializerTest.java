@@ -28,9 +28,11 @@ import org.deeplearning4j.models.embeddings.inmemory.InMemoryLookupTable;
 import org.deeplearning4j.models.embeddings.learning.impl.elements.CBOW;
 import org.deeplearning4j.models.embeddings.reader.impl.BasicModelUtils;
 import org.deeplearning4j.models.embeddings.reader.impl.FlatModelUtils;
+import org.deeplearning4j.models.embeddings.wordvectors.WordVectors;
 import org.deeplearning4j.models.fasttext.FastText;
 import org.deeplearning4j.models.paragraphvectors.ParagraphVectors;
 import org.deeplearning4j.models.sequencevectors.SequenceVectors;
+import org.deeplearning4j.models.word2vec.MappedWord2Vec;
 import org.deeplearning4j.models.word2vec.VocabWord;
 import org.deeplearning4j.models.word2vec.Word2Vec;
 import org.deeplearning4j.models.word2vec.wordstore.inmemory.AbstractCache;
@@ -301,6 +303,41 @@ public class WordVectorSerializerTest extends BaseDL4JTest {
         }
     }
 
+    @Test
+    public void mappedModel_Correct_WhenMapped(@TempDir Path testDir) throws Exception {
+        INDArray syn0 = Nd4j.rand(DataType.FLOAT, 3, 2);
+
+        InMemoryLookupTable<VocabWord> lookupTable = new InMemoryLookupTable
+                .Builder<VocabWord>()
+                .useAdaGrad(false)
+                .vectorLength(2)
+                .cache(cache)
+                .build();
+
+        lookupTable.setSyn0(syn0);
+
+        WordVectors vectors = WordVectorSerializer.fromTableAndVocab(lookupTable, cache);
+
+        File file = testDir.resolve("mapped.bin").toFile();
+        WordVectorSerializer.writeMappedModel(vectors, file);
+        MappedWord2Vec mapped = WordVectorSerializer.loadMappedModel(file);
+
+        assertEquals(cache.numWords(), mapped.vocabSize());
+        assertEquals(2, mapped.vectorSize());
+        assertFalse(mapped.hasWord("absent"));
+        assertNull(mapped.getWordVectorMatrix("absent"));
+
+        for (int i = 0; i < cache.numWords(); ++i) {
+            val label = cache.wordAtIndex(i);
+            assertTrue(mapped.hasWord(label));
+            assertEquals(i, mapped.indexOf(label));
+            assertEquals(label, mapped.wordAtIndex(i));
+            assertEquals(vectors.getWordVectorMatrix(label), mapped.getWordVectorMatrix(label));
+        }
+
+        assertEquals(vectors.similarity("word", "tester"), mapped.similarity("word", "tester"), 1e-5);
+    }
+
     @Test
     public void FastText_Correct_WhenDeserialized(@TempDir Path testDir) throws IOException {
 
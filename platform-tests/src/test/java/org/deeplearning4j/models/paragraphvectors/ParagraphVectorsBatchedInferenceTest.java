@@ -0,0 +1,308 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+
+package org.deeplearning4j.models.paragraphvectors;
+
+import lombok.extern.slf4j.Slf4j;
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.models.embeddings.WeightLookupTable;
+import org.deeplearning4j.models.embeddings.loader.VectorsConfiguration;
+import org.deeplearning4j.models.embeddings.learning.impl.sequence.BatchedSequenceInference;
+import org.deeplearning4j.models.embeddings.learning.impl.sequence.DBOW;
+import org.deeplearning4j.models.embeddings.learning.impl.sequence.DM;
+import org.deeplearning4j.models.word2vec.VocabWord;
+import org.deeplearning4j.text.sentenceiterator.CollectionSentenceIterator;
+import org.deeplearning4j.text.tokenization.tokenizerfactory.DefaultTokenizerFactory;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.exception.ND4JIllegalStateException;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Slf4j
+@NativeTag
+@Tag(TagNames.FILE_IO)
+public class ParagraphVectorsBatchedInferenceTest extends BaseDL4JTest {
+
+    private static final String[] ANIMALS = {"cat", "dog", "horse", "cow", "sheep", "goat", "mouse", "bird"};
+    private static final String[] FINANCE = {"bank", "loan", "stock", "bond", "market", "price", "trade", "fund"};
+
+    private static final List<String> DOCUMENTS = Arrays.asList(
+            "cat dog horse cow sheep",
+            "goat mouse bird cat dog",
+            "bank loan stock bond market",
+            "price trade fund bank loan",
+            "cow sheep goat",
+            "market price trade fund stock bond");
+
+    @Override
+    public long getTimeoutMilliseconds() {
+        return 240_000L;
+    }
+
+    @Override
+    public DataType getDataType() {
+        return DataType.FLOAT;
+    }
+
+    @Override
+    public DataType getDefaultFPDataType() {
+        return DataType.FLOAT;
+    }
+
+    @Test
+    public void testBatchedInferenceDBOW() {
+        ParagraphVectors vec = getModel(true, 0);
+        checkTopics(vec.inferVectors(DOCUMENTS));
+        checkBatchIndependence(vec);
+        checkMatchesSequential(vec);
+    }
+
+    @Test
+    public void testBatchedInferenceDM() {
+        ParagraphVectors vec = getModel(false, 0);
+        INDArray vectors = vec.inferVectors(DOCUMENTS);
+        assertArrayEquals(new long[]{DOCUMENTS.size(), vec.getLayerSize()}, vectors.shape());
+        assertFalse(vectors.isNaN().any());
+        checkBatchIndependence(vec);
+        checkMatchesSequential(vec);
+    }
+
+    @Test
+    public void testBatchedInferenceNegativeSampling() {
+        ParagraphVectors vec = getModel(true, 5);
+        checkTopics(vec.inferVectors(DOCUMENTS));
+        checkBatchIndependence(vec);
+        checkMatchesSequential(vec);
+    }
+
+    @Test
+    public void testInferVectorBatchedList() {
+        //inferVectorBatched(List) infers one document at a time, the same way as inferVector(String)
+        ParagraphVectors vec = getModel(true, 0);
+        List<INDArray> list = vec.inferVectorBatched(DOCUMENTS);
+
+        assertEquals(DOCUMENTS.size(), list.size());
+        for (int i = 0; i < DOCUMENTS.size(); i++) {
+            assertEquals(vec.getLayerSize(), list.get(i).length());
+            assertFalse(list.get(i).isNaN().any());
+        }
+    }
+
+    @Test
+    public void testBatchSplitting() {
+        ParagraphVectors vec = getModel(false, 0);
+        List<List<VocabWord>> documents = new ArrayList<>();
+        for (String text : DOCUMENTS) {
+            List<VocabWord> document = new ArrayList<>();
+            for (String token : text.split(" "))
+                document.add(vec.getVocab().wordFor(token));
+            documents.add(document);
+        }
+
+        INDArray expected = new BatchedSequenceInference<>(vec.getLookupTable(), vec.getConfiguration(), true)
+                .infer(documents, 0.025, 0.001, 20);
+
+        //A single document per batch
+        BatchedSequenceInference<VocabWord> inference =
+                new BatchedSequenceInference<>(vec.getLookupTable(), vec.getConfiguration(), true, 1);
+        INDArray split = inference.infer(documents, 0.025, 0.001, 20);
+
+        assertArrayEquals(new long[]{DOCUMENTS.size(), vec.getLayerSize()}, split.shape());
+        assertTrue(expected.equalsWithEps(split, 1e-4));
+    }
+
+    @Test
+    public void testScatterAddDuplicateIndices() {
+        //Each row repeated many times, in runs and interleaved, as in the output and context rows of an update step
+        Random r = new Random(12345);
+        int numRows = 5;
+        int[] indices = new int[4000];
+        for (int i = 0; i < indices.length; i++)
+            indices[i] = i < 2000 ? i / 400 : r.nextInt(numRows);
+        INDArray updates = Nd4j.rand(DataType.FLOAT, indices.length, 20);
+
+        INDArray expected = Nd4j.rand(DataType.FLOAT, numRows, 20);
+        INDArray target = expected.dup();
+        for (int i = 0; i < indices.length; i++)
+            expected.getRow(indices[i]).addi(updates.getRow(i));
+
+        ScatterAddAccess.scatterAdd(target, indices, updates);
+        assertTrue(expected.equalsWithEps(target, 1e-3));
+
+        //Unique indices are scattered directly
+        INDArray t2 = Nd4j.zeros(DataType.FLOAT, numRows, 20);
+        ScatterAddAccess.scatterAdd(t2, new int[]{3, 1}, updates.get(NDArrayIndex.interval(0, 2), NDArrayIndex.all()));
+        assertEquals(updates.getRow(0), t2.getRow(3));
+        assertEquals(updates.getRow(1), t2.getRow(1));
+    }
+
+    @Test
+    public void testInferenceCache() {
+        ParagraphVectors vec = getModel(true, 0);
+        assertNull(vec.getInferenceCache());
+
+        vec.setInferenceCacheSize(3);
+        InferenceVectorCache cache = vec.getInferenceCache();
+        assertNotNull(cache);
+
+        INDArray first = vec.inferVectors(DOCUMENTS.subList(0, 2));
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.size());
+
+        //Cached and uncached documents mixed in one call
+        INDArray second = vec.inferVectors(DOCUMENTS.subList(0, 3));
+        assertEquals(2, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        assertEquals(3, cache.size());
+        assertEquals(first.getRow(0), second.getRow(0));
+        assertEquals(first.getRow(1), second.getRow(1));
+
+        //Returned vectors are copies
+        second.getRow(0).assign(0.0);
+        assertEquals(first.getRow(0), vec.inferVectors(DOCUMENTS.subList(0, 1)).getRow(0));
+
+        //Least recently used entries are evicted
+        vec.inferVectors(DOCUMENTS.subList(3, 4));
+        assertEquals(3, cache.size());
+
+        vec.setInferenceCacheSize(0);
+        assertNull(vec.getInferenceCache());
+    }
+
+    @Test
+    public void testEmptyDocument() {
+        ParagraphVectors vec = getModel(true, 0);
+        assertThrows(ND4JIllegalStateException.class, () -> vec.inferVectors(Arrays.asList("cat dog", "unknown words")));
+    }
+
+    private static void checkTopics(INDArray vectors) {
+        assertArrayEquals(new long[]{DOCUMENTS.size(), vectors.size(1)}, vectors.shape());
+
+        double animals = Transforms.cosineSim(vectors.getRow(0), vectors.getRow(4));
+        double finance = Transforms.cosineSim(vectors.getRow(2), vectors.getRow(5));
+        double crossA = Transforms.cosineSim(vectors.getRow(0), vectors.getRow(2));
+        double crossB = Transforms.cosineSim(vectors.getRow(4), vectors.getRow(5));
+        log.info("Same topic: {}, {}; different topics: {}, {}", animals, finance, crossA, crossB);
+
+        assertTrue(animals > crossA && animals > crossB);
+        assertTrue(finance > crossA && finance > crossB);
+    }
+
+    /**
+     * On long documents, batched inference must stay close to sequential (per document) inference with the same
+     * learning rate and a single pass: same magnitude, and closer to the sequential vector of the same document than
+     * to that of a document on the other topic
+     */
+    private static void checkMatchesSequential(ParagraphVectors vec) {
+        Random rng = new Random(42);
+        List<String> documents = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            String[] topic = i % 2 == 0 ? ANIMALS : FINANCE;
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < 500; j++)
+                sb.append(topic[rng.nextInt(topic.length)]).append(' ');
+            documents.add(sb.toString().trim());
+        }
+
+        INDArray batched = vec.inferVectors(documents, 0.025, 0.001, 1);
+        assertFalse(batched.isNaN().any());
+        INDArray[] sequential = new INDArray[documents.size()];
+        for (int i = 0; i < documents.size(); i++)
+            sequential[i] = vec.inferVector(documents.get(i), 0.025, 0.001, 1).reshape(-1);
+
+        for (int i = 0; i < documents.size(); i++) {
+            INDArray b = batched.getRow(i);
+            double ratio = b.norm2Number().doubleValue() / sequential[i].norm2Number().doubleValue();
+            double same = Transforms.cosineSim(b, sequential[i]);
+            double other = Transforms.cosineSim(b, sequential[(i + 1) % documents.size()]);
+            log.info("Document {}: norm ratio {}, cosine similarity to sequential {}, to other topic {}", i, ratio, same, other);
+
+            assertTrue(ratio > 0.5 && ratio < 2.0, "Document " + i + ": norm ratio " + ratio);
+            assertTrue(same > other, "Document " + i + ": " + same + " vs " + other);
+        }
+    }
+
+    private static void checkBatchIndependence(ParagraphVectors vec) {
+        INDArray batch = vec.inferVectors(DOCUMENTS);
+        for (int i = 0; i < DOCUMENTS.size(); i++) {
+            INDArray single = vec.inferVectors(DOCUMENTS.subList(i, i + 1));
+            assertTrue(batch.getRow(i).equalsWithEps(single.getRow(0), 1e-4), "Document " + i);
+        }
+    }
+
+    /**
+     * Gives the test access to {@link BatchedSequenceInference#scatterAdd(INDArray, int[], INDArray)}
+     */
+    private static class ScatterAddAccess extends BatchedSequenceInference<VocabWord> {
+        private ScatterAddAccess(WeightLookupTable<VocabWord> lookupTable, VectorsConfiguration configuration) {
+            super(lookupTable, configuration, true);
+        }
+
+        private static void scatterAdd(INDArray target, int[] indices, INDArray updates) {
+            BatchedSequenceInference.scatterAdd(target, indices, updates);
+        }
+    }
+
+    private static ParagraphVectors getModel(boolean dbow, int negative) {
+        Random rng = new Random(12345);
+        List<String> sentences = new ArrayList<>();
+        for (int i = 0; i < 400; i++) {
+            String[] topic = i % 2 == 0 ? ANIMALS : FINANCE;
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j < 8; j++)
+                sb.append(topic[rng.nextInt(topic.length)]).append(' ');
+            sentences.add(sb.toString().trim());
+        }
+
+        ParagraphVectors vec = new ParagraphVectors.Builder()
+                .minWordFrequency(1)
+                .iterations(1)
+                .epochs(3)
+                .layerSize(20)
+                .learningRate(0.025)
+                .windowSize(3)
+                .seed(12345)
+                .negativeSample(negative)
+                .useHierarchicSoftmax(negative == 0)
+                .trainWordVectors(true)
+                .sequenceLearningAlgorithm(dbow ? new DBOW<VocabWord>() : new DM<VocabWord>())
+                .iterate(new CollectionSentenceIterator(sentences))
+                .tokenizerFactory(new DefaultTokenizerFactory())
+                .workers(1)
+                .build();
+        vec.fit();
+        return vec;
+    }
+}
@@ -52,7 +52,9 @@ import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @Tag(TagNames.FILE_IO)
@@ -470,4 +472,51 @@ public class VocabConstructorTest extends BaseDL4JTest {
 
         constructor.buildJointVocabulary(false, true);
     }
+
+    @Test
+    public void testShardedCounting_MatchesDefault(@TempDir Path testDir) throws Exception {
+        AbstractCache<VocabWord> expected = buildRawSentencesVocab(false, null);
+
+        // tiny memory limit, so partial counters are spilled to disk and merged back
+        File spillDirectory = testDir.toFile();
+        AbstractCache<VocabWord> sharded = buildRawSentencesVocab(true, spillDirectory);
+
+        assertEquals(expected.numWords(), sharded.numWords());
+        assertEquals(expected.totalWordOccurrences(), sharded.totalWordOccurrences());
+        assertEquals(expected.totalNumberOfDocs(), sharded.totalNumberOfDocs());
+        for (int i = 0; i < expected.numWords(); i++) {
+            VocabWord exp = expected.elementAtIndex(i);
+            VocabWord act = sharded.wordFor(exp.getLabel());
+            assertNotNull(act, exp.getLabel());
+            assertEquals(exp.getElementFrequency(), act.getElementFrequency(), 0.0, exp.getLabel());
+            assertEquals(exp.getSequencesCount(), act.getSequencesCount(), exp.getLabel());
+            // same order, up to words of equal frequency
+            assertEquals(exp.getElementFrequency(), sharded.elementAtIndex(i).getElementFrequency(), 0.0);
+        }
+
+        // run files are deleted once merged
+        assertArrayEquals(new String[0], spillDirectory.list());
+    }
+
+    private AbstractCache<VocabWord> buildRawSentencesVocab(boolean sharded, File spillDirectory) throws Exception {
+        File inputFile = Resources.asFile("big/raw_sentences.txt");
+        SentenceIterator iter = new BasicLineIterator(inputFile);
+        AbstractCache<VocabWord> cache = new AbstractCache.Builder<VocabWord>().build();
+
+        SentenceTransformer transformer = new SentenceTransformer.Builder()
+                .vocabCache(cache)
+                .iterator(iter).tokenizerFactory(t).build();
+
+        AbstractSequenceIterator<VocabWord> sequenceIterator =
+                new AbstractSequenceIterator.Builder<>(transformer).build();
+
+        VocabConstructor.Builder<VocabWord> builder = new VocabConstructor.Builder<VocabWord>()
+                .addSource(sequenceIterator, 5).setTargetVocabCache(cache);
+        if (sharded)
+            builder.useShardedCounting(true).setShardedWorkers(4).setMaxResidentEntries(50)
+                    .setSpillDirectory(spillDirectory);
+
+        builder.build().buildJointVocabulary(false, true);
+        return cache;
+    }
 }
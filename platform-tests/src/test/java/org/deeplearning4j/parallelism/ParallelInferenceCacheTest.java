@@ -0,0 +1,206 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.parallelism;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.parallelism.inference.InferenceMode;
+import org.deeplearning4j.parallelism.inference.InferenceResultCache;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@NativeTag
+public class ParallelInferenceCacheTest extends BaseDL4JTest {
+
+    @Test
+    @Timeout(60000)
+    public void testResultCache() {
+        MultiLayerNetwork net = getNet(12345);
+        for (InferenceMode mode : new InferenceMode[]{InferenceMode.SEQUENTIAL, InferenceMode.BATCHED, InferenceMode.INPLACE}) {
+            ParallelInference inf = new ParallelInference.Builder(net)
+                    .inferenceMode(mode)
+                    .workers(2)
+                    .resultCache(2, 0, TimeUnit.SECONDS)
+                    .build();
+            InferenceResultCache cache = inf.getResultCache();
+            assertNotNull(cache);
+
+            INDArray in1 = Nd4j.rand(DataType.FLOAT, 1, 10);
+            INDArray in2 = Nd4j.rand(DataType.FLOAT, 1, 10);
+            INDArray exp1 = net.output(in1);
+            INDArray exp2 = net.output(in2);
+
+            INDArray out = inf.output(in1);
+            assertEquals(exp1, out);
+            assertEquals(1, cache.getMisses());
+
+            //Modifying the returned array must not affect the cache
+            out.assign(0);
+            assertEquals(exp1, inf.output(in1.dup()));
+            assertEquals(1, cache.getHits());
+
+            assertEquals(exp2, inf.output(in2));
+            assertEquals(2, cache.getMisses());
+            assertEquals(2, cache.size());
+
+            //Eviction of least recently used entry (in1) when capacity is exceeded
+            inf.output(Nd4j.rand(DataType.FLOAT, 1, 10));
+            assertEquals(2, cache.size());
+            assertEquals(exp1, inf.output(in1));
+            assertEquals(4, cache.getMisses());
+
+            //Updating the model invalidates cached results
+            MultiLayerNetwork net2 = getNet(42);
+            inf.updateModel(net2);
+            assertEquals(0, cache.size());
+            assertEquals(net2.output(in1), inf.output(in1));
+            assertEquals(5, cache.getMisses());
+
+            inf.shutdown();
+        }
+    }
+
+    @Test
+    @Timeout(60000)
+    public void testCoalescing() throws Exception {
+        InferenceResultCache cache = new InferenceResultCache(16, 0, TimeUnit.SECONDS);
+        INDArray[] in = new INDArray[]{Nd4j.linspace(DataType.FLOAT, 1, 10, 1)};
+        AtomicInteger computeCount = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        int nThreads = 4;
+        List<Thread> threads = new ArrayList<>();
+        List<INDArray> results = new ArrayList<>();
+        for (int i = 0; i < nThreads; i++) {
+            Thread t = new Thread(() -> {
+                INDArray[] out = cache.output(new INDArray[]{in[0].dup()}, null, () -> {
+                    computeCount.incrementAndGet();
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                    return new INDArray[]{in[0].mul(2)};
+                });
+                synchronized (results) {
+                    results.add(out[0]);
+                }
+            });
+            threads.add(t);
+            t.start();
+            if (i == 0)
+                started.await();
+        }
+
+        //Wait for the other threads to join the in-flight request
+        while (cache.getCoalesced() < nThreads - 1) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        assertEquals(1, computeCount.get());
+        assertEquals(nThreads, results.size());
+        for (INDArray r : results) {
+            assertEquals(in[0].mul(2), r);
+        }
+        //Each caller gets its own copy
+        assertNotSame(results.get(0), results.get(1));
+    }
+
+    @Test
+    public void testTtl() throws Exception {
+        InferenceResultCache cache = new InferenceResultCache(16, 50, TimeUnit.MILLISECONDS);
+        INDArray[] in = new INDArray[]{Nd4j.rand(DataType.FLOAT, 2, 3)};
+        AtomicInteger computeCount = new AtomicInteger();
+        cache.output(in, null, () -> new INDArray[]{Nd4j.scalar(computeCount.incrementAndGet())});
+        cache.output(in, null, () -> new INDArray[]{Nd4j.scalar(computeCount.incrementAndGet())});
+        assertEquals(1, computeCount.get());
+
+        Thread.sleep(100);
+        cache.output(in, null, () -> new INDArray[]{Nd4j.scalar(computeCount.incrementAndGet())});
+        assertEquals(2, computeCount.get());
+
+        //Masks are part of the key
+        cache.output(in, new INDArray[]{Nd4j.ones(DataType.FLOAT, 2, 3)}, () -> new INDArray[]{Nd4j.scalar(computeCount.incrementAndGet())});
+        assertEquals(3, computeCount.get());
+    }
+
+    @Test
+    public void testKeyUsesFullContents() {
+        InferenceResultCache cache = new InferenceResultCache(16, 0, TimeUnit.SECONDS);
+        AtomicInteger computeCount = new AtomicInteger();
+
+        //Inputs differing only in the last element
+        INDArray a = Nd4j.linspace(DataType.FLOAT, 1, 100, 1).reshape(1, 100);
+        INDArray b = a.dup();
+        b.putScalar(0, 99, -1.0);
+        INDArray outA = cache.output(new INDArray[]{a}, null, () -> new INDArray[]{Nd4j.scalar(computeCount.incrementAndGet())})[0];
+        INDArray outB = cache.output(new INDArray[]{b}, null, () -> new INDArray[]{Nd4j.scalar(computeCount.incrementAndGet())})[0];
+        assertEquals(2, computeCount.get());
+        assertNotEquals(outA, outB);
+
+        //Views are keyed by their own elements only
+        INDArray base = Nd4j.rand(DataType.FLOAT, 4, 10);
+        INDArray view = base.get(NDArrayIndex.interval(1, 3), NDArrayIndex.all());
+        cache.output(new INDArray[]{view}, null, () -> new INDArray[]{Nd4j.scalar(computeCount.incrementAndGet())});
+        base.getRow(0).assign(0.0);
+        base.getRow(3).assign(0.0);
+        cache.output(new INDArray[]{view}, null, () -> new INDArray[]{Nd4j.scalar(computeCount.incrementAndGet())});
+        cache.output(new INDArray[]{view.dup()}, null, () -> new INDArray[]{Nd4j.scalar(computeCount.incrementAndGet())});
+        assertEquals(3, computeCount.get());
+    }
+
+    private static MultiLayerNetwork getNet(long seed) {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(seed)
+                .dataType(DataType.FLOAT)
+                .list()
+                .layer(new DenseLayer.Builder().nIn(10).nOut(10).activation(Activation.TANH).build())
+                .layer(new OutputLayer.Builder().nIn(10).nOut(3).activation(Activation.SOFTMAX).build())
+                .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        return net;
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.deeplearning4j.parallelism;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.parallelism.inference.InferenceMode;
+import org.deeplearning4j.parallelism.inference.WorkspaceSizes;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.memory.MemoryWorkspace;
+import org.nd4j.linalg.api.memory.conf.WorkspaceConfiguration;
+import org.nd4j.linalg.api.memory.enums.LearningPolicy;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@NativeTag
+public class ParallelInferenceWarmUpTest extends BaseDL4JTest {
+
+    @Test
+    @Timeout(60000)
+    public void testWarmUpOnBuild() {
+        MultiLayerNetwork net = getNet();
+        for (InferenceMode mode : new InferenceMode[]{InferenceMode.SEQUENTIAL, InferenceMode.BATCHED, InferenceMode.INPLACE}) {
+            ParallelInference inf = new ParallelInference.Builder(net)
+                    .inferenceMode(mode)
+                    .workers(3)
+                    .warmUp(new long[]{1, 10}, new long[]{32, 10})
+                    .warmUpIterations(2)
+                    .build();
+            assertTrue(inf.isReady());
+
+            WorkspaceSizes sizes = inf.getWorkspaceSizes();
+            assertFalse(sizes.isEmpty(), mode.toString());
+
+            INDArray in = Nd4j.rand(DataType.FLOAT, 4, 10);
+            assertEquals(net.output(in), inf.output(in));
+
+            inf.shutdown();
+            assertFalse(inf.isReady());
+        }
+    }
+
+    @Test
+    @Timeout(60000)
+    public void testWarmUpAfterBuild() {
+        MultiLayerNetwork net = getNet();
+        ParallelInference inf = new ParallelInference.Builder(net)
+                .inferenceMode(InferenceMode.SEQUENTIAL)
+                .workers(2)
+                .build();
+        assertTrue(inf.isReady());
+        assertTrue(inf.getWorkspaceSizes().isEmpty());
+
+        WorkspaceSizes sizes = inf.warmUp(Arrays.asList(new INDArray[]{Nd4j.rand(DataType.FLOAT, 8, 10)},
+                new INDArray[]{Nd4j.rand(DataType.FLOAT, 16, 10)}), 2);
+        assertTrue(inf.isReady());
+        assertFalse(sizes.isEmpty());
+
+        //Warm-up requests must not count as served requests
+        assertEquals(0, inf.getWorkerCounter(0) + inf.getWorkerCounter(1));
+
+        INDArray in = Nd4j.rand(DataType.FLOAT, 16, 10);
+        assertEquals(net.output(in), inf.output(in));
+        inf.shutdown();
+    }
+
+    @Test
+    @Timeout(60000)
+    public void testWarmUpException() {
+        ParallelInference inf = new ParallelInference.Builder(getNet())
+                .inferenceMode(InferenceMode.SEQUENTIAL)
+                .workers(2)
+                .build();
+
+        //Wrong number of input features
+        assertThrows(RuntimeException.class, () -> inf.warmUp(new long[]{2, 7}));
+        assertTrue(inf.isReady());
+
+        INDArray in = Nd4j.rand(DataType.FLOAT, 2, 10);
+        assertNotNull(inf.output(in));
+        inf.shutdown();
+    }
+
+    @Test
+    public void testWorkspaceSizesPersistence(@TempDir Path testDir) throws Exception {
+        Map<String, Long> map = new HashMap<>();
+        map.put("WS_A", 1024L);
+        map.put("WS_B", 0L);
+        WorkspaceSizes sizes = new WorkspaceSizes(map);
+        sizes.put("WS_A", 512L);
+        sizes.put("WS_C", 2048L);
+        assertEquals(1024L, sizes.get("WS_A"));
+        assertEquals(0L, sizes.get("WS_B"));
+        assertEquals(2, sizes.size());
+
+        File f = testDir.resolve("ws.properties").toFile();
+        sizes.save(f);
+        WorkspaceSizes restored = WorkspaceSizes.load(f);
+        assertEquals(sizes.asMap(), restored.asMap());
+        assertNull(restored.getConfiguration("WS_A"));
+
+        WorkspaceConfiguration conf = WorkspaceConfiguration.builder()
+                .policyLearning(LearningPolicy.OVER_TIME).cyclesBeforeInitialization(3).build();
+        sizes.put("WS_D", 4096L, conf);
+        sizes.save(f);
+        restored = WorkspaceSizes.load(f);
+        assertEquals(sizes.asMap(), restored.asMap());
+        assertEquals(conf, restored.getConfiguration("WS_D"));
+    }
+
+    @Test
+    @Timeout(60000)
+    public void testWarmStart() throws Exception {
+        MultiLayerNetwork net = getNet();
+        ParallelInference inf = new ParallelInference.Builder(net)
+                .inferenceMode(InferenceMode.SEQUENTIAL)
+                .workers(1)
+                .warmUp(new long[]{32, 10})
+                .build();
+        WorkspaceSizes learned = inf.getWorkspaceSizes();
+        inf.shutdown();
+
+        INDArray in = Nd4j.rand(DataType.FLOAT, 32, 10);
+
+        //Without warm start: workspaces are created by the first inference, with the network's configurations
+        Map<String, WorkspaceConfiguration> coldConfigurations = new HashMap<>();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread cold = new Thread(() -> {
+            try {
+                net.output(in);
+                for (MemoryWorkspace ws : Nd4j.getWorkspaceManager().getAllWorkspacesForCurrentThread())
+                    coldConfigurations.put(ws.getId(), ws.getWorkspaceConfiguration());
+            } catch (Throwable e) {
+                failure.set(e);
+            } finally {
+                Nd4j.getWorkspaceManager().destroyAllWorkspacesForCurrentThread();
+            }
+        });
+        cold.start();
+        cold.join();
+        assertNull(failure.get());
+
+        //Restored sizes are pre-allocated on the calling thread, with the network's configurations
+        Thread t = new Thread(() -> {
+            try {
+                assertEquals(learned.size(), learned.applyToCurrentThread());
+                Map<String, Long> allocated = new HashMap<>();
+                for (Map.Entry<String, Long> e : learned.asMap().entrySet()) {
+                    assertTrue(Nd4j.getWorkspaceManager().checkIfWorkspaceExists(e.getKey()));
+                    MemoryWorkspace ws = Nd4j.getWorkspaceManager().getWorkspaceForCurrentThread(e.getKey());
+                    assertTrue(ws.getCurrentSize() >= e.getValue());
+                    allocated.put(e.getKey(), ws.getCurrentSize());
+
+                    WorkspaceConfiguration exp = coldConfigurations.get(e.getKey());
+                    if (exp != null) {
+                        WorkspaceConfiguration actual = learned.getConfiguration(e.getKey());
+                        actual.setInitialSize(exp.getInitialSize());
+                        assertEquals(exp, actual, e.getKey());
+                        assertEquals(e.getValue().longValue(), ws.getWorkspaceConfiguration().getInitialSize());
+                    }
+                }
+                //Existing workspaces are left as is
+                assertEquals(0, learned.applyToCurrentThread());
+
+                //Warm-started workspaces are large enough for the first inference: no reallocation
+                net.output(in);
+                for (Map.Entry<String, Long> e : allocated.entrySet())
+                    assertEquals(e.getValue().longValue(),
+                            Nd4j.getWorkspaceManager().getWorkspaceForCurrentThread(e.getKey()).getCurrentSize(), e.getKey());
+            } catch (Throwable e) {
+                failure.set(e);
+            } finally {
+                Nd4j.getWorkspaceManager().destroyAllWorkspacesForCurrentThread();
+            }
+        });
+        t.start();
+        t.join();
+        assertNull(failure.get());
+
+        ParallelInference restarted = new ParallelInference.Builder(net)
+                .inferenceMode(InferenceMode.SEQUENTIAL)
+                .workers(1)
+                .workspaceSizes(learned)
+                .build();
+        assertEquals(net.output(in), restarted.output(in));
+        assertEquals(learned.asMap(), restarted.getWorkspaceSizes().asMap());
+        restarted.shutdown();
+    }
+
+    private static MultiLayerNetwork getNet() {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .dataType(DataType.FLOAT)
+                .list()
+                .layer(new DenseLayer.Builder().nIn(10).nOut(10).activation(Activation.TANH).build())
+                .layer(new OutputLayer.Builder().nIn(10).nOut(3).activation(Activation.SOFTMAX).build())
+                .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        return net;
+    }
+}
@@ -34,6 +34,7 @@ import org.deeplearning4j.ui.model.stats.impl.SbeStatsReport;
 import org.deeplearning4j.ui.model.stats.impl.java.JavaStatsInitializationReport;
 import org.deeplearning4j.ui.model.stats.impl.java.JavaStatsReport;
 import org.deeplearning4j.ui.model.storage.InMemoryStatsStorage;
+import org.deeplearning4j.ui.model.storage.columnar.ColumnarStatsStorage;
 import org.deeplearning4j.ui.model.storage.mapdb.MapDBStatsStorage;
 import org.deeplearning4j.ui.model.storage.sqlite.J7FileStatsStorage;
 import org.junit.jupiter.api.Disabled;
@@ -363,6 +364,88 @@ public class TestStatsStorage extends BaseDL4JTest {
         }
     }
 
+    @Test
+    public void testColumnarStatsStorage(@TempDir Path testDir) throws IOException {
+        File f = new File(testDir.toFile(), "columnar.bin");
+        StatsStorage ss = new ColumnarStatsStorage.Builder(f).maxFullResolutionUpdates(10).build();
+
+        ss.putStaticInfo(getInitReport(0, 0, 0, false));
+        for (int i = 0; i < 100; i++) {
+            ss.putUpdate(getReport(0, 0, 0, 1000 + i, false));
+        }
+        ss.putUpdate(getReport(0, 0, 1, 5000, true));
+
+        assertEquals(getInitReport(0, 0, 0, false), ss.getStaticInfo("sid0", "tid0", "wid0"));
+        assertEquals(getReport(0, 0, 0, 1099, false), ss.getLatestUpdate("sid0", "tid0", "wid0"));
+        assertEquals(getReport(0, 0, 1, 5000, true), ss.getLatestUpdate("sid0", "tid0", "wid1"));
+
+        //Older updates are downsampled, the most recent ones are retained at full resolution
+        long[] times = ss.getAllUpdateTimes("sid0", "tid0", "wid0");
+        assertTrue(times.length < 20, "Expected downsampled history, got " + times.length + " updates");
+        assertEquals(1000, times[0]);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(1090 + i, times[times.length - 10 + i]);
+        }
+        assertEquals(times.length, ss.getNumUpdateRecordsFor("sid0", "tid0", "wid0"));
+
+        List<Persistable> after = ss.getAllUpdatesAfter("sid0", "tid0", "wid0", 1094);
+        assertEquals(5, after.size());
+        assertEquals(getReport(0, 0, 0, 1095, false), after.get(0));
+        assertEquals(Arrays.asList(getReport(0, 0, 0, 1091, false), getReport(0, 0, 0, 1092, false)),
+                ((ColumnarStatsStorage) ss).getUpdatesInRange("sid0", "tid0", "wid0", 1091, 1093));
+        ss.close();
+
+        //Reopen: index should be rebuilt identically
+        ss = new ColumnarStatsStorage.Builder(f).maxFullResolutionUpdates(10).build();
+        assertArrayEquals(times, ss.getAllUpdateTimes("sid0", "tid0", "wid0"));
+        assertEquals(getInitReport(0, 0, 0, false), ss.getStaticInfo("sid0", "tid0", "wid0"));
+        assertEquals(getReport(0, 0, 1, 5000, true), ss.getLatestUpdate("sid0", "tid0", "wid1"));
+        assertEquals(Collections.singletonList("sid0"), ss.listSessionIDs());
+        ss.putUpdate(getReport(0, 0, 0, 2000, false));
+        assertEquals(getReport(0, 0, 0, 2000, false), ss.getLatestUpdate("sid0", "tid0", "wid0"));
+        ss.close();
+    }
+
+    @Test
+    public void testColumnarStatsStorageCompaction(@TempDir Path testDir) throws IOException {
+        File f = new File(testDir.toFile(), "compacted.bin");
+        File fNoCompaction = new File(testDir.toFile(), "uncompacted.bin");
+        StatsStorage ss = new ColumnarStatsStorage.Builder(f).maxFullResolutionUpdates(10)
+                .compactionThresholdBytes(1).build();
+        StatsStorage ssNoCompaction = new ColumnarStatsStorage.Builder(fNoCompaction).maxFullResolutionUpdates(10)
+                .compactionThresholdBytes(Long.MAX_VALUE).build();
+
+        for (StatsStorage s : new StatsStorage[]{ss, ssNoCompaction}) {
+            s.putStaticInfo(getInitReport(0, 0, 0, false));
+            for (int i = 0; i < 1000; i++) {
+                s.putUpdate(getReport(0, 0, 0, 1000 + i, false));
+                s.putUpdate(getReport(0, 0, 1, 1000 + i, false));
+            }
+        }
+
+        long[] times = ss.getAllUpdateTimes("sid0", "tid0", "wid0");
+        assertArrayEquals(ssNoCompaction.getAllUpdateTimes("sid0", "tid0", "wid0"), times);
+        assertEquals(ssNoCompaction.getAllUpdatesAfter("sid0", "tid0", 1500), ss.getAllUpdatesAfter("sid0", "tid0", 1500));
+        assertEquals(getReport(0, 0, 1, 1999, false), ss.getLatestUpdate("sid0", "tid0", "wid1"));
+
+        //File only holds the retained updates (plus at most the same again, before the next compaction)
+        long updateBytes = getReport(0, 0, 0, 1000, false).encodingLengthBytes();
+        long retained = times.length + ss.getAllUpdateTimes("sid0", "tid0", "wid1").length;
+        assertTrue(f.length() < 3 * retained * updateBytes, "File size: " + f.length());
+        assertTrue(f.length() < fNoCompaction.length() / 10, f.length() + " vs. " + fNoCompaction.length());
+        assertFalse(new File(f.getPath() + ".compact").exists());
+        ss.close();
+        ssNoCompaction.close();
+
+        //Reopen: compacted file holds the same index
+        ss = new ColumnarStatsStorage.Builder(f).maxFullResolutionUpdates(10).build();
+        assertArrayEquals(times, ss.getAllUpdateTimes("sid0", "tid0", "wid0"));
+        assertEquals(getInitReport(0, 0, 0, false), ss.getStaticInfo("sid0", "tid0", "wid0"));
+        assertEquals(getReport(0, 0, 0, 1000, false), ss.getUpdate("sid0", "tid0", "wid0", 1000));
+        assertEquals(getReport(0, 0, 1, 1999, false), ss.getLatestUpdate("sid0", "tid0", "wid1"));
+        ss.close();
+    }
+
     private static StatsInitializationReport getInitReport(int idNumber, int tid, int wid, boolean useJ7Storage) {
         StatsInitializationReport rep;
         if (useJ7Storage) {
@@ -0,0 +1,242 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+package org.eclipse.deeplearning4j.dl4jcore.datasets.iterator;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.datasets.iterator.ExistingDataSetIterator;
+import org.eclipse.deeplearning4j.dl4jcore.datasets.iterator.tools.SimpleVariableGenerator;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.ParallelAsyncDataSetIterator;
+import org.nd4j.linalg.dataset.ParallelAsyncMultiDataSetIterator;
+import org.nd4j.linalg.dataset.adapter.MultiDataSetIteratorAdapter;
+import org.nd4j.linalg.dataset.api.MultiDataSet;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.dataset.api.iterator.MultiDataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DisplayName("Parallel Async Data Set Iterator Test")
+@NativeTag
+class ParallelAsyncDataSetIteratorTest extends BaseDL4JTest {
+
+    private static final int[] SHARD_SIZES = {7, 3, 5, 0, 9};
+
+    @Test
+    @DisplayName("Ordered Output Is Deterministic")
+    void testOrdered() {
+        for (boolean workspace : new boolean[]{false, true}) {
+            for (int numWorkers = 1; numWorkers <= SHARD_SIZES.length; numWorkers++) {
+                List<Integer> expected = expectedOrder(numWorkers);
+                ParallelAsyncDataSetIterator iter = new ParallelAsyncDataSetIterator(shards(), numWorkers, 2, true, workspace);
+                for (int epoch = 0; epoch < 3; epoch++) {
+                    assertEquals(expected, collect(iter), "workers=" + numWorkers + ", workspace=" + workspace);
+                    iter.reset();
+                }
+                iter.shutdown();
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Unordered Output Contains All Minibatches")
+    void testUnordered() {
+        Set<Integer> expected = new HashSet<>(expectedOrder(1));
+        ParallelAsyncDataSetIterator iter = new ParallelAsyncDataSetIterator(shards(), 3, 2, false);
+        for (int epoch = 0; epoch < 3; epoch++) {
+            List<Integer> out = collect(iter);
+            assertEquals(expected.size(), out.size());
+            assertEquals(expected, new HashSet<>(out));
+            iter.reset();
+        }
+        iter.shutdown();
+    }
+
+    @Test
+    @DisplayName("Workspace Minibatches Are Not Overwritten")
+    void testWorkspaceContent() {
+        //Minibatches are created by the shards in the workers' workspaces, and are large enough that each workspace
+        //only holds a few of them. One worker is much faster than the others: it must not get more than queueSize
+        //minibatches ahead of the consumer, as its workspace would then overwrite minibatches still in use
+        int numShards = 3;
+        int numBatches = 20;
+        for (boolean ordered : new boolean[]{false, true}) {
+            List<DataSetIterator> shards = new ArrayList<>();
+            for (int s = 0; s < numShards; s++) {
+                final boolean slow = s > 0;
+                shards.add(new SimpleVariableGenerator(12345, numBatches, 32, 20000, 20000) {
+                    @Override
+                    public DataSet next() {
+                        if (slow) {
+                            try {
+                                Thread.sleep(20);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                        return super.next();
+                    }
+                });
+            }
+            ParallelAsyncDataSetIterator iter = new ParallelAsyncDataSetIterator(shards, numShards, 2, ordered, true);
+            for (int epoch = 0; epoch < 2; epoch++) {
+                int[] counts = new int[numBatches];
+                DataSet previous = null;
+                double previousValue = 0;
+                while (iter.hasNext()) {
+                    DataSet ds = iter.next();
+                    double v = checkContent(ds);
+                    counts[(int) v]++;
+                    //The previous minibatch is still valid until this one is returned
+                    if (previous != null)
+                        assertEquals(previousValue, checkContent(previous), "ordered=" + ordered);
+                    previous = ds;
+                    previousValue = v;
+                }
+                int[] expected = new int[numBatches];
+                Arrays.fill(expected, numShards);
+                assertArrayEquals(expected, counts, "ordered=" + ordered);
+                iter.reset();
+            }
+            iter.shutdown();
+        }
+    }
+
+    private static double checkContent(DataSet ds) {
+        INDArray f = ds.getFeatures();
+        INDArray l = ds.getLabels();
+        double v = f.getDouble(0);
+        assertEquals(v, f.minNumber().doubleValue(), 0.0);
+        assertEquals(v, f.maxNumber().doubleValue(), 0.0);
+        assertEquals(v + 0.5, l.minNumber().doubleValue(), 0.0);
+        assertEquals(v + 0.5, l.maxNumber().doubleValue(), 0.0);
+        return v;
+    }
+
+    @Test
+    @DisplayName("Reset During Iteration")
+    void testResetMidEpoch() {
+        ParallelAsyncDataSetIterator iter = new ParallelAsyncDataSetIterator(shards(), 3, 1, true);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(iter.hasNext());
+            iter.next();
+        }
+        iter.reset();
+        assertEquals(expectedOrder(3), collect(iter));
+        iter.shutdown();
+    }
+
+    @Test
+    @DisplayName("Multi Data Set Iterator")
+    void testMultiDataSet() {
+        List<MultiDataSetIterator> shards = new ArrayList<>();
+        for (DataSetIterator d : shards()) {
+            shards.add(new MultiDataSetIteratorAdapter(d));
+        }
+        ParallelAsyncMultiDataSetIterator iter = new ParallelAsyncMultiDataSetIterator(shards, 2, 2, true);
+        List<Integer> out = new ArrayList<>();
+        while (iter.hasNext()) {
+            MultiDataSet mds = iter.next();
+            out.add(mds.getFeatures(0).getInt(0));
+        }
+        assertEquals(expectedOrder(2), out);
+        iter.shutdown();
+    }
+
+    @Test
+    @DisplayName("Worker Exceptions Are Propagated")
+    void testException() {
+        List<DataSetIterator> shards = shards();
+        shards.set(1, new ExistingDataSetIterator(Collections.singletonList(new DataSet(Nd4j.createFromArray(new float[]{1}), null))) {
+            @Override
+            public DataSet next() {
+                throw new IllegalStateException("Test exception");
+            }
+        });
+        ParallelAsyncDataSetIterator iter = new ParallelAsyncDataSetIterator(shards, 3, 2, true);
+        assertThrows(RuntimeException.class, () -> {
+            while (iter.hasNext()) {
+                iter.next();
+            }
+        });
+        iter.shutdown();
+    }
+
+    private static List<DataSetIterator> shards() {
+        List<DataSetIterator> out = new ArrayList<>();
+        for (int s = 0; s < SHARD_SIZES.length; s++) {
+            List<DataSet> l = new ArrayList<>();
+            for (int i = 0; i < SHARD_SIZES[s]; i++) {
+                l.add(new DataSet(Nd4j.createFromArray(new float[]{100 * s + i}).reshape(1, 1), Nd4j.zeros(1, 1)));
+            }
+            out.add(new ExistingDataSetIterator(l));
+        }
+        return out;
+    }
+
+    private static List<Integer> expectedOrder(int numWorkers) {
+        //Worker w iterates over shards w, w + numWorkers, ... in turn; one minibatch is taken from each worker in turn
+        List<List<Integer>> perWorker = new ArrayList<>();
+        for (int w = 0; w < numWorkers; w++) {
+            List<Integer> l = new ArrayList<>();
+            for (int s = w; s < SHARD_SIZES.length; s += numWorkers) {
+                for (int i = 0; i < SHARD_SIZES[s]; i++) {
+                    l.add(100 * s + i);
+                }
+            }
+            perWorker.add(l);
+        }
+        List<Integer> out = new ArrayList<>();
+        for (int i = 0; out.size() < totalSize(); i++) {
+            for (List<Integer> l : perWorker) {
+                if (i < l.size())
+                    out.add(l.get(i));
+            }
+        }
+        return out;
+    }
+
+    private static int totalSize() {
+        int n = 0;
+        for (int s : SHARD_SIZES) {
+            n += s;
+        }
+        return n;
+    }
+
+    private static List<Integer> collect(DataSetIterator iter) {
+        List<Integer> out = new ArrayList<>();
+        while (iter.hasNext()) {
+            out.add(iter.next().getFeatures().getInt(0));
+        }
+        return out;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+package org.eclipse.deeplearning4j.dl4jcore.earlystopping;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.datasets.iterator.impl.IrisDataSetIterator;
+import org.deeplearning4j.earlystopping.EarlyStoppingConfiguration;
+import org.deeplearning4j.earlystopping.EarlyStoppingResult;
+import org.deeplearning4j.earlystopping.saver.InMemoryModelSaver;
+import org.deeplearning4j.earlystopping.scorecalc.DataSetLossCalculator;
+import org.deeplearning4j.earlystopping.termination.MaxEpochsTerminationCondition;
+import org.deeplearning4j.earlystopping.termination.MaxScoreIterationTerminationCondition;
+import org.deeplearning4j.earlystopping.trainer.EarlyStoppingTrainer;
+import org.deeplearning4j.earlystopping.trainer.MultiModelEarlyStoppingTrainer;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.learning.config.Sgd;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@NativeTag
+@Tag(TagNames.TRAINING)
+@Tag(TagNames.DL4J_OLD_API)
+public class TestMultiModelEarlyStopping extends BaseDL4JTest {
+
+    @Override
+    public DataType getDataType() {
+        return DataType.DOUBLE;
+    }
+
+    @Test
+    public void testMatchesSequentialTraining() {
+        double[] learningRates = {0.001, 0.01, 0.1};
+        int[] maxEpochs = {2, 3, 5};
+
+        List<MultiLayerNetwork> models = new ArrayList<>();
+        List<EarlyStoppingConfiguration<MultiLayerNetwork>> configs = new ArrayList<>();
+        for (int i = 0; i < learningRates.length; i++) {
+            models.add(getNet(learningRates[i]));
+            configs.add(getConfig(maxEpochs[i]));
+        }
+
+        MultiModelEarlyStoppingTrainer<MultiLayerNetwork> trainer =
+                new MultiModelEarlyStoppingTrainer<>(configs, models, new IrisDataSetIterator(30, 150));
+        List<EarlyStoppingResult<MultiLayerNetwork>> results = trainer.fit();
+        assertEquals(learningRates.length, results.size());
+
+        for (int i = 0; i < learningRates.length; i++) {
+            EarlyStoppingResult<MultiLayerNetwork> r = results.get(i);
+            assertEquals(EarlyStoppingResult.TerminationReason.EpochTerminationCondition, r.getTerminationReason());
+            assertEquals(maxEpochs[i], r.getTotalEpochs());
+            assertEquals(maxEpochs[i], r.getScoreVsEpoch().size());
+            assertNotNull(r.getBestModel());
+
+            //Same as training each model separately
+            MultiLayerNetwork seqNet = getNet(learningRates[i]);
+            EarlyStoppingTrainer seqTrainer = new EarlyStoppingTrainer(getConfig(maxEpochs[i]), seqNet, new IrisDataSetIterator(30, 150));
+            EarlyStoppingResult<MultiLayerNetwork> seq = seqTrainer.fit();
+            assertEquals(seq.getTotalEpochs(), r.getTotalEpochs());
+            assertEquals(seq.getBestModelEpoch(), r.getBestModelEpoch());
+            assertEquals(seq.getBestModelScore(), r.getBestModelScore(), 1e-8);
+            assertEquals(seqNet.params(), models.get(i).params());
+        }
+    }
+
+    @Test
+    public void testIterationTermination() {
+        //Second model diverges and is stopped during the first epoch; the others continue
+        List<MultiLayerNetwork> models = Arrays.asList(getNet(0.01), getNet(1e6), getNet(0.05));
+        List<EarlyStoppingConfiguration<MultiLayerNetwork>> configs = new ArrayList<>();
+        for (int i = 0; i < models.size(); i++) {
+            EarlyStoppingConfiguration<MultiLayerNetwork> c = new EarlyStoppingConfiguration.Builder<MultiLayerNetwork>()
+                    .epochTerminationConditions(new MaxEpochsTerminationCondition(4))
+                    .iterationTerminationConditions(new MaxScoreIterationTerminationCondition(10))
+                    .scoreCalculator(new DataSetLossCalculator(new IrisDataSetIterator(150, 150), true))
+                    .modelSaver(new InMemoryModelSaver<>())
+                    .build();
+            configs.add(c);
+        }
+
+        List<EarlyStoppingResult<MultiLayerNetwork>> results =
+                new MultiModelEarlyStoppingTrainer<>(configs, models, new IrisDataSetIterator(10, 150)).fit();
+
+        assertEquals(EarlyStoppingResult.TerminationReason.IterationTerminationCondition, results.get(1).getTerminationReason());
+        assertEquals(0, results.get(1).getTotalEpochs());
+        for (int i : new int[]{0, 2}) {
+            assertEquals(EarlyStoppingResult.TerminationReason.EpochTerminationCondition, results.get(i).getTerminationReason());
+            assertEquals(4, results.get(i).getTotalEpochs());
+        }
+    }
+
+    @Test
+    public void testValidation() {
+        DataSetIterator iter = new IrisDataSetIterator(30, 150);
+        MultiLayerNetwork net = getNet(0.01);
+        EarlyStoppingConfiguration<MultiLayerNetwork> c = getConfig(2);
+
+        assertThrows(IllegalArgumentException.class, () -> new MultiModelEarlyStoppingTrainer<>(Arrays.asList(c), Arrays.asList(net, getNet(0.1)), iter));
+        assertThrows(IllegalArgumentException.class, () -> new MultiModelEarlyStoppingTrainer<>(Arrays.asList(c, getConfig(2)), Arrays.asList(net, net), iter));
+        assertThrows(IllegalArgumentException.class, () -> new MultiModelEarlyStoppingTrainer<>(Arrays.asList(c, c), Arrays.asList(net, getNet(0.1)), iter));
+    }
+
+    private static EarlyStoppingConfiguration<MultiLayerNetwork> getConfig(int maxEpochs) {
+        return new EarlyStoppingConfiguration.Builder<MultiLayerNetwork>()
+                .epochTerminationConditions(new MaxEpochsTerminationCondition(maxEpochs))
+                .scoreCalculator(new DataSetLossCalculator(new IrisDataSetIterator(150, 150), true))
+                .modelSaver(new InMemoryModelSaver<>())
+                .build();
+    }
+
+    private static MultiLayerNetwork getNet(double lr) {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .updater(new Sgd(lr))
+                .list()
+                .layer(new DenseLayer.Builder().nIn(4).nOut(8).activation(Activation.TANH).build())
+                .layer(new OutputLayer.Builder().nIn(8).nOut(3).activation(Activation.SOFTMAX)
+                        .lossFunction(LossFunctions.LossFunction.MCXENT).build())
+                .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        return net;
+    }
+}
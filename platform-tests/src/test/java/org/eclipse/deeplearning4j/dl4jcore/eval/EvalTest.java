@@ -398,6 +398,30 @@ class EvalTest extends BaseDL4JTest {
         assertEquals(150, e2.getExampleCountPerColumn().getInt(0));
     }
 
+    @Test
+    @DisplayName("Test Parallel Evaluation")
+    void testParallelEvaluation() {
+        Nd4j.getRandom().setSeed(12345);
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345).list().layer(new DenseLayer.Builder().nIn(4).nOut(10).activation(Activation.TANH).build()).layer(new OutputLayer.Builder().nIn(10).nOut(3).activation(Activation.SOFTMAX).lossFunction(LossFunctions.LossFunction.MCXENT).build()).build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+        DataSetIterator iter = new IrisDataSetIterator(10, 150);
+        org.nd4j.evaluation.classification.Evaluation expEval = new org.nd4j.evaluation.classification.Evaluation();
+        org.nd4j.evaluation.classification.ROCMultiClass expRoc = new org.nd4j.evaluation.classification.ROCMultiClass();
+        net.doEvaluation(iter, expEval, expRoc);
+        org.nd4j.evaluation.classification.Evaluation eval = new org.nd4j.evaluation.classification.Evaluation();
+        org.nd4j.evaluation.classification.ROCMultiClass roc = new org.nd4j.evaluation.classification.ROCMultiClass();
+        net.doEvaluation(iter, 4, eval, roc);
+        assertEquals(150, eval.getNumRowCounter());
+        checkEvaluationEquality(expEval, eval);
+        assertEquals(expRoc.calculateAverageAUC(), roc.calculateAverageAUC(), 1e-6);
+        // ComputationGraph
+        ComputationGraph cg = net.toComputationGraph();
+        org.nd4j.evaluation.classification.Evaluation cgEval = new org.nd4j.evaluation.classification.Evaluation();
+        cg.doEvaluation(iter, 4, cgEval);
+        checkEvaluationEquality(expEval, cgEval);
+    }
+
     @Test
     @DisplayName("Test Multi Output Eval CG")
     void testMultiOutputEvalCG() {
@@ -0,0 +1,350 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+package org.eclipse.deeplearning4j.dl4jcore.nn.misc;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.gradientcheck.GradientCheckUtil;
+import org.deeplearning4j.nn.api.FwdPassType;
+import org.deeplearning4j.nn.api.Model;
+import org.deeplearning4j.nn.conf.CacheMode;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.ListBuilder;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.WorkspaceMode;
+import org.deeplearning4j.nn.conf.graph.ElementWiseVertex;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.conf.memory.MemoryType;
+import org.deeplearning4j.nn.conf.memory.MemoryUseMode;
+import org.deeplearning4j.nn.conf.memory.NetworkMemoryReport;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.optimize.api.BaseTrainingListener;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.learning.config.NoOp;
+import org.nd4j.linalg.learning.config.Sgd;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@NativeTag
+@Tag(TagNames.DL4J_OLD_API)
+@Tag(TagNames.WORKSPACES)
+public class TestActivationCheckpointing extends BaseDL4JTest {
+
+    @Test
+    public void testMultiLayerNetworkGradients() {
+        for (WorkspaceMode wm : new WorkspaceMode[]{WorkspaceMode.NONE, WorkspaceMode.ENABLED}) {
+            MultiLayerNetwork net = new MultiLayerNetwork(mlnConf(0, 0.0, wm));
+            net.init();
+            MultiLayerNetwork netCp = new MultiLayerNetwork(mlnConf(2, 0.0, wm));
+            netCp.init();
+            netCp.setParams(net.params().dup());
+
+            INDArray f = Nd4j.rand(DataType.FLOAT, 8, 10);
+            INDArray l = Nd4j.rand(DataType.FLOAT, 8, 5);
+            for (int i = 0; i < 3; i++) {
+                net.setInput(f);
+                net.setLabels(l);
+                net.computeGradientAndScore();
+
+                netCp.setInput(f);
+                netCp.setLabels(l);
+                netCp.computeGradientAndScore();
+
+                String msg = "Workspace mode: " + wm + ", iteration " + i;
+                assertEquals(net.score(), netCp.score(), 1e-6, msg);
+                assertEquals(net.gradient().gradient(), netCp.gradient().gradient(), msg);
+
+                net.fit(f, l);
+                netCp.fit(f, l);
+                assertEquals(net.params(), netCp.params(), msg);
+            }
+        }
+    }
+
+    @Test
+    public void testMultiLayerNetworkDropoutGradients() {
+        //Recomputed segments must use the same dropout masks as the original forward pass, and the RNG sequence must
+        // be the same as without checkpointing - hence identical gradients to a non-checkpointed network
+        for (WorkspaceMode wm : new WorkspaceMode[]{WorkspaceMode.NONE, WorkspaceMode.ENABLED}) {
+            MultiLayerNetwork net = new MultiLayerNetwork(mlnConf(0, 0.5, wm));
+            net.init();
+            MultiLayerNetwork netCp = new MultiLayerNetwork(mlnConf(2, 0.5, wm));
+            netCp.init();
+            netCp.setParams(net.params().dup());
+
+            INDArray f = Nd4j.rand(DataType.FLOAT, 8, 10);
+            INDArray l = Nd4j.rand(DataType.FLOAT, 8, 5);
+            for (int i = 0; i < 3; i++) {
+                Nd4j.getRandom().setSeed(12345 + i);
+                net.setInput(f);
+                net.setLabels(l);
+                net.computeGradientAndScore();
+
+                Nd4j.getRandom().setSeed(12345 + i);
+                netCp.setInput(f);
+                netCp.setLabels(l);
+                netCp.computeGradientAndScore();
+
+                String msg = "Workspace mode: " + wm + ", iteration " + i;
+                assertEquals(net.score(), netCp.score(), 1e-6, msg);
+                assertEquals(net.gradient().gradient(), netCp.gradient().gradient(), msg);
+                assertFalse(netCp.gradient().gradient().isNaN().any(), msg);
+
+                //Two minibatches per seed: the second relies on the RNG state after the first
+                Nd4j.getRandom().setSeed(12345 + i);
+                net.fit(f, l);
+                net.fit(f, l);
+                Nd4j.getRandom().setSeed(12345 + i);
+                netCp.fit(f, l);
+                netCp.fit(f, l);
+                assertEquals(net.params(), netCp.params(), msg);
+            }
+        }
+    }
+
+    @Test
+    public void testMultiLayerNetworkDropoutGradientCheck() {
+        ListBuilder b = new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .dataType(DataType.DOUBLE)
+                .updater(new NoOp())
+                .activation(Activation.TANH)
+                .dropOut(0.6)
+                .list();
+        for (int i = 0; i < 4; i++) {
+            b.layer(new DenseLayer.Builder().nIn(i == 0 ? 4 : 3).nOut(3).build());
+        }
+        MultiLayerConfiguration conf = b.layer(new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nIn(3).nOut(3)
+                        .activation(Activation.SOFTMAX).build())
+                .activationCheckpointInterval(2)
+                .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        INDArray f = Nd4j.rand(DataType.DOUBLE, 3, 4).muli(4).subi(2);
+        INDArray l = Nd4j.zeros(DataType.DOUBLE, 3, 3);
+        for (int i = 0; i < 3; i++) {
+            l.putScalar(i, i, 1.0);
+        }
+
+        //The numerical gradients use a non-checkpointed forward pass; the RNG is reset before each pass
+        boolean gradOK = GradientCheckUtil.checkGradients(new GradientCheckUtil.MLNConfig().net(net).input(f).labels(l)
+                .exitOnFirstError(true).callEachIter(n -> Nd4j.getRandom().setSeed(12345)));
+        assertTrue(gradOK);
+    }
+
+    @Test
+    public void testCheckpointStateCleared() {
+        INDArray f = Nd4j.rand(DataType.FLOAT, 8, 10);
+        INDArray l = Nd4j.rand(DataType.FLOAT, 8, 5);
+
+        //Inference after a training forward pass without backprop
+        CheckpointedNetwork net = new CheckpointedNetwork(mlnConf(2, 0.5, WorkspaceMode.NONE));
+        net.init();
+        net.trainingForwardPass(f);
+        assertTrue(net.hasCheckpointState());
+        net.output(f);
+        assertFalse(net.hasCheckpointState());
+
+        CheckpointedGraph graph = new CheckpointedGraph(cgConf(2, 0.5, WorkspaceMode.NONE));
+        graph.init();
+        graph.trainingForwardPass(f);
+        assertTrue(graph.hasCheckpointState());
+        graph.outputSingle(f);
+        assertFalse(graph.hasCheckpointState());
+
+        //Exception between the forward pass and backprop
+        for (WorkspaceMode wm : new WorkspaceMode[]{WorkspaceMode.NONE, WorkspaceMode.ENABLED}) {
+            net = new CheckpointedNetwork(mlnConf(2, 0.5, wm));
+            net.init();
+            net.setListeners(new FailOnForwardPass());
+            MultiLayerNetwork n = net;
+            assertThrows(IllegalStateException.class, () -> n.fit(f, l));
+            assertFalse(net.hasCheckpointState(), wm.toString());
+
+            graph = new CheckpointedGraph(cgConf(2, 0.5, wm));
+            graph.init();
+            graph.setListeners(new FailOnForwardPass());
+            ComputationGraph g = graph;
+            assertThrows(IllegalStateException.class, () -> g.fit(new INDArray[]{f}, new INDArray[]{l}));
+            assertFalse(graph.hasCheckpointState(), wm.toString());
+        }
+    }
+
+    @Test
+    public void testComputationGraphGradients() {
+        for (double dropOut : new double[]{0.0, 0.5}) {
+            for (WorkspaceMode wm : new WorkspaceMode[]{WorkspaceMode.NONE, WorkspaceMode.ENABLED}) {
+                ComputationGraph net = new ComputationGraph(cgConf(0, dropOut, wm));
+                net.init();
+                ComputationGraph netCp = new ComputationGraph(cgConf(2, dropOut, wm));
+                netCp.init();
+                netCp.setParams(net.params().dup());
+
+                INDArray f = Nd4j.rand(DataType.FLOAT, 8, 10);
+                INDArray l = Nd4j.rand(DataType.FLOAT, 8, 5);
+                for (int i = 0; i < 3; i++) {
+                    Nd4j.getRandom().setSeed(12345 + i);
+                    net.setInputs(f);
+                    net.setLabels(l);
+                    net.computeGradientAndScore();
+
+                    Nd4j.getRandom().setSeed(12345 + i);
+                    netCp.setInputs(f);
+                    netCp.setLabels(l);
+                    netCp.computeGradientAndScore();
+
+                    String msg = "Dropout: " + dropOut + ", workspace mode: " + wm + ", iteration " + i;
+                    assertEquals(net.score(), netCp.score(), 1e-6, msg);
+                    assertEquals(net.gradient().gradient(), netCp.gradient().gradient(), msg);
+
+                    Nd4j.getRandom().setSeed(12345 + i);
+                    net.fit(new INDArray[]{f}, new INDArray[]{l});
+                    net.fit(new INDArray[]{f}, new INDArray[]{l});
+                    Nd4j.getRandom().setSeed(12345 + i);
+                    netCp.fit(new INDArray[]{f}, new INDArray[]{l});
+                    netCp.fit(new INDArray[]{f}, new INDArray[]{l});
+                    assertEquals(net.params(), netCp.params(), msg);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testMemoryReport() {
+        NetworkMemoryReport r = mlnConf(0, 0.0, WorkspaceMode.ENABLED).getMemoryReport(InputType.feedForward(10));
+        NetworkMemoryReport rCp = mlnConf(2, 0.0, WorkspaceMode.ENABLED).getMemoryReport(InputType.feedForward(10));
+
+        long act = r.getMemoryBytes(MemoryType.ACTIVATIONS, 32, MemoryUseMode.TRAINING, CacheMode.NONE, DataType.FLOAT);
+        long actCp = rCp.getMemoryBytes(MemoryType.ACTIVATIONS, 32, MemoryUseMode.TRAINING, CacheMode.NONE, DataType.FLOAT);
+        assertTrue(actCp < act, actCp + " vs. " + act);
+
+        //Inference is unaffected
+        assertEquals(r.getMemoryBytes(MemoryType.ACTIVATIONS, 32, MemoryUseMode.INFERENCE, CacheMode.NONE, DataType.FLOAT),
+                rCp.getMemoryBytes(MemoryType.ACTIVATIONS, 32, MemoryUseMode.INFERENCE, CacheMode.NONE, DataType.FLOAT));
+
+        NetworkMemoryReport g = cgConf(0, 0.0, WorkspaceMode.ENABLED).getMemoryReport(InputType.feedForward(10));
+        NetworkMemoryReport gCp = cgConf(2, 0.0, WorkspaceMode.ENABLED).getMemoryReport(InputType.feedForward(10));
+        assertTrue(gCp.getMemoryBytes(MemoryType.ACTIVATIONS, 32, MemoryUseMode.TRAINING, CacheMode.NONE, DataType.FLOAT)
+                < g.getMemoryBytes(MemoryType.ACTIVATIONS, 32, MemoryUseMode.TRAINING, CacheMode.NONE, DataType.FLOAT));
+    }
+
+    private static MultiLayerConfiguration mlnConf(int interval, double dropOut, WorkspaceMode wm) {
+        ListBuilder b = new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .dataType(DataType.FLOAT)
+                .updater(new Sgd(0.1))
+                .activation(Activation.TANH)
+                .trainingWorkspaceMode(wm)
+                .inferenceWorkspaceMode(wm)
+                .list();
+        for (int i = 0; i < 6; i++) {
+            DenseLayer.Builder d = new DenseLayer.Builder().nIn(i == 0 ? 10 : 16).nOut(16);
+            if (dropOut > 0)
+                d.dropOut(dropOut);
+            b.layer(d.build());
+        }
+        return b.layer(new OutputLayer.Builder(LossFunctions.LossFunction.MSE).nIn(16).nOut(5)
+                        .activation(Activation.IDENTITY).build())
+                .activationCheckpointInterval(interval)
+                .build();
+    }
+
+    private static ComputationGraphConfiguration cgConf(int interval, double dropOut, WorkspaceMode wm) {
+        NeuralNetConfiguration.Builder b = new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .dataType(DataType.FLOAT)
+                .updater(new Sgd(0.1))
+                .activation(Activation.TANH)
+                .trainingWorkspaceMode(wm)
+                .inferenceWorkspaceMode(wm);
+        if (dropOut > 0)
+            b.dropOut(dropOut);
+        return b.graphBuilder()
+                .addInputs("in")
+                .addLayer("0", new DenseLayer.Builder().nIn(10).nOut(16).build(), "in")
+                .addLayer("1", new DenseLayer.Builder().nIn(16).nOut(16).build(), "0")
+                .addLayer("2", new DenseLayer.Builder().nIn(16).nOut(16).build(), "1")
+                .addLayer("3", new DenseLayer.Builder().nIn(16).nOut(16).build(), "2")
+                .addVertex("add", new ElementWiseVertex(ElementWiseVertex.Op.Add), "1", "3")
+                .addLayer("4", new DenseLayer.Builder().nIn(16).nOut(16).build(), "add")
+                .addLayer("5", new DenseLayer.Builder().nIn(16).nOut(16).build(), "4")
+                .addLayer("out", new OutputLayer.Builder(LossFunctions.LossFunction.MSE).nIn(16).nOut(5)
+                        .activation(Activation.IDENTITY).build(), "5")
+                .setOutputs("out")
+                .activationCheckpointInterval(interval)
+                .build();
+    }
+
+    private static class CheckpointedNetwork extends MultiLayerNetwork {
+        private CheckpointedNetwork(MultiLayerConfiguration conf) {
+            super(conf);
+        }
+
+        private void trainingForwardPass(INDArray f) {
+            ffToLayerActivationsInWs(layers.length - 2, FwdPassType.STANDARD, false, f, null, null);
+        }
+
+        private boolean hasCheckpointState() {
+            return checkpointState != null;
+        }
+    }
+
+    private static class CheckpointedGraph extends ComputationGraph {
+        private CheckpointedGraph(ComputationGraphConfiguration conf) {
+            super(conf);
+        }
+
+        private void trainingForwardPass(INDArray f) {
+            ffToLayerActivationsInWS(true, -1, getOutputLayerIndices(), FwdPassType.STANDARD, false,
+                    new INDArray[]{f}, null, null, false);
+        }
+
+        private boolean hasCheckpointState() {
+            return checkpointState != null;
+        }
+    }
+
+    private static class FailOnForwardPass extends BaseTrainingListener {
+        @Override
+        public void onForwardPass(Model model, List<INDArray> activations) {
+            throw new IllegalStateException("Forward pass");
+        }
+
+        @Override
+        public void onForwardPass(Model model, Map<String, INDArray> activations) {
+            throw new IllegalStateException("Forward pass");
+        }
+    }
+}
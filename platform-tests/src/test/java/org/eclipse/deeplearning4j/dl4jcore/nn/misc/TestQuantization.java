@@ -0,0 +1,218 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+package org.eclipse.deeplearning4j.dl4jcore.nn.misc;
+
+import org.deeplearning4j.BaseDL4JTest;
+import org.deeplearning4j.datasets.iterator.ExistingDataSetIterator;
+import org.deeplearning4j.nn.conf.ComputationGraphConfiguration;
+import org.deeplearning4j.nn.conf.ConvolutionMode;
+import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
+import org.deeplearning4j.nn.conf.NeuralNetConfiguration;
+import org.deeplearning4j.nn.conf.inputs.InputType;
+import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
+import org.deeplearning4j.nn.conf.layers.DenseLayer;
+import org.deeplearning4j.nn.conf.layers.OutputLayer;
+import org.deeplearning4j.nn.conf.layers.SubsamplingLayer;
+import org.deeplearning4j.nn.conf.layers.misc.QuantizedLayer;
+import org.deeplearning4j.nn.graph.ComputationGraph;
+import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.util.ModelSerializer;
+import org.deeplearning4j.util.QuantizationUtil;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.activations.Activation;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.DataSet;
+import org.nd4j.linalg.dataset.adapter.MultiDataSetIteratorAdapter;
+import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.lossfunctions.LossFunctions;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@NativeTag
+@Tag(TagNames.DL4J_OLD_API)
+public class TestQuantization extends BaseDL4JTest {
+
+    @Test
+    public void testDenseQuantization() throws Exception {
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .dataType(DataType.FLOAT)
+                .activation(Activation.TANH)
+                .list()
+                .layer(new DenseLayer.Builder().nIn(20).nOut(64).build())
+                .layer(new DenseLayer.Builder().nIn(64).nOut(64).build())
+                .layer(new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nIn(64).nOut(5)
+                        .activation(Activation.SOFTMAX).build())
+                .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        DataSetIterator iter = data(new long[]{32, 20}, 5);
+        for (QuantizedLayer.Execution e : QuantizedLayer.Execution.values()) {
+            MultiLayerNetwork q = QuantizationUtil.quantize(net, iter, e);
+            assertTrue(q.getLayerWiseConfigurations().getConf(0).getLayer() instanceof QuantizedLayer);
+            assertTrue(q.getLayerWiseConfigurations().getConf(1).getLayer() instanceof QuantizedLayer);
+            assertTrue(q.getLayerWiseConfigurations().getConf(2).getLayer() instanceof OutputLayer);
+            assertEquals(net.getLayer(2).numParams(), q.numParams());
+
+            QuantizationUtil.Comparison c = QuantizationUtil.compare(net, q, iter);
+            assertEquals(128, c.getNumExamples());
+            assertTrue(c.getMaxAbsDifference() < 0.05, e + ": " + c);
+            assertTrue(c.getArgMaxAgreement() > 0.9, e + ": " + c);
+            assertTrue(c.getQuantizedModelBytes() < c.getOriginalModelBytes() / 2, e + ": " + c);
+
+            //Quantized weights are not part of the JSON configuration
+            String json = q.getLayerWiseConfigurations().toJson();
+            assertTrue(json.length() < 2 * conf.toJson().length(), "JSON length: " + json.length());
+            MultiLayerConfiguration fromJson = MultiLayerConfiguration.fromJson(json);
+            assertEquals(q.getLayerWiseConfigurations(), fromJson);
+
+            //Save/load and clone, including the quantized weights
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            ModelSerializer.writeModel(q, baos, false);
+            MultiLayerNetwork q2 = ModelSerializer.restoreMultiLayerNetwork(new ByteArrayInputStream(baos.toByteArray()), false);
+            MultiLayerNetwork q3 = q.clone();
+            iter.reset();
+            INDArray f = iter.next().getFeatures();
+            INDArray out = q.output(f);
+            assertEquals(out, q2.output(f));
+            assertEquals(out, q3.output(f));
+            assertEquals(out, q.output(f));     //Second call: weights are dequantized/widened again
+
+            //Only the INT8 weights (and per-output values) are held between forward passes
+            for (int i = 0; i < 2; i++) {
+                org.deeplearning4j.nn.layers.QuantizedLayer ql = (org.deeplearning4j.nn.layers.QuantizedLayer) q.getLayer(i);
+                long floatWeightBytes = net.getLayer(i).getParam("W").length() * 4;
+                assertTrue(ql.residentBytes() < floatWeightBytes / 2, e + ": " + ql.residentBytes());
+            }
+            iter.reset();
+        }
+    }
+
+    @Test
+    public void testIntegerExecutionMatchesDequantized() {
+        //With calibration, INTEGER and DEQUANTIZE differ only by the quantization of the layer inputs
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .dataType(DataType.FLOAT)
+                .list()
+                .layer(new DenseLayer.Builder().nIn(10).nOut(10).activation(Activation.IDENTITY).build())
+                .layer(new OutputLayer.Builder(LossFunctions.LossFunction.MSE).nIn(10).nOut(3)
+                        .activation(Activation.IDENTITY).build())
+                .build();
+        MultiLayerNetwork net = new MultiLayerNetwork(conf);
+        net.init();
+
+        DataSetIterator iter = data(new long[]{16, 10}, 3);
+        MultiLayerNetwork qd = QuantizationUtil.quantize(net, iter, QuantizedLayer.Execution.DEQUANTIZE);
+        MultiLayerNetwork qi = QuantizationUtil.quantize(net, iter, QuantizedLayer.Execution.INTEGER);
+        iter.reset();
+        INDArray f = iter.next().getFeatures();
+
+        QuantizedLayer l = (QuantizedLayer) qi.getLayerWiseConfigurations().getConf(0).getLayer();
+        assertTrue(l.getInputScale() > 0);
+        Map<String, INDArray> qParams = ((org.deeplearning4j.nn.layers.QuantizedLayer) qi.getLayer(0)).quantizedParamTable();
+        assertEquals(DataType.INT8, qParams.get(org.deeplearning4j.nn.layers.QuantizedLayer.WEIGHT_KEY).dataType());
+
+        INDArray outD = qd.output(f);
+        INDArray outI = qi.output(f);
+        assertNotEquals(outD, outI);
+        assertTrue(outD.equalsWithEps(outI, 0.05));
+
+        //Uncalibrated: INTEGER falls back to DEQUANTIZE
+        MultiLayerNetwork qNoCalib = QuantizationUtil.quantize(net, null, QuantizedLayer.Execution.INTEGER);
+        assertEquals(outD, qNoCalib.output(f));
+
+        assertThrows(UnsupportedOperationException.class, () -> qi.fit(f, Nd4j.rand(DataType.FLOAT, 16, 3)));
+    }
+
+    @Test
+    public void testConvolutionQuantization() throws Exception {
+        ComputationGraphConfiguration conf = new NeuralNetConfiguration.Builder()
+                .seed(12345)
+                .dataType(DataType.FLOAT)
+                .activation(Activation.RELU)
+                .convolutionMode(ConvolutionMode.Same)
+                .graphBuilder()
+                .addInputs("in")
+                .addLayer("c0", new ConvolutionLayer.Builder().kernelSize(3, 3).nOut(8).build(), "in")
+                .addLayer("p", new SubsamplingLayer.Builder().kernelSize(2, 2).stride(2, 2).build(), "c0")
+                .addLayer("c1", new ConvolutionLayer.Builder().kernelSize(3, 3).nOut(8).build(), "p")
+                .addLayer("d", new DenseLayer.Builder().nOut(16).build(), "c1")
+                .addLayer("out", new OutputLayer.Builder(LossFunctions.LossFunction.MCXENT).nOut(4)
+                        .activation(Activation.SOFTMAX).build(), "d")
+                .setOutputs("out")
+                .setInputTypes(InputType.convolutional(8, 8, 2))
+                .build();
+        ComputationGraph net = new ComputationGraph(conf);
+        net.init();
+
+        DataSetIterator iter = data(new long[]{8, 2, 8, 8}, 4);
+        for (QuantizedLayer.Execution e : QuantizedLayer.Execution.values()) {
+            ComputationGraph q = QuantizationUtil.quantize(net, iter, e);
+            for (String s : new String[]{"c0", "c1", "d"}) {
+                assertTrue(q.getLayer(s).conf().getLayer() instanceof QuantizedLayer, s);
+            }
+
+            QuantizationUtil.Comparison c = QuantizationUtil.compare(net, q, new MultiDataSetIteratorAdapter(iter));
+            assertTrue(c.getMaxAbsDifference() < 0.05, e + ": " + c);
+            assertTrue(c.getQuantizedModelBytes() < c.getOriginalModelBytes() / 2, e + ": " + c);
+
+            ComputationGraphConfiguration fromJson = ComputationGraphConfiguration.fromJson(q.getConfiguration().toJson());
+            assertEquals(q.getConfiguration(), fromJson);
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            ModelSerializer.writeModel(q, baos, false);
+            ComputationGraph q2 = ModelSerializer.restoreComputationGraph(new ByteArrayInputStream(baos.toByteArray()), false);
+            ComputationGraph q3 = q.clone();
+            iter.reset();
+            INDArray f = iter.next().getFeatures();
+            INDArray out = q.outputSingle(f);
+            assertEquals(out, q2.outputSingle(f));
+            assertEquals(out, q3.outputSingle(f));
+            iter.reset();
+        }
+    }
+
+    private static DataSetIterator data(long[] featureShape, int nOut) {
+        Nd4j.getRandom().setSeed(12345);
+        List<DataSet> list = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            INDArray f = Nd4j.rand(DataType.FLOAT, featureShape).subi(0.5);
+            INDArray l = Nd4j.zeros(DataType.FLOAT, featureShape[0], nOut);
+            for (int j = 0; j < featureShape[0]; j++) {
+                l.putScalar(j, j % nOut, 1.0);
+            }
+            list.add(new DataSet(f, l));
+        }
+        return new ExistingDataSetIterator(list);
+    }
+}
@@ -27,6 +27,7 @@ import org.deeplearning4j.nn.api.Layer;
 import org.deeplearning4j.nn.api.OptimizationAlgorithm;
 import org.deeplearning4j.nn.conf.*;
 import org.deeplearning4j.nn.conf.distribution.NormalDistribution;
+import org.deeplearning4j.nn.conf.inputs.InputType;
 import org.deeplearning4j.nn.conf.layers.DenseLayer;
 import org.deeplearning4j.nn.conf.layers.GlobalPoolingLayer;
 import org.deeplearning4j.nn.conf.layers.OutputLayer;
@@ -40,6 +41,7 @@ import org.deeplearning4j.nn.layers.recurrent.BaseRecurrentLayer;
 import org.deeplearning4j.nn.layers.recurrent.LSTM;
 import org.deeplearning4j.nn.layers.recurrent.SimpleRnn;
 import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
+import org.deeplearning4j.nn.multilayer.RnnStreamingSession;
 import org.deeplearning4j.nn.weights.WeightInit;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
@@ -243,6 +245,53 @@ public class MultiLayerTestRNN extends BaseDL4JTest {
         }
     }
 
+    @Test
+    public void testRnnStreamingSession() {
+        Nd4j.getRandom().setSeed(12345);
+        int timeSeriesLength = 6;
+
+        MultiLayerConfiguration conf = new NeuralNetConfiguration.Builder().seed(12345)
+                        .dataType(DataType.DOUBLE).list()
+                        .layer(new org.deeplearning4j.nn.conf.layers.LSTM.Builder().nIn(5).nOut(7)
+                                        .activation(Activation.TANH).dist(new NormalDistribution(0, 0.5)).build())
+                        .layer(new org.deeplearning4j.nn.conf.layers.recurrent.SimpleRnn.Builder().nIn(7).nOut(6)
+                                        .activation(Activation.TANH).dist(new NormalDistribution(0, 0.5)).build())
+                        .layer(new DenseLayer.Builder().nIn(6).nOut(5).activation(Activation.RELU).build())
+                        .layer(new RnnOutputLayer.Builder(LossFunction.MCXENT).nIn(5).nOut(4)
+                                        .activation(Activation.SOFTMAX).dist(new NormalDistribution(0, 0.5)).build())
+                        .setInputType(InputType.recurrent(5))
+                        .build();
+        MultiLayerNetwork mln = new MultiLayerNetwork(conf);
+        mln.init();
+
+        INDArray input3d = Nd4j.rand(DataType.DOUBLE, 3, 5, timeSeriesLength);
+        INDArray out3d = mln.output(input3d);
+
+        RnnStreamingSession session = mln.rnnStreamingSession(4);
+        assertEquals(0, session.addStream());
+        assertEquals(1, session.addStream());
+        assertEquals(2, session.addStream());
+        assertEquals(3, session.numActiveStreams());
+        for (int i = 0; i < timeSeriesLength; i++) {
+            session.getInput().get(NDArrayIndex.interval(0, 3), NDArrayIndex.all())
+                            .assign(input3d.get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.point(i)));
+            INDArray out = session.step();
+            assertArrayEquals(new long[] {4, 4}, out.shape());
+            INDArray exp = out3d.get(NDArrayIndex.all(), NDArrayIndex.all(), NDArrayIndex.point(i));
+            assertEquals(exp, out.get(NDArrayIndex.interval(0, 3), NDArrayIndex.all()));
+        }
+
+        //Replace stream 1: state of the new stream starts from zero, other streams are not affected
+        session.removeStream(1);
+        assertFalse(session.isActive(1));
+        assertEquals(1, session.addStream());
+        INDArray first = input3d.get(NDArrayIndex.point(1), NDArrayIndex.all(), NDArrayIndex.point(0));
+        session.getInput().putRow(1, first);
+        INDArray out = session.step();
+        INDArray expFirst = mln.output(input3d.get(NDArrayIndex.interval(1, 2), NDArrayIndex.all(), NDArrayIndex.interval(0, 1)));
+        assertEquals(expFirst.reshape(1, 4), out.get(NDArrayIndex.interval(1, 2), NDArrayIndex.all()));
+    }
+
     @Test
     public void testTruncatedBPTTVsBPTT() {
         //Under some (limited) circumstances, we expect BPTT and truncated BPTT to be identical
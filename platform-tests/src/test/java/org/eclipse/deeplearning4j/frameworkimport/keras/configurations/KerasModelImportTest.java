@@ -20,11 +20,15 @@
 package org.eclipse.deeplearning4j.frameworkimport.keras.configurations;
 
 import lombok.extern.slf4j.Slf4j;
+import org.bytedeco.hdf5.H5File;
+import org.bytedeco.hdf5.PredType;
+import org.bytedeco.javacpp.FloatPointer;
 import org.deeplearning4j.BaseDL4JTest;
 import org.deeplearning4j.nn.conf.CNN2DFormat;
 import org.deeplearning4j.nn.conf.MultiLayerConfiguration;
 import org.deeplearning4j.nn.conf.layers.ConvolutionLayer;
 import org.deeplearning4j.nn.conf.layers.SubsamplingLayer;
+import org.deeplearning4j.nn.modelimport.keras.Hdf5Archive;
 import org.deeplearning4j.nn.modelimport.keras.KerasModelImport;
 import org.deeplearning4j.nn.modelimport.keras.exceptions.InvalidKerasConfigurationException;
 import org.deeplearning4j.nn.modelimport.keras.exceptions.UnsupportedKerasConfigurationException;
@@ -32,13 +36,17 @@ import org.deeplearning4j.nn.multilayer.MultiLayerNetwork;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.nd4j.common.resources.Resources;
 import org.nd4j.common.tests.tags.NativeTag;
 import org.nd4j.common.tests.tags.TagNames;
 import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.DataSet;
 import org.nd4j.linalg.factory.Nd4j;
 import java.io.IOException;
+import java.nio.file.Path;
+import static org.bytedeco.hdf5.global.hdf5.H5F_ACC_TRUNC;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import org.junit.jupiter.api.DisplayName;
@@ -97,6 +105,52 @@ class KerasModelImportTest extends BaseDL4JTest {
         assertNotNull(model);
     }
 
+    @Test
+    @DisplayName("Test Cached Import")
+    void testCachedImport(@TempDir Path cacheDir) throws Exception {
+        String path = Resources.asFile("modelimport/keras/tfscope/model.h5").getAbsolutePath();
+        MultiLayerNetwork imported = KerasModelImport.importKerasSequentialModelAndWeights(path, false, cacheDir.toFile());
+        assertEquals(1, cacheDir.toFile().listFiles().length);
+        MultiLayerNetwork cached = KerasModelImport.importKerasSequentialModelAndWeights(path, false, cacheDir.toFile());
+        assertEquals(1, cacheDir.toFile().listFiles().length);
+        assertEquals(imported.getLayerWiseConfigurations(), cached.getLayerWiseConfigurations());
+        assertEquals(imported.params(), cached.params());
+    }
+
+    @Test
+    @DisplayName("Test Chunked Data Set Read")
+    void testChunkedDataSetRead(@TempDir Path dir) throws Exception {
+        long[] shape = {37, 5, 3};
+        float[] values = new float[37 * 5 * 3];
+        for (int i = 0; i < values.length; i++)
+            values[i] = i * 0.5f - 100;
+        String path = dir.resolve("data.h5").toString();
+        H5File file = new H5File(path, H5F_ACC_TRUNC);
+        try {
+            org.bytedeco.hdf5.DataSpace space = new org.bytedeco.hdf5.DataSpace(shape.length, shape);
+            org.bytedeco.hdf5.DataSet ds = file.createDataSet("weights", new org.bytedeco.hdf5.DataType(PredType.NATIVE_FLOAT()), space);
+            ds.write(new FloatPointer(values), new org.bytedeco.hdf5.DataType(PredType.NATIVE_FLOAT()));
+            ds.deallocate();
+            space.deallocate();
+        } finally {
+            file.deallocate();
+        }
+        INDArray expected = Nd4j.createFromArray(values).reshape(shape).castTo(Nd4j.defaultFloatingPointType());
+
+        try (Hdf5Archive archive = new Hdf5Archive(path)) {
+            INDArray single = archive.readDataSet("weights");
+            assertEquals(expected, single);
+
+            //4 rows (of 5x3 floats) per read: 10 hyperslab reads, the last of which is partial
+            archive.setMaxReadChunkBytes(4 * 5 * 3 * 4);
+            assertEquals(single, archive.readDataSet("weights"));
+
+            //Less than one row: one row per read
+            archive.setMaxReadChunkBytes(1);
+            assertEquals(single, archive.readDataSet("weights"));
+        }
+    }
+
     @Test
     @DisplayName("Test Weight And Json Without Tensorflow Scope")
     void testWeightAndJsonWithoutTensorflowScope() throws Exception {
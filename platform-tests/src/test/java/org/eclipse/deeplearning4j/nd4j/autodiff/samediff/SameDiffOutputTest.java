@@ -36,6 +36,7 @@ import org.nd4j.linalg.dataset.DataSet;
 import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.factory.Nd4jBackend;
 import org.nd4j.linalg.learning.config.Sgd;
+import org.nd4j.linalg.ops.transforms.Transforms;
 
 import java.util.Collections;
 import java.util.LinkedHashMap;
@@ -103,6 +104,42 @@ public class SameDiffOutputTest extends BaseNd4jTestWithBackends {
                 0.0001),"output != input + 2");
     }
 
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testExecutionPlanReuse(Nd4jBackend backend) {
+        Nd4j.getRandom().setSeed(12345);
+        SameDiff sd = SameDiff.create();
+        SDVariable in = sd.placeHolder("in", DataType.FLOAT, -1, 4);
+        SDVariable w = sd.var("w", Nd4j.rand(DataType.FLOAT, 4, 3));
+        SDVariable b = sd.var("b", Nd4j.rand(DataType.FLOAT, 3));
+        SDVariable out = sd.nn().tanh("out", in.mmul(w).add(b));
+
+        for (int minibatch : new int[]{1, 5, 1, 3}) {
+            INDArray input = Nd4j.rand(DataType.FLOAT, minibatch, 4);
+            INDArray exp = Transforms.tanh(input.mmul(w.getArr()).addRowVector(b.getArr()), true);
+
+            sd.setEnableExecutionPlans(true);
+            assertEquals(exp, sd.outputSingle(Collections.singletonMap("in", input), "out"));
+            assertEquals(exp, sd.outputSingle(Collections.singletonMap("in", input), "out"));
+
+            sd.setEnableExecutionPlans(false);
+            assertEquals(exp, sd.outputSingle(Collections.singletonMap("in", input), "out"));
+        }
+
+        //Modify the graph after a plan has been cached: plan should be rebuilt
+        sd.setEnableExecutionPlans(true);
+        INDArray input = Nd4j.rand(DataType.FLOAT, 2, 4);
+        sd.outputSingle(Collections.singletonMap("in", input), "out");
+        out.mul("out2", 2.0);
+        INDArray exp = Transforms.tanh(input.mmul(w.getArr()).addRowVector(b.getArr()), true).muli(2.0);
+        assertEquals(exp, sd.outputSingle(Collections.singletonMap("in", input), "out2"));
+
+        //Variable -> constant conversion also changes the plan (constant vs. variable inputs)
+        exp = Transforms.tanh(input.mmul(w.getArr()).addRowVector(b.getArr()), true);
+        sd.convertToConstants(Collections.singletonList(w));
+        assertEquals(exp, sd.outputSingle(Collections.singletonMap("in", input), "out"));
+    }
+
     @Override
     public char ordering() {
         return 'c';
@@ -50,6 +50,7 @@ import org.nd4j.common.tests.tags.NativeTag;
 import org.nd4j.common.tests.tags.TagNames;
 import org.nd4j.evaluation.IEvaluation;
 import org.nd4j.evaluation.classification.Evaluation;
+import org.nd4j.evaluation.classification.ROCMultiClass;
 import org.nd4j.linalg.BaseNd4jTestWithBackends;
 import org.nd4j.linalg.api.buffer.DataType;
 import org.nd4j.linalg.api.ndarray.INDArray;
@@ -354,6 +355,53 @@ public class SameDiffTrainingTest extends BaseNd4jTestWithBackends {
     }
 
 
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testParallelEvaluation(Nd4jBackend backend) {
+        DataSetIterator iter = new IrisDataSetIterator(10, 150);
+        NormalizerStandardize std = new NormalizerStandardize();
+        std.fit(iter);
+        iter.setPreProcessor(std);
+
+        Nd4j.getRandom().setSeed(12345);
+        SameDiff sd = SameDiff.create();
+
+        SDVariable in = sd.placeHolder("input", FLOAT, -1, 4);
+        SDVariable label = sd.placeHolder("label", FLOAT, -1, 3);
+
+        SDVariable w0 = sd.var("w0", new XavierInitScheme('c', 4, 10), FLOAT, 4, 10);
+        SDVariable b0 = sd.zero("b0", FLOAT, 1, 10);
+
+        SDVariable w1 = sd.var("w1", new XavierInitScheme('c', 10, 3), FLOAT, 10, 3);
+        SDVariable b1 = sd.zero("b1", FLOAT, 1, 3);
+
+        SDVariable a0 = sd.math().tanh(in.mmul(w0).add(b0));
+        SDVariable a1 = sd.nn().softmax("probabilities", a0.mmul(w1).add(b1));
+        sd.loss().logLoss("loss", label, a1);
+
+        TrainingConfig conf = new TrainingConfig.Builder()
+                .updater(new Adam(1e-2))
+                .dataSetFeatureMapping("input")
+                .dataSetLabelMapping("label")
+                .build();
+        sd.setTrainingConfig(conf);
+        sd.fit(iter, 5);
+
+        Evaluation expEval = new Evaluation();
+        ROCMultiClass expRoc = new ROCMultiClass(100);
+        sd.evaluate().data(iter).evaluate("probabilities", expEval, expRoc).exec();
+
+        //15 minibatches on 4 threads: each thread evaluates into its own copies, merged at the end
+        Evaluation eval = new Evaluation();
+        ROCMultiClass roc = new ROCMultiClass(100);
+        sd.evaluate().data(iter).evaluate("probabilities", eval, roc).numThreads(4).exec();
+
+        assertEquals(150, eval.getNumRowCounter());
+        assertEquals(expEval, eval);
+        assertEquals(expEval.getConfusionMatrix(), eval.getConfusionMatrix());
+        assertEquals(expRoc, roc);
+    }
+
     @ParameterizedTest
     @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
     public void irisTrainingValidationTest(Nd4jBackend backend) {
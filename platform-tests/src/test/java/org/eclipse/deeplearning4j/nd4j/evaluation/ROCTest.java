@@ -483,6 +483,230 @@ public class ROCTest extends BaseNd4jTestWithBackends {
         }
     }
 
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testRocSketch(Nd4jBackend backend) {
+        int nArrays = 20;
+        int minibatch = 128;
+        int nROCs = 3;
+
+        Nd4j.getRandom().setSeed(12345);
+        Random r = new Random(12345);
+
+        List<ROC> rocList = new ArrayList<>();
+        for (int i = 0; i < nROCs; i++) {
+            rocList.add(ROC.sketch(64));
+        }
+
+        ROC exact = new ROC();
+        ROC single = ROC.sketch(64);
+        for (int i = 0; i < nArrays; i++) {
+            INDArray p = Nd4j.rand(minibatch, 2);
+            p.diviColumnVector(p.sum(1));
+
+            INDArray l = Nd4j.zeros(minibatch, 2);
+            for (int j = 0; j < minibatch; j++) {
+                l.putScalar(j, r.nextInt(2), 1.0);
+            }
+
+            exact.eval(l, p);
+            single.eval(l, p);
+            rocList.get(i % rocList.size()).eval(l, p);
+        }
+
+        ROC first = rocList.get(0);
+        for (int i = 1; i < nROCs; i++) {
+            first.merge(rocList.get(i));
+        }
+
+        assertTrue(single.getSketch().numBins() <= 64);
+        assertEquals(exact.getCountActualPositive(), single.getCountActualPositive());
+        assertEquals(exact.getCountActualNegative(), single.getCountActualNegative());
+
+        //Sketch AUC should be within the error bound of the exact AUC, and merging should be lossless
+        double bound = single.calculateAUCErrorBound();
+        assertTrue(bound > 0.0 && bound < 0.1, String.valueOf(bound));
+        assertEquals(exact.calculateAUC(), single.calculateAUC(), bound + 1e-6);
+        assertEquals(single.calculateAUC(), first.calculateAUC(), 1e-6);
+        assertEquals(single.calculateAUCPR(), first.calculateAUCPR(), 1e-6);
+        assertEquals(single.getRocCurve(), first.getRocCurve());
+
+        ROC fromJson = ROC.fromJson(single.toJson());
+        assertEquals(single, fromJson);
+        assertEquals(single.calculateAUC(), fromJson.calculateAUC(), 1e-6);
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testRocSketchPrecisionRecallCurve(Nd4jBackend backend) {
+        //Fewer distinct probabilities than bins: every probability has its own bin, so the sketch curves are exact
+        Random r = new Random(12345);
+        int n = 40;
+        double[] prob = new double[n];
+        double[] label = new double[n];
+        for (int i = 0; i < n; i++) {
+            prob[i] = (i + 1) / (double) (n + 1);
+            label[i] = r.nextDouble() < prob[i] ? 1.0 : 0.0;
+        }
+        INDArray p = Nd4j.create(prob, new long[] {n, 1});
+        INDArray l = Nd4j.create(label, new long[] {n, 1});
+
+        //All points are kept: exact mode computes precision as a ratio of cumulative sums, so it may differ in the
+        //last bit, and redundant point removal could then keep a different set of points
+        ROC exact = new ROC(0, false);
+        exact.eval(l, p);
+        ROC sketch = ROC.sketch(64, false);
+        sketch.eval(l, p);
+        assertEquals(n, sketch.getSketch().numBins());
+
+        PrecisionRecallCurve expPrc = exact.getPrecisionRecallCurve();
+        PrecisionRecallCurve prc = sketch.getPrecisionRecallCurve();
+        assertEquals(expPrc.numPoints(), prc.numPoints());
+        assertArrayEquals(expPrc.getThreshold(), prc.getThreshold(), 1e-12);
+        assertArrayEquals(expPrc.getPrecision(), prc.getPrecision(), 1e-12);
+        assertArrayEquals(expPrc.getRecall(), prc.getRecall(), 1e-12);
+        assertArrayEquals(expPrc.getTpCount(), prc.getTpCount());
+        assertArrayEquals(expPrc.getFpCount(), prc.getFpCount());
+        assertArrayEquals(expPrc.getFnCount(), prc.getFnCount());
+        assertEquals(expPrc.getTotalCount(), prc.getTotalCount());
+        assertEquals(exact.calculateAUCPR(), sketch.calculateAUCPR(), 1e-12);
+        assertEquals(exact.calculateAUC(), sketch.calculateAUC(), 1e-12);
+        assertArrayEquals(exact.getRocCurve().getFpr(), sketch.getRocCurve().getFpr(), 1e-12);
+        assertArrayEquals(exact.getRocCurve().getTpr(), sketch.getRocCurve().getTpr(), 1e-12);
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testRocBinarySketch(Nd4jBackend backend) {
+        Nd4j.getRandom().setSeed(12345);
+        int nOut = 3;
+
+        ROCBinary exact = new ROCBinary();
+        ROCBinary sketch = ROCBinary.sketch(64);
+        List<ROCBinary> parts = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            parts.add(ROCBinary.sketch(64));
+        }
+        for (int i = 0; i < 10; i++) {
+            INDArray p = Nd4j.rand(DataType.DOUBLE, 100, nOut);
+            INDArray l = Nd4j.getExecutioner().exec(new BernoulliDistribution(
+                    Nd4j.createUninitialized(DataType.DOUBLE, 100, nOut), 0.5));
+            exact.eval(l, p);
+            sketch.eval(l, p);
+            parts.get(i % parts.size()).eval(l, p);
+        }
+        ROCBinary merged = parts.get(0);
+        for (int i = 1; i < parts.size(); i++) {
+            merged.merge(parts.get(i));
+        }
+
+        for (int i = 0; i < nOut; i++) {
+            ROC roc = sketch.getROC(i);
+            assertTrue(roc.isSketchMode());
+            assertTrue(roc.getSketch().numBins() <= 64);
+            assertEquals(exact.getCountActualPositive(i), sketch.getCountActualPositive(i));
+            assertEquals(exact.getCountActualNegative(i), sketch.getCountActualNegative(i));
+
+            double bound = roc.calculateAUCErrorBound();
+            assertEquals(exact.calculateAUC(i), sketch.calculateAUC(i), bound + 1e-6);
+            assertEquals(sketch.calculateAUC(i), merged.calculateAUC(i), 1e-10);
+            assertEquals(sketch.calculateAUCPR(i), merged.calculateAUCPR(i), 1e-10);
+        }
+
+        ROCBinary fromJson = ROCBinary.fromJson(sketch.toJson());
+        assertEquals(sketch, fromJson);
+        for (int i = 0; i < nOut; i++) {
+            assertTrue(fromJson.getROC(i).isSketchMode());
+            assertEquals(sketch.calculateAUC(i), fromJson.calculateAUC(i), 1e-10);
+            assertEquals(sketch.getPrecisionRecallCurve(i), fromJson.getPrecisionRecallCurve(i));
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testRocMultiClassSketch(Nd4jBackend backend) {
+        Nd4j.getRandom().setSeed(12345);
+        Random r = new Random(12345);
+        int nClasses = 4;
+
+        ROCMultiClass exact = new ROCMultiClass();
+        ROCMultiClass sketch = ROCMultiClass.sketch(64);
+        ROCMultiClass part1 = ROCMultiClass.sketch(64);
+        ROCMultiClass part2 = ROCMultiClass.sketch(64);
+        //Per class, one-vs-all sketch: gives the error bound of the sketch for that class
+        List<ROC> perClass = new ArrayList<>();
+        for (int c = 0; c < nClasses; c++) {
+            perClass.add(ROC.sketch(64));
+        }
+        for (int i = 0; i < 10; i++) {
+            INDArray p = Nd4j.rand(DataType.DOUBLE, 100, nClasses);
+            p.diviColumnVector(p.sum(1));
+            INDArray l = Nd4j.zeros(DataType.DOUBLE, 100, nClasses);
+            for (int j = 0; j < 100; j++) {
+                l.putScalar(j, r.nextInt(nClasses), 1.0);
+            }
+            exact.eval(l, p);
+            sketch.eval(l, p);
+            (i % 2 == 0 ? part1 : part2).eval(l, p);
+            for (int c = 0; c < nClasses; c++) {
+                perClass.get(c).eval(l.getColumn(c, true), p.getColumn(c, true));
+            }
+        }
+        part1.merge(part2);
+
+        for (int c = 0; c < nClasses; c++) {
+            ROC oneVsAll = perClass.get(c);
+            assertEquals(oneVsAll.calculateAUC(), sketch.calculateAUC(c), 1e-10);
+            assertEquals(oneVsAll.calculateAUCPR(), sketch.calculateAUCPR(c), 1e-10);
+            assertEquals(exact.calculateAUC(c), sketch.calculateAUC(c), oneVsAll.calculateAUCErrorBound() + 1e-6);
+            assertEquals(sketch.calculateAUC(c), part1.calculateAUC(c), 1e-10);
+            assertEquals(exact.getCountActualPositive(c), sketch.getCountActualPositive(c));
+        }
+
+        ROCMultiClass fromJson = ROCMultiClass.fromJson(sketch.toJson());
+        assertEquals(sketch, fromJson);
+        for (int c = 0; c < nClasses; c++) {
+            assertEquals(sketch.calculateAUC(c), fromJson.calculateAUC(c), 1e-10);
+            assertEquals(sketch.getRocCurve(c), fromJson.getRocCurve(c));
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testRocSketchJsonRoundTrip(Nd4jBackend backend) {
+        Nd4j.getRandom().setSeed(12345);
+        INDArray p = Nd4j.rand(DataType.DOUBLE, 500, 1);
+        INDArray l = Nd4j.getExecutioner().exec(new BernoulliDistribution(
+                Nd4j.createUninitialized(DataType.DOUBLE, 500, 1), 0.5));
+
+        ROC roc = ROC.sketch(32);
+        roc.eval(l, p);
+
+        ROC fromJson = ROC.fromJson(roc.toJson());
+        assertTrue(fromJson.isSketchMode());
+        assertEquals(roc.getSketch(), fromJson.getSketch());
+        assertEquals(roc.getRocCurve(), fromJson.getRocCurve());
+        assertEquals(roc.getPrecisionRecallCurve(), fromJson.getPrecisionRecallCurve());
+        assertEquals(roc.calculateAUCErrorBound(), fromJson.calculateAUCErrorBound(), 0.0);
+
+        //A deserialized sketch keeps accumulating and merging as the original does
+        INDArray p2 = Nd4j.rand(DataType.DOUBLE, 500, 1);
+        roc.eval(l, p2);
+        fromJson.eval(l, p2);
+        assertEquals(roc.calculateAUC(), fromJson.calculateAUC(), 1e-10);
+        ROC other = ROC.sketch(32);
+        other.eval(l, p);
+        fromJson.merge(other);
+        roc.merge(other);
+        assertEquals(roc.getPrecisionRecallCurve(), fromJson.getPrecisionRecallCurve());
+
+        //Empty sketch
+        ROC empty = ROC.fromJson(ROC.sketch(32).toJson());
+        assertTrue(empty.isSketchMode());
+        empty.eval(l, p);
+        assertEquals(other.getSketch(), empty.getSketch());
+    }
+
     @ParameterizedTest
     @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
     public void testROCMerging2(Nd4jBackend backend) {
@@ -751,10 +975,10 @@ public class ROCTest extends BaseNd4jTestWithBackends {
             double threshold = thr_skl[i] - 1e-6; //Subtract a bit, so we get the correct point (rounded up on the get op)
             threshold = Math.max(0.0, threshold);
             PrecisionRecallCurve.Confusion c = prc.getConfusionMatrixAtThreshold(threshold);
-            int tp = c.getTpCount();
-            int fp = c.getFpCount();
-            int tn = c.getTnCount();
-            int fn = c.getFnCount();
+            long tp = c.getTpCount();
+            long fp = c.getFpCount();
+            long tn = c.getTnCount();
+            long fn = c.getFnCount();
 
             assertEquals(30, tp + fp + tn + fn);
 
@@ -861,9 +1085,9 @@ public class ROCTest extends BaseNd4jTestWithBackends {
                 PrecisionRecallCurve.Confusion c = prc.getConfusionMatrixAtPoint(i);
                 PrecisionRecallCurve.Point p = c.getPoint();
 
-                int tp = c.getTpCount();
-                int fp = c.getFpCount();
-                int fn = c.getFnCount();
+                long tp = c.getTpCount();
+                long fp = c.getFpCount();
+                long fn = c.getFnCount();
 
                 double prec = tp / (double) (tp + fp);
                 double rec = tp / (double) (tp + fn);
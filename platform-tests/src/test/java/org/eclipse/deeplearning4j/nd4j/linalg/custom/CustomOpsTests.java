@@ -70,6 +70,7 @@ import org.nd4j.linalg.api.ops.custom.YiqToRgb;
 import org.nd4j.linalg.api.ops.custom.YuvToRgb;
 import org.nd4j.linalg.api.ops.executioner.OpExecutioner;
 import org.nd4j.linalg.api.ops.executioner.OpStatus;
+import org.nd4j.linalg.api.ops.executioner.OutputShapeCache;
 import org.nd4j.linalg.api.ops.impl.controlflow.Where;
 import org.nd4j.linalg.api.ops.impl.image.NonMaxSuppression;
 import org.nd4j.linalg.api.ops.impl.image.ResizeArea;
@@ -2114,4 +2115,78 @@ public class CustomOpsTests extends BaseNd4jTestWithBackends {
 
         assertEquals(out, out2);
     }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testOutputShapeCache(Nd4jBackend backend) {
+        OutputShapeCache cache = OutputShapeCache.getInstance();
+        cache.clear();
+        cache.resetStats();
+
+        for (int i = 0; i < 3; i++) {
+            DynamicCustomOp op = DynamicCustomOp.builder("reshape")
+                    .addInputs(Nd4j.create(DataType.FLOAT, 3, 4), Nd4j.createFromArray(2, 6))
+                    .build();
+            List<LongShapeDescriptor> l = op.calculateOutputShape();
+            assertEquals(1, l.size());
+            assertArrayEquals(new long[]{2, 6}, l.get(0).getShape());
+        }
+        assertEquals(1, cache.getMisses());
+        assertEquals(2, cache.getHits());
+
+        //Values of small (shape) inputs are part of the key
+        DynamicCustomOp op = DynamicCustomOp.builder("reshape")
+                .addInputs(Nd4j.create(DataType.FLOAT, 3, 4), Nd4j.createFromArray(6, 2))
+                .build();
+        assertArrayEquals(new long[]{6, 2}, op.calculateOutputShape().get(0).getShape());
+        assertEquals(2, cache.getMisses());
+
+        //Data dependent output shapes should never be cached
+        INDArray in = Nd4j.createFromArray(1, 2, 2, 3);
+        op = DynamicCustomOp.builder("unique").addInputs(in).build();
+        assertArrayEquals(new long[]{3}, op.calculateOutputShape().get(0).getShape());
+        op = DynamicCustomOp.builder("unique").addInputs(Nd4j.createFromArray(1, 1, 1, 3)).build();
+        assertArrayEquals(new long[]{2}, op.calculateOutputShape().get(0).getShape());
+        assertEquals(2, cache.getUncacheable());
+
+        //Only ops known to have shape-only output shapes are cached
+        op = DynamicCustomOp.builder("sequence_mask").addInputs(Nd4j.createFromArray(1, 3)).addIntegerArguments(-1).build();
+        assertArrayEquals(new long[]{2, 3}, op.calculateOutputShape().get(0).getShape());
+        op = DynamicCustomOp.builder("sequence_mask").addInputs(Nd4j.createFromArray(1, 5)).addIntegerArguments(-1).build();
+        assertArrayEquals(new long[]{2, 5}, op.calculateOutputShape().get(0).getShape());
+        assertEquals(4, cache.getUncacheable());
+
+        //Least recently used entries are evicted first
+        try {
+            cache.clear();
+            cache.setMaxSize(2);
+            long[][] shapes = {{2, 6}, {6, 2}, {12, 1}};
+            reshapeOutputShape(shapes[0]);
+            reshapeOutputShape(shapes[1]);
+            reshapeOutputShape(shapes[0]);
+            reshapeOutputShape(shapes[2]);      //Evicts {6,2}
+            assertEquals(2, cache.size());
+            long hits = cache.getHits();
+            reshapeOutputShape(shapes[0]);
+            reshapeOutputShape(shapes[2]);
+            assertEquals(hits + 2, cache.getHits());
+            long misses = cache.getMisses();
+            reshapeOutputShape(shapes[1]);
+            assertEquals(misses + 1, cache.getMisses());
+        } finally {
+            cache.setMaxSize(OutputShapeCache.DEFAULT_MAX_SIZE);
+        }
+
+        cache.setMaxSize(0);
+        assertFalse(cache.isEnabled());
+        assertEquals(0, cache.size());
+        cache.setMaxSize(OutputShapeCache.DEFAULT_MAX_SIZE);
+    }
+
+    private static void reshapeOutputShape(long[] shape) {
+        DynamicCustomOp op = DynamicCustomOp.builder("reshape")
+                .addInputs(Nd4j.create(DataType.FLOAT, 3, 4), Nd4j.createFromArray(shape))
+                .build();
+        assertArrayEquals(shape, op.calculateOutputShape().get(0).getShape());
+    }
 }
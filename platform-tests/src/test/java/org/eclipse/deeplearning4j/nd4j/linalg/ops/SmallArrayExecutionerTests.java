@@ -0,0 +1,363 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+
+package org.eclipse.deeplearning4j.nd4j.linalg.ops;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.linalg.BaseNd4jTestWithBackends;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.api.ops.CustomOp;
+import org.nd4j.linalg.api.ops.ReduceOp;
+import org.nd4j.linalg.api.ops.ScalarOp;
+import org.nd4j.linalg.api.ops.TransformOp;
+import org.nd4j.linalg.api.ops.impl.reduce.floating.AMean;
+import org.nd4j.linalg.api.ops.impl.reduce.floating.Mean;
+import org.nd4j.linalg.api.ops.impl.reduce.floating.Norm1;
+import org.nd4j.linalg.api.ops.impl.reduce.floating.Norm2;
+import org.nd4j.linalg.api.ops.impl.reduce.floating.SquaredNorm;
+import org.nd4j.linalg.api.ops.impl.reduce.same.ASum;
+import org.nd4j.linalg.api.ops.impl.reduce.same.Prod;
+import org.nd4j.linalg.api.ops.impl.reduce.same.Sum;
+import org.nd4j.linalg.api.ops.impl.scalar.RectifiedLinear;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarAdd;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarDivision;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarMax;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarMultiplication;
+import org.nd4j.linalg.api.ops.impl.scalar.ScalarReverseSubtraction;
+import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.AddOp;
+import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.DivOp;
+import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.MulOp;
+import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.RSubOp;
+import org.nd4j.linalg.api.ops.impl.transforms.pairwise.arithmetic.SubOp;
+import org.nd4j.linalg.api.ops.impl.transforms.same.Abs;
+import org.nd4j.linalg.api.ops.impl.transforms.same.Square;
+import org.nd4j.linalg.api.ops.impl.transforms.strict.Exp;
+import org.nd4j.linalg.api.ops.impl.transforms.strict.Sigmoid;
+import org.nd4j.linalg.api.ops.impl.transforms.strict.Swish;
+import org.nd4j.linalg.api.ops.impl.transforms.strict.Tanh;
+import org.nd4j.linalg.cpu.nativecpu.ops.NativeOpExecutioner;
+import org.nd4j.linalg.cpu.nativecpu.ops.SmallArrayExecutioner;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.factory.Nd4jBackend;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.linalg.ops.transforms.Transforms;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Parity of the pure Java small array path ({@link SmallArrayExecutioner}) with native execution
+ */
+@NativeTag
+public class SmallArrayExecutionerTests extends BaseNd4jTestWithBackends {
+
+    private static final double EPS = 1e-5;
+
+    @Override
+    public char ordering() {
+        return 'c';
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testScalarOps(Nd4jBackend backend) {
+        SmallArrayExecutioner java = new SmallArrayExecutioner(64, false);
+        for (DataType dt : new DataType[]{DataType.FLOAT, DataType.DOUBLE, DataType.INT, DataType.LONG}) {
+            List<BiFunction<INDArray, INDArray, ScalarOp>> ops = new ArrayList<>();
+            ops.add((x, z) -> new ScalarAdd(x, null, z, 3));
+            ops.add((x, z) -> new ScalarMultiplication(x, null, z, -2));
+            ops.add((x, z) -> new ScalarReverseSubtraction(x, null, z, 5));
+            ops.add((x, z) -> new ScalarMax(x, null, z, 1));
+            for (INDArray[] pair : inputs(dt)) {
+                for (BiFunction<INDArray, INDArray, ScalarOp> f : ops) {
+                    INDArray zNative = pair[0].ulike();
+                    Nd4j.getExecutioner().exec(f.apply(pair[0], zNative));
+
+                    INDArray zJava = pair[1].ulike();
+                    ScalarOp op = f.apply(pair[1], zJava);
+                    assertTrue(java.canExec(op, pair[1], zJava), op.opName() + " " + dt);
+                    java.exec(op, pair[1], zJava);
+                    assertParity(op.opName() + " " + dt, zNative, zJava);
+                }
+
+                //In place on the input: only the view elements of the parent array are modified
+                INDArray parentNative = pair[0].dup();
+                Nd4j.getExecutioner().exec(new ScalarAdd(pair[0], null, pair[0], 2));
+                ScalarOp op = new ScalarAdd(pair[1], null, pair[1], 2);
+                assertTrue(java.canExec(op, pair[1], pair[1]));
+                java.exec(op, pair[1], pair[1]);
+                assertParity("in place " + dt, pair[0], pair[1]);
+                assertNotEquals(parentNative, pair[0]);
+            }
+        }
+
+        //Integer division and ops with extra arguments are left to the native path
+        INDArray i = Nd4j.createFromArray(1, 2, 3);
+        assertFalse(java.canExec(new ScalarDivision(i, null, i.ulike(), 2), i, i.ulike()));
+        INDArray f = Nd4j.createFromArray(1.0f, -2.0f, 3.0f);
+        INDArray fz = f.ulike();
+        RectifiedLinear relu = new RectifiedLinear(f, fz, 0.5);
+        assertTrue(java.canExec(relu, f, fz));
+        java.exec(relu, f, fz);
+        assertEquals(Nd4j.createFromArray(1.0f, 0.5f, 3.0f), fz);
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testTransformOps(Nd4jBackend backend) {
+        SmallArrayExecutioner java = new SmallArrayExecutioner(64, false);
+        List<BiFunction<INDArray, INDArray, TransformOp>> ops = new ArrayList<>();
+        ops.add(Tanh::new);
+        ops.add(Sigmoid::new);
+        ops.add(Swish::new);
+        ops.add(Exp::new);
+        ops.add(Abs::new);
+        ops.add(Square::new);
+        for (DataType dt : new DataType[]{DataType.FLOAT, DataType.DOUBLE}) {
+            for (INDArray[] pair : inputs(dt)) {
+                //Scaled in place, to keep the view layouts
+                pair[0].divi(8);
+                pair[1].divi(8);
+                for (BiFunction<INDArray, INDArray, TransformOp> f : ops) {
+                    INDArray zNative = pair[0].ulike();
+                    Nd4j.getExecutioner().exec(f.apply(pair[0], zNative));
+
+                    INDArray zJava = pair[1].ulike();
+                    TransformOp op = f.apply(pair[1], zJava);
+                    assertTrue(java.canExec(op, pair[1], null, zJava), op.opName() + " " + dt);
+                    java.exec(op, pair[1], zJava);
+                    assertParity(op.opName() + " " + dt, zNative, zJava);
+                }
+            }
+        }
+
+        //Floating point transforms only
+        INDArray i = Nd4j.createFromArray(1, 2, 3);
+        assertFalse(java.canExec(new Tanh(i, i.ulike()), i, null, i.ulike()));
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testReductions(Nd4jBackend backend) {
+        SmallArrayExecutioner java = new SmallArrayExecutioner(64, false);
+        List<Function<INDArray, ReduceOp>> fpOps = new ArrayList<>();
+        fpOps.add(Mean::new);
+        fpOps.add(AMean::new);
+        fpOps.add(Norm1::new);
+        fpOps.add(Norm2::new);
+        fpOps.add(SquaredNorm::new);
+        List<Function<INDArray, ReduceOp>> sameOps = new ArrayList<>();
+        sameOps.add(Sum::new);
+        sameOps.add(ASum::new);
+        sameOps.add(Prod::new);
+
+        for (DataType dt : new DataType[]{DataType.FLOAT, DataType.DOUBLE, DataType.INT, DataType.LONG}) {
+            for (INDArray[] pair : inputs(dt)) {
+                //Keep products in range
+                INDArray xNative = dt.isFPType() ? pair[0].div(4) : Transforms.sign(pair[0]).addi(pair[0].eq(0).castTo(dt));
+                INDArray xJava = dt.isFPType() ? pair[1].div(4) : Transforms.sign(pair[1]).addi(pair[1].eq(0).castTo(dt));
+                xNative = viewOf(xNative);
+                xJava = viewOf(xJava);
+
+                List<Function<INDArray, ReduceOp>> ops = new ArrayList<>(sameOps);
+                if (dt.isFPType())
+                    ops.addAll(fpOps);
+                for (Function<INDArray, ReduceOp> f : ops) {
+                    INDArray zNative = Nd4j.getExecutioner().exec(f.apply(xNative));
+
+                    ReduceOp op = f.apply(xJava);
+                    INDArray zJava = Nd4j.scalar(dt, 0);
+                    assertTrue(java.canExec(op, xJava, null, zJava), op.opName() + " " + dt);
+                    java.exec(op, xJava, zJava);
+                    assertEquals(zNative.getDouble(0), zJava.getDouble(0), EPS * Math.max(1, Math.abs(zNative.getDouble(0))),
+                            op.opName() + " " + dt);
+                }
+
+                if (!dt.isFPType()) {
+                    INDArray zJava = Nd4j.scalar(dt, 0);
+                    assertFalse(java.canExec(new Norm2(xJava), xJava, null, zJava));
+                }
+            }
+        }
+
+        //Reductions along dimensions are left to the native path
+        INDArray x = Nd4j.rand(DataType.FLOAT, 3, 4);
+        assertFalse(java.canExec(new Sum(x, 1), x, null, Nd4j.create(DataType.FLOAT, 3)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testPairwiseOpsWithBroadcasting(Nd4jBackend backend) {
+        SmallArrayExecutioner java = new SmallArrayExecutioner(64, false);
+        List<BiFunction<INDArray, INDArray, CustomOp>> ops = new ArrayList<>();
+        ops.add(AddOp::new);
+        ops.add(SubOp::new);
+        ops.add(MulOp::new);
+        ops.add(RSubOp::new);
+        for (DataType dt : new DataType[]{DataType.FLOAT, DataType.DOUBLE, DataType.INT, DataType.LONG}) {
+            INDArray base = Nd4j.linspace(1, 60, 60, DataType.DOUBLE).subi(30).castTo(dt).reshape(5, 12);
+            List<INDArray[]> cases = new ArrayList<>();
+            //Same shape, strided view and transposed view
+            cases.add(new INDArray[]{base.get(NDArrayIndex.interval(0, 3), NDArrayIndex.interval(0, 2, 8)),
+                    base.get(NDArrayIndex.interval(1, 5), NDArrayIndex.interval(3, 6)).transpose()});
+            //[3,1] x [1,4] -> [3,4]
+            cases.add(new INDArray[]{base.get(NDArrayIndex.interval(0, 3), NDArrayIndex.interval(5, 6)),
+                    base.get(NDArrayIndex.interval(4, 5), NDArrayIndex.interval(0, 4))});
+            //[2,3,4] x [4] (rank broadcast)
+            cases.add(new INDArray[]{base.get(NDArrayIndex.interval(0, 2), NDArrayIndex.all()).dup('f').reshape('c', 2, 3, 4),
+                    base.getRow(3).get(NDArrayIndex.interval(2, 2, 10))});
+            //[4] x scalar-like [1]
+            cases.add(new INDArray[]{base.getRow(2).get(NDArrayIndex.interval(0, 4)), base.get(NDArrayIndex.point(1), NDArrayIndex.interval(7, 8))});
+
+            for (INDArray[] c : cases) {
+                for (BiFunction<INDArray, INDArray, CustomOp> f : ops) {
+                    INDArray[] nativeOut = Nd4j.getExecutioner().exec(f.apply(c[0], c[1]));
+
+                    CustomOp op = f.apply(c[0].dup(c[0].ordering()), c[1]);
+                    assertTrue(java.canExec(op), op.opName() + " " + dt);
+                    INDArray[] javaOut = java.exec(op);
+                    assertParity(op.opName() + " " + dt, nativeOut[0], javaOut[0]);
+                }
+            }
+
+            //Preallocated output
+            INDArray x = cases.get(1)[0];
+            INDArray y = cases.get(1)[1];
+            INDArray expected = Nd4j.getExecutioner().exec(new AddOp(x, y))[0];
+            INDArray out = Nd4j.create(dt, 3, 4);
+            AddOp op = new AddOp(x, y, out);
+            assertTrue(java.canExec(op));
+            java.exec(op);
+            assertParity("add, preallocated " + dt, expected, out);
+        }
+
+        //Integer division is left to the native path
+        INDArray i = Nd4j.createFromArray(1, 2, 3);
+        assertFalse(java.canExec(new DivOp(i, i)));
+        //Larger than the threshold
+        INDArray large = Nd4j.rand(DataType.FLOAT, 10, 10);
+        assertFalse(java.canExec(new AddOp(large, large)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("org.nd4j.linalg.BaseNd4jTestWithBackends#configs")
+    public void testExecutionerHooks(Nd4jBackend backend) {
+        //Run ops through the executioner itself, with the Java path enabled, in verify mode and in Java only mode
+        NativeOpExecutioner executioner = (NativeOpExecutioner) Nd4j.getExecutioner();
+        SmallArrayExecutioner small = executioner.getSmallArrayExecutioner();
+        int threshold = small.getThreshold();
+        boolean verify = small.isVerify();
+
+        INDArray base = Nd4j.linspace(1, 48, 48, DataType.FLOAT).subi(24).divi(10).reshape(6, 8);
+        INDArray view = base.get(NDArrayIndex.interval(1, 4), NDArrayIndex.interval(0, 2, 8));
+        INDArray row = base.getRow(5).get(NDArrayIndex.interval(0, 4));
+        INDArray ints = Nd4j.linspace(1, 12, 12, DataType.DOUBLE).castTo(DataType.INT).reshape(3, 4);
+
+        small.setThreshold(0);
+        List<INDArray> expected = runOps(view, row, ints);
+        try {
+            long executed = small.getNumExecuted();
+            long failures = small.getNumVerifyFailures();
+            small.setThreshold(64);
+            small.setVerify(true);
+            List<INDArray> verified = runOps(view, row, ints);
+            assertTrue(small.getNumExecuted() >= executed + expected.size(), "Java path was not used");
+            assertEquals(failures, small.getNumVerifyFailures());
+
+            small.setVerify(false);
+            List<INDArray> javaOnly = runOps(view, row, ints);
+            for (int i = 0; i < expected.size(); i++) {
+                assertParity("op " + i, expected.get(i), verified.get(i));
+                assertParity("op " + i, expected.get(i), javaOnly.get(i));
+            }
+        } finally {
+            small.setThreshold(threshold);
+            small.setVerify(verify);
+        }
+    }
+
+    private static List<INDArray> runOps(INDArray view, INDArray row, INDArray ints) {
+        List<INDArray> out = new ArrayList<>();
+        out.add(view.add(1.5));
+        out.add(Transforms.tanh(view, true));
+        out.add(Nd4j.scalar(view.sumNumber().floatValue()));
+        out.add(Nd4j.scalar(view.norm2Number().floatValue()));
+        out.add(Nd4j.exec(new AddOp(view, row))[0]);
+        out.add(ints.mul(3));
+        out.add(Nd4j.exec(new SubOp(ints, ints.getRow(1)))[0]);
+        return out;
+    }
+
+    /**
+     * Pairs of arrays with identical contents and layout, for the native and the Java executions: c order,
+     * f order, a strided view with an offset, and a transposed view. All have shape [3,4]
+     */
+    private static List<INDArray[]> inputs(DataType dt) {
+        List<INDArray[]> out = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            INDArray[] pair = new INDArray[2];
+            for (int j = 0; j < 2; j++) {
+                INDArray base = Nd4j.linspace(1, 48, 48, DataType.DOUBLE).subi(24).castTo(dt).reshape(6, 8);
+                switch (i) {
+                    case 0:
+                        pair[j] = base.get(NDArrayIndex.interval(0, 3), NDArrayIndex.interval(0, 4)).dup('c');
+                        break;
+                    case 1:
+                        pair[j] = base.get(NDArrayIndex.interval(0, 3), NDArrayIndex.interval(0, 4)).dup('f');
+                        break;
+                    case 2:
+                        pair[j] = base.get(NDArrayIndex.interval(1, 4), NDArrayIndex.interval(1, 2, 8));
+                        break;
+                    default:
+                        pair[j] = base.get(NDArrayIndex.interval(2, 6), NDArrayIndex.interval(3, 6)).transpose();
+                }
+            }
+            out.add(pair);
+        }
+        return out;
+    }
+
+    /**
+     * A strided view with the same contents as the given array
+     */
+    private static INDArray viewOf(INDArray arr) {
+        INDArray parent = Nd4j.create(arr.dataType(), arr.size(0), 2 * arr.size(1));
+        INDArray view = parent.get(NDArrayIndex.all(), NDArrayIndex.interval(0, 2, 2 * arr.size(1)));
+        view.assign(arr);
+        return view;
+    }
+
+    private static void assertParity(String msg, INDArray expected, INDArray actual) {
+        assertArrayEquals(expected.shape(), actual.shape(), msg);
+        assertEquals(expected.dataType(), actual.dataType(), msg);
+        for (long i = 0; i < expected.length(); i++) {
+            double e = expected.getDouble(i);
+            double a = actual.getDouble(i);
+            assertEquals(e, a, EPS * Math.max(1, Math.abs(e)), msg + ", element " + i);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+package org.nd4j.tensorflow.conversion.graphrunner;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+import org.nd4j.tensorflow.conversion.TensorDataType;
+import org.tensorflow.framework.AttrValue;
+import org.tensorflow.framework.GraphDef;
+import org.tensorflow.framework.NodeDef;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag(TagNames.TENSORFLOW)
+@NativeTag
+public class GraphRunnerTest {
+
+    private static final List<String> INPUTS = Arrays.asList("input_0", "input_1");
+    private static final List<String> OUTPUTS = Arrays.asList("sum", "product");
+
+    /**
+     * sum = input_0 + input_1, product = input_0 * input_1, all float
+     */
+    private static byte[] graphBytes() {
+        AttrValue floatType = AttrValue.newBuilder().setType(org.tensorflow.framework.DataType.DT_FLOAT).build();
+        return GraphDef.newBuilder()
+                .addNode(NodeDef.newBuilder().setName("input_0").setOp("Placeholder").putAttr("dtype", floatType))
+                .addNode(NodeDef.newBuilder().setName("input_1").setOp("Placeholder").putAttr("dtype", floatType))
+                .addNode(NodeDef.newBuilder().setName("sum").setOp("Add").addInput("input_0").addInput("input_1").putAttr("T", floatType))
+                .addNode(NodeDef.newBuilder().setName("product").setOp("Mul").addInput("input_0").addInput("input_1").putAttr("T", floatType))
+                .build()
+                .toByteArray();
+    }
+
+    private static GraphRunner graphRunner(Map<String, TensorDataType> inputDataTypes) {
+        return GraphRunner.builder()
+                .graphBytes(graphBytes())
+                .inputNames(INPUTS)
+                .outputNames(OUTPUTS)
+                .inputDataTypes(inputDataTypes)
+                .build();
+    }
+
+    private static Map<String, INDArray> inputs(INDArray in0, INDArray in1) {
+        Map<String, INDArray> inputs = new LinkedHashMap<>();
+        inputs.put("input_0", in0);
+        inputs.put("input_1", in1);
+        return inputs;
+    }
+
+    @Test
+    public void testPreparedRun() {
+        try (GraphRunner graphRunner = graphRunner(null)) {
+            INDArray in0 = Nd4j.linspace(DataType.FLOAT, 1, 6, 1).reshape(2, 3);
+            INDArray in1 = Nd4j.linspace(DataType.FLOAT, 6, 6, -1).reshape(2, 3);
+
+            Map<String, INDArray> out = graphRunner.run(inputs(in0, in1));
+            assertEquals(OUTPUTS, new ArrayList<>(out.keySet()));
+            assertEquals(in0.add(in1), out.get("sum"));
+            assertEquals(in0.mul(in1), out.get("product"));
+
+            //Prepared calls are created once per input/output signature
+            PreparedGraphRun prepared = graphRunner.prepare();
+            assertSame(prepared, graphRunner.prepare());
+            assertSame(prepared, graphRunner.prepare(INPUTS, OUTPUTS));
+            assertEquals(INPUTS, prepared.getFeeds());
+            assertEquals(OUTPUTS, prepared.getFetches());
+            assertEquals(out, prepared.run(inputs(in0, in1)));
+
+            PreparedGraphRun productOnly = graphRunner.prepare(INPUTS, Collections.singletonList("product"));
+            assertNotSame(prepared, productOnly);
+            assertSame(productOnly, graphRunner.prepare(new ArrayList<>(INPUTS), Collections.singletonList("product")));
+            Map<String, INDArray> productOut = productOnly.run(inputs(in0, in1));
+            assertEquals(Collections.singleton("product"), productOut.keySet());
+            assertEquals(in0.mul(in1), productOut.get("product"));
+
+            //Views and f order inputs are copied before being passed to tensorflow
+            INDArray view = Nd4j.linspace(DataType.FLOAT, 1, 12, 1).reshape(4, 3).get(NDArrayIndex.interval(1, 3), NDArrayIndex.all());
+            INDArray fOrder = in1.dup('f');
+            out = graphRunner.run(inputs(view, fOrder));
+            assertEquals(view.add(in1), out.get("sum"));
+            assertEquals(view.mul(in1), out.get("product"));
+
+            //Changing the input order invalidates the prepared calls
+            graphRunner.setInputOrder(Arrays.asList("input_1", "input_0"));
+            assertNotSame(prepared, graphRunner.prepare());
+            assertEquals(Arrays.asList("input_1", "input_0"), graphRunner.prepare().getFeeds());
+
+            assertThrows(IllegalArgumentException.class, () -> graphRunner.prepare(Collections.singletonList("no_such_input"), OUTPUTS));
+        }
+    }
+
+    @Test
+    public void testPreallocatedOutputs() {
+        try (GraphRunner graphRunner = graphRunner(null)) {
+            INDArray sum = Nd4j.create(DataType.FLOAT, 2, 3);
+            Map<String, INDArray> outputs = new HashMap<>();
+            outputs.put("sum", sum);
+
+            for (int i = 0; i < 3; i++) {
+                INDArray in0 = Nd4j.rand(DataType.FLOAT, 2, 3);
+                INDArray in1 = Nd4j.rand(DataType.FLOAT, 2, 3);
+                Map<String, INDArray> out = graphRunner.run(inputs(in0, in1), outputs);
+                //Preallocated arrays are filled in place, other outputs are new arrays
+                assertSame(sum, out.get("sum"));
+                assertEquals(in0.add(in1), sum);
+                assertEquals(in0.mul(in1), out.get("product"));
+            }
+            //All calls used the same prepared run
+            assertSame(graphRunner.prepare(), graphRunner.prepare(INPUTS, OUTPUTS));
+
+            //Preallocated outputs must have the output shape
+            outputs.put("sum", Nd4j.create(DataType.FLOAT, 3, 2));
+            assertThrows(IllegalArgumentException.class, () -> graphRunner.run(inputs(Nd4j.rand(DataType.FLOAT, 2, 3), Nd4j.rand(DataType.FLOAT, 2, 3)), outputs));
+        }
+    }
+
+    @Test
+    public void testConcurrentRuns() throws Exception {
+        int nThreads = 4;
+        int nPerThread = 50;
+        try (GraphRunner graphRunner = graphRunner(null)) {
+            ExecutorService es = Executors.newFixedThreadPool(nThreads);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < nThreads; t++) {
+                    int thread = t;
+                    futures.add(es.submit(() -> {
+                        for (int i = 0; i < nPerThread; i++) {
+                            INDArray in0 = Nd4j.valueArrayOf(new long[]{4, 5}, thread, DataType.FLOAT);
+                            INDArray in1 = Nd4j.valueArrayOf(new long[]{4, 5}, i, DataType.FLOAT);
+                            Map<String, INDArray> out = graphRunner.run(inputs(in0, in1));
+                            assertEquals(in0.add(in1), out.get("sum"));
+                            assertEquals(in0.mul(in1), out.get("product"));
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> f : futures) {
+                    f.get(60, TimeUnit.SECONDS);
+                }
+            } finally {
+                es.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    public void testInputDataTypeCast() {
+        Map<String, TensorDataType> inputDataTypes = new HashMap<>();
+        inputDataTypes.put("input_0", TensorDataType.FLOAT);
+        inputDataTypes.put("input_1", TensorDataType.FLOAT);
+        try (GraphRunner graphRunner = graphRunner(inputDataTypes)) {
+            //Inputs of another type are cast with nd4j before being fed to the float placeholders
+            INDArray in0 = Nd4j.linspace(DataType.DOUBLE, 1, 6, 1).reshape(2, 3);
+            INDArray in1 = Nd4j.createFromArray(new int[][]{{1, 2, 3}, {4, 5, 6}});
+            Map<String, INDArray> out = graphRunner.run(inputs(in0, in1));
+            assertEquals(DataType.FLOAT, out.get("sum").dataType());
+            assertEquals(in0.castTo(DataType.FLOAT).add(in1.castTo(DataType.FLOAT)), out.get("sum"));
+            assertEquals(in0.castTo(DataType.FLOAT).mul(in1.castTo(DataType.FLOAT)), out.get("product"));
+            //The original inputs are not modified
+            assertEquals(DataType.DOUBLE, in0.dataType());
+            assertEquals(DataType.INT, in1.dataType());
+        }
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+package org.nd4j.tensorflowlite.runner;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.nd4j.common.io.ClassPathResource;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Tag(TagNames.FILE_IO)
+@Tag(TagNames.DL4J_OLD_API)
+@NativeTag
+public class TensorFlowLiteRunnerPoolTests {
+
+    private static String modelPath() throws Exception {
+        File f = new ClassPathResource("add.bin").getFile();
+        return f.getAbsolutePath();
+    }
+
+    private static Map<String,INDArray> input(float scale) {
+        INDArray input = Nd4j.createFromArray(1.0f, 2.0f, 3.0f).muli(scale).reshape(1,1,1,3).broadcast(1,8,8,3);
+        Map<String,INDArray> inputs = new LinkedHashMap<>();
+        inputs.put("input", input);
+        return inputs;
+    }
+
+    @Test
+    public void testExecMatchesRunner() throws Exception {
+        if(!Nd4j.getBackend().getEnvironment().isCPU())
+            return;
+        TensorFlowLiteRunner runner = TensorFlowLiteRunner.builder().modelUri(modelPath()).build();
+        INDArray expected = runner.exec(input(1.0f)).get("output");
+
+        try (TensorFlowLiteRunnerPool pool = TensorFlowLiteRunnerPool.builder().modelUri(modelPath()).poolSize(2).build()) {
+            assertEquals(2, pool.getPoolSize());
+            assertEquals(Collections.singletonList("input"), pool.getInputNames());
+            assertEquals(Collections.singletonList("output"), pool.getOutputNames());
+
+            assertEquals(expected, pool.exec(input(1.0f)).get("output"));
+
+            //Preallocated output
+            Map<String,INDArray> outputs = new LinkedHashMap<>();
+            outputs.put("output", Nd4j.create(expected.dataType(), expected.shape()));
+            pool.exec(input(1.0f), outputs);
+            assertEquals(expected, outputs.get("output"));
+
+            //Zero copy access through a lease
+            try (TensorFlowLiteRunnerPool.Lease lease = pool.acquire()) {
+                lease.getInput("input").assign(input(1.0f).get("input"));
+                lease.run();
+                assertEquals(expected, lease.getOutput("output"));
+            }
+            assertEquals(3, pool.getNumExecutions());
+        }
+    }
+
+    @Test
+    public void testConcurrentExec() throws Exception {
+        if(!Nd4j.getBackend().getEnvironment().isCPU())
+            return;
+        int nThreads = 4;
+        int nPerThread = 20;
+        try (TensorFlowLiteRunnerPool pool = TensorFlowLiteRunnerPool.builder().modelUri(modelPath()).poolSize(2).build()) {
+            INDArray expected1 = pool.exec(input(1.0f)).get("output");
+            INDArray expected2 = pool.exec(input(2.0f)).get("output");
+            assertNotEquals(expected1, expected2);
+            pool.resetMetrics();
+
+            ExecutorService es = Executors.newFixedThreadPool(nThreads);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < nThreads; t++) {
+                    float scale = t % 2 == 0 ? 1.0f : 2.0f;
+                    INDArray expected = t % 2 == 0 ? expected1 : expected2;
+                    futures.add(es.submit(() -> {
+                        for (int i = 0; i < nPerThread; i++) {
+                            assertEquals(expected, pool.exec(input(scale)).get("output"));
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> f : futures) {
+                    f.get(60, TimeUnit.SECONDS);
+                }
+            } finally {
+                es.shutdownNow();
+            }
+
+            assertEquals(nThreads * nPerThread, pool.getNumExecutions());
+            assertTrue(pool.getMeanLatencyNanos() > 0);
+            assertTrue(pool.getMaxLatencyNanos() >= pool.getMeanLatencyNanos());
+            assertTrue(pool.getMeanWaitNanos() >= 0);
+        }
+    }
+
+    @Test
+    public void testMetricsCountUsedLeasesOnly() throws Exception {
+        if(!Nd4j.getBackend().getEnvironment().isCPU())
+            return;
+        try (TensorFlowLiteRunnerPool pool = TensorFlowLiteRunnerPool.builder().modelUri(modelPath()).poolSize(1).build()) {
+            //A lease that is never used is neither an execution nor a wait
+            pool.acquire().close();
+            assertEquals(0, pool.getNumExecutions());
+            assertEquals(0.0, pool.getMeanWaitNanos(), 0.0);
+
+            pool.exec(input(1.0f));
+            assertEquals(1, pool.getNumExecutions());
+        }
+    }
+
+    @Test
+    public void testCloseWaitsForLeases() throws Exception {
+        if(!Nd4j.getBackend().getEnvironment().isCPU())
+            return;
+        TensorFlowLiteRunnerPool pool = TensorFlowLiteRunnerPool.builder().modelUri(modelPath()).poolSize(1).build();
+        INDArray expected = pool.exec(input(1.0f)).get("output");
+
+        TensorFlowLiteRunnerPool.Lease lease = pool.acquire();
+        Thread closer = new Thread(pool::close);
+        closer.start();
+        closer.join(500);
+        assertTrue(closer.isAlive(), "close() should block until the leased interpreter is returned");
+
+        //The interpreter is still valid while leased
+        lease.setInputs(input(1.0f));
+        lease.run();
+        assertEquals(expected, lease.getOutput("output"));
+        lease.close();
+
+        closer.join(10000);
+        assertFalse(closer.isAlive());
+        assertThrows(IllegalStateException.class, pool::acquire);
+        assertThrows(IllegalStateException.class, () -> pool.exec(input(1.0f)));
+        pool.close();   //No-op
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ *  ******************************************************************************
+ *  *
+ *  *
+ *  * This program and the accompanying materials are made available under the
+ *  * terms of the Apache License, Version 2.0 which is available at
+ *  * https://www.apache.org/licenses/LICENSE-2.0.
+ *  *
+ *  *  See the NOTICE file distributed with this work for additional
+ *  *  information regarding copyright ownership.
+ *  * Unless required by applicable law or agreed to in writing, software
+ *  * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *  * License for the specific language governing permissions and limitations
+ *  * under the License.
+ *  *
+ *  * SPDX-License-Identifier: Apache-2.0
+ *  *****************************************************************************
+ */
+package org.nd4j.tvm.runner;
+
+import org.junit.jupiter.api.Disabled;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.nd4j.common.tests.tags.NativeTag;
+import org.nd4j.common.tests.tags.TagNames;
+import org.nd4j.linalg.api.buffer.DataType;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Disabled
+@Tag(TagNames.FILE_IO)
+@Tag(TagNames.DIST_SYSTEMS)
+@NativeTag
+public class TvmRunnerPoolTests {
+
+    private static String modelPath(Path tempDir) throws Exception {
+        File libPath = tempDir.resolve("lib").toFile();
+        TvmRunnerTests.PrepareTestLibs(libPath.getAbsolutePath().replace(File.separatorChar, '/'));
+        return new File(libPath, "test_relay_add.so").getAbsolutePath();
+    }
+
+    private static Map<String,INDArray> input(float x) {
+        Map<String,INDArray> inputs = new LinkedHashMap<>();
+        inputs.put("x", Nd4j.scalar(x).reshape(1,1));
+        return inputs;
+    }
+
+    @Test
+    public void testExec(@TempDir Path tempDir) throws Exception {
+        try (TvmRunnerPool pool = TvmRunnerPool.builder().modelUri(modelPath(tempDir)).poolSize(2).build()) {
+            assertEquals(2, pool.getPoolSize());
+            assertEquals(2.0, pool.exec(input(1.0f)).get("0").getDouble(0), 1e-5);
+
+            //Preallocated output: bound without a copy when aligned, copied otherwise
+            INDArray out = Nd4j.create(DataType.FLOAT, 1, 1);
+            pool.exec(input(3.0f), Collections.singletonMap("0", out));
+            assertEquals(4.0, out.getDouble(0), 1e-5);
+            INDArray view = Nd4j.create(DataType.FLOAT, 2, 2).get(NDArrayIndex.interval(1, 2), NDArrayIndex.interval(1, 2));
+            pool.exec(input(5.0f), Collections.singletonMap("0", view));
+            assertEquals(6.0, view.getDouble(0), 1e-5);
+
+            //The executor must not keep a reference to the caller's output array
+            pool.exec(input(7.0f));
+            assertEquals(4.0, out.getDouble(0), 1e-5);
+
+            assertEquals(4, pool.getNumExecutions());
+        }
+    }
+
+    @Test
+    public void testConcurrentExec(@TempDir Path tempDir) throws Exception {
+        int nThreads = 4;
+        int nPerThread = 50;
+        try (TvmRunnerPool pool = TvmRunnerPool.builder().modelUri(modelPath(tempDir)).poolSize(2).build()) {
+            ExecutorService es = Executors.newFixedThreadPool(nThreads);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < nThreads; t++) {
+                    float x = t;
+                    futures.add(es.submit(() -> {
+                        for (int i = 0; i < nPerThread; i++) {
+                            assertEquals(x + 1.0, pool.exec(input(x)).get("0").getDouble(0), 1e-5);
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> f : futures) {
+                    f.get(60, TimeUnit.SECONDS);
+                }
+            } finally {
+                es.shutdownNow();
+            }
+            assertEquals(nThreads * nPerThread, pool.getNumExecutions());
+            assertTrue(pool.getMeanWaitNanos() >= 0);
+        }
+    }
+
+    @Test
+    public void testCloseWaitsForExecutions(@TempDir Path tempDir) throws Exception {
+        TvmRunnerPool pool = TvmRunnerPool.builder().modelUri(modelPath(tempDir)).poolSize(2).build();
+        int nThreads = 4;
+        AtomicBoolean failed = new AtomicBoolean();
+        AtomicInteger completed = new AtomicInteger();
+        ExecutorService es = Executors.newFixedThreadPool(nThreads);
+        try {
+            for (int t = 0; t < nThreads; t++) {
+                es.submit(() -> {
+                    while (true) {
+                        try {
+                            if (Math.abs(pool.exec(input(1.0f)).get("0").getDouble(0) - 2.0) > 1e-5)
+                                failed.set(true);
+                            completed.incrementAndGet();
+                        } catch (IllegalStateException e) {
+                            return;     //Pool closed
+                        } catch (Throwable e) {
+                            failed.set(true);
+                            return;
+                        }
+                    }
+                });
+            }
+            Thread.sleep(200);
+            //Executions in progress finish before the executors are released; later calls fail cleanly
+            pool.close();
+            assertThrows(IllegalStateException.class, () -> pool.exec(input(1.0f)));
+            es.shutdown();
+            assertTrue(es.awaitTermination(30, TimeUnit.SECONDS));
+            assertFalse(failed.get());
+            assertTrue(completed.get() > 0);
+        } finally {
+            es.shutdownNow();
+        }
+    }
+}